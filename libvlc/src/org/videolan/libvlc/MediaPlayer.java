@@ -103,6 +103,7 @@ public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
     }
 
     public interface EventListener extends VLCEvent.Listener<MediaPlayer.Event> {}
+    public interface BatchEventListener extends VLCEvent.BatchListener<MediaPlayer.Event>, EventListener {}
 
     public static class Position {
         public static final int Disable = -1;
@@ -1076,6 +1077,22 @@ public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
         super.setEventListener(listener);
     }
 
+    /**
+     * Set an event listener, with coalescing of TimeChanged, PositionChanged and Buffering events.
+     * Event objects are recycled in this mode, they must not be kept after onEvent().
+     *
+     * @param listener an {@link EventListener}, or a {@link BatchEventListener} to get events per frame
+     * @param coalesce enable coalescing mode
+     */
+    public synchronized void setEventListener(EventListener listener, boolean coalesce) {
+        super.setEventListener(listener, null, coalesce);
+    }
+
+    @Override
+    protected boolean isCoalescable(int eventType) {
+        return eventType == Event.TimeChanged || eventType == Event.PositionChanged || eventType == Event.Buffering;
+    }
+
     @Override
     protected synchronized Event onEventNative(int eventType, long arg1, float arg2) {
         switch (eventType) {
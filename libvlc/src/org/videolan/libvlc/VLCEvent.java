@@ -20,10 +20,13 @@
 
 package org.videolan.libvlc;
 
+import java.util.List;
+
 abstract class VLCEvent {
     public final int type;
-    protected final long arg1;
-    protected final float arg2;
+    /* Not final: coalesced events are updated in place, see VLCObject */
+    protected long arg1;
+    protected float arg2;
 
     protected VLCEvent(int type) {
         this.type = type;
@@ -41,6 +44,11 @@ abstract class VLCEvent {
         this.arg2 = arg2;
     }
 
+    void update(long arg1, float arg2) {
+        this.arg1 = arg1;
+        this.arg2 = arg2;
+    }
+
     /**
      * Listener for libvlc events
      *
@@ -49,4 +57,14 @@ abstract class VLCEvent {
     public interface Listener<T extends VLCEvent> {
         void onEvent(T event);
     }
+
+    /**
+     * Listener receiving all the events of a frame at once, in coalescing mode.
+     * onEvent() is not called for these events.
+     *
+     * Events are recycled after dispatch, neither the list nor its events must be kept.
+     */
+    public interface BatchListener<T extends VLCEvent> extends Listener<T> {
+        void onEvents(List<T> events);
+    }
 }
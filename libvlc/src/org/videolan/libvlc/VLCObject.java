@@ -22,13 +22,26 @@ package org.videolan.libvlc;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 
 @SuppressWarnings("JniMissingFunction")
 abstract class VLCObject<T extends VLCEvent> {
+    private static final long FRAME_DURATION_MS = 16L;
+    private static final int MAX_FREE_EVENTS = 8;
+
     private VLCEvent.Listener<T> mEventListener = null;
     private Handler mHandler = null;
+    private boolean mCoalesce = false;
+    /* Coalescing mode: events waiting for the next frame, and the ones being dispatched */
+    private ArrayList<T> mPendingEvents = new ArrayList<>();
+    private ArrayList<T> mDispatchingEvents = new ArrayList<>();
+    /* Recycled coalescable events */
+    private final ArrayList<T> mFreeEvents = new ArrayList<>();
+    private boolean mDispatchScheduled = false;
+    private long mLastDispatch = 0L;
     final LibVLC mLibVLC;
     private int mNativeRefCount = 1;
 
@@ -107,9 +120,28 @@ abstract class VLCObject<T extends VLCEvent> {
      * @param handler Handler in which events are sent. If null, a handler will be created running on the main thread
      */
     protected synchronized void setEventListener(VLCEvent.Listener<T> listener, Handler handler) {
+        setEventListener(listener, handler, false);
+    }
+
+    /**
+     * Set an event listener and an executor Handler, with optional coalescing.
+     *
+     * In coalescing mode, events are dispatched at most once per frame. Consecutive
+     * events of a type for which {@link #isCoalescable(int)} is true are merged into
+     * the latest one, and their objects are recycled once dispatched.
+     * A {@link VLCEvent.BatchListener} gets all the events of a frame in one call.
+     *
+     * @param listener see {@link VLCEvent.Listener}
+     * @param handler Handler in which events are sent. If null, a handler will be created running on the main thread
+     * @param coalesce enable coalescing mode
+     */
+    protected synchronized void setEventListener(VLCEvent.Listener<T> listener, Handler handler, boolean coalesce) {
         if (mHandler != null)
             mHandler.removeCallbacksAndMessages(null);
+        mPendingEvents.clear();
+        mDispatchScheduled = false;
         mEventListener = listener;
+        mCoalesce = coalesce;
         if (mEventListener == null)
             mHandler = null;
         else if (mHandler == null)
@@ -126,6 +158,17 @@ abstract class VLCObject<T extends VLCEvent> {
      */
     protected abstract T onEventNative(int eventType, long arg1, float arg2);
 
+    /**
+     * Tells if consecutive events of this type can be merged in coalescing mode.
+     * onEventNative() is skipped for a merged event, it must have no side effect for such types.
+     *
+     * @param eventType event type
+     * @return true if only the last event of a burst matters
+     */
+    protected boolean isCoalescable(int eventType) {
+        return false;
+    }
+
     /**
      * Called when native object is released (refcount is 0).
      *
@@ -139,6 +182,10 @@ abstract class VLCObject<T extends VLCEvent> {
     private synchronized void dispatchEventFromNative(int eventType, long arg1, float arg2) {
         if (isReleased())
             return;
+        if (mCoalesce) {
+            coalesceEvent(eventType, arg1, arg2);
+            return;
+        }
         final T event = onEventNative(eventType, arg1, arg2);
 
         class EventRunnable implements Runnable {
@@ -158,6 +205,77 @@ abstract class VLCObject<T extends VLCEvent> {
         if (event != null && mEventListener != null && mHandler != null)
             mHandler.post(new EventRunnable(mEventListener, event));
     }
+
+    /* Called with the object lock held */
+    private void coalesceEvent(int eventType, long arg1, float arg2) {
+        if (mEventListener == null || mHandler == null)
+            return;
+        final boolean coalescable = isCoalescable(eventType);
+        if (coalescable) {
+            // Merge into the pending event of the same type, unless another kind of event came in between
+            for (int i = mPendingEvents.size() - 1; i >= 0; --i) {
+                final T pending = mPendingEvents.get(i);
+                if (!isCoalescable(pending.type))
+                    break;
+                if (pending.type == eventType) {
+                    pending.update(arg1, arg2);
+                    return;
+                }
+            }
+        }
+        T event = null;
+        if (coalescable) {
+            for (int i = mFreeEvents.size() - 1; i >= 0; --i) {
+                if (mFreeEvents.get(i).type == eventType) {
+                    event = mFreeEvents.remove(i);
+                    event.update(arg1, arg2);
+                    break;
+                }
+            }
+        }
+        if (event == null)
+            event = onEventNative(eventType, arg1, arg2);
+        if (event == null)
+            return;
+        mPendingEvents.add(event);
+        if (!mDispatchScheduled) {
+            mDispatchScheduled = true;
+            final long now = SystemClock.uptimeMillis();
+            mHandler.postAtTime(mBatchDispatcher, Math.max(now, mLastDispatch + FRAME_DURATION_MS));
+        }
+    }
+
+    private final Runnable mBatchDispatcher = new Runnable() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public void run() {
+            final VLCEvent.Listener<T> listener;
+            final ArrayList<T> events;
+            synchronized (VLCObject.this) {
+                mDispatchScheduled = false;
+                mLastDispatch = SystemClock.uptimeMillis();
+                listener = mEventListener;
+                // Swap buffers so that native events can be queued during dispatch
+                events = mPendingEvents;
+                mPendingEvents = mDispatchingEvents;
+                mDispatchingEvents = events;
+            }
+            if (listener instanceof VLCEvent.BatchListener)
+                ((VLCEvent.BatchListener<T>) listener).onEvents(events);
+            else if (listener != null)
+                for (int i = 0; i < events.size(); ++i)
+                    listener.onEvent(events.get(i));
+            synchronized (VLCObject.this) {
+                for (int i = 0; i < events.size(); ++i) {
+                    final T event = events.get(i);
+                    if (isCoalescable(event.type) && mFreeEvents.size() < MAX_FREE_EVENTS)
+                        mFreeEvents.add(event);
+                }
+                events.clear();
+            }
+        }
+    };
+
     private native void nativeDetachEvents();
 
     /* used only before API 7: substitute for NewWeakGlobalRef */
@@ -35,6 +35,7 @@ public class Dumper {
         void onProgress(float progress);
     }
 
+    /* null if the LibVLC instance is shared */
     private final LibVLC mLibVLC;
     private final MediaPlayer mMediaPlayer;
     private final Listener mListener;
@@ -47,22 +48,43 @@ public class Dumper {
      */
     @MainThread
     public Dumper(Uri uri, String filepath, Listener listener) {
+        this(null, uri, filepath, listener);
+    }
+
+    /**
+     * Create a Dumper using an existing LibVLC instance, several dumps can share the same one.
+     * The dump options are set on the media, so the instance can still be used for playback.
+     * @param libVLC LibVLC instance, it is not released by the Dumper
+     * @see #Dumper(Uri, String, Listener)
+     */
+    @MainThread
+    public Dumper(LibVLC libVLC, Uri uri, String filepath, Listener listener) {
         if (uri == null || filepath == null || listener == null)
             throw new IllegalArgumentException("arguments shouldn't be null");
         mListener = listener;
 
-        ArrayList<String> options = new ArrayList<>(8);
-        options.add("--demux");
-        options.add("dump2,none");
-        options.add("--demuxdump-file");
-        options.add(filepath);
-        options.add("--no-video");
-        options.add("--no-audio");
-        options.add("--no-spu");
-        options.add("-vv");
-        mLibVLC = new LibVLC(null, options);
-
-        final Media media = new Media(mLibVLC, uri);
+        final Media media;
+        if (libVLC == null) {
+            ArrayList<String> options = new ArrayList<>(8);
+            options.add("--demux");
+            options.add("dump2,none");
+            options.add("--demuxdump-file");
+            options.add(filepath);
+            options.add("--no-video");
+            options.add("--no-audio");
+            options.add("--no-spu");
+            options.add("-vv");
+            mLibVLC = new LibVLC(null, options);
+            media = new Media(mLibVLC, uri);
+        } else {
+            mLibVLC = null;
+            media = new Media(libVLC, uri);
+            media.addOption(":demux=dump2,none");
+            media.addOption(":demuxdump-file=" + filepath);
+            media.addOption(":no-video");
+            media.addOption(":no-audio");
+            media.addOption(":no-spu");
+        }
         mMediaPlayer = new MediaPlayer(media);
         mMediaPlayer.setEventListener(new MediaPlayer.EventListener() {
             @Override
@@ -99,6 +121,7 @@ public class Dumper {
     public void cancel() {
         mMediaPlayer.stop();
         mMediaPlayer.release();
-        mLibVLC.release();
+        if (mLibVLC != null)
+            mLibVLC.release();
     }
 }
@@ -1,5 +1,7 @@
 #include <stdlib.h>
 #include <string>
+#include <algorithm>
+#include <mutex>
 #include <jni.h>
 #include <medialibrary/IDeviceLister.h>
 #define LOG_TAG "VLC/JNI/MediaLibrary"
@@ -273,6 +275,74 @@ getRecentAudio(JNIEnv* env, jobject thiz)
     return getAudio(env, thiz, medialibrary::SortingCriteria::InsertionDate, true);
 }
 
+/*
+ * Paged queries: the medialibrary API has no offset/limit, so the collection is
+ * queried once, when its first page is requested, and the next pages are read
+ * from this snapshot. The snapshot is dropped once its end is read.
+ * Only the [offset, offset + limit[ window is converted to Java objects.
+ * A negative limit means up to the end.
+ */
+template <typename T>
+struct PagedSnapshot
+{
+    std::mutex lock;
+    std::vector<T> items;
+    bool valid = false;
+    int sort = -1;
+    bool desc = false;
+};
+
+static PagedSnapshot<medialibrary::MediaPtr> videosSnapshot, audioSnapshot;
+static PagedSnapshot<medialibrary::AlbumPtr> albumsSnapshot;
+static PagedSnapshot<medialibrary::ArtistPtr> artistsSnapshot;
+
+template <typename T, typename Query, typename Converter>
+static jobjectArray
+toJavaArrayPage(JNIEnv* env, jclass clazz, PagedSnapshot<T>& snapshot, int sort, bool desc,
+                jint offset, jint limit, Query query, Converter convert)
+{
+    std::lock_guard<std::mutex> guard(snapshot.lock);
+    if (offset <= 0 || !snapshot.valid || snapshot.sort != sort || snapshot.desc != desc) {
+        snapshot.items = query();
+        snapshot.valid = true;
+        snapshot.sort = sort;
+        snapshot.desc = desc;
+    }
+    const int size = snapshot.items.size();
+    const int start = std::min(std::max((int) offset, 0), size);
+    const int end = limit < 0 ? size : std::min(size, start + (int) limit);
+    jobjectArray refs = (jobjectArray) env->NewObjectArray(end - start, clazz, NULL);
+    for (int i = start; i < end; ++i) {
+        jobject item = convert(env, &ml_fields, snapshot.items[i]);
+        env->SetObjectArrayElement(refs, i - start, item);
+        env->DeleteLocalRef(item);
+    }
+    // A full last page is only known to be the last one when the next request is empty
+    if (limit < 0 || end - start < limit) {
+        std::vector<T>().swap(snapshot.items);
+        snapshot.valid = false;
+    }
+    return refs;
+}
+
+jobjectArray
+getPagedVideos(JNIEnv* env, jobject thiz, jint sortingCriteria, jboolean desc, jint offset, jint limit)
+{
+    AndroidMediaLibrary *aml = MediaLibrary_getInstance(env, thiz);
+    return toJavaArrayPage(env, ml_fields.MediaWrapper.clazz, videosSnapshot, sortingCriteria, desc, offset, limit,
+            [aml, sortingCriteria, desc]() { return aml->videoFiles((medialibrary::SortingCriteria) sortingCriteria, desc); },
+            mediaToMediaWrapper);
+}
+
+jobjectArray
+getPagedAudio(JNIEnv* env, jobject thiz, jint sortingCriteria, jboolean desc, jint offset, jint limit)
+{
+    AndroidMediaLibrary *aml = MediaLibrary_getInstance(env, thiz);
+    return toJavaArrayPage(env, ml_fields.MediaWrapper.clazz, audioSnapshot, sortingCriteria, desc, offset, limit,
+            [aml, sortingCriteria, desc]() { return aml->audioFiles((medialibrary::SortingCriteria) sortingCriteria, desc); },
+            mediaToMediaWrapper);
+}
+
 jobject
 search(JNIEnv* env, jobject thiz, jstring query)
 {
@@ -433,6 +503,22 @@ getArtists(JNIEnv* env, jobject thiz)
     return artistRefs;
 }
 
+jobjectArray
+getPagedAlbums(JNIEnv* env, jobject thiz, jint offset, jint limit)
+{
+    AndroidMediaLibrary *aml = MediaLibrary_getInstance(env, thiz);
+    return toJavaArrayPage(env, ml_fields.Album.clazz, albumsSnapshot, -1, false, offset, limit,
+            [aml]() { return aml->albums(); }, convertAlbumObject);
+}
+
+jobjectArray
+getPagedArtists(JNIEnv* env, jobject thiz, jint offset, jint limit)
+{
+    AndroidMediaLibrary *aml = MediaLibrary_getInstance(env, thiz);
+    return toJavaArrayPage(env, ml_fields.Artist.clazz, artistsSnapshot, -1, false, offset, limit,
+            [aml]() { return aml->artists(); }, convertArtistObject);
+}
+
 jobject
 getArtist(JNIEnv* env, jobject thiz, jlong id)
 {
@@ -738,6 +824,8 @@ static JNINativeMethod methods[] = {
     {"nativeGetVideos", "()[Lorg/videolan/medialibrary/media/MediaWrapper;", (void*)getVideos },
     {"nativeGetAudio", "()[Lorg/videolan/medialibrary/media/MediaWrapper;", (void*)getAudio },
     {"nativeGetRecentAudio", "()[Lorg/videolan/medialibrary/media/MediaWrapper;", (void*)getRecentAudio },
+    {"nativeGetPagedVideos", "(IZII)[Lorg/videolan/medialibrary/media/MediaWrapper;", (void*)getPagedVideos },
+    {"nativeGetPagedAudio", "(IZII)[Lorg/videolan/medialibrary/media/MediaWrapper;", (void*)getPagedAudio },
     {"nativeSearch", "(Ljava/lang/String;)Lorg/videolan/medialibrary/media/SearchAggregate;", (void*)search},
     {"nativeSearchMedia", "(Ljava/lang/String;)Lorg/videolan/medialibrary/media/MediaSearchAggregate;", (void*)searchMedia},
     {"nativeSearchAlbum", "(Ljava/lang/String;)[Lorg/videolan/medialibrary/media/Album;", (void*)searchAlbum },
@@ -752,6 +840,8 @@ static JNINativeMethod methods[] = {
     {"nativeGetAlbums", "()[Lorg/videolan/medialibrary/media/Album;", (void*)getAlbums },
     {"nativeGetAlbum", "(J)Lorg/videolan/medialibrary/media/Album;", (void*)getAlbum },
     {"nativeGetArtists", "()[Lorg/videolan/medialibrary/media/Artist;", (void*)getArtists },
+    {"nativeGetPagedAlbums", "(II)[Lorg/videolan/medialibrary/media/Album;", (void*)getPagedAlbums },
+    {"nativeGetPagedArtists", "(II)[Lorg/videolan/medialibrary/media/Artist;", (void*)getPagedArtists },
     {"nativeGetArtist", "(J)Lorg/videolan/medialibrary/media/Artist;", (void*)getArtist },
     {"nativeGetGenres", "()[Lorg/videolan/medialibrary/media/Genre;", (void*)getGenres },
     {"nativeGetGenre", "(J)Lorg/videolan/medialibrary/media/Genre;", (void*)getGenre },
@@ -40,6 +40,14 @@ public class Medialibrary {
     public static final int FLAG_MEDIA_ADDED_AUDIO_EMPTY    = 1 << 4;
     public static final int FLAG_MEDIA_ADDED_VIDEO          = 1 << 5;
 
+    /* Must match medialibrary::SortingCriteria */
+    public static final int SORT_DEFAULT                = 0;
+    public static final int SORT_ALPHA                  = 1;
+    public static final int SORT_DURATION               = 2;
+    public static final int SORT_INSERTIONDATE          = 3;
+    public static final int SORT_LASTMODIFICATIONDATE   = 4;
+    public static final int SORT_RELEASEDATE            = 5;
+
     private static final String extDirPath = Environment.getExternalStorageDirectory().getAbsolutePath();
 
     private static final MediaWrapper[] EMPTY_COLLECTION = {};
@@ -130,6 +138,23 @@ public class Medialibrary {
         return mIsInitiated ? nativeGetRecentAudio() : new MediaWrapper[0];
     }
 
+    /**
+     * Paged queries, only the requested window is converted to Java objects.
+     * The collection is queried when offset is 0, the next pages are read from
+     * this snapshot until its end is reached.
+     *
+     * @param sort one of the SORT_* constants
+     * @param offset index of the first item to return
+     * @param limit max number of items to return, -1 for all the remaining ones
+     */
+    public MediaWrapper[] getPagedVideos(int sort, boolean desc, int offset, int limit) {
+        return mIsInitiated ? nativeGetPagedVideos(sort, desc, offset, limit) : new MediaWrapper[0];
+    }
+
+    public MediaWrapper[] getPagedAudio(int sort, boolean desc, int offset, int limit) {
+        return mIsInitiated ? nativeGetPagedAudio(sort, desc, offset, limit) : new MediaWrapper[0];
+    }
+
     public int getVideoCount() {
         return mIsInitiated ? nativeGetVideoCount() : 0;
     }
@@ -142,6 +167,10 @@ public class Medialibrary {
         return mIsInitiated ? nativeGetAlbums() : new Album[0];
     }
 
+    public Album[] getPagedAlbums(int offset, int limit) {
+        return mIsInitiated ? nativeGetPagedAlbums(offset, limit) : new Album[0];
+    }
+
     public Album getAlbum(long albumId) {
         return mIsInitiated ? nativeGetAlbum(albumId) : null;
     }
@@ -150,6 +179,10 @@ public class Medialibrary {
         return mIsInitiated ? nativeGetArtists() : new Artist[0];
     }
 
+    public Artist[] getPagedArtists(int offset, int limit) {
+        return mIsInitiated ? nativeGetPagedArtists(offset, limit) : new Artist[0];
+    }
+
     public Artist getArtist(long artistId) {
         return mIsInitiated ? nativeGetArtist(artistId) : null;
     }
@@ -552,6 +585,8 @@ public class Medialibrary {
     private native MediaWrapper[] nativeGetVideos();
     private native MediaWrapper[] nativeGetAudio();
     private native MediaWrapper[] nativeGetRecentAudio();
+    private native MediaWrapper[] nativeGetPagedVideos(int sort, boolean desc, int offset, int limit);
+    private native MediaWrapper[] nativeGetPagedAudio(int sort, boolean desc, int offset, int limit);
     private native int nativeGetVideoCount();
     private native int nativeGetAudioCount();
     private native  boolean nativeIsWorking();
@@ -559,6 +594,8 @@ public class Medialibrary {
     private native Album nativeGetAlbum(long albumtId);
     private native Artist[] nativeGetArtists();
     private native Artist nativeGetArtist(long artistId);
+    private native Album[] nativeGetPagedAlbums(int offset, int limit);
+    private native Artist[] nativeGetPagedArtists(int offset, int limit);
     private native Genre[] nativeGetGenres();
     private native Genre nativeGetGenre(long genreId);
     private native Playlist[] nativeGetPlaylists();
@@ -0,0 +1,100 @@
+/*****************************************************************************
+ * MediaDatabaseTest.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.media;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Batched playlist writes, on an in-memory database: SQLite is not available to the JVM tests.
+ */
+public class MediaDatabaseTest extends AndroidTestCase {
+
+    private static final String PLAYLIST = "playlist";
+
+    private MediaDatabase mDatabase;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDatabase = MediaDatabase.createPlaylistDatabase();
+        assertTrue(mDatabase.playlistAdd(PLAYLIST));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDatabase.close();
+        super.tearDown();
+    }
+
+    private static List<String> mrls(String prefix, int count) {
+        final List<String> mrls = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i)
+            mrls.add("file:///sdcard/Music/" + prefix + i + ".mp3");
+        return mrls;
+    }
+
+    private void assertPlaylist(List<String> expected) {
+        assertEquals(expected, Arrays.asList(mDatabase.playlistGetItems(PLAYLIST)));
+    }
+
+    public void testLargePlaylist() {
+        final List<String> expected = mrls("track", 10000);
+        mDatabase.playlistInsertItems(PLAYLIST, 0, expected);
+        assertPlaylist(expected);
+
+        // Edits at the head shift all the rows
+        for (int i = 0; i < 100; ++i) {
+            final String mrl = "file:///sdcard/Music/head" + i + ".mp3";
+            mDatabase.playlistInsertItem(PLAYLIST, 0, mrl);
+            expected.add(0, mrl);
+        }
+        assertPlaylist(expected);
+        for (int i = 0; i < 100; ++i) {
+            mDatabase.playlistRemoveItem(PLAYLIST, 0);
+            expected.remove(0);
+        }
+        assertPlaylist(expected);
+    }
+
+    public void testBulkEdits() {
+        final List<String> expected = mrls("track", 10);
+        mDatabase.playlistInsertItems(PLAYLIST, 0, expected);
+        final List<String> inserted = mrls("inserted", 3);
+        mDatabase.playlistInsertItems(PLAYLIST, 4, inserted);
+        expected.addAll(4, inserted);
+        assertPlaylist(expected);
+        mDatabase.playlistRemoveItems(PLAYLIST, 2, 5);
+        expected.subList(2, 7).clear();
+        assertPlaylist(expected);
+    }
+
+    public void testDelete() {
+        mDatabase.playlistInsertItems(PLAYLIST, 0, mrls("track", 5));
+        mDatabase.playlistDelete(PLAYLIST);
+        assertFalse(mDatabase.playlistExists(PLAYLIST));
+        assertTrue(mDatabase.playlistAdd(PLAYLIST));
+        assertEquals(0, mDatabase.playlistGetItems(PLAYLIST).length);
+    }
+}
@@ -126,7 +126,7 @@ public class MediaParsingService extends Service implements DevicesDiscoveryCb {
         if (mMedialibrary.isInitiated())
             mMedialibrary.resumeBackgroundOperations();
         else
-            VLCApplication.runBackground(new Runnable() {
+            VLCApplication.runDatabase(new Runnable() {
                 @Override
                 public void run() {
                     mMedialibrary.setup();
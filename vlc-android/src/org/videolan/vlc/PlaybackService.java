@@ -33,7 +33,6 @@ import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.media.AudioManager;
 import android.media.AudioManager.OnAudioFocusChangeListener;
 import android.net.Uri;
@@ -71,6 +70,7 @@ import org.videolan.libvlc.Media;
 import org.videolan.libvlc.MediaList;
 import org.videolan.libvlc.MediaPlayer;
 import org.videolan.libvlc.util.AndroidUtil;
+import org.videolan.libvlc.util.HWDecoderUtil;
 import org.videolan.medialibrary.Medialibrary;
 import org.videolan.medialibrary.Tools;
 import org.videolan.medialibrary.media.MediaLibraryItem;
@@ -84,12 +84,20 @@ import org.videolan.vlc.gui.preferences.PreferencesFragment;
 import org.videolan.vlc.gui.video.PopupManager;
 import org.videolan.vlc.gui.video.VideoPlayerActivity;
 import org.videolan.vlc.media.BrowserProvider;
+import org.videolan.vlc.media.MetadataArtwork;
 import org.videolan.vlc.media.MediaDatabase;
 import org.videolan.vlc.media.MediaUtils;
 import org.videolan.vlc.media.MediaWrapperList;
+import org.videolan.vlc.media.NextMediaPreparer;
+import org.videolan.vlc.media.QueueStore;
+import org.videolan.vlc.media.ShuffleOrder;
 import org.videolan.vlc.util.AndroidDevices;
+import org.videolan.vlc.util.DecoderPolicy;
 import org.videolan.vlc.util.FileUtils;
+import org.videolan.vlc.util.PlaybackQos;
+import org.videolan.vlc.util.PlaybackTracer;
 import org.videolan.vlc.util.Strings;
+import org.videolan.vlc.util.VLCExecutor;
 import org.videolan.vlc.util.VLCInstance;
 import org.videolan.vlc.util.VLCOptions;
 import org.videolan.vlc.util.VoiceSearchParams;
@@ -97,6 +105,7 @@ import org.videolan.vlc.util.WeakHandler;
 import org.videolan.vlc.widget.VLCAppWidgetProvider;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -107,7 +116,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
-import java.util.Stack;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVout.Callback {
@@ -116,6 +124,10 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
 
     private static final int SHOW_PROGRESS = 0;
     private static final int SHOW_TOAST = 1;
+    private static final int SAMPLE_QOS = 2;
+
+    /* Distance to the seek target under which a TimeChanged event ends the seek span */
+    private static final long SEEK_TOLERANCE = 2000L;
     public static final String ACTION_REMOTE_GENERIC =  Strings.buildPkgString("remote.");
     public static final String ACTION_REMOTE_BACKWARD = ACTION_REMOTE_GENERIC+"Backward";
     public static final String ACTION_REMOTE_PLAY = ACTION_REMOTE_GENERIC+"Play";
@@ -160,6 +172,15 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
     private boolean mPausable = false;
     private boolean mSwitchingToVideo = false;
     private boolean mVideoBackground = false;
+    private NextMediaPreparer mPreparer;
+    private MetadataArtwork mArtwork;
+    private final DecoderPolicy mDecoderPolicy = new DecoderPolicy();
+    private File mDecoderPolicyFile;
+    private DecoderPolicy.Session mDecoderSession = null;
+    /* Source of the current media, see PlaybackTracer */
+    private String mTraceSource = PlaybackTracer.SOURCE_OTHER;
+    private long mSeekTarget = -1L;
+    private float mPrepareThreshold = NextMediaPreparer.DEFAULT_THRESHOLD;
 
     final private ArrayList<Callback> mCallbacks = new ArrayList<>();
     private boolean mDetectHeadset = true;
@@ -168,9 +189,12 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
 
     // Index management
     /**
-     * Stack of previously played indexes, used in shuffle mode
+     * Play order of the queue in shuffle mode, null otherwise
      */
-    private Stack<Integer> mPrevious;
+    private ShuffleOrder mShuffleOrder = null;
+    /* Queue persistence, audio and video queues are saved separately */
+    private QueueStore mAudioQueueStore = null, mVideoQueueStore = null;
+    private boolean mQueueSavedAsAudio = true;
     private int mCurrentIndex; // Set to -1 if no media is currently loaded
     private int mPrevIndex; // Set to -1 if no previous media
     private int mNextIndex; // Set to -1 if no next media
@@ -191,7 +215,7 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
     public static final int REPEAT_ALL = 2;
     private boolean mShuffling = false;
     private int mRepeating = REPEAT_NONE;
-    private Random mRandom = null; // Used in shuffling process
+    private final Random mRandom = new Random(); // Seeds of the shuffle orders
     private long mSavedTime = 0L;
     private boolean mHasAudioFocus = false;
     // RemoteControlClient-related
@@ -231,6 +255,9 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
 
         hideNotification();
         mSettings = PreferenceManager.getDefaultSharedPreferences(this);
+        mPreparer = new NextMediaPreparer(this);
+        mArtwork = new MetadataArtwork(this, mArtworkListener);
+        loadDecoderPolicy();
         mMediaPlayer = newMediaPlayer();
         mMediaPlayer.setEqualizer(VLCOptions.getEqualizer(this));
 
@@ -248,7 +275,6 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
         mCurrentIndex = -1;
         mPrevIndex = -1;
         mNextIndex = -1;
-        mPrevious = new Stack<>();
         mRemoteControlClientReceiverComponent = new ComponentName(BuildConfig.APPLICATION_ID,
                 RemoteControlClientReceiver.class.getName());
 
@@ -336,6 +362,8 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
             mRemoteControlClientReceiver = null;
         }
         mMediaPlayer.release();
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, NextMediaPreparer.getStats() + "\n" + PlaybackTracer.getReport() + "\n" + VLCExecutor.dumpStats());
     }
 
     @Override
@@ -554,6 +582,96 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
        return previousMediaStats;
     }
 
+    /* QoS of the current media, sampled every second while it plays */
+    private PlaybackQos mQos = null;
+    private PlaybackQos mLastQos = null;
+    private boolean mBuffering = false;
+
+    /**
+     * @return QoS of the media being played, null if none
+     */
+    @MainThread
+    public PlaybackQos getQos() {
+        return mQos;
+    }
+
+    /**
+     * @return QoS of the last media which ended or was stopped, null if none
+     */
+    @MainThread
+    public PlaybackQos getLastQos() {
+        return mLastQos;
+    }
+
+    private void sampleQos() {
+        if (mQos == null)
+            return;
+        final Media media = mMediaPlayer.getMedia();
+        if (media == null)
+            return;
+        final Media.Stats stats = media.getStats();
+        media.release();
+        if (stats == null)
+            return;
+        mQos.record(SystemClock.elapsedRealtime(), stats.readBytes, stats.displayedPictures, stats.lostPictures,
+                stats.playedAbuffers, stats.lostAbuffers, stats.demuxCorrupted, stats.demuxDiscontinuity, mBuffering);
+    }
+
+    private void finishQos() {
+        mHandler.removeMessages(SAMPLE_QOS);
+        if (mQos == null)
+            return;
+        sampleQos();
+        finishDecoderSession(false);
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, mQos.getReport());
+        mLastQos = mQos;
+        mQos = null;
+    }
+
+    private void loadDecoderPolicy() {
+        mDecoderPolicyFile = new File(getFilesDir(), "decoders");
+        VLCApplication.runBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mDecoderPolicy.load(mDecoderPolicyFile);
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not read decoder outcomes", e);
+                }
+            }
+        });
+    }
+
+    /* Outcomes are only meaningful if the device can decode with the hardware */
+    private boolean isDecoderPolicyEnabled(int flags) {
+        if (mIsBenchmark || (flags & MediaWrapper.MEDIA_VIDEO) == 0)
+            return false;
+        final HWDecoderUtil.Decoder decoder = HWDecoderUtil.getDecoderFromDevice();
+        return decoder != HWDecoderUtil.Decoder.NONE && decoder != HWDecoderUtil.Decoder.UNKNOWN;
+    }
+
+    private void finishDecoderSession(boolean error) {
+        if (mDecoderSession == null)
+            return;
+        final DecoderPolicy.Session session = mDecoderSession;
+        mDecoderSession = null;
+        final long displayed = mQos != null ? mQos.getDisplayedPictures() : 0L;
+        final long lost = mQos != null ? mQos.getLostPictures() : 0L;
+        if (!mDecoderPolicy.record(session, error, displayed, lost))
+            return;
+        VLCApplication.runBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mDecoderPolicy.save(mDecoderPolicyFile);
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not save decoder outcomes", e);
+                }
+            }
+        });
+    }
+
     private final MediaPlayer.EventListener mMediaPlayerListener = new MediaPlayer.EventListener() {
         KeyguardManager keyguardManager = (KeyguardManager) VLCApplication.getAppContext().getSystemService(Context.KEYGUARD_SERVICE);
 
@@ -561,9 +679,11 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
         public void onEvent(MediaPlayer.Event event) {
             switch (event.type) {
                 case MediaPlayer.Event.Playing:
+                    PlaybackTracer.end(PlaybackTracer.SPAN_PLAYING);
+                    mPreparer.onPlaying();
                     loadMediaMeta();
                     if(mSavedTime != 0L)
-                        seek(mSavedTime);
+                        seek(mSavedTime, getLength(), false);
                     mSavedTime = 0L;
 
                     Log.i(TAG, "MediaPlayer.Event.Playing");
@@ -571,6 +691,8 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
                     publishState();
                     executeUpdateProgress();
                     mHandler.sendEmptyMessage(SHOW_PROGRESS);
+                    mHandler.removeMessages(SAMPLE_QOS);
+                    mHandler.sendEmptyMessage(SAMPLE_QOS);
                     changeAudioFocus(true);
                     if (!mWakeLock.isHeld())
                         mWakeLock.acquire();
@@ -589,6 +711,11 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
                     executeUpdateProgress();
                     showNotification();
                     mHandler.removeMessages(SHOW_PROGRESS);
+                    mHandler.removeMessages(SAMPLE_QOS);
+                    if (mQos != null) {
+                        sampleQos();
+                        mQos.suspend();
+                    }
                     if (mWakeLock.isHeld())
                         mWakeLock.release();
                     break;
@@ -606,6 +733,8 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
                     saveMediaMeta();
                     executeUpdateProgress();
                     previousMediaStats = mMediaPlayer.getMedia().getStats();
+                    finishQos();
+                    mPreparer.onEndReached();
                     determinePrevAndNextIndices(true);
                     next();
                     if (mWakeLock.isHeld())
@@ -613,6 +742,8 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
                     changeAudioFocus(false);
                     break;
                 case MediaPlayer.Event.EncounteredError:
+                    finishDecoderSession(true);
+                    cancelTraces();
                     showToast(getString(
                             R.string.invalid_location,
                             mMediaList.getMRL(mCurrentIndex)), Toast.LENGTH_SHORT);
@@ -623,11 +754,28 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
                         mWakeLock.release();
                     break;
                 case MediaPlayer.Event.TimeChanged:
+                    if (mSeekTarget != -1L && Math.abs(event.getTimeChanged() - mSeekTarget) < SEEK_TOLERANCE) {
+                        PlaybackTracer.end(PlaybackTracer.SPAN_SEEK);
+                        mSeekTarget = -1L;
+                    }
+                    break;
+                case MediaPlayer.Event.Buffering:
+                    mBuffering = event.getBuffering() < 100f;
                     break;
                 case MediaPlayer.Event.PositionChanged:
                     updateWidgetPosition(event.getPositionChanged());
+                    prepareNextMedia(event.getPositionChanged());
                     break;
                 case MediaPlayer.Event.Vout:
+                    if (event.getVoutCount() > 0)
+                        PlaybackTracer.end(PlaybackTracer.SPAN_VOUT);
+                    if (mDecoderSession != null && event.getVoutCount() > 0) {
+                        final Media.VideoTrack track = mMediaPlayer.getCurrentVideoTrack();
+                        if (track != null)
+                            mDecoderSession.onVideoStarted(track.codec, track.profile, track.height, SystemClock.elapsedRealtime());
+                        else
+                            mDecoderSession.onVideoStarted(null, -1, 0, SystemClock.elapsedRealtime());
+                    }
                     break;
                 case MediaPlayer.Event.ESAdded:
                     if (event.getEsChangedType() == Media.Track.Type.Video && (mVideoBackground || !switchToVideo())) {
@@ -688,55 +836,68 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
     private final MediaWrapperList.EventListener mListEventListener = new MediaWrapperList.EventListener() {
 
         @Override
-        public void onItemAdded(int index, String mrl) {
-            Log.i(TAG, "CustomMediaListItemAdded");
-            if(mCurrentIndex >= index && !mExpanding.get())
-                mCurrentIndex++;
+        public void onItemsChanged(List<MediaWrapperList.Change> changes) {
+            Log.i(TAG, "CustomMediaListChanged: " + changes.size() + " changes");
+            saveQueueChanges(changes);
+            final boolean expanding = mExpanding.get();
+            boolean currentRemoved = false;
+            for (int i = 0; i < changes.size(); ++i) {
+                final MediaWrapperList.Change change = changes.get(i);
+                final int index = change.index;
+                switch (change.type) {
+                    case MediaWrapperList.Change.ADDED:
+                        // Consecutive additions, e.g. from addAll(), are shuffled in at once
+                        int count = 1;
+                        while (i + count < changes.size() && changes.get(i + count).type == MediaWrapperList.Change.ADDED
+                                && changes.get(i + count).index == index + count)
+                            ++count;
+                        i += count - 1;
+                        // New items are played after the current one
+                        if (mShuffleOrder != null)
+                            mShuffleOrder.insert(index, count, mShuffleOrder.getPosition(mCurrentIndex) + 1);
+                        if (mCurrentIndex >= index && !expanding)
+                            mCurrentIndex += count;
+                        break;
+                    case MediaWrapperList.Change.REMOVED:
+                        if (mShuffleOrder != null && index < mShuffleOrder.size())
+                            mShuffleOrder.remove(index);
+                        if (expanding)
+                            break;
+                        if (mCurrentIndex == index) {
+                            // The current item has been deleted
+                            currentRemoved = true;
+                            mCurrentIndex--;
+                        } else if (mCurrentIndex > index)
+                            mCurrentIndex--;
+                        break;
+                    case MediaWrapperList.Change.MOVED:
+                        final int indexAfter = change.indexAfter;
+                        if (mShuffleOrder != null)
+                            mShuffleOrder.move(index, indexAfter);
+                        if (mCurrentIndex == index) {
+                            mCurrentIndex = indexAfter;
+                            if (indexAfter > index)
+                                mCurrentIndex--;
+                        } else if (index > mCurrentIndex
+                                && indexAfter <= mCurrentIndex)
+                            mCurrentIndex++;
+                        else if (index < mCurrentIndex
+                                && indexAfter > mCurrentIndex)
+                            mCurrentIndex--;
+                        break;
+                }
+            }
 
             determinePrevAndNextIndices();
-            executeUpdate();
-        }
-
-        @Override
-        public void onItemRemoved(int index, String mrl) {
-            Log.i(TAG, "CustomMediaListItemDeleted");
-            if (mCurrentIndex == index && !mExpanding.get()) {
-                // The current item has been deleted
-                mCurrentIndex--;
-                determinePrevAndNextIndices();
+            if (currentRemoved) {
                 if (mNextIndex != -1)
                     next();
                 else if (mCurrentIndex != -1) {
                     playIndex(mCurrentIndex, 0);
                 } else
                     stop();
+                determinePrevAndNextIndices();
             }
-
-            if(mCurrentIndex > index && !mExpanding.get())
-                mCurrentIndex--;
-            determinePrevAndNextIndices();
-            executeUpdate();
-        }
-
-        @Override
-        public void onItemMoved(int indexBefore, int indexAfter, String mrl) {
-            Log.i(TAG, "CustomMediaListItemMoved");
-            if (mCurrentIndex == indexBefore) {
-                mCurrentIndex = indexAfter;
-                if (indexAfter > indexBefore)
-                    mCurrentIndex--;
-            } else if (indexBefore > mCurrentIndex
-                    && indexAfter <= mCurrentIndex)
-                mCurrentIndex++;
-            else if (indexBefore < mCurrentIndex
-                    && indexAfter > mCurrentIndex)
-                mCurrentIndex--;
-
-            // If we are in random mode, we completely reset the stored previous track
-            // as their indices changed.
-            mPrevious.clear();
-
-            determinePrevAndNextIndices();
             executeUpdate();
         }
     };
@@ -830,6 +991,10 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
                         }
                     }
                     break;
+                case SAMPLE_QOS:
+                    service.sampleQos();
+                    sendEmptyMessageDelayed(SAMPLE_QOS, PlaybackQos.SAMPLE_INTERVAL);
+                    break;
                 case SHOW_TOAST:
                     final Bundle bundle = msg.getData();
                     final String text = bundle.getString("text");
@@ -847,16 +1012,15 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
             return;
         }
         try {
-            boolean coverOnLockscreen = mSettings.getBoolean("lockscreen_cover", true);
             MediaMetadataCompat metaData = mMediaSession.getController().getMetadata();
             String title = metaData.getString(MediaMetadataCompat.METADATA_KEY_TITLE);
             String artist = metaData.getString(MediaMetadataCompat.METADATA_KEY_ALBUM_ARTIST);
             String album = metaData.getString(MediaMetadataCompat.METADATA_KEY_ALBUM);
-            Bitmap cover = coverOnLockscreen ?
-                    metaData.getBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART) :
-                    AudioUtil.getCover(this, getCurrentMedia(), 512);
+            // The notification is updated again once the artwork is loaded
+            final MetadataArtwork.Artwork artwork = mArtwork.get(getCurrentMedia());
+            Bitmap cover = artwork != null ? artwork.notification : null;
             if (cover == null)
-                cover = BitmapFactory.decodeResource(VLCApplication.getAppContext().getResources(), R.drawable.ic_no_media);
+                cover = mArtwork.getPlaceholder();
             Notification notification;
 
             //Watch notification dismissed
@@ -965,6 +1129,8 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
         if (mMediaPlayer == null)
             return;
         savePosition();
+        finishQos();
+        cancelTraces();
         final Media media = mMediaPlayer.getMedia();
         if (media != null) {
             saveMediaMeta();
@@ -975,9 +1141,10 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
             media.release();
             publishState();
         }
+        mPreparer.onStopped();
         mMediaList.removeEventListener(mListEventListener);
         mCurrentIndex = -1;
-        mPrevious.clear();
+        mShuffleOrder = null;
         mHandler.removeMessages(SHOW_PROGRESS);
         hideNotification();
         broadcastMetadata();
@@ -986,6 +1153,21 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
         changeAudioFocus(false);
     }
 
+    /**
+     * Prepare the next media once the current one passed the threshold, so the transition
+     * on {@link MediaPlayer.Event#EndReached} doesn't wait for its opening
+     */
+    private void prepareNextMedia(float position) {
+        if (position < mPrepareThreshold || mNextIndex == -1 || mIsBenchmark)
+            return;
+        final MediaWrapper next = mMediaList.getMedia(mNextIndex);
+        if (next != null && !mPreparer.isPrepared(next)) {
+            mPreparer.prepare(next);
+            // Load the cover too, so the metadata update doesn't wait for it
+            mArtwork.get(next);
+        }
+    }
+
     private void determinePrevAndNextIndices() {
         determinePrevAndNextIndices(false);
     }
@@ -1011,36 +1193,14 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
             } else {
 
                 if(mShuffling) {
-                    if(!mPrevious.isEmpty()){
-                        mPrevIndex = mPrevious.peek();
-                        while (!isValidIndex(mPrevIndex)) {
-                            mPrevious.remove(mPrevious.size() - 1);
-                            if (mPrevious.isEmpty()) {
-                                mPrevIndex = -1;
-                                break;
-                            }
-                            mPrevIndex = mPrevious.peek();
-                        }
-                    }
+                    if (mShuffleOrder == null || mShuffleOrder.size() != size || mShuffleOrder.getPosition(mCurrentIndex) == -1)
+                        mShuffleOrder = new ShuffleOrder(size, mRandom.nextLong(), mCurrentIndex);
+                    mPrevIndex = mShuffleOrder.getPrevious(mCurrentIndex);
+                    mNextIndex = mShuffleOrder.getNext(mCurrentIndex);
                     // If we've played all songs already in shuffle, then either
                     // reshuffle or stop (depending on RepeatType).
-                    if(mPrevious.size() + 1 == size) {
-                        if(mRepeating == REPEAT_NONE) {
-                            mNextIndex = -1;
-                            return;
-                        } else {
-                            mPrevious.clear();
-                            mRandom = new Random(System.currentTimeMillis());
-                        }
-                    }
-                    if(mRandom == null) mRandom = new Random(System.currentTimeMillis());
-                    // Find a new index not in mPrevious.
-                    do
-                    {
-                        mNextIndex = mRandom.nextInt(size);
-                    }
-                    while(mNextIndex == mCurrentIndex || mPrevious.contains(mNextIndex));
-
+                    if (mNextIndex == -1 && mRepeating != REPEAT_NONE)
+                        mNextIndex = mShuffleOrder.getFirst();
                 } else {
                     // normal playback
                     if(mCurrentIndex > 0)
@@ -1254,6 +1414,19 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
         }
     }
 
+    private final MetadataArtwork.Listener mArtworkListener = new MetadataArtwork.Listener() {
+        @Override
+        public void onArtworkLoaded(MediaWrapper media) {
+            // Loaded for another track of the album, or for another instance of the current media
+            if (!MetadataArtwork.isSameArtwork(media, getCurrentMedia()))
+                return;
+            updateMetadata();
+            updateWidgetCover();
+            if (hasMedia())
+                showNotification();
+        }
+    };
+
     protected void updateMetadata() {
         MediaWrapper media = getCurrentMedia();
         if (media == null)
@@ -1274,9 +1447,9 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
                 .putString(MediaMetadataCompat.METADATA_KEY_ALBUM, MediaUtils.getMediaAlbum(this, media))
                 .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, media.getLength());
         if (coverOnLockscreen) {
-            Bitmap cover = AudioUtil.getCover(this, media, 512);
-            if (cover != null && cover.getConfig() != null) //In case of format not supported
-                bob.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, cover.copy(cover.getConfig(), false));
+            final MetadataArtwork.Artwork artwork = mArtwork.get(media);
+            if (artwork != null && artwork.session != null)
+                bob.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, artwork.session);
         }
         bob.putLong("shuffle", 1L);
         bob.putLong("repeat", getRepeatType());
@@ -1339,8 +1512,11 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
     public void next() {
         int size = mMediaList.size();
 
-        mPrevious.push(mCurrentIndex);
+        final boolean wrapped = mShuffling && mShuffleOrder != null && mCurrentIndex == mShuffleOrder.getLast();
         mCurrentIndex = mNextIndex;
+        // A new round of shuffle gets a new order, starting with the index already announced
+        if (wrapped && mCurrentIndex >= 0 && mCurrentIndex < size)
+            mShuffleOrder.shuffle(mRandom.nextLong(), mCurrentIndex);
         if (size == 0 || mCurrentIndex < 0 || mCurrentIndex >= size) {
             if (mCurrentIndex < 0)
                 saveCurrentMedia();
@@ -1362,8 +1538,6 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
                 (force || !mMediaPlayer.isSeekable() || mMediaPlayer.getTime() < 2000l)) {
             int size = mMediaList.size();
             mCurrentIndex = mPrevIndex;
-            if (mPrevious.size() > 0)
-                mPrevious.pop();
             if (size == 0 || mPrevIndex < 0 || mCurrentIndex >= size) {
                 Log.w(TAG, "Warning: invalid previous index, aborted !");
                 stop();
@@ -1372,15 +1546,14 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
             playIndex(mCurrentIndex, 0);
             saveCurrentMedia();
         } else
-            setPosition(0f);
+            setPosition(0f, false);
         mHandler.sendEmptyMessage(SHOW_PROGRESS);
     }
 
     @MainThread
     public void shuffle() {
-        if (mShuffling)
-            mPrevious.clear();
         mShuffling = !mShuffling;
+        mShuffleOrder = mShuffling ? new ShuffleOrder(mMediaList.size(), mRandom.nextLong(), mCurrentIndex) : null;
         savePosition();
         determinePrevAndNextIndices();
         publishState();
@@ -1421,8 +1594,8 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
     private void updateWidgetCover() {
         Intent i = new Intent(VLCAppWidgetProvider.ACTION_WIDGET_UPDATE_COVER);
 
-        Bitmap cover = hasCurrentMedia() ? AudioUtil.getCover(this, getCurrentMedia(), 64) : null;
-        i.putExtra("cover", cover);
+        final MetadataArtwork.Artwork artwork = hasCurrentMedia() ? mArtwork.get(getCurrentMedia()) : null;
+        i.putExtra("cover", artwork != null ? artwork.widget : null);
 
         sendBroadcast(i);
     }
@@ -1465,28 +1638,42 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
         String currentMedia = mSettings.getString(audio ? "current_song" : "current_media", "");
         if (currentMedia.equals(""))
             return;
-        String[] locations = mSettings.getString(audio ? "audio_list" : "media_list", "").split(" ");
-        if (locations.length == 0)
+        final QueueStore store = getQueueStore(audio);
+        QueueStore.State state = store.load();
+        final boolean legacy = state == null;
+        if (legacy)
+            state = readLegacyQueue(audio);
+        if (state == null || state.items.isEmpty())
             return;
 
-        List<MediaWrapper> playList = new ArrayList<>(locations.length);
-        for (int i = 0 ; i < locations.length ; ++i) {
-            String mrl = Uri.decode(locations[i]);
-            MediaWrapper mw = mMedialibrary.getMedia(mrl);
-            if (mw == null)
-                mw = new MediaWrapper(Uri.parse(mrl));
+        // Only the current media is resolved now, the others are resolved in background
+        final int position = state.position >= 0 && state.position < state.items.size() ? state.position : 0;
+        final List<MediaWrapper> playList = new ArrayList<>(state.items.size());
+        for (int i = 0 ; i < state.items.size() ; ++i) {
+            final QueueStore.Item item = state.items.get(i);
+            MediaWrapper mw = i == position ? resolveMedia(item) : null;
+            if (mw == null) {
+                mw = new MediaWrapper(Uri.parse(item.mrl));
+                if (item.time > 0)
+                    mw.setTime(item.time);
+            }
             playList.add(mw);
         }
 
         mShuffling = mSettings.getBoolean(audio ? "audio_shuffling" : "media_shuffling", false);
         mRepeating = mSettings.getInt(audio ? "audio_repeating" : "media_repeating", REPEAT_NONE);
-        int position = mSettings.getInt(audio ? "position_in_audio_list" : "position_in_media_list", 0);
-        long time = mSettings.getLong(audio ? "position_in_song" : "position_in_media", -1);
+        long time = state.time;
         mSavedTime = time;
-        // load playlist
-        load(playList, position);
+        // load playlist, the store already holds it unless it comes from the legacy preferences
+        mQueueSavedAsAudio = audio;
+        load(playList, position, legacy);
+        if (mShuffling && state.shuffleOrder != null && state.shuffleOrder.size() == mMediaList.size()) {
+            mShuffleOrder = state.shuffleOrder;
+            determinePrevAndNextIndices();
+        }
+        resolveQueue(state.items, position);
         if (time > 0)
-            seek(time);
+            seek(time, getLength(), false);
         if (!audio) {
             boolean paused = mSettings.getBoolean(PreferencesActivity.VIDEO_PAUSED, !isPlaying());
             float rate = mSettings.getFloat(PreferencesActivity.VIDEO_SPEED, getRate());
@@ -1495,57 +1682,159 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
             if (rate != 1.0f)
                 setRate(rate, false);
         }
-        SharedPreferences.Editor editor = mSettings.edit();
-        editor.putInt(audio ? "position_in_audio_list" : "position_in_media_list", 0);
-        editor.putLong(audio ? "position_in_song" : "position_in_media", 0);
-        editor.apply();
+        store.setState(mCurrentIndex, 0L, mShuffling ? mShuffleOrder : null);
+        if (legacy)
+            mSettings.edit()
+                    .remove(audio ? "audio_list" : "media_list")
+                    .remove(audio ? "position_in_audio_list" : "position_in_media_list")
+                    .remove(audio ? "position_in_song" : "position_in_media")
+                    .apply();
     }
 
-    private synchronized void saveCurrentMedia() {
-        boolean audio = true;
-        for (int i = 0; i < mMediaList.size(); i++) {
-            if (mMediaList.getMedia(i).getType() == MediaWrapper.TYPE_VIDEO)
-                audio = false;
+    @Nullable
+    private MediaWrapper resolveMedia(QueueStore.Item item) {
+        final MediaWrapper media = item.id > 0 ? mMedialibrary.getMedia(item.id) : null;
+        return media != null && media.getLocation().equals(item.mrl) ? media : mMedialibrary.getMedia(item.mrl);
+    }
+
+    /**
+     * Replace the restored media by their medialibrary version, for their metadata
+     */
+    private void resolveQueue(final List<QueueStore.Item> items, final int skipped) {
+        VLCApplication.runDatabase(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<MediaWrapper> resolved = new ArrayList<>(items.size());
+                boolean found = false;
+                for (int i = 0; i < items.size(); ++i) {
+                    final MediaWrapper media = i != skipped ? resolveMedia(items.get(i)) : null;
+                    found |= media != null;
+                    resolved.add(media);
+                }
+                if (!found)
+                    return;
+                VLCApplication.runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mMediaList.replace(resolved);
+                        updateMediaQueue();
+                        executeUpdate();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Queue saved by previous versions, as a space separated list of encoded MRLs
+     */
+    @Nullable
+    private QueueStore.State readLegacyQueue(boolean audio) {
+        final String list = mSettings.getString(audio ? "audio_list" : "media_list", "");
+        if (TextUtils.isEmpty(list))
+            return null;
+        final String[] locations = list.split(" ");
+        final List<QueueStore.Item> items = new ArrayList<>(locations.length);
+        for (String location : locations)
+            items.add(new QueueStore.Item(Uri.decode(location), 0L, 0L));
+        return new QueueStore.State(items,
+                mSettings.getInt(audio ? "position_in_audio_list" : "position_in_media_list", 0),
+                mSettings.getLong(audio ? "position_in_song" : "position_in_media", -1), null);
+    }
+
+    private QueueStore getQueueStore(boolean audio) {
+        if (audio) {
+            if (mAudioQueueStore == null)
+                mAudioQueueStore = new QueueStore(new File(getFilesDir(), "audio_queue.bin"), VLCExecutor.IO);
+            return mAudioQueueStore;
         }
+        if (mVideoQueueStore == null)
+            mVideoQueueStore = new QueueStore(new File(getFilesDir(), "media_queue.bin"), VLCExecutor.IO);
+        return mVideoQueueStore;
+    }
+
+    private boolean isAudioQueue() {
+        for (MediaWrapper media : mMediaList.getAll()) {
+            if (media.getType() == MediaWrapper.TYPE_VIDEO)
+                return false;
+        }
+        return true;
+    }
+
+    private synchronized void saveCurrentMedia() {
         SharedPreferences.Editor editor = mSettings.edit();
-        editor.putString(audio ? "current_song" : "current_media", mMediaList.getMRL(Math.max(mCurrentIndex, 0)));
+        editor.putString(isAudioQueue() ? "current_song" : "current_media", mMediaList.getMRL(Math.max(mCurrentIndex, 0)));
         editor.apply();
     }
 
+    /**
+     * Write the whole queue to its store
+     */
+    private synchronized void resetQueueStore() {
+        mQueueSavedAsAudio = isAudioQueue();
+        final List<MediaWrapper> medias = mMediaList.getAll();
+        final List<QueueStore.Item> items = new ArrayList<>(medias.size());
+        for (MediaWrapper media : medias)
+            items.add(new QueueStore.Item(media.getLocation(), media.getId(), 0L));
+        getQueueStore(mQueueSavedAsAudio).reset(items);
+        saveMediaList();
+    }
+
+    /**
+     * Record queue modifications in its store
+     */
+    private synchronized void saveQueueChanges(List<MediaWrapperList.Change> changes) {
+        if (isAudioQueue() != mQueueSavedAsAudio) {
+            // Queue switched between the audio and video stores
+            resetQueueStore();
+            return;
+        }
+        final QueueStore store = getQueueStore(mQueueSavedAsAudio);
+        for (MediaWrapperList.Change change : changes) {
+            final boolean recorded;
+            switch (change.type) {
+                case MediaWrapperList.Change.ADDED:
+                    recorded = store.insert(change.index, change.mrl, change.media.getId());
+                    break;
+                case MediaWrapperList.Change.REMOVED:
+                    recorded = store.remove(change.index);
+                    break;
+                default:
+                    recorded = store.move(change.index, change.indexAfter);
+                    break;
+            }
+            if (!recorded) {
+                resetQueueStore();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Save current index and shuffle order, the queue itself is saved on modification
+     */
     private synchronized void saveMediaList() {
         if (getCurrentMedia() == null)
             return;
-        StringBuilder locations = new StringBuilder();
-        boolean audio = true;
-        for (int i = 0; i < mMediaList.size(); i++) {
-            if (mMediaList.getMedia(i).getType() == MediaWrapper.TYPE_VIDEO)
-                audio = false;
-            locations.append(" ").append(Uri.encode(mMediaList.getMRL(i)));
-        }
-        //We save a concatenated String because putStringSet is APIv11.
-        SharedPreferences.Editor editor = mSettings.edit();
-        editor.putString(audio ? "audio_list" : "media_list", locations.toString().trim());
-        editor.apply();
+        getQueueStore(mQueueSavedAsAudio).setState(mCurrentIndex, mMediaPlayer.getTime(), mShuffling ? mShuffleOrder : null);
     }
 
     private synchronized void savePosition(){
         if (getCurrentMedia() == null)
             return;
         SharedPreferences.Editor editor = mSettings.edit();
-        boolean audio = true;
-        for (int i = 0; i < mMediaList.size(); i++) {
-            if (mMediaList.getMedia(i).getType() == MediaWrapper.TYPE_VIDEO)
-                audio = false;
-        }
+        boolean audio = mQueueSavedAsAudio;
         editor.putBoolean(audio ? "audio_shuffling" : "media_shuffling", mShuffling);
         editor.putInt(audio ? "audio_repeating" : "media_repeating", mRepeating);
-        editor.putInt(audio ? "position_in_audio_list" : "position_in_media_list", mCurrentIndex);
-        editor.putLong(audio ? "position_in_song" : "position_in_media", mMediaPlayer.getTime());
         if(!audio) {
             editor.putBoolean(PreferencesActivity.VIDEO_PAUSED, !isPlaying());
             editor.putFloat(PreferencesActivity.VIDEO_SPEED, getRate());
         }
         editor.apply();
+        final QueueStore store = getQueueStore(audio);
+        final long time = mMediaPlayer.getTime();
+        store.setResumeTime(mCurrentIndex, time);
+        store.setState(mCurrentIndex, time, mShuffling ? mShuffleOrder : null);
     }
 
     private boolean validateLocation(String location)
@@ -1784,6 +2073,14 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
 
     @MainThread
     public void load(List<MediaWrapper> mediaList, int position) {
+        load(mediaList, position, true);
+    }
+
+    /**
+     * @param saveQueue false if the queue store already holds this list
+     */
+    @MainThread
+    private void load(List<MediaWrapper> mediaList, int position, boolean saveQueue) {
         Log.v(TAG, "Loading position " + ((Integer) position).toString() + " in " + mediaList.toString());
 
         if (hasCurrentMedia())
@@ -1791,13 +2088,7 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
 
         mMediaList.removeEventListener(mListEventListener);
         mMediaList.clear();
-        MediaWrapperList currentMediaList = mMediaList;
-
-        mPrevious.clear();
-
-        for (int i = 0; i < mediaList.size(); i++) {
-            currentMediaList.add(mediaList.get(i));
-        }
+        mMediaList.addAll(mediaList);
 
         if (mMediaList.size() == 0) {
             Log.w(TAG, "Warning: empty media list, nothing to play !");
@@ -1809,12 +2100,16 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
             Log.w(TAG, "Warning: positon " + position + " out of bounds");
             mCurrentIndex = 0;
         }
+        mShuffleOrder = mShuffling ? new ShuffleOrder(mMediaList.size(), mRandom.nextLong(), mCurrentIndex) : null;
 
         // Add handler after loading the list
         mMediaList.addEventListener(mListEventListener);
 
         playIndex(mCurrentIndex, 0);
-        saveMediaList();
+        if (saveQueue)
+            resetQueueStore();
+        else
+            saveMediaList();
         onMediaChanged();
         updateMediaQueue();
     }
@@ -1876,51 +2171,95 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
         if (mVideoBackground)
             mw.addFlags(MediaWrapper.MEDIA_FORCE_AUDIO);
 
+        cancelTraces();
+        mTraceSource = PlaybackTracer.getSource(mw.getUri().getScheme());
+        PlaybackTracer.begin(PlaybackTracer.SPAN_PLAYING, mTraceSource);
+        if (((flags | mw.getFlags()) & (MediaWrapper.MEDIA_VIDEO | MediaWrapper.MEDIA_FORCE_AUDIO)) == MediaWrapper.MEDIA_VIDEO)
+            PlaybackTracer.begin(PlaybackTracer.SPAN_VOUT, mTraceSource);
+
         /* Pausable and seekable are true by default */
         mParsed = false;
         mSwitchingToVideo = false;
         mPausable = mSeekable = true;
-        final Media media = new Media(VLCInstance.get(), FileUtils.getUri(mw.getUri()));
-        VLCOptions.setMediaOptions(media, this, flags | mw.getFlags());
-
-        /* keeping only video during benchmark */
-        if (mIsBenchmark) {
-            media.addOption(":no-audio");
-            media.addOption(":no-spu");
-            if (mIsHardware) {
-                media.addOption(":codec=mediacodec_ndk,mediacodec_jni,none");
-                mIsHardware = false;
+        mPrepareThreshold = mSettings.getFloat(NextMediaPreparer.KEY_THRESHOLD, NextMediaPreparer.DEFAULT_THRESHOLD);
+        final NextMediaPreparer.Prepared prepared = mIsBenchmark ? null : mPreparer.take(mw, flags | mw.getFlags());
+        final Media media;
+        DecoderPolicy.Session decoderSession = null;
+        if (prepared != null) {
+            // Options and slaves were set when preparing
+            media = prepared.media;
+        } else {
+            media = new Media(VLCInstance.get(), FileUtils.getUri(mw.getUri()));
+            final int mediaFlags = flags | mw.getFlags();
+            int hardwareAcceleration = VLCOptions.getHardwareAcceleration(this, mediaFlags);
+            if (isDecoderPolicyEnabled(mediaFlags)) {
+                if (hardwareAcceleration == VLCOptions.HW_ACCELERATION_AUTOMATIC) {
+                    final int mode = mDecoderPolicy.select(mw.getLocation(), mw.getHeight());
+                    if (mode != DecoderPolicy.NO_DECISION)
+                        hardwareAcceleration = mode;
+                }
+                // Automatic decodes and renders with the hardware on known devices
+                decoderSession = mDecoderPolicy.newSession(mw.getLocation(), mw.getHeight(),
+                        hardwareAcceleration == VLCOptions.HW_ACCELERATION_AUTOMATIC ? DecoderPolicy.FULL : hardwareAcceleration,
+                        SystemClock.elapsedRealtime());
+            }
+            VLCOptions.setMediaOptions(media, mediaFlags, hardwareAcceleration);
+
+            /* keeping only video during benchmark */
+            if (mIsBenchmark) {
+                media.addOption(":no-audio");
+                media.addOption(":no-spu");
+                if (mIsHardware) {
+                    media.addOption(":codec=mediacodec_ndk,mediacodec_jni,none");
+                    mIsHardware = false;
+                }
             }
+
+            if (mw.getSlaves() != null)
+                for (Media.Slave slave : mw.getSlaves())
+                    media.addSlave(slave);
         }
 
         if (mw.getSlaves() != null) {
-            for (Media.Slave slave : mw.getSlaves())
-                media.addSlave(slave);
-            VLCApplication.runBackground(new Runnable() {
+            VLCApplication.runDatabase(new Runnable() {
                 @Override
                 public void run() {
                     MediaDatabase.getInstance().saveSlaves(mw);
                 }
             });
         }
-        VLCApplication.runBackground(new Runnable() {
-            @Override
-            public void run() {
-                final ArrayList<Media.Slave> list = MediaDatabase.getInstance().getSlaves(mw.getLocation());
-                for (Media.Slave slave : list)
-                    mMediaPlayer.addSlave(slave.type, Uri.parse(slave.uri), false);
-            }
-        });
 
+        finishQos();
+        mDecoderSession = decoderSession;
+        mQos = new PlaybackQos(mw.getLocation(), SystemClock.elapsedRealtime());
+        mBuffering = false;
         media.setEventListener(mMediaListener);
         mMediaPlayer.setMedia(media);
+        if (prepared != null && media.isParsed()) {
+            // ParsedChanged was sent before we listened to the media
+            updateCurrentMeta(-1);
+            mParsed = true;
+        }
         media.release();
 
+        if (prepared != null && prepared.slaves != null) {
+            for (Media.Slave slave : prepared.slaves)
+                mMediaPlayer.addSlave(slave.type, Uri.parse(slave.uri), false);
+        } else
+            VLCApplication.runDatabase(new Runnable() {
+                @Override
+                public void run() {
+                    final ArrayList<Media.Slave> list = MediaDatabase.getInstance().getSlaves(mw.getLocation());
+                    for (Media.Slave slave : list)
+                        mMediaPlayer.addSlave(slave.type, Uri.parse(slave.uri), false);
+                }
+            });
+
         if (mw .getType() != MediaWrapper.TYPE_VIDEO || isVideoPlaying || mw.hasFlag(MediaWrapper.MEDIA_FORCE_AUDIO)) {
             mMediaPlayer.setEqualizer(VLCOptions.getEqualizer(this));
             mMediaPlayer.setVideoTitleDisplay(MediaPlayer.Position.Disable, 0);
             changeAudioFocus(true);
-            mMediaPlayer.setEventListener(mMediaPlayerListener);
+            mMediaPlayer.setEventListener(mMediaPlayerListener, true);
             if (!isVideoPlaying && mMediaPlayer.getRate() == 1.0F && mSettings.getBoolean(PreferencesActivity.KEY_AUDIO_PLAYBACK_SPEED_PERSIST, true))
                 setRate(mSettings.getFloat(PreferencesActivity.KEY_AUDIO_PLAYBACK_RATE, 1.0F), true);
             mMediaPlayer.play();
@@ -1928,7 +2267,7 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
             determinePrevAndNextIndices();
             mMediaSession.setSessionActivity(getSessionPendingIntent());
             if (mSettings.getBoolean(PreferencesFragment.PLAYBACK_HISTORY, true))
-                VLCApplication.runBackground(new Runnable() {
+                VLCApplication.runDatabase(new Runnable() {
                     @Override
                     public void run() {
                         long id = mw.getId();
@@ -2035,10 +2374,7 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
             return;
         }
 
-        for (int i = 0; i < mediaList.size(); i++) {
-            MediaWrapper mediaWrapper = mediaList.get(i);
-            mMediaList.add(mediaWrapper);
-        }
+        mMediaList.addAll(mediaList);
         onMediaListChanged();
         updateMediaQueue();
     }
@@ -2087,19 +2423,15 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
 
     @MainThread
     public ArrayList<MediaWrapper> getMedias() {
-        final ArrayList<MediaWrapper> ml = new ArrayList<>();
-        for (int i = 0; i < mMediaList.size(); i++) {
-            ml.add(mMediaList.getMedia(i));
-        }
-        return ml;
+        return new ArrayList<>(mMediaList.getAll());
     }
 
     @MainThread
     public List<String> getMediaLocations() {
-        ArrayList<String> medias = new ArrayList<>();
-        for (int i = 0; i < mMediaList.size(); i++) {
-            medias.add(mMediaList.getMRL(i));
-        }
+        final List<MediaWrapper> snapshot = mMediaList.getAll();
+        final ArrayList<String> medias = new ArrayList<>(snapshot.size());
+        for (MediaWrapper media : snapshot)
+            medias.add(media.getLocation());
         return medias;
     }
 
@@ -2118,10 +2450,32 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
         return PlaybackService.this.getCurrentMedia();
     }
 
+    /**
+     * Seek requested by the user, traced until the playback reaches the new time
+     */
     @MainThread
     public void setTime(long time) {
-        if (mSeekable)
+        setTime(time, true);
+    }
+
+    private void setTime(long time, boolean fromUser) {
+        if (mSeekable) {
+            if (fromUser)
+                traceSeek(time);
             mMediaPlayer.setTime(time);
+        }
+    }
+
+    private void traceSeek(long target) {
+        mSeekTarget = target;
+        PlaybackTracer.begin(PlaybackTracer.SPAN_SEEK, mTraceSource);
+    }
+
+    private void cancelTraces() {
+        PlaybackTracer.cancel(PlaybackTracer.SPAN_PLAYING);
+        PlaybackTracer.cancel(PlaybackTracer.SPAN_VOUT);
+        PlaybackTracer.cancel(PlaybackTracer.SPAN_SEEK);
+        mSeekTarget = -1L;
     }
 
     @MainThread
@@ -2203,10 +2557,19 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
 
     @MainThread
     public void seek(long position, double length) {
+        seek(position, length, true);
+    }
+
+    /**
+     * @param fromUser false for seeks the app does on its own, e.g. to resume or to loop,
+     *                 which are not traced
+     */
+    @MainThread
+    public void seek(long position, double length, boolean fromUser) {
         if (length > 0.0D)
-            setPosition((float) (position/length));
+            setPosition((float) (position/length), fromUser);
         else
-            setTime(position);
+            setTime(position, fromUser);
     }
 
     @MainThread
@@ -2221,8 +2584,16 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
 
     @MainThread
     public void setPosition(float pos) {
-        if (mSeekable)
+        setPosition(pos, true);
+    }
+
+    private void setPosition(float pos, boolean fromUser) {
+        if (mSeekable) {
+            final long length = getLength();
+            if (fromUser && length > 0L)
+                traceSeek((long) (pos * length));
             mMediaPlayer.setPosition(pos);
+        }
     }
 
     @MainThread
@@ -2355,6 +2726,7 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
         int ret;
 
         if (ml.getCount() > 0) {
+            mMediaList.startBatch();
             mMediaList.remove(mCurrentIndex);
             for (int i = ml.getCount() - 1; i >= 0; --i) {
                 final Media child = ml.getMediaAt(i);
@@ -2362,6 +2734,7 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
                 mMediaList.insert(mCurrentIndex, new MediaWrapper(child));
                 child.release();
             }
+            mMediaList.endBatch();
             if (updateHistory && ml.getCount() == 1)
                 mMedialibrary.addToHistory(mrl, mMediaList.getMedia(mCurrentIndex).getTitle());
             ret = 0;
@@ -2464,7 +2837,7 @@ public class PlaybackService extends MediaBrowserServiceCompat implements IVLCVo
     @Override
     public void onLoadChildren(@NonNull final String parentId, @NonNull final Result<List<MediaBrowserCompat.MediaItem>> result) {
         result.detach();
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runDatabase(new Runnable() {
             @Override
             public void run() {
                 result.sendResult(BrowserProvider.browse(parentId));
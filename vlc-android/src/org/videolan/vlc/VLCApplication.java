@@ -27,29 +27,26 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.Process;
 import android.preference.PreferenceManager;
 import android.support.v4.app.DialogFragment;
 import android.support.v4.util.SimpleArrayMap;
 import android.util.Log;
 
 import org.videolan.libvlc.Dialog;
-import org.videolan.libvlc.util.AndroidUtil;
 import org.videolan.medialibrary.Medialibrary;
 import org.videolan.vlc.gui.DialogActivity;
 import org.videolan.vlc.gui.dialogs.VlcProgressDialog;
 import org.videolan.vlc.gui.helpers.AudioUtil;
 import org.videolan.vlc.gui.helpers.BitmapCache;
+import org.videolan.vlc.gui.helpers.BitmapPool;
+import org.videolan.vlc.media.DumpManager;
 import org.videolan.vlc.util.AndroidDevices;
 import org.videolan.vlc.util.Strings;
+import org.videolan.vlc.util.VLCExecutor;
 import org.videolan.vlc.util.VLCInstance;
 
 import java.util.Calendar;
 import java.util.Locale;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 public class VLCApplication extends Application {
     public final static String TAG = "VLC/VLCApplication";
@@ -67,18 +64,6 @@ public class VLCApplication extends Application {
 
     private static SimpleArrayMap<String, Object> sDataMap = new SimpleArrayMap<>();
 
-    /* Up to 2 threads maximum, inactive threads are killed after 2 seconds */
-    int maxThreads = Math.max(AndroidUtil.isJellyBeanMR1OrLater ? Runtime.getRuntime().availableProcessors() : 2, 1);
-    private ThreadPoolExecutor mThreadPool = new ThreadPoolExecutor(Math.min(2, maxThreads), maxThreads, 2, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
-    public static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
-        @Override
-        public Thread newThread(Runnable runnable) {
-            Thread thread = new Thread(runnable);
-            thread.setPriority(Process.THREAD_PRIORITY_DEFAULT+Process.THREAD_PRIORITY_LESS_FAVORABLE);
-            return thread;
-        }
-    };
     private Handler mHandler = new Handler(Looper.getMainLooper());
 
     private static int sDialogCounter = 0;
@@ -131,6 +116,9 @@ public class VLCApplication extends Application {
                     return;
                 Dialog.setCallbacks(VLCInstance.get(), mDialogCallbacks);
 
+                // Resume the downloads interrupted by the last exit
+                DumpManager.getInstance();
+
                 // Disable remote control receiver on Fire TV.
                 if (!AndroidDevices.hasTsp())
                     AndroidDevices.setRemoteControlReceiverEnabled(false);
@@ -147,6 +135,7 @@ public class VLCApplication extends Application {
         Log.w(TAG, "System is running low on memory");
 
         BitmapCache.getInstance().clear();
+        BitmapPool.getInstance().clear();
     }
 
     @Override
@@ -154,7 +143,8 @@ public class VLCApplication extends Application {
         super.onTrimMemory(level);
         Log.w(TAG, "onTrimMemory, level: "+level);
 
-        BitmapCache.getInstance().clear();
+        BitmapCache.getInstance().trimMemory(level);
+        BitmapPool.getInstance().trimMemory(level);
     }
 
     /**
@@ -177,8 +167,32 @@ public class VLCApplication extends Application {
         return sTV || mSettings.getBoolean("tv_ui", false);
     }
 
+    /**
+     * Run a task on the {@link VLCExecutor#IO} lane
+     */
     public static void runBackground(Runnable runnable) {
-        instance.mThreadPool.execute(runnable);
+        VLCExecutor.IO.execute(runnable);
+    }
+
+    /**
+     * Run a medialibrary or database task on the {@link VLCExecutor#DATABASE} lane
+     */
+    public static void runDatabase(Runnable runnable) {
+        VLCExecutor.DATABASE.execute(runnable);
+    }
+
+    /**
+     * Run a network request on the {@link VLCExecutor#NETWORK} lane
+     */
+    public static void runNetwork(Runnable runnable) {
+        VLCExecutor.NETWORK.execute(runnable);
+    }
+
+    /**
+     * Run a CPU bound task (decoding, diff, sort...) on the {@link VLCExecutor#CPU} lane
+     */
+    public static void runCompute(Runnable runnable) {
+        VLCExecutor.CPU.execute(runnable);
     }
 
     public static void runOnMainThread(Runnable runnable) {
@@ -186,7 +200,8 @@ public class VLCApplication extends Application {
     }
 
     public static boolean removeTask(Runnable runnable) {
-        return instance.mThreadPool.remove(runnable);
+        return VLCExecutor.IO.remove(runnable) || VLCExecutor.DATABASE.remove(runnable)
+                || VLCExecutor.NETWORK.remove(runnable) || VLCExecutor.CPU.remove(runnable);
     }
 
     public static void storeData(String key, Object data) {
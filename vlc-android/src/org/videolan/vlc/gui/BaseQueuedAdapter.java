@@ -21,14 +21,28 @@
 package org.videolan.vlc.gui;
 
 import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 
 import java.util.ArrayDeque;
 
 
+/**
+ * Adapter applying list updates one at a time, with their diff computed off the main thread.
+ *
+ * A diff is dropped when a newer update was queued while it was computed, or when the list
+ * was modified outside of the queue in the meantime, see {@link #canApply(int)}.
+ */
 public abstract class BaseQueuedAdapter <T, VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<VH> {
 
+    /* Above this count of items, lists are fully refreshed instead of being diffed */
+    protected static final int MAX_DIFF_SIZE = 5000;
+
     private final ArrayDeque<T> mPendingUpdates = new ArrayDeque<>();
+    /* Incremented on each change of the displayed list made outside of the queue */
+    private int mGeneration = 0;
 
     protected abstract void internalUpdate(T items);
 
@@ -66,4 +80,59 @@ public abstract class BaseQueuedAdapter <T, VH extends RecyclerView.ViewHolder>
                 internalUpdate(mPendingUpdates.peek());
         }
     }
+
+    /**
+     * To call when the displayed list is modified without {@link #update(Object)}
+     */
+    @MainThread
+    protected void onListChanged() {
+        ++mGeneration;
+    }
+
+    /**
+     * @return the token to give to {@link #canApply(int)}, to get before computing a diff
+     */
+    @MainThread
+    protected int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Check whether the diff of the current update is still valid, once it is computed.
+     * If it is not, the next update is started and the adapter must not apply this one.
+     * @param generation value of {@link #getGeneration()} when the diff computation started
+     */
+    @MainThread
+    protected boolean canApply(int generation) {
+        if (mPendingUpdates.size() > 1) {
+            // Superseded, go straight to the latest list
+            processQueue();
+            return false;
+        }
+        if (generation != mGeneration) {
+            // Computed against a former list
+            internalUpdate(mPendingUpdates.peek());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the diff of the lists, null if they are too large, see {@link #dispatchDiff(DiffUtil.DiffResult)}
+     */
+    @WorkerThread
+    @Nullable
+    protected static DiffUtil.DiffResult calculateDiff(DiffUtil.Callback callback, boolean detectMoves) {
+        if (Math.max(callback.getOldListSize(), callback.getNewListSize()) > MAX_DIFF_SIZE)
+            return null;
+        return DiffUtil.calculateDiff(callback, detectMoves);
+    }
+
+    @MainThread
+    protected void dispatchDiff(@Nullable DiffUtil.DiffResult result) {
+        if (result != null)
+            result.dispatchUpdatesTo(this);
+        else
+            notifyDataSetChanged();
+    }
 }
@@ -21,6 +21,9 @@
 package org.videolan.vlc.gui;
 
 import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+import android.text.TextUtils;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.ArrayAdapter;
@@ -31,6 +34,8 @@ import org.videolan.vlc.DebugLogService;
 import org.videolan.vlc.R;
 import org.videolan.vlc.VLCApplication;
 import org.videolan.vlc.gui.helpers.UiTools;
+import org.videolan.vlc.util.PlaybackTracer;
+import org.videolan.vlc.util.VLCExecutor;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -43,6 +48,8 @@ public class DebugLogActivity extends Activity implements DebugLogService.Client
     private Button mCopyButton = null;
     private Button mClearButton = null;
     private Button mSaveButton = null;
+    private Button mLatenciesButton = null;
+    private Button mExecutorsButton = null;
     private ListView mLogView;
     private ArrayList<String> mLogList = null;
     private ArrayAdapter<String> mLogAdapter;
@@ -58,6 +65,8 @@ public class DebugLogActivity extends Activity implements DebugLogService.Client
         mCopyButton = (Button)findViewById(R.id.copy_to_clipboard);
         mClearButton = (Button)findViewById(R.id.clear_log);
         mSaveButton = (Button)findViewById(R.id.save_to_file);
+        mLatenciesButton = (Button)findViewById(R.id.playback_latencies);
+        mExecutorsButton = (Button)findViewById(R.id.executor_stats);
 
         mClient = new DebugLogService.Client(this, this);
 
@@ -71,6 +80,8 @@ public class DebugLogActivity extends Activity implements DebugLogService.Client
         mSaveButton.setOnClickListener(mSaveClickListener);
 
         mCopyButton.setOnClickListener(mCopyClickListener);
+        mLatenciesButton.setOnClickListener(mLatenciesClickListener);
+        mExecutorsButton.setOnClickListener(mExecutorsClickListener);
     }
 
     @Override
@@ -137,6 +148,53 @@ public class DebugLogActivity extends Activity implements DebugLogService.Client
         }
     };
 
+    @SuppressWarnings("deprecation")
+    private View.OnClickListener mLatenciesClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(final View v) {
+            final String report = PlaybackTracer.getReport();
+            final AlertDialog.Builder builder = new AlertDialog.Builder(DebugLogActivity.this)
+                    .setTitle(R.string.playback_latencies)
+                    .setNegativeButton(android.R.string.ok, null);
+            if (TextUtils.isEmpty(report)) {
+                builder.setMessage(R.string.no_playback_latencies).show();
+                return;
+            }
+            builder.setMessage(report)
+                    .setPositiveButton(R.string.copy_json, new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            android.text.ClipboardManager clipboard = (android.text.ClipboardManager)VLCApplication.getAppContext().getSystemService(CLIPBOARD_SERVICE);
+                            clipboard.setText(PlaybackTracer.toJson());
+                            UiTools.snacker(v.getRootView(), R.string.copied_latencies_to_clipboard);
+                        }
+                    })
+                    .show();
+        }
+    };
+
+    /* Queue depth, wait and run times of the background lanes */
+    @SuppressWarnings("deprecation")
+    private View.OnClickListener mExecutorsClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(final View v) {
+            final String stats = VLCExecutor.dumpStats();
+            new AlertDialog.Builder(DebugLogActivity.this)
+                    .setTitle(R.string.executor_stats)
+                    .setMessage(stats)
+                    .setNegativeButton(android.R.string.ok, null)
+                    .setPositiveButton(R.string.copy_to_clipboard, new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            android.text.ClipboardManager clipboard = (android.text.ClipboardManager)VLCApplication.getAppContext().getSystemService(CLIPBOARD_SERVICE);
+                            clipboard.setText(stats);
+                            UiTools.snacker(v.getRootView(), R.string.copied_executor_stats_to_clipboard);
+                        }
+                    })
+                    .show();
+        }
+    };
+
     @Override
     public void onStarted(List<String> logList) {
         mStartButton.setEnabled(false);
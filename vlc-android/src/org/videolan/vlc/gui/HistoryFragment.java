@@ -93,7 +93,7 @@ public class HistoryFragment extends MediaBrowserFragment implements IRefreshabl
 
     @Override
     public void refresh() {
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runDatabase(new Runnable() {
             @Override
             public void run() {
                 MediaWrapper[] list = VLCApplication.getMLInstance().lastMediaPlayed();
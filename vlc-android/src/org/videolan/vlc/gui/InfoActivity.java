@@ -73,7 +73,7 @@ public class InfoActivity extends AudioPlayerContainerActivity implements View.O
         mBinding.list.setAdapter(mAdapter);
 
         if (!TextUtils.isEmpty(mItem.getArtworkMrl())) {
-            VLCApplication.runBackground(new Runnable() {
+            VLCApplication.runCompute(new Runnable() {
                 @Override
                 public void run() {
                     final Bitmap cover = AudioUtil.readCoverBitmap(Uri.decode(mItem.getArtworkMrl()), 0);
@@ -101,7 +101,7 @@ public class PlaylistActivity extends AudioPlayerContainerActivity implements IE
             ? savedInstanceState.getInt(TAG_FAB_VISIBILITY) : -1;
 
         if (!TextUtils.isEmpty(mPlaylist.getArtworkMrl())) {
-            VLCApplication.runBackground(new Runnable() {
+            VLCApplication.runCompute(new Runnable() {
                 @Override
                 public void run() {
                     final Bitmap cover = AudioUtil.readCoverBitmap(Uri.decode(mPlaylist.getArtworkMrl()), 0);
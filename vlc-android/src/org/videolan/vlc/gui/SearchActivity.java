@@ -12,6 +12,7 @@ import android.support.v7.widget.RecyclerView;
 import android.text.Editable;
 import android.text.TextUtils;
 import android.text.TextWatcher;
+import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.inputmethod.EditorInfo;
@@ -19,7 +20,9 @@ import android.widget.TextView;
 
 import org.videolan.medialibrary.Medialibrary;
 import org.videolan.medialibrary.media.MediaLibraryItem;
+import org.videolan.medialibrary.media.MediaSearchAggregate;
 import org.videolan.medialibrary.media.SearchAggregate;
+import org.videolan.vlc.BuildConfig;
 import org.videolan.vlc.R;
 import org.videolan.vlc.VLCApplication;
 import org.videolan.vlc.databinding.SearchActivityBinding;
@@ -27,11 +30,12 @@ import org.videolan.vlc.gui.helpers.UiTools;
 import org.videolan.vlc.gui.view.ContextMenuRecyclerView;
 import org.videolan.vlc.media.MediaUtils;
 
-public class SearchActivity extends AppCompatActivity implements TextWatcher, TextView.OnEditorActionListener {
+public class SearchActivity extends AppCompatActivity implements TextWatcher, TextView.OnEditorActionListener, SearchPipeline.Callback {
 
     public final static String TAG = "VLC/SearchActivity";
 
     private Medialibrary mMedialibrary;
+    private SearchPipeline mSearchPipeline;
     private SearchActivityBinding mBinding;
     private ClickHandler mClickHandler = new ClickHandler();
 
@@ -45,41 +49,38 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Te
             mBinding = DataBindingUtil.setContentView(this, R.layout.search_activity);
             mBinding.setHandler(mClickHandler);
             mMedialibrary = VLCApplication.getMLInstance();
+            mSearchPipeline = new SearchPipeline(mMedialibrary, this);
             String query = intent.getStringExtra(SearchManager.QUERY);
             initializeLists();
             if (!TextUtils.isEmpty(query)) {
                 mBinding.searchEditText.setText(query);
                 mBinding.searchEditText.setSelection(query.length());
-                performSearh(query);
+                mSearchPipeline.search(query, true);
             }
         }
         mBinding.searchEditText.addTextChangedListener(this);
         mBinding.searchEditText.setOnEditorActionListener(this);
     }
 
-    private void performSearh(final String query) {
-        VLCApplication.runBackground(new Runnable() {
-            @Override
-            public void run() {
-                final SearchAggregate searchAggregate = mMedialibrary.search(query);
-                mBinding.setSearchAggregate(searchAggregate);
-                if (searchAggregate != null) {
-                    VLCApplication.runOnMainThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            ((SearchResultAdapter)mBinding.albumsResults.getAdapter()).add(searchAggregate.getAlbums());
-                            ((SearchResultAdapter)mBinding.artistsResults.getAdapter()).add(searchAggregate.getArtists());
-                            ((SearchResultAdapter)mBinding.genresResults.getAdapter()).add(searchAggregate.getGenres());
-                            ((SearchResultAdapter)mBinding.playlistsResults.getAdapter()).add(searchAggregate.getPlaylists());
-                            ((SearchResultAdapter)mBinding.episodesResults.getAdapter()).add(searchAggregate.getMediaSearchAggregate().getEpisodes());
-                            ((SearchResultAdapter)mBinding.moviesResults.getAdapter()).add(searchAggregate.getMediaSearchAggregate().getMovies());
-                            ((SearchResultAdapter)mBinding.othersResults.getAdapter()).add(searchAggregate.getMediaSearchAggregate().getOthers());
-                            ((SearchResultAdapter)mBinding.songsResults.getAdapter()).add(searchAggregate.getMediaSearchAggregate().getTracks());
-                        }
-                    });
-                }
-            }
-        });
+    @Override
+    public void onSearchResults(String query, SearchAggregate results, boolean complete) {
+        mBinding.setSearchAggregate(results);
+        final MediaSearchAggregate media = results.getMediaSearchAggregate();
+        update(mBinding.albumsResults, results.getAlbums());
+        update(mBinding.artistsResults, results.getArtists());
+        update(mBinding.genresResults, results.getGenres());
+        update(mBinding.playlistsResults, results.getPlaylists());
+        update(mBinding.episodesResults, media != null ? media.getEpisodes() : null);
+        update(mBinding.moviesResults, media != null ? media.getMovies() : null);
+        update(mBinding.othersResults, media != null ? media.getOthers() : null);
+        update(mBinding.songsResults, media != null ? media.getTracks() : null);
+    }
+
+    /* Only refresh the categories which changed since the previous results */
+    private static void update(RecyclerView list, MediaLibraryItem[] items) {
+        final SearchResultAdapter adapter = (SearchResultAdapter) list.getAdapter();
+        if (adapter.mDataList != items)
+            adapter.add(items);
     }
 
     private void initializeLists() {
@@ -94,6 +95,16 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Te
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mSearchPipeline != null)
+            mSearchPipeline.cancel();
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Search latency: first results " + SearchPipeline.getFirstResultLatencyHistogram()
+                    + ", all results " + SearchPipeline.getLatencyHistogram());
+    }
+
     @Override
     public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
 
@@ -102,16 +113,15 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Te
 
     @Override
     public void afterTextChanged(Editable s) {
-        if (s == null || s.length() < 3)
-            mBinding.setSearchAggregate(new SearchAggregate());
-        else
-            performSearh(s.toString());
+        mSearchPipeline.search(s != null ? s.toString() : "", false);
     }
 
     @Override
     public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
         if (actionId == EditorInfo.IME_ACTION_SEARCH) {
             UiTools.setKeyboardVisibility(mBinding.getRoot(), false);
+            // No need to wait for the debounce delay
+            mSearchPipeline.search(v.getText().toString(), true);
             return true;
         }
         return false;
@@ -121,7 +131,7 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Te
         mBinding.searchEditText.removeTextChangedListener(this);
         mBinding.searchEditText.setText("");
         mBinding.searchEditText.addTextChangedListener(this);
-        mBinding.setSearchAggregate(new SearchAggregate());
+        mSearchPipeline.search("", true);
     }
 
     public class ClickHandler {
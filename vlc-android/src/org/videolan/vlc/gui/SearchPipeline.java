@@ -0,0 +1,184 @@
+/*****************************************************************************
+ * SearchPipeline.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.gui;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.v4.util.LruCache;
+
+import org.videolan.medialibrary.Medialibrary;
+import org.videolan.medialibrary.media.Album;
+import org.videolan.medialibrary.media.Artist;
+import org.videolan.medialibrary.media.Genre;
+import org.videolan.medialibrary.media.MediaSearchAggregate;
+import org.videolan.medialibrary.media.Playlist;
+import org.videolan.medialibrary.media.SearchAggregate;
+import org.videolan.vlc.VLCApplication;
+import org.videolan.vlc.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs medialibrary searches as the user types.
+ *
+ * Queries are debounced, and each new query makes the previous ones stale: their remaining
+ * categories are not searched and their results are dropped. Categories are searched one
+ * after the other and results are delivered as soon as each one is available.
+ * Results of the recent queries are kept for the pipeline lifetime, so erasing characters
+ * shows them again right away.
+ */
+class SearchPipeline {
+
+    static final int MIN_QUERY_LENGTH = 3;
+    private static final long DEBOUNCE_DELAY = 250L;
+
+    /* From the end of the debounce to the delivery of all categories */
+    private static final LatencyHistogram sLatency = new LatencyHistogram();
+    private static final LatencyHistogram sFirstResultLatency = new LatencyHistogram();
+
+    interface Callback {
+        /**
+         * @param results results found so far, categories not searched yet are null
+         * @param complete true once all categories have been searched
+         */
+        @MainThread
+        void onSearchResults(String query, SearchAggregate results, boolean complete);
+    }
+
+    private final Medialibrary mMedialibrary;
+    private final Callback mCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final LruCache<String, SearchAggregate> mRecentResults = new LruCache<>(16);
+    private String mPendingQuery;
+
+    private final Runnable mDebounceRunnable = new Runnable() {
+        @Override
+        public void run() {
+            start(mPendingQuery, mGeneration.get());
+        }
+    };
+
+    SearchPipeline(Medialibrary medialibrary, Callback callback) {
+        mMedialibrary = medialibrary;
+        mCallback = callback;
+    }
+
+    /**
+     * Search for query, cancelling the previous search
+     * @param immediate true to skip the debounce delay
+     */
+    @MainThread
+    void search(String query, boolean immediate) {
+        final int generation = mGeneration.incrementAndGet();
+        mHandler.removeCallbacks(mDebounceRunnable);
+        query = query.trim();
+        if (query.length() < MIN_QUERY_LENGTH) {
+            mCallback.onSearchResults(query, new SearchAggregate(), true);
+            return;
+        }
+        final SearchAggregate cached = mRecentResults.get(getKey(query));
+        if (cached != null) {
+            sLatency.record(0L);
+            sFirstResultLatency.record(0L);
+            mCallback.onSearchResults(query, cached, true);
+            return;
+        }
+        mPendingQuery = query;
+        if (immediate)
+            start(query, generation);
+        else
+            mHandler.postDelayed(mDebounceRunnable, DEBOUNCE_DELAY);
+    }
+
+    @MainThread
+    void cancel() {
+        mGeneration.incrementAndGet();
+        mHandler.removeCallbacks(mDebounceRunnable);
+    }
+
+    static LatencyHistogram getLatencyHistogram() {
+        return sLatency;
+    }
+
+    static LatencyHistogram getFirstResultLatencyHistogram() {
+        return sFirstResultLatency;
+    }
+
+    private static String getKey(String query) {
+        return query.toLowerCase();
+    }
+
+    private boolean isStale(int generation) {
+        return generation != mGeneration.get();
+    }
+
+    private void start(final String query, final int generation) {
+        final long start = SystemClock.elapsedRealtime();
+        VLCApplication.runDatabase(new Runnable() {
+            @Override
+            public void run() {
+                if (isStale(generation))
+                    return;
+                final MediaSearchAggregate media = mMedialibrary.searchMedia(query);
+                publish(query, generation, start, new SearchAggregate(null, null, null, media, null), true, false);
+                if (isStale(generation))
+                    return;
+                final Artist[] artists = mMedialibrary.searchArtist(query);
+                publish(query, generation, start, new SearchAggregate(null, artists, null, media, null), false, false);
+                if (isStale(generation))
+                    return;
+                final Album[] albums = mMedialibrary.searchAlbum(query);
+                publish(query, generation, start, new SearchAggregate(albums, artists, null, media, null), false, false);
+                if (isStale(generation))
+                    return;
+                final Genre[] genres = mMedialibrary.searchGenre(query);
+                publish(query, generation, start, new SearchAggregate(albums, artists, genres, media, null), false, false);
+                if (isStale(generation))
+                    return;
+                final Playlist[] playlists = mMedialibrary.searchPlaylist(query);
+                final SearchAggregate results = new SearchAggregate(albums, artists, genres, media, playlists);
+                if (mMedialibrary.isInitiated())
+                    mRecentResults.put(getKey(query), results);
+                publish(query, generation, start, results, false, true);
+            }
+        });
+    }
+
+    private void publish(final String query, final int generation, final long start,
+                         final SearchAggregate results, final boolean first, final boolean complete) {
+        VLCApplication.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                if (isStale(generation))
+                    return;
+                final long latency = SystemClock.elapsedRealtime() - start;
+                if (first)
+                    sFirstResultLatency.record(latency);
+                if (complete)
+                    sLatency.record(latency);
+                mCallback.onSearchResults(query, results, complete);
+            }
+        });
+    }
+}
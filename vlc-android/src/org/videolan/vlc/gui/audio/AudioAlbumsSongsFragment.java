@@ -265,7 +265,7 @@ public class AudioAlbumsSongsFragment extends BaseAudioBrowser implements SwipeR
         if (mItem == null || getActivity() == null)
             return;
 
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runDatabase(new Runnable() {
             @Override
             public void run() {
                 final Album[] albums;
@@ -193,6 +193,7 @@ public class AudioBrowserAdapter extends BaseQueuedAdapter<MediaLibraryItem[], A
     public void clear() {
         mDataList = null;
         mOriginalDataSet = null;
+        onListChanged();
     }
 
     public void addAll(MediaLibraryItem[] items) {
@@ -282,16 +283,26 @@ public class AudioBrowserAdapter extends BaseQueuedAdapter<MediaLibraryItem[], A
     }
 
     protected void internalUpdate(final MediaLibraryItem[] items) {
-        VLCApplication.runBackground(new Runnable() {
+        final int generation = getGeneration();
+        final MediaLibraryItem[] oldList = mDataList;
+        final boolean makeSections = mOriginalDataSet == null && hasSections();
+        VLCApplication.runCompute(new Runnable() {
             @Override
             public void run() {
-                final MediaLibraryItem[] newList = mOriginalDataSet == null && hasSections() ? generateList(items) : items;
-                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new MediaItemDiffCallback(mDataList, newList), false);
+                final MediaLibraryItem[] newList = makeSections ? generateList(items) : items;
+                // Next pages of a paged query are appended, no need to diff
+                final boolean appended = startsWith(newList, oldList);
+                final DiffUtil.DiffResult result = appended ? null : calculateDiff(new MediaItemDiffCallback(oldList, newList), false);
                 VLCApplication.runOnMainThread(new Runnable() {
                     @Override
                     public void run() {
+                        if (!canApply(generation))
+                            return;
                         addAll(newList, false);
-                        result.dispatchUpdatesTo(AudioBrowserAdapter.this);
+                        if (appended)
+                            notifyItemRangeInserted(oldList.length, newList.length - oldList.length);
+                        else
+                            dispatchDiff(result);
                         mIEventsHandler.onUpdateFinished(AudioBrowserAdapter.this);
                         processQueue();
                     }
@@ -300,6 +311,15 @@ public class AudioBrowserAdapter extends BaseQueuedAdapter<MediaLibraryItem[], A
         });
     }
 
+    private static boolean startsWith(MediaLibraryItem[] list, MediaLibraryItem[] prefix) {
+        if (Tools.isArrayEmpty(prefix) || list == null || list.length < prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; ++i)
+            if (!prefix[i].equals(list[i]))
+                return false;
+        return true;
+    }
+
     @MainThread
     public List<MediaLibraryItem> getSelection() {
         List<MediaLibraryItem> selection = new LinkedList<>();
@@ -409,10 +429,11 @@ public class AudioBrowserAdapter extends BaseQueuedAdapter<MediaLibraryItem[], A
 
         @Override
         protected List<MediaLibraryItem> initData() {
-            if (mOriginalDataSet == null)
+            // New filtering session, the list may have changed since the last one
+            if (mOriginalDataSet == null) {
                 mOriginalDataSet = Arrays.copyOf(mDataList, mDataList.length);
-            if (referenceList == null)
                 referenceList = new ArrayList<>(Arrays.asList(mDataList));
+            }
             return referenceList;
         }
 
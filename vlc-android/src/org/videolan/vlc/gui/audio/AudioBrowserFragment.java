@@ -68,6 +68,7 @@ import org.videolan.vlc.gui.view.SwipeRefreshLayout;
 import org.videolan.vlc.interfaces.Filterable;
 import org.videolan.vlc.util.AndroidDevices;
 import org.videolan.vlc.util.FileUtils;
+import org.videolan.vlc.util.PagedQuery;
 import org.videolan.vlc.util.WeakHandler;
 
 import java.util.ArrayList;
@@ -86,6 +87,9 @@ public class AudioBrowserFragment extends BaseAudioBrowser implements DevicesDis
     private AudioBrowserAdapter mSongsAdapter;
     private AudioBrowserAdapter mGenresAdapter;
     private AudioBrowserAdapter mPlaylistAdapter;
+    private PagedQuery<Artist> mArtistsQuery;
+    private PagedQuery<Album> mAlbumsQuery;
+    private PagedQuery<MediaWrapper> mSongsQuery;
 
     private ViewPager mViewPager;
     private TabLayout mTabLayout;
@@ -507,7 +511,7 @@ public class AudioBrowserFragment extends BaseAudioBrowser implements DevicesDis
     }
 
     private void deletePlaylist(final Playlist playlist) {
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runDatabase(new Runnable() {
             @Override
             public void run() {
                 playlist.delete(mMediaLibrary);
@@ -570,96 +574,60 @@ public class AudioBrowserFragment extends BaseAudioBrowser implements DevicesDis
 
     @Override
     public void onArtistsAdded() {
-        VLCApplication.runBackground(new Runnable() {
-            final Artist[] artists = mMediaLibrary.getArtists();
+        VLCApplication.runOnMainThread(new Runnable() {
             @Override
             public void run() {
-                VLCApplication.runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mArtistsAdapter.update(artists);
-                    }
-                });
+                updateArtists();
             }
         });
     }
 
     @Override
     public void onArtistsModified() {
-        VLCApplication.runBackground(new Runnable() {
-            final Artist[] artists = mMediaLibrary.getArtists();
+        VLCApplication.runOnMainThread(new Runnable() {
             @Override
             public void run() {
-                VLCApplication.runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mArtistsAdapter.update(artists);
-                    }
-                });
+                updateArtists();
             }
         });
     }
 
     @Override
     public void onAlbumsAdded() {
-        VLCApplication.runBackground(new Runnable() {
-            final Album[] albums = mMediaLibrary.getAlbums();
+        VLCApplication.runOnMainThread(new Runnable() {
             @Override
             public void run() {
-                VLCApplication.runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mAlbumsAdapter.update(albums);
-                    }
-                });
+                updateAlbums();
             }
         });
     }
 
     @Override
     public void onAlbumsModified() {
-        VLCApplication.runBackground(new Runnable() {
-            final Album[] albums = mMediaLibrary.getAlbums();
+        VLCApplication.runOnMainThread(new Runnable() {
             @Override
             public void run() {
-                VLCApplication.runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mAlbumsAdapter.update(albums);
-                    }
-                });
+                updateAlbums();
             }
         });
     }
 
     @Override
     public void onMediaAdded(MediaWrapper[] mediaList) {
-        VLCApplication.runBackground(new Runnable() {
-            final MediaWrapper[] media = mMediaLibrary.getAudio();
+        VLCApplication.runOnMainThread(new Runnable() {
             @Override
             public void run() {
-                VLCApplication.runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mSongsAdapter.update(media);
-                    }
-                });
+                updateSongs();
             }
         });
     }
 
     @Override
     public void onMediaUpdated(MediaWrapper[] mediaList) {
-        VLCApplication.runBackground(new Runnable() {
-            final MediaWrapper[] media = mMediaLibrary.getAudio();
+        VLCApplication.runOnMainThread(new Runnable() {
             @Override
             public void run() {
-                VLCApplication.runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mSongsAdapter.update(media);
-                    }
-                });
+                updateSongs();
             }
         });
     }
@@ -739,53 +707,44 @@ public class AudioBrowserFragment extends BaseAudioBrowser implements DevicesDis
         updatePlaylists();
     }
 
+    @MainThread
     private void updateArtists() {
-        VLCApplication.runBackground(new Runnable() {
+        if (mArtistsQuery != null)
+            mArtistsQuery.cancel();
+        mArtistsQuery = PagedQuery.artists(mArtistsAdapter.isEmpty(), new PagedQuery.Callback<Artist>() {
             @Override
-            public void run() {
-                final Artist[] artists = mMediaLibrary.getArtists();
-                VLCApplication.runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mArtistsAdapter.update(artists);
-                    }
-                });
+            public void onItemsLoaded(Artist[] items, boolean complete) {
+                mArtistsAdapter.update(items);
             }
-        });
+        }).execute();
     }
 
+    @MainThread
     private void updateAlbums() {
-        VLCApplication.runBackground(new Runnable() {
+        if (mAlbumsQuery != null)
+            mAlbumsQuery.cancel();
+        mAlbumsQuery = PagedQuery.albums(mAlbumsAdapter.isEmpty(), new PagedQuery.Callback<Album>() {
             @Override
-            public void run() {
-                final Album[] albums = mMediaLibrary.getAlbums();
-                VLCApplication.runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mAlbumsAdapter.update(albums);
-                    }
-                });
+            public void onItemsLoaded(Album[] items, boolean complete) {
+                mAlbumsAdapter.update(items);
             }
-        });
+        }).execute();
     }
 
+    @MainThread
     private void updateSongs() {
-        VLCApplication.runBackground(new Runnable() {
+        if (mSongsQuery != null)
+            mSongsQuery.cancel();
+        mSongsQuery = PagedQuery.audio(Medialibrary.SORT_DEFAULT, false, mSongsAdapter.isEmpty(), new PagedQuery.Callback<MediaWrapper>() {
             @Override
-            public void run() {
-                final MediaWrapper[] media = mMediaLibrary.getAudio();
-                VLCApplication.runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mSongsAdapter.update(media);
-                    }
-                });
+            public void onItemsLoaded(MediaWrapper[] items, boolean complete) {
+                mSongsAdapter.update(items);
             }
-        });
+        }).execute();
     }
 
     private void updateGenres() {
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runDatabase(new Runnable() {
             @Override
             public void run() {
                 final Genre[] genres = mMediaLibrary.getGenres();
@@ -800,7 +759,7 @@ public class AudioBrowserFragment extends BaseAudioBrowser implements DevicesDis
     }
 
     private void updatePlaylists() {
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runDatabase(new Runnable() {
             @Override
             public void run() {
                 final Playlist[] playlists = mMediaLibrary.getPlaylists();
@@ -294,7 +294,7 @@ public class AudioPlayer extends PlaybackServiceFragment implements PlaybackServ
             if (TextUtils.isEmpty(mw.getArtworkMrl())) {
                 setDefaultBackground();
             } else {
-                VLCApplication.runBackground(new Runnable() {
+                VLCApplication.runCompute(new Runnable() {
                     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
                     @Override
                     public void run() {
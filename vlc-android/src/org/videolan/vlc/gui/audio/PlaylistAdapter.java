@@ -124,16 +124,20 @@ public class PlaylistAdapter extends BaseQueuedAdapter<ArrayList<MediaWrapper>,
 
     @MainThread
     protected void internalUpdate(final ArrayList<MediaWrapper> newList) {
-        VLCApplication.runBackground(new Runnable() {
+        final int generation = getGeneration();
+        final ArrayList<MediaWrapper> oldList = new ArrayList<>(mDataSet);
+        VLCApplication.runCompute(new Runnable() {
             @Override
             public void run() {
-                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new MediaItemDiffCallback(mDataSet, newList), false);
+                final DiffUtil.DiffResult result = calculateDiff(new MediaItemDiffCallback(oldList, newList), false);
                 VLCApplication.runOnMainThread(new Runnable() {
                     @Override
                     public void run() {
+                        if (!canApply(generation))
+                            return;
                         mDataSet.clear();
                         addAll(newList);
-                        result.dispatchUpdatesTo(PlaylistAdapter.this);
+                        dispatchDiff(result);
                         if (mService != null)
                             setCurrentIndex(mService.getCurrentMediaPosition());
                         processQueue();
@@ -168,6 +172,7 @@ public class PlaylistAdapter extends BaseQueuedAdapter<ArrayList<MediaWrapper>,
     @Override
     public void onItemMove(int fromPosition, int toPosition) {
         Collections.swap(mDataSet, fromPosition, toPosition);
+        onListChanged();
         notifyItemMoved(fromPosition, toPosition);
         mHandler.obtainMessage(PlaylistHandler.ACTION_MOVE, fromPosition, toPosition).sendToTarget();
     }
@@ -246,9 +246,6 @@ public class BaseBrowserAdapter extends BaseQueuedAdapter<ArrayList<MediaLibrary
         if (item .getItemType() == TYPE_MEDIA && item.getTitle().startsWith("."))
             return;
 
-        if (item .getItemType() == TYPE_MEDIA && (((MediaWrapper) item).getType() == MediaWrapper.TYPE_VIDEO || ((MediaWrapper) item).getType() == MediaWrapper.TYPE_AUDIO))
-            mMediaCount++;
-
         if (position <= list.size()) {
             list.add(position, item);
             update(list);
@@ -270,8 +267,6 @@ public class BaseBrowserAdapter extends BaseQueuedAdapter<ArrayList<MediaLibrary
     }
 
     void removeItem(MediaLibraryItem item) {
-        if (item.getItemType() == TYPE_MEDIA && (((MediaWrapper) item).getType() == MediaWrapper.TYPE_VIDEO || ((MediaWrapper) item).getType() == MediaWrapper.TYPE_AUDIO))
-            mMediaCount--;
         ArrayList<MediaLibraryItem> list = new ArrayList<>(peekLast());
         list.remove(item);
         update(list);
@@ -362,20 +357,26 @@ public class BaseBrowserAdapter extends BaseQueuedAdapter<ArrayList<MediaLibrary
     }
 
     protected void internalUpdate(final ArrayList<MediaLibraryItem> items) {
-        VLCApplication.runBackground(new Runnable() {
+        final int generation = getGeneration();
+        final ArrayList<MediaLibraryItem> oldList = mMediaList;
+        VLCApplication.runCompute(new Runnable() {
             @Override
             public void run() {
-                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new MediaItemDiffCallback(mMediaList, items), false);
+                final DiffUtil.DiffResult result = calculateDiff(new MediaItemDiffCallback(oldList, items), false);
+                int mediaCount = 0;
                 for (MediaLibraryItem item : items) {
-                    if (item.getItemType() == MediaLibraryItem.TYPE_MEDIA
-                            && (((MediaWrapper)item).getType() == MediaWrapper.TYPE_AUDIO|| (AndroidUtil.isHoneycombOrLater && ((MediaWrapper)item).getType() == MediaWrapper.TYPE_VIDEO)))
-                        mMediaCount++;
+                    if (isMedia(item))
+                        ++mediaCount;
                 }
+                final int count = mediaCount;
                 VLCApplication.runOnMainThread(new Runnable() {
                     @Override
                     public void run() {
+                        if (!canApply(generation))
+                            return;
                         mMediaList = items;
-                        result.dispatchUpdatesTo(BaseBrowserAdapter.this);
+                        mMediaCount = count;
+                        dispatchDiff(result);
                         fragment.onUpdateFinished(null);
                         processQueue();
                     }
@@ -384,6 +385,13 @@ public class BaseBrowserAdapter extends BaseQueuedAdapter<ArrayList<MediaLibrary
         });
     }
 
+    private static boolean isMedia(MediaLibraryItem item) {
+        if (item.getItemType() != TYPE_MEDIA)
+            return false;
+        final int type = ((MediaWrapper) item).getType();
+        return type == MediaWrapper.TYPE_AUDIO || (AndroidUtil.isHoneycombOrLater && type == MediaWrapper.TYPE_VIDEO);
+    }
+
     void restoreList() {
         if (mOriginalData != null) {
             update(new ArrayList<>(mOriginalData));
@@ -27,6 +27,7 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Environment;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
@@ -55,7 +56,6 @@ import org.videolan.libvlc.util.AndroidUtil;
 import org.videolan.libvlc.util.MediaBrowser;
 import org.videolan.medialibrary.media.MediaLibraryItem;
 import org.videolan.medialibrary.media.MediaWrapper;
-import org.videolan.medialibrary.media.Storage;
 import org.videolan.vlc.R;
 import org.videolan.vlc.VLCApplication;
 import org.videolan.vlc.gui.InfoActivity;
@@ -66,17 +66,21 @@ import org.videolan.vlc.gui.view.SwipeRefreshLayout;
 import org.videolan.vlc.interfaces.Filterable;
 import org.videolan.vlc.interfaces.IEventsHandler;
 import org.videolan.vlc.interfaces.IRefreshable;
+import org.videolan.vlc.media.DumpManager;
 import org.videolan.vlc.media.MediaDatabase;
 import org.videolan.vlc.media.MediaUtils;
 import org.videolan.vlc.util.AndroidDevices;
 import org.videolan.vlc.util.FileUtils;
+import org.videolan.vlc.util.ListingCache;
 import org.videolan.vlc.util.Strings;
 import org.videolan.vlc.util.Util;
 import org.videolan.vlc.util.VLCInstance;
 import org.videolan.vlc.util.WeakHandler;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
 
 public abstract class BaseBrowserFragment extends MediaBrowserFragment implements IRefreshable, MediaBrowser.EventListener, SwipeRefreshLayout.OnRefreshListener, View.OnClickListener, Filterable, IEventsHandler {
@@ -112,6 +116,19 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
     protected abstract String getCategoryTitle();
 
     private Handler mBrowserHandler;
+    /* Only used on the browser thread */
+    private SubDirectoryProber mProber;
+    /* Items of the current browsing, and cached listing being revalidated, only used on the browser thread */
+    private ArrayList<MediaLibraryItem> mBrowsedItems = null;
+    private List<ListingCache.Entry> mCachedEntries = null;
+
+    private static ListingCache sListingCache;
+
+    private static synchronized ListingCache getListingCache() {
+        if (sListingCache == null)
+            sListingCache = new ListingCache(new File(VLCApplication.getAppContext().getCacheDir(), "browser_listings"), 500);
+        return sListingCache;
+    }
 
     protected void runOnBrowserThread(Runnable runnable) {
         mBrowserHandler.post(runnable);
@@ -161,6 +178,7 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
         mLayoutManager = new LinearLayoutManager(getActivity());
         mRecyclerView.setLayoutManager(mLayoutManager);
         mRecyclerView.setAdapter(mAdapter);
+        mRecyclerView.addOnScrollListener(mScrollListener);
         registerForContextMenu(mRecyclerView);
 
         mSwipeRefreshLayout = (SwipeRefreshLayout) v.findViewById(R.id.swipeLayout);
@@ -202,10 +220,16 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
             @Override
             public void run() {
                 releaseBrowser();
+                cancelProbing();
             }
         });
     }
 
+    private void cancelProbing() {
+        if (mProber != null)
+            mProber.cancel();
+    }
+
     private void releaseBrowser() {
         if (mMediaBrowser != null) {
             mMediaBrowser.release();
@@ -256,6 +280,12 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
 
     public void browse (MediaWrapper media, int position, boolean save) {
         mBrowserHandler.removeCallbacksAndMessages(null);
+        runOnBrowserThread(new Runnable() {
+            @Override
+            public void run() {
+                cancelProbing();
+            }
+        });
         FragmentTransaction ft = getActivity().getSupportFragmentManager().beginTransaction();
         Fragment next = createFragment();
         Bundle args = new Bundle();
@@ -274,6 +304,12 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
     public void onMediaAdded(int index, final Media media) {
         final boolean wasEmpty = mAdapter.isEmpty();
         final MediaWrapper mediaWrapper = getMediaWrapper(new MediaWrapper(media));
+        if (mBrowsedItems != null) {
+            mBrowsedItems.add(mediaWrapper);
+            // A cached listing is shown, the new one is published at the end
+            if (mCachedEntries != null)
+                return;
+        }
         VLCApplication.runOnMainThread(new Runnable() {
             @Override
             public void run() {
@@ -292,6 +328,17 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
 
     @Override
     public void onMediaRemoved(int index, final Media media) {
+        if (mBrowsedItems != null) {
+            final String mrl = media.getUri().toString();
+            for (int i = 0; i < mBrowsedItems.size(); ++i) {
+                if (TextUtils.equals(mrl, ((MediaWrapper) mBrowsedItems.get(i)).getUri().toString())) {
+                    mBrowsedItems.remove(i);
+                    break;
+                }
+            }
+            if (mCachedEntries != null)
+                return;
+        }
         VLCApplication.runOnMainThread(new Runnable() {
             @Override
             public void run() {
@@ -302,6 +349,8 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
 
     @Override
     public void onBrowseEnd() {
+        if (mBrowsedItems != null)
+            updateListingCache();
         mHandler.sendEmptyMessage(BrowserFragmentHandler.MSG_HIDE_LOADING);
         releaseBrowser();
         VLCApplication.runOnMainThread(new Runnable() {
@@ -317,6 +366,8 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
     @Override
     public void onRefresh() {
         mSavedPosition = mLayoutManager.findFirstCompletelyVisibleItemPosition();
+        // Explicit refresh, do not show stale folder contents
+        SubDirectoryProber.clearCache();
         refresh();
     }
 
@@ -349,6 +400,7 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
             @Override
             public void run() {
                 mFoldersContentLists.clear();
+                cancelProbing();
                 initMediaBrowser(BaseBrowserFragment.this);
                 mCurrentParsedPosition = 0;
                 if (mRoot)
@@ -358,12 +410,97 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
                             browseRoot();
                         }
                     });
-                else
-                    mMediaBrowser.browse(mCurrentMedia != null ? mCurrentMedia.getUri() : Uri.parse(mMrl), getBrowserFlags());
+                else {
+                    final Uri uri = mCurrentMedia != null ? mCurrentMedia.getUri() : Uri.parse(mMrl);
+                    if (useListingCache()) {
+                        mBrowsedItems = new ArrayList<>();
+                        final ListingCache.Listing listing = getListingCache().get(uri.toString());
+                        mCachedEntries = listing != null ? listing.entries : null;
+                        if (listing != null)
+                            publishItems(toItems(listing.entries));
+                    } else {
+                        mBrowsedItems = null;
+                        mCachedEntries = null;
+                    }
+                    mMediaBrowser.browse(uri, getBrowserFlags());
+                }
             }
         });
     }
 
+    /**
+     * Whether directory listings are cached on disk, to be shown before they are browsed again
+     */
+    protected boolean useListingCache() {
+        return false;
+    }
+
+    /**
+     * Save the browsed listing, and show it if it differs from the cached one being displayed.
+     * Called on the browser thread.
+     */
+    private void updateListingCache() {
+        final ArrayList<MediaLibraryItem> items = mBrowsedItems;
+        final List<ListingCache.Entry> cachedEntries = mCachedEntries;
+        mBrowsedItems = null;
+        mCachedEntries = null;
+        final String mrl = mCurrentMedia != null ? mCurrentMedia.getUri().toString() : Uri.parse(mMrl).toString();
+        final List<ListingCache.Entry> entries = toEntries(items);
+        if (cachedEntries != null && ListingCache.isSame(cachedEntries, entries))
+            return;
+        VLCApplication.runBackground(new Runnable() {
+            @Override
+            public void run() {
+                getListingCache().put(mrl, entries);
+            }
+        });
+        if (cachedEntries == null)
+            return;
+        // Positions have changed, sub-directories have to be probed again
+        cancelProbing();
+        mFoldersContentLists.clear();
+        mCurrentParsedPosition = 0;
+        publishItems(items);
+    }
+
+    private void publishItems(ArrayList<MediaLibraryItem> items) {
+        final ArrayList<MediaLibraryItem> visible = new ArrayList<>(items.size());
+        for (MediaLibraryItem item : items)
+            if (!item.getTitle().startsWith("."))
+                visible.add(item);
+        VLCApplication.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.update(visible);
+            }
+        });
+        mHandler.sendEmptyMessage(BrowserFragmentHandler.MSG_HIDE_LOADING);
+    }
+
+    private ArrayList<MediaLibraryItem> toItems(List<ListingCache.Entry> entries) {
+        final ArrayList<MediaLibraryItem> items = new ArrayList<>(entries.size());
+        for (ListingCache.Entry entry : entries)
+            items.add(getMediaWrapper(new MediaWrapper(Uri.parse(entry.mrl), 0L, entry.length, entry.type,
+                    null, entry.title, null, null, null, null, 0, 0, null, -2, -2, 0, 0, entry.lastModified)));
+        return items;
+    }
+
+    private static List<ListingCache.Entry> toEntries(List<MediaLibraryItem> items) {
+        final ArrayList<ListingCache.Entry> entries = new ArrayList<>(items.size());
+        for (MediaLibraryItem item : items) {
+            final MediaWrapper mw = (MediaWrapper) item;
+            final Uri uri = mw.getUri();
+            long size = -1L, lastModified = -1L;
+            if ("file".equals(uri.getScheme()) && mw.getType() != MediaWrapper.TYPE_DIR) {
+                final File file = new File(uri.getPath());
+                size = file.length();
+                lastModified = file.lastModified();
+            }
+            entries.add(new ListingCache.Entry(uri.toString(), mw.getTitle(), mw.getType(), mw.getLength(), size, lastModified));
+        }
+        return entries;
+    }
+
     protected void initMediaBrowser(MediaBrowser.EventListener listener) {
         if (mMediaBrowser == null)
             mMediaBrowser = new MediaBrowser(VLCInstance.get(), listener, mBrowserHandler);
@@ -458,6 +595,7 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
             menu.findItem(R.id.directory_view_play_audio).setVisible(type != MediaWrapper.TYPE_AUDIO);
             menu.findItem(R.id.directory_view_add_playlist).setVisible(type == MediaWrapper.TYPE_AUDIO);
             menu.findItem(R.id.directory_subtitles_download).setVisible(type == MediaWrapper.TYPE_VIDEO);
+            menu.findItem(R.id.directory_view_download).setVisible(this instanceof NetworkBrowserFragment);
         }
     }
 
@@ -525,6 +663,9 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
             case R.id.directory_subtitles_download:
                 MediaUtils.getSubs(getActivity(), mw);
                 return true;
+            case R.id.directory_view_download:
+                download(mw);
+                return true;
 //            case R.id.directory_view_hide_media:
 //                try {
 //                    if (new File(mw.getLocation()+"/.nomedia").createNewFile())
@@ -540,6 +681,19 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
         return false;
     }
 
+    /* Network files are saved in the public downloads directory */
+    private void download(MediaWrapper mw) {
+        final File directory = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+        directory.mkdirs();
+        String name = mw.getUri().getLastPathSegment();
+        if (TextUtils.isEmpty(name))
+            name = mw.getTitle();
+        // Existing files are kept, the download gets a new name
+        final DumpManager manager = DumpManager.getInstance();
+        manager.enqueue(mw.getUri(), manager.getUniqueDestination(directory, name).getPath());
+        UiTools.snacker(getView(), getString(R.string.download_started, mw.getTitle()));
+    }
+
     private void showMediaInfo(MediaWrapper mw) {
         Intent i = new Intent(getActivity(), InfoActivity.class);
         i.putExtra(InfoActivity.TAG_ITEM, mw);
@@ -562,109 +716,68 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
         MediaUtils.openList(getActivity(), mediaLocations, positionInPlaylist);
     }
 
-    ArrayList<MediaLibraryItem> currentMediaList = null;
     protected void parseSubDirectories() {
         if ((mRoot && this instanceof NetworkBrowserFragment) || mCurrentParsedPosition == -1 ||
                 mAdapter.isEmpty() || this instanceof FilePickerFragment)
             return;
-        currentMediaList = mAdapter.getAll();
+        final ArrayList<MediaLibraryItem> currentMediaList = mAdapter.getAll();
+        final int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        final int lastVisible = mLayoutManager.findLastVisibleItemPosition();
         runOnBrowserThread(new Runnable() {
             @Override
             public void run() {
                 mFoldersContentLists.clear();
-                initMediaBrowser(mFoldersBrowserListener);
                 mCurrentParsedPosition = 0;
-                MediaLibraryItem item;
-                MediaWrapper mw;
-                while (mCurrentParsedPosition < currentMediaList.size()) {
-                    item = currentMediaList.get(mCurrentParsedPosition);
-                    if (item.getItemType() == MediaLibraryItem.TYPE_STORAGE) {
-                        mw = new MediaWrapper(((Storage) item).getUri());
-                        mw.setType(MediaWrapper.TYPE_DIR);
-                    } else  if (item.getItemType() == MediaLibraryItem.TYPE_MEDIA){
-                        mw = (MediaWrapper) item;
-                    } else
-                        mw = null;
-                    if (mw != null){
-                        if (mw.getType() == MediaWrapper.TYPE_DIR || mw.getType() == MediaWrapper.TYPE_PLAYLIST){
-                            final Uri uri = mw.getUri();
-                            mMediaBrowser.browse(uri, 0);
-                            return;
-                        }
-                    }
-                    ++mCurrentParsedPosition;
-                }
+                if (mProber == null)
+                    mProber = new SubDirectoryProber(mBrowserHandler, mProberCallback);
+                mProber.setVisibleRange(firstVisible, lastVisible);
+                mProber.probe(currentMediaList);
             }
         });
     }
 
-    private MediaBrowser.EventListener mFoldersBrowserListener = new MediaBrowser.EventListener(){
-        ArrayList<MediaWrapper> directories = new ArrayList<>();
-        ArrayList<MediaWrapper> files = new ArrayList<>();
-
+    private final RecyclerView.OnScrollListener mScrollListener = new RecyclerView.OnScrollListener() {
         @Override
-        public void onMediaAdded(int index, final Media media) {
-            final int type = media.getType();
-            final MediaWrapper mw = getMediaWrapper(new MediaWrapper(media));
-            if (type == Media.Type.Directory)
-                directories.add(mw);
-            else if (type == Media.Type.File)
-                files.add(mw);
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            if (newState != RecyclerView.SCROLL_STATE_IDLE)
+                return;
+            final int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+            final int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+            runOnBrowserThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (mProber != null)
+                        mProber.setVisibleRange(firstVisible, lastVisible);
+                }
+            });
         }
+    };
 
+    private final SubDirectoryProber.Callback mProberCallback = new SubDirectoryProber.Callback() {
         @Override
-        public void onMediaRemoved(int index, Media media) {}
-
-        @Override
-        public void onBrowseEnd() {
-            if (currentMediaList.isEmpty() || getActivity() == null) {
-                mCurrentParsedPosition = -1;
-                releaseBrowser();
+        public void onDirectoryProbed(final int position, MediaLibraryItem item, SubDirectoryProber.Result result) {
+            if (getActivity() == null)
                 return;
-            }
-            final String holderText = getDescription(directories.size(), files.size());
-            MediaWrapper mw = null;
-
-            if (!TextUtils.equals(holderText, "")) {
-                MediaLibraryItem item = currentMediaList.get(mCurrentParsedPosition);
-                item.setDescription(holderText);
-                final int position = mCurrentParsedPosition;
-                VLCApplication.runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mAdapter.notifyItemChanged(position, holderText);
-                    }
-                });
-                directories.addAll(files);
-                mFoldersContentLists.put(mCurrentParsedPosition, new ArrayList<>(directories));
-            }
-            while (++mCurrentParsedPosition < currentMediaList.size()){ //skip media that are not browsable
-                MediaLibraryItem item = currentMediaList.get(mCurrentParsedPosition);
-                if (item.getItemType() == MediaLibraryItem.TYPE_MEDIA) {
-                    mw = (MediaWrapper) item;
-                    if (mw.getType() == MediaWrapper.TYPE_DIR || mw.getType() == MediaWrapper.TYPE_PLAYLIST)
-                        break;
-                } else if (item.getItemType() == MediaLibraryItem.TYPE_STORAGE) {
-                    mw = new MediaWrapper(((Storage) item).getUri());
-                    break;
-                } else
-                    mw = null;
-            }
-
-            if (mw != null) {
-                if (mCurrentParsedPosition < currentMediaList.size()) {
-                    mMediaBrowser.browse(mw.getUri(), 0);
-                } else {
-                    mCurrentParsedPosition = -1;
-                    currentMediaList = null;
-                    releaseBrowser();
+            final String holderText = getDescription(result.directories.size(), result.files.size());
+            if (TextUtils.equals(holderText, ""))
+                return;
+            item.setDescription(holderText);
+            VLCApplication.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    mAdapter.notifyItemChanged(position, holderText);
                 }
-            } else {
-                releaseBrowser();
-                currentMediaList = null;
-            }
-            directories .clear();
-            files.clear();
+            });
+            final ArrayList<MediaWrapper> content = new ArrayList<>(result.directories.size() + result.files.size());
+            content.addAll(result.directories);
+            for (MediaWrapper media : result.files)
+                content.add(getMediaWrapper(media));
+            mFoldersContentLists.put(position, content);
+        }
+
+        @Override
+        public void onProbeFinished() {
+            mCurrentParsedPosition = -1;
         }
 
         private String getDescription(int folderCount, int mediaFileCount) {
@@ -681,7 +794,7 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
                         R.plurals.mediafiles_quantity, mediaFileCount,
                         mediaFileCount);
             else if (folderCount == 0 && mediaFileCount == 0)
-                holderText = getString(R.string.directory_empty);
+                holderText = VLCApplication.getAppResources().getString(R.string.directory_empty);
             return holderText;
         }
     };
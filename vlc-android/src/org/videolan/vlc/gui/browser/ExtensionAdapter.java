@@ -86,7 +86,7 @@ public class ExtensionAdapter extends RecyclerView.Adapter<ExtensionAdapter.View
         Resources res = holder.itemView.getContext().getResources();
         vh.binding.setImage(new BitmapDrawable(res, BitmapFactory.decodeResource(res, getIconResId(item))));
         if (item.imageUri != null && (TextUtils.equals("http", item.imageUri.getScheme())))
-                AsyncImageLoader.LoadImage(new HttpImageLoader(item.getImageUri().toString(), holder.binding), null);
+                AsyncImageLoader.LoadImage(item.getImageUri().toString(), new HttpImageLoader(item.getImageUri().toString(), holder.binding), null);
     }
 
     private int getIconResId(VLCExtensionItem item) {
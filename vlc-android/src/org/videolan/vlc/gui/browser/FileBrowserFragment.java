@@ -65,6 +65,11 @@ public class FileBrowserFragment<T extends BaseBrowserAdapter> extends BaseBrows
         mRoot = mMrl == null;
     }
 
+    @Override
+    protected boolean useListingCache() {
+        return true;
+    }
+
     @Override
     protected Fragment createFragment() {
         return new FileBrowserFragment();
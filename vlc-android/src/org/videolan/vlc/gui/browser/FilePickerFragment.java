@@ -45,6 +45,11 @@ public class FilePickerFragment extends FileBrowserFragment {
 
     private static String[] rootDirectories = AndroidDevices.getMediaDirectories();
 
+    @Override
+    protected boolean useListingCache() {
+        return false;
+    }
+
     @Override
     protected Fragment createFragment() {
         return new FilePickerFragment();
@@ -77,6 +77,11 @@ public class NetworkBrowserFragment extends BaseBrowserFragment {
         }
     }
 
+    @Override
+    protected boolean useListingCache() {
+        return true;
+    }
+
     @Override
     protected Fragment createFragment() {
         return new NetworkBrowserFragment();
@@ -75,7 +75,7 @@ class StorageBrowserAdapter extends BaseBrowserAdapter {
     }
 
     private void removeDir(final String path) {
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runDatabase(new Runnable() {
             @Override
             public void run() {
                 VLCApplication.getMLInstance().removeFolder(path);
@@ -61,6 +61,11 @@ public class StorageBrowserFragment extends FileBrowserFragment implements Entry
         ROOT = AndroidDevices.EXTERNAL_PUBLIC_DIRECTORY;
     }
 
+    @Override
+    protected boolean useListingCache() {
+        return false;
+    }
+
     @Override
     protected Fragment createFragment() {
         return new StorageBrowserFragment();
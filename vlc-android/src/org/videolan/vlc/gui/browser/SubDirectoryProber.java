@@ -0,0 +1,335 @@
+/*****************************************************************************
+ * SubDirectoryProber.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.gui.browser;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.videolan.libvlc.Media;
+import org.videolan.libvlc.util.MediaBrowser;
+import org.videolan.medialibrary.media.MediaLibraryItem;
+import org.videolan.medialibrary.media.MediaWrapper;
+import org.videolan.medialibrary.media.Storage;
+import org.videolan.vlc.BuildConfig;
+import org.videolan.vlc.util.VLCInstance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Browses the sub-directories of a listing to get their content.
+ *
+ * Several directories are browsed at the same time, each with its own {@link MediaBrowser},
+ * with a cap per host so a single server is not flooded. Directories shown on screen
+ * are browsed first. Results are cached for a while, so going back to a directory does
+ * not browse its children again.
+ *
+ * Not thread-safe: all calls, and callbacks, happen on the browser thread of the
+ * given handler.
+ */
+class SubDirectoryProber {
+    private static final String TAG = "VLC/SubDirectoryProber";
+
+    private static final int MAX_CONCURRENT = 4;
+    private static final int MAX_PER_HOST = 2;
+    private static final long BROWSE_TIMEOUT = 30000L;
+    private static final long LOCAL_TTL = 30000L;
+    private static final long REMOTE_TTL = 5 * 60000L;
+
+    private static final LruCache<String, Result> sCache = new LruCache<>(512);
+
+    static class Result {
+        final ArrayList<MediaWrapper> directories;
+        final ArrayList<MediaWrapper> files;
+        final long time;
+
+        Result(ArrayList<MediaWrapper> directories, ArrayList<MediaWrapper> files) {
+            this.directories = directories;
+            this.files = files;
+            this.time = SystemClock.elapsedRealtime();
+        }
+    }
+
+    interface Callback {
+        void onDirectoryProbed(int position, MediaLibraryItem item, Result result);
+        void onProbeFinished();
+    }
+
+    private static class Task {
+        final int position;
+        final MediaLibraryItem item;
+        final Uri uri;
+        final String mrl;
+        final String host;
+
+        Task(int position, MediaLibraryItem item, Uri uri) {
+            this.position = position;
+            this.item = item;
+            this.uri = uri;
+            this.mrl = uri.toString();
+            this.host = uri.getScheme() + "://" + uri.getHost();
+        }
+
+        int getHostLimit() {
+            // Local storage has no server to spare
+            return "file".equals(uri.getScheme()) ? MAX_CONCURRENT : MAX_PER_HOST;
+        }
+    }
+
+    private final Handler mHandler;
+    private final Callback mCallback;
+    private final ArrayList<Worker> mWorkers = new ArrayList<>(MAX_CONCURRENT);
+    private final ArrayList<Task> mPending = new ArrayList<>();
+    /* Directories of the current listing which have no result yet, by mrl */
+    private final HashMap<String, Task> mTasks = new HashMap<>();
+    private final HashMap<String, Integer> mHostLoad = new HashMap<>();
+    private int mFirstVisible = 0, mLastVisible = Integer.MAX_VALUE;
+    private boolean mActive = false;
+
+    SubDirectoryProber(Handler handler, Callback callback) {
+        mHandler = handler;
+        mCallback = callback;
+    }
+
+    /**
+     * Get the content of the browsable items of a listing, replacing any previous one.
+     * Cached results are delivered right away.
+     */
+    void probe(List<MediaLibraryItem> items) {
+        mTasks.clear();
+        mPending.clear();
+        mActive = true;
+        for (int position = 0; position < items.size(); ++position) {
+            final MediaLibraryItem item = items.get(position);
+            final Uri uri = getBrowsableUri(item);
+            if (uri == null)
+                continue;
+            final Task task = new Task(position, item, uri);
+            final Result cached = getCached(task.mrl);
+            if (cached != null) {
+                mCallback.onDirectoryProbed(position, item, cached);
+                continue;
+            }
+            mTasks.put(task.mrl, task);
+            if (!isRunning(task.mrl))
+                mPending.add(task);
+        }
+        schedule();
+    }
+
+    /**
+     * Directories in this range of positions are browsed first
+     */
+    void setVisibleRange(int first, int last) {
+        if (first < 0 || last < first)
+            return;
+        mFirstVisible = first;
+        mLastVisible = last;
+    }
+
+    /**
+     * Stop all browsing, the prober can be used again afterwards
+     */
+    void cancel() {
+        mPending.clear();
+        mTasks.clear();
+        mHostLoad.clear();
+        for (Worker worker : mWorkers)
+            worker.release();
+        mWorkers.clear();
+        mActive = false;
+    }
+
+    static void clearCache() {
+        sCache.evictAll();
+    }
+
+    private static Uri getBrowsableUri(MediaLibraryItem item) {
+        if (item.getItemType() == MediaLibraryItem.TYPE_STORAGE)
+            return ((Storage) item).getUri();
+        if (item.getItemType() == MediaLibraryItem.TYPE_MEDIA) {
+            final MediaWrapper mw = (MediaWrapper) item;
+            if (mw.getType() == MediaWrapper.TYPE_DIR || mw.getType() == MediaWrapper.TYPE_PLAYLIST)
+                return mw.getUri();
+        }
+        return null;
+    }
+
+    private static Result getCached(String mrl) {
+        final Result result = sCache.get(mrl);
+        if (result == null)
+            return null;
+        final long ttl = mrl.startsWith("file://") ? LOCAL_TTL : REMOTE_TTL;
+        if (SystemClock.elapsedRealtime() - result.time > ttl) {
+            sCache.remove(mrl);
+            return null;
+        }
+        return result;
+    }
+
+    private boolean isRunning(String mrl) {
+        for (Worker worker : mWorkers)
+            if (worker.mTask != null && TextUtils.equals(worker.mTask.mrl, mrl))
+                return true;
+        return false;
+    }
+
+    private int getHostLoad(String host) {
+        final Integer load = mHostLoad.get(host);
+        return load != null ? load : 0;
+    }
+
+    /**
+     * @return the pending task to start next: on screen first, then right below, then above
+     */
+    private Task pollNext() {
+        int best = -1;
+        long bestScore = Long.MAX_VALUE;
+        for (int i = 0; i < mPending.size(); ++i) {
+            final Task task = mPending.get(i);
+            if (getHostLoad(task.host) >= task.getHostLimit())
+                continue;
+            final long score;
+            if (task.position < mFirstVisible)
+                score = Integer.MAX_VALUE + (long) (mFirstVisible - task.position);
+            else if (task.position > mLastVisible)
+                score = task.position - mLastVisible;
+            else
+                score = 0;
+            if (score < bestScore) {
+                bestScore = score;
+                best = i;
+                if (score == 0)
+                    break;
+            }
+        }
+        return best != -1 ? mPending.remove(best) : null;
+    }
+
+    private void schedule() {
+        int running = 0;
+        Worker idle = null;
+        for (Worker worker : mWorkers) {
+            if (worker.mTask != null)
+                ++running;
+            else
+                idle = worker;
+        }
+        while (running < MAX_CONCURRENT) {
+            final Task task = pollNext();
+            if (task == null)
+                break;
+            if (idle == null) {
+                idle = new Worker();
+                mWorkers.add(idle);
+            }
+            idle.start(task);
+            ++running;
+            idle = null;
+            for (Worker worker : mWorkers)
+                if (worker.mTask == null)
+                    idle = worker;
+        }
+        if (running == 0 && mPending.isEmpty()) {
+            for (Worker worker : mWorkers)
+                worker.release();
+            mWorkers.clear();
+            if (mActive) {
+                mActive = false;
+                mCallback.onProbeFinished();
+            }
+        }
+    }
+
+    private void onWorkerDone(Task task, Result result) {
+        mHostLoad.put(task.host, getHostLoad(task.host) - 1);
+        if (result != null) {
+            sCache.put(task.mrl, result);
+            // The listing may have changed since the browsing started
+            final Task current = mTasks.remove(task.mrl);
+            if (current != null)
+                mCallback.onDirectoryProbed(current.position, current.item, result);
+        } else
+            mTasks.remove(task.mrl);
+        schedule();
+    }
+
+    private class Worker implements MediaBrowser.EventListener, Runnable {
+        private final MediaBrowser mBrowser = new MediaBrowser(VLCInstance.get(), this, mHandler);
+        private ArrayList<MediaWrapper> mDirectories, mFiles;
+        private Task mTask;
+
+        void start(Task task) {
+            mTask = task;
+            mDirectories = new ArrayList<>();
+            mFiles = new ArrayList<>();
+            mHostLoad.put(task.host, getHostLoad(task.host) + 1);
+            mBrowser.browse(task.uri, 0);
+            mHandler.postDelayed(this, BROWSE_TIMEOUT);
+        }
+
+        void release() {
+            mHandler.removeCallbacks(this);
+            mTask = null;
+            mBrowser.release();
+        }
+
+        private void finish(boolean success) {
+            mHandler.removeCallbacks(this);
+            final Task task = mTask;
+            mTask = null;
+            if (task != null)
+                onWorkerDone(task, success ? new Result(mDirectories, mFiles) : null);
+        }
+
+        @Override
+        public void onMediaAdded(int index, Media media) {
+            if (mTask == null)
+                return;
+            final int type = media.getType();
+            if (type == Media.Type.Directory)
+                mDirectories.add(new MediaWrapper(media));
+            else if (type == Media.Type.File)
+                mFiles.add(new MediaWrapper(media));
+        }
+
+        @Override
+        public void onMediaRemoved(int index, Media media) {}
+
+        @Override
+        public void onBrowseEnd() {
+            finish(true);
+        }
+
+        /* Browsing timeout */
+        @Override
+        public void run() {
+            if (BuildConfig.DEBUG && mTask != null)
+                Log.d(TAG, "Browsing timed out: " + mTask.mrl);
+            finish(false);
+        }
+    }
+}
@@ -139,7 +139,7 @@ public class SavePlaylistDialog extends DialogFragment implements View.OnClickLi
     }
 
     private void savePlaylist() {
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runDatabase(new Runnable() {
             public void run() {
                 final String name = mEditText.getText().toString().trim();
                 boolean addTracks = !Tools.isArrayEmpty(mNewTrack);
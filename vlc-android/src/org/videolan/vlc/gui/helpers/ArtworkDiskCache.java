@@ -0,0 +1,309 @@
+/*****************************************************************************
+ * ArtworkDiskCache.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.gui.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import org.videolan.vlc.util.MurmurHash;
+import org.videolan.vlc.util.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Size bounded disk tier of the artwork cache.
+ *
+ * Entries are scaled covers compressed to JPEG, their file name is the hash of
+ * the cache key (artwork mrl + target width, see {@link BitmapCache#getKey(String, int)}).
+ * Access order is kept in a journal so LRU eviction survives process restarts.
+ */
+public class ArtworkDiskCache {
+    public final static String TAG = "VLC/ArtworkDiskCache";
+
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final String MAGIC = "vlc.artwork.journal 1";
+    private static final String CLEAN = "C";
+    private static final String READ = "R";
+    private static final String REMOVE = "D";
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private long mSize = 0L;
+    private int mRedundantOps = 0;
+    private Writer mJournalWriter;
+    /* file name -> file size, in access order */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+    private final AtomicInteger mEvictions = new AtomicInteger();
+
+    public ArtworkDiskCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    @WorkerThread
+    public synchronized boolean open() {
+        if (mJournalWriter != null)
+            return true;
+        if (!mDirectory.exists() && !mDirectory.mkdirs())
+            return false;
+        try {
+            readJournal();
+            if (mJournalWriter == null)
+                mJournalWriter = new BufferedWriter(new FileWriter(new File(mDirectory, JOURNAL), true));
+            trimToSize();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open journal, resetting cache", e);
+            deleteEntries();
+            try {
+                rebuildJournal();
+            } catch (IOException e1) {
+                Log.e(TAG, "Failed to rebuild journal", e1);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    @WorkerThread
+    public Bitmap get(String key) {
+        final File file = getFile(key);
+        synchronized (this) {
+            if (mJournalWriter == null || !mEntries.containsKey(file.getName())) {
+                mMisses.incrementAndGet();
+                return null;
+            }
+            appendJournal(READ, file.getName(), -1);
+        }
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        options.inSampleSize = 1;
+        final Bitmap bitmap = options.outWidth > 0 ? BitmapPool.decodeFile(file.getPath(), options) : null;
+        if (bitmap == null) {
+            remove(key);
+            mMisses.incrementAndGet();
+        } else
+            mHits.incrementAndGet();
+        return bitmap;
+    }
+
+    @WorkerThread
+    public void put(String key, Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled())
+            return;
+        final File file = getFile(key);
+        final File tmp = new File(mDirectory, file.getName() + ".tmp");
+        OutputStream out = null;
+        boolean written = false;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmp), 4096);
+            written = bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + key, e);
+        } finally {
+            Util.close(out);
+        }
+        synchronized (this) {
+            if (!written || mJournalWriter == null || !tmp.renameTo(file)) {
+                tmp.delete();
+                return;
+            }
+            final Long previous = mEntries.put(file.getName(), file.length());
+            if (previous != null)
+                mSize -= previous;
+            mSize += file.length();
+            appendJournal(CLEAN, file.getName(), file.length());
+            trimToSize();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        removeEntry(getFile(key).getName());
+    }
+
+    public synchronized void clear() {
+        deleteEntries();
+        try {
+            rebuildJournal();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to rebuild journal", e);
+        }
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    public int hitCount() {
+        return mHits.get();
+    }
+
+    public int missCount() {
+        return mMisses.get();
+    }
+
+    public int evictionCount() {
+        return mEvictions.get();
+    }
+
+    public synchronized String getStats() {
+        return "disk: " + mSize / 1024 + "/" + mMaxSize / 1024 + "kB, " + mEntries.size() + " entries, hits="
+                + mHits.get() + ", misses=" + mMisses.get() + ", evictions=" + mEvictions.get();
+    }
+
+    private File getFile(String key) {
+        final long hash = MurmurHash.hash64(key);
+        return new File(mDirectory, Long.toHexString(hash));
+    }
+
+    private void removeEntry(String name) {
+        final Long size = mEntries.remove(name);
+        if (size == null)
+            return;
+        mSize -= size;
+        new File(mDirectory, name).delete();
+        appendJournal(REMOVE, name, -1);
+    }
+
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && it.hasNext()) {
+            final Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            mSize -= eldest.getValue();
+            new File(mDirectory, eldest.getKey()).delete();
+            appendJournal(REMOVE, eldest.getKey(), -1);
+            mEvictions.incrementAndGet();
+        }
+    }
+
+    private void appendJournal(String op, String name, long size) {
+        if (mJournalWriter == null)
+            return;
+        try {
+            mJournalWriter.write(size >= 0 ? op + ' ' + name + ' ' + size + '\n' : op + ' ' + name + '\n');
+            mJournalWriter.flush();
+            if (!CLEAN.equals(op))
+                ++mRedundantOps;
+            if (mRedundantOps >= REDUNDANT_OP_COMPACT_THRESHOLD && mRedundantOps >= mEntries.size())
+                rebuildJournal();
+        } catch (IOException e) {
+            Log.w(TAG, "Journal write failed", e);
+        }
+    }
+
+    private void readJournal() throws IOException {
+        final File journal = new File(mDirectory, JOURNAL);
+        if (!journal.exists()) {
+            // Fresh cache, or files left by a previous cache format
+            deleteEntries();
+            rebuildJournal();
+            return;
+        }
+        BufferedReader reader = null;
+        int lines = 0;
+        try {
+            reader = new BufferedReader(new FileReader(journal));
+            if (!MAGIC.equals(reader.readLine()))
+                throw new IOException("Unexpected journal header");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ++lines;
+                final String[] parts = line.split(" ");
+                if (parts.length < 2)
+                    continue;
+                final String name = parts[1];
+                if (CLEAN.equals(parts[0]) && parts.length == 3) {
+                    final Long previous = mEntries.put(name, Long.parseLong(parts[2]));
+                    if (previous != null)
+                        mSize -= previous;
+                    mSize += Long.parseLong(parts[2]);
+                } else if (READ.equals(parts[0])) {
+                    mEntries.get(name);
+                } else if (REMOVE.equals(parts[0])) {
+                    final Long size = mEntries.remove(name);
+                    if (size != null)
+                        mSize -= size;
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupted journal");
+        } finally {
+            Util.close(reader);
+        }
+        mRedundantOps = lines - mEntries.size();
+    }
+
+    private void rebuildJournal() throws IOException {
+        Util.close(mJournalWriter);
+        final File tmp = new File(mDirectory, JOURNAL_TMP);
+        final Writer writer = new BufferedWriter(new FileWriter(tmp));
+        try {
+            writer.write(MAGIC);
+            writer.write('\n');
+            for (Map.Entry<String, Long> entry : mEntries.entrySet())
+                writer.write(CLEAN + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+        } finally {
+            Util.close(writer);
+        }
+        if (!tmp.renameTo(new File(mDirectory, JOURNAL)))
+            throw new IOException("Failed to replace journal");
+        mRedundantOps = 0;
+        mJournalWriter = new BufferedWriter(new FileWriter(new File(mDirectory, JOURNAL), true));
+    }
+
+    private void deleteEntries() {
+        mEntries.clear();
+        mSize = 0L;
+        final File[] files = mDirectory.listFiles();
+        if (files == null)
+            return;
+        for (File file : files)
+            if (!JOURNAL.equals(file.getName()))
+                file.delete();
+    }
+}
@@ -23,15 +23,18 @@
 
 package org.videolan.vlc.gui.helpers;
 
+import android.content.res.Resources;
 import android.databinding.BindingAdapter;
 import android.databinding.DataBindingUtil;
 import android.databinding.OnRebindCallback;
 import android.databinding.ViewDataBinding;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.support.annotation.Nullable;
 import android.support.v4.view.ViewCompat;
 import android.text.TextUtils;
 import android.view.View;
@@ -44,8 +47,11 @@ import org.videolan.vlc.BR;
 import org.videolan.vlc.R;
 import org.videolan.vlc.VLCApplication;
 import org.videolan.vlc.media.MediaGroup;
+import org.videolan.vlc.media.ThumbnailService;
 import org.videolan.vlc.util.HttpImageLoader;
 
+import java.io.File;
+
 public class AsyncImageLoader {
 
     public interface Callbacks {
@@ -69,7 +75,7 @@ public class AsyncImageLoader {
 
     @BindingAdapter({"imageUri"})
     public static void downloadIcon(final View v, final Uri imageUri) {
-        AsyncImageLoader.LoadImage(new CoverFetcher(null) {
+        AsyncImageLoader.LoadImage(imageUri.toString(), new CoverFetcher(null) {
             @Override
             public Bitmap getImage() {
                 return HttpImageLoader.downloadBitmap(imageUri.toString());
@@ -84,11 +90,16 @@ public class AsyncImageLoader {
 
     @BindingAdapter({"media"})
     public static void loadPicture(View v, MediaLibraryItem item) {
+        if (item != null && TextUtils.isEmpty(item.getArtworkMrl()) && isLocalVideo(item)) {
+            final ThumbnailFetcher fetcher = new ThumbnailFetcher(v, (MediaWrapper) item);
+            AsyncImageLoader.LoadImage(fetcher.getKey(), fetcher, v);
+            return;
+        }
         if (item == null || TextUtils.isEmpty(item.getArtworkMrl())
                 || item.getItemType() == MediaLibraryItem.TYPE_GENRE
                 || item.getItemType() == MediaLibraryItem.TYPE_PLAYLIST)
             return;
-        final Bitmap bitmap = BitmapCache.getInstance().getBitmapFromMemCache(item.getArtworkMrl());
+        final Bitmap bitmap = BitmapCache.getInstance().getBitmapFromMemCache(BitmapCache.getKey(Uri.decode(item.getArtworkMrl()), v.getWidth()));
         if (bitmap != null) {
             updateTargetImage(bitmap, v, DataBindingUtil.findBinding(v));
             return;
@@ -109,17 +120,22 @@ public class AsyncImageLoader {
                     item = mw;
             }
         }
-        AsyncImageLoader.LoadImage(new MLItemCoverFetcher(v, item), v);
+        final MLItemCoverFetcher fetcher = new MLItemCoverFetcher(v, item);
+        AsyncImageLoader.LoadImage(fetcher.getKey(), fetcher, v);
     }
 
     public static void LoadImage(final Callbacks cbs, final View target){
-        VLCApplication.runBackground(new Runnable() {
-            @Override
-            public void run() {
-                final Bitmap bitmap = cbs.getImage();
-                cbs.updateImage(bitmap, target);
-            }
-        });
+        LoadImage(null, cbs, target);
+    }
+
+    /**
+     * Load an image on the {@link ImageLoaderEngine}
+     * @param key image identifier, concurrent requests with the same key share the same loading
+     */
+    public static void LoadImage(String key, final Callbacks cbs, final View target){
+        final ImageLoaderEngine.Request request = ImageLoaderEngine.getInstance().load(key, cbs, target);
+        if (cbs instanceof CoverFetcher)
+            ((CoverFetcher) cbs).setRequest(request);
     }
 
     private static class MLItemCoverFetcher extends AsyncImageLoader.CoverFetcher {
@@ -132,6 +148,10 @@ public class AsyncImageLoader {
             width = v.getWidth();
         }
 
+        String getKey() {
+            return BitmapCache.getKey(Uri.decode(item.getArtworkMrl()), width);
+        }
+
         @Override
         public Bitmap getImage() {
             if (bindChanged)
@@ -149,6 +169,82 @@ public class AsyncImageLoader {
         }
     }
 
+    private static boolean isLocalVideo(MediaLibraryItem item) {
+        if (item.getItemType() != MediaLibraryItem.TYPE_MEDIA)
+            return false;
+        final MediaWrapper media = (MediaWrapper) item;
+        return media.getType() == MediaWrapper.TYPE_VIDEO && media.getUri() != null
+                && "file".equals(media.getUri().getScheme());
+    }
+
+    /* Videos without artwork get a thumbnail from the ThumbnailService */
+    private static class ThumbnailFetcher extends AsyncImageLoader.CoverFetcher implements ThumbnailService.Callback {
+        final MediaWrapper media;
+        final View target;
+        final int width, height;
+
+        ThumbnailFetcher(View v, MediaWrapper media) {
+            super(DataBindingUtil.findBinding(v));
+            this.media = media;
+            target = v;
+            final Resources res = VLCApplication.getAppResources();
+            width = res.getDimensionPixelSize(R.dimen.grid_card_thumb_width);
+            height = res.getDimensionPixelSize(R.dimen.grid_card_thumb_height);
+        }
+
+        String getKey() {
+            return BitmapCache.getKey("thumbnail:" + media.getLocation(), width);
+        }
+
+        @Override
+        public Bitmap getImage() {
+            if (bindChanged)
+                return null;
+            final ThumbnailService service = ThumbnailService.getInstance();
+            final File thumbnail = service.getCachedThumbnail(media, width, height);
+            if (thumbnail != null)
+                return decode(thumbnail);
+            // Delivered to onThumbnail once generated
+            service.request(media, width, height, this);
+            return null;
+        }
+
+        @Override
+        public void updateImage(Bitmap bitmap, View target) {
+            if (!bindChanged)
+                updateTargetImage(bitmap, target, binding);
+        }
+
+        @Override
+        public void onThumbnail(MediaWrapper media, @Nullable File thumbnail) {
+            if (thumbnail == null || bindChanged)
+                return;
+            updateTargetImage(decode(thumbnail), target, binding);
+        }
+
+        @Override
+        void cancel() {
+            super.cancel();
+            ThumbnailService.getInstance().cancel(this);
+        }
+
+        private Bitmap decode(File thumbnail) {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(thumbnail.getPath(), options);
+            if (options.outWidth <= 0 || options.outHeight <= 0)
+                return null;
+            options.inSampleSize = 1;
+            while (options.outWidth / (options.inSampleSize * 2) >= width
+                    && options.outHeight / (options.inSampleSize * 2) >= height)
+                options.inSampleSize *= 2;
+            final Bitmap bitmap = BitmapPool.decodeFile(thumbnail.getPath(), options);
+            if (bitmap != null)
+                BitmapCache.getInstance().addBitmapToMemCache(getKey(), bitmap);
+            return bitmap;
+        }
+    }
+
     private static void updateTargetImage(final Bitmap bitmap, final View target, final ViewDataBinding vdb) {
         if (bitmap == null || bitmap.getWidth() <= 1 || bitmap.getHeight() <= 1)
             return;
@@ -176,11 +272,15 @@ public class AsyncImageLoader {
 
     abstract static class CoverFetcher implements AsyncImageLoader.Callbacks {
         protected ViewDataBinding binding = null;
-        boolean bindChanged = false;
+        volatile boolean bindChanged = false;
+        private volatile ImageLoaderEngine.Request request = null;
         final OnRebindCallback<ViewDataBinding> rebindCallbacks = new OnRebindCallback<ViewDataBinding>() {
             @Override
             public boolean onPreBind(ViewDataBinding binding) {
                 bindChanged = true;
+                // View is recycled for another item, this image is no longer needed
+                cancel();
+                binding.removeOnRebindCallback(this);
                 return super.onPreBind(binding);
             }
 
@@ -195,6 +295,17 @@ public class AsyncImageLoader {
             }
         };
 
+        /* Stop loading, the view has been rebound */
+        void cancel() {
+            ImageLoaderEngine.getInstance().cancel(request);
+        }
+
+        void setRequest(ImageLoaderEngine.Request request) {
+            this.request = request;
+            if (bindChanged)
+                ImageLoaderEngine.getInstance().cancel(request);
+        }
+
         CoverFetcher(ViewDataBinding binding){
             if (binding != null) {
                 this.binding = binding;
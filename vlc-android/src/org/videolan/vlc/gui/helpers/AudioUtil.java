@@ -26,11 +26,11 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.provider.MediaStore;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
@@ -45,14 +45,9 @@ import org.videolan.vlc.util.AndroidDevices;
 import org.videolan.vlc.util.HttpImageLoader;
 import org.videolan.vlc.util.MurmurHash;
 import org.videolan.vlc.util.Permissions;
-import org.videolan.vlc.util.Util;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
-import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.security.MessageDigest;
@@ -77,6 +72,11 @@ public class AudioUtil {
      * Cover caching directory
      */
     private static AtomicReference<String> COVER_DIR = new AtomicReference<>();
+    /**
+     * Disk tier of the artwork cache, in COVER_DIR
+     */
+    private static final long DISK_CACHE_SIZE = 50 * 1024 * 1024;
+    private static volatile ArtworkDiskCache sDiskCache = null;
 //    /**
 //     * User-defined playlist storage directory
 //     */
@@ -150,11 +150,16 @@ public class AudioUtil {
                     if (!file.exists())
                         file.mkdirs();
                 }
+                final ArtworkDiskCache diskCache = new ArtworkDiskCache(new File(COVER_DIR.get()), DISK_CACHE_SIZE);
+                if (diskCache.open())
+                    sDiskCache = diskCache;
             }
         });
     }
 
     public static void clearCacheFolders() {
+        if (sDiskCache != null)
+            sDiskCache.clear();
         for(String path : Arrays.asList(ART_DIR.get(), COVER_DIR.get())) {
             File file = new File(path);
             if (file.exists())
@@ -162,6 +167,14 @@ public class AudioUtil {
         }
     }
 
+    /**
+     * @return the artwork disk cache, null until the cache folder is ready
+     */
+    @Nullable
+    public static ArtworkDiskCache getDiskCache() {
+        return sDiskCache;
+    }
+
     private static void deleteContent(File dir, boolean deleteDir) {
         if (dir.isDirectory()) {
             File[] files = dir.listFiles();
@@ -281,9 +294,9 @@ public class AudioUtil {
         return null;
     }
 
-    private static String getCoverCachePath(Context context, MediaWrapper media, int width) {
+    private static String getCoverCacheKey(Context context, MediaWrapper media, int width) {
         final int hash = MurmurHash.hash32(MediaUtils.getMediaArtist(context, media) + MediaUtils.getMediaAlbum(context, media));
-        return COVER_DIR.get() + (hash >= 0 ? "" + hash : "m" + (-hash)) + "_" + width;
+        return BitmapCache.getKey("cover:" + (hash >= 0 ? "" + hash : "m" + (-hash)), width);
     }
 
     public static Bitmap getCoverFromMemCache(Context context, MediaWrapper media, int width) {
@@ -291,7 +304,7 @@ public class AudioUtil {
 
         if (media != null && media.getArtist() != null && media.getAlbum() != null) {
             final BitmapCache cache = BitmapCache.getInstance();
-            cover = cache.getBitmapFromMemCache(getCoverCachePath(context, media, width));
+            cover = cache.getBitmapFromMemCache(getCoverCacheKey(context, media, width));
         }
         if (cover == null && media != null && !TextUtils.isEmpty(media.getArtworkURL()) && media.getArtworkURL().startsWith("http")) {
             cover = HttpImageLoader.getBitmapFromIconCache(media.getArtworkURL());
@@ -299,13 +312,26 @@ public class AudioUtil {
         return cover;
     }
 
+    /**
+     * Cached covers are returned right away, the others are resolved and decoded
+     * one at a time.
+     */
+    public static Bitmap getCover(Context context, MediaWrapper media, int width) {
+        if (width > 0 && media.getArtist() != null && media.getAlbum() != null) {
+            final Bitmap cover = BitmapCache.getInstance().getBitmapFromMemCache(getCoverCacheKey(context, media, width));
+            if (cover != null)
+                return cover;
+        }
+        return loadCover(context, media, width);
+    }
+
     @SuppressLint("NewApi")
-    public synchronized static Bitmap getCover(Context context, MediaWrapper media, int width) {
-        BitmapCache cache = BitmapCache.getInstance();
-        String coverPath = null;
+    private synchronized static Bitmap loadCover(Context context, MediaWrapper media, int width) {
+        final BitmapCache cache = BitmapCache.getInstance();
+        final ArtworkDiskCache diskCache = sDiskCache;
+        String coverPath;
         Bitmap cover = null;
-        String cachePath = null;
-        File cacheFile = null;
+        String cacheKey = null;
 
         if (width <= 0) {
             Log.e(TAG, "Invalid cover width requested");
@@ -319,24 +345,25 @@ public class AudioUtil {
         try {
             // try to load from cache
             if (media.getArtist() != null && media.getAlbum() != null) {
-                cachePath = getCoverCachePath(context, media, width);
+                cacheKey = getCoverCacheKey(context, media, width);
 
                 // try to get the cover from the LRUCache first
-                cover = cache.getBitmapFromMemCache(cachePath);
+                cover = cache.getBitmapFromMemCache(cacheKey);
                 if (cover != null)
                     return cover;
 
                 // try to get the cover from the storage cache
-                cacheFile = new File(cachePath);
-                if (cacheFile.exists()) {
-                    if (cacheFile.length() > 0)
-                        coverPath = cachePath;
+                if (diskCache != null) {
+                    cover = diskCache.get(cacheKey);
+                    if (cover != null) {
+                        cache.addBitmapToMemCache(cacheKey, cover);
+                        return cover;
+                    }
                 }
-            } else
+            }
 
             // try to get it from VLC
-            if (coverPath == null || !cacheFile.exists())
-                coverPath = getCoverFromVlc(context, media);
+            coverPath = getCoverFromVlc(context, media);
 
             // try to get the cover from android MediaStore
             if (coverPath == null || !(new File(coverPath)).exists())
@@ -347,12 +374,13 @@ public class AudioUtil {
                 coverPath = getCoverFromFolder(media);
 
             // read (and scale?) the bitmap
-            cover = readCoverBitmap(coverPath, width);
+            cover = decodeCoverBitmap(coverPath, width);
 
             // store cover into both cache
-            if (cachePath != null) {
-                writeBitmap(cover, cachePath);
-                cache.addBitmapToMemCache(cachePath, cover);
+            if (cacheKey != null && cover != null) {
+                if (diskCache != null)
+                    diskCache.put(cacheKey, cover);
+                cache.addBitmapToMemCache(cacheKey, cover);
             }
 
         } catch (Exception e) {
@@ -361,23 +389,33 @@ public class AudioUtil {
         return cover;
     }
 
-    private static void writeBitmap(Bitmap bitmap, String path) throws IOException {
-        OutputStream out = null;
-        try {
-            File file = new File(path);
-            if (file.exists() && file.length() > 0)
-                return;
-            out = new BufferedOutputStream(new FileOutputStream(file), 4096);
-            if (bitmap != null)
-                bitmap.compress(CompressFormat.JPEG, 90, out);
-        } catch (Exception e) {
-            Log.e(TAG, "writeBitmap failed : "+ e.getMessage());
-        } finally {
-            Util.close(out);
+    /**
+     * Read a cover, scaled for the given width, through the memory and disk caches
+     * @param path cover path or file:// mrl
+     * @param width target width, 0 to keep the original size
+     */
+    public static Bitmap readCoverBitmap(String path, int width) {
+        if (path == null)
+            return null;
+        final BitmapCache cache = BitmapCache.getInstance();
+        final String key = BitmapCache.getKey(path, width);
+        Bitmap cover = cache.getBitmapFromMemCache(key);
+        if (cover != null)
+            return cover;
+        // Original size covers are not worth a disk copy
+        final ArtworkDiskCache diskCache = width > 0 ? sDiskCache : null;
+        if (diskCache != null)
+            cover = diskCache.get(key);
+        if (cover == null) {
+            cover = decodeCoverBitmap(path, width);
+            if (cover != null && diskCache != null)
+                diskCache.put(key, cover);
         }
+        cache.addBitmapToMemCache(key, cover);
+        return cover;
     }
 
-    public static Bitmap readCoverBitmap(String path, int width) {
+    private static Bitmap decodeCoverBitmap(String path, int width) {
         if (path == null)
             return null;
         if (path.startsWith("file"))
@@ -399,9 +437,8 @@ public class AudioUtil {
                     options.inSampleSize = options.inSampleSize * 2;
             }
 
-            // Decode the file (with memory allocation this time)
-            cover = BitmapFactory.decodeFile(path, options);
-            BitmapCache.getInstance().addBitmapToMemCache(path, cover);
+            // Decode the file, in a pooled bitmap if possible
+            cover = BitmapPool.decodeFile(path, options);
         }
         return cover;
     }
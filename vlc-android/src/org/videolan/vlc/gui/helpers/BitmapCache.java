@@ -22,6 +22,7 @@ package org.videolan.vlc.gui.helpers;
 
 import android.annotation.TargetApi;
 import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
@@ -34,17 +35,30 @@ import org.videolan.libvlc.util.AndroidUtil;
 import org.videolan.vlc.R;
 import org.videolan.vlc.VLCApplication;
 
-import java.lang.ref.SoftReference;
+import java.util.IdentityHashMap;
 
+/**
+ * Memory tier of the artwork cache.
+ * Bitmaps are strongly held and accounted by their real allocation size, the
+ * disk tier ({@link ArtworkDiskCache}) is only hit on a miss here.
+ * Evicted bitmaps may still be displayed, so they are not given to the {@link BitmapPool},
+ * except the ones released with {@link #releaseUnused(Bitmap)} and never read since.
+ */
 public class BitmapCache {
 
     public final static String TAG = "VLC/BitmapCache";
     private final static boolean LOG_ENABLED = false;
 
-    private static final String CONE_KEY = "res:"+ R.drawable.cone;
-    private static final String CONE_O_KEY = "res:"+ R.drawable.ic_cone_o;
     private static BitmapCache mInstance;
-    private final LruCache<String, CacheableBitmap> mMemCache;
+    private final LruCache<String, Bitmap> mMemCache;
+
+    private static final class Usage {
+        /* Number of keys the bitmap is cached with */
+        int keys = 0;
+        boolean handedOut = false, released = false;
+    }
+    /* Usage of each cached bitmap, also the lock of cache reads and writes */
+    private final IdentityHashMap<Bitmap, Usage> mUsages = new IdentityHashMap<>();
 
     public synchronized static BitmapCache getInstance() {
         if (mInstance == null)
@@ -66,36 +80,89 @@ public class BitmapCache {
 
         Log.i(TAG, "LRUCache size set to " + cacheSize);
 
-        mMemCache = new LruCache<String, CacheableBitmap>(cacheSize) {
+        mMemCache = new LruCache<String, Bitmap>(cacheSize) {
+
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return getBitmapSize(value);
+            }
 
             @Override
-            protected int sizeOf(String key, CacheableBitmap value) {
-                return value.getSize();
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                onRemoved(oldValue);
             }
         };
     }
 
-    public synchronized Bitmap getBitmapFromMemCache(String key) {
-        final CacheableBitmap cacheableBitmap = mMemCache.get(key);
-        if (cacheableBitmap == null)
-            return null;
-        Bitmap b = cacheableBitmap.get();
-        if (b == null){
-            mMemCache.remove(key);
+    /**
+     * Build the cache key of an artwork scaled for a given width
+     * @param mrl the artwork mrl, or any unique identifier of the source image
+     * @param width target width, 0 if the bitmap is not scaled
+     */
+    public static String getKey(String mrl, int width) {
+        return width > 0 ? mrl + "_" + width : mrl;
+    }
+
+    public Bitmap getBitmapFromMemCache(String key) {
+        if (key == null)
             return null;
+        final Bitmap b;
+        synchronized (mUsages) {
+            b = mMemCache.get(key);
+            if (b != null && b.isRecycled()) {
+                mMemCache.remove(key);
+                return null;
+            }
+            // May be displayed from now on
+            final Usage usage = b != null ? mUsages.get(b) : null;
+            if (usage != null)
+                usage.handedOut = true;
         }
         if (LOG_ENABLED)
             Log.d(TAG, (b == null) ? "Cache miss" : "Cache found");
         return b;
     }
 
-    public synchronized void addBitmapToMemCache(String key, Bitmap bitmap) {
-        if (key != null && bitmap != null && getBitmapFromMemCache(key) == null) {
-            final CacheableBitmap cacheableBitmap = new CacheableBitmap(bitmap);
-            mMemCache.put(key, cacheableBitmap);
+    public void addBitmapToMemCache(String key, Bitmap bitmap) {
+        if (key == null || bitmap == null || bitmap.isRecycled())
+            return;
+        synchronized (mUsages) {
+            Usage usage = mUsages.get(bitmap);
+            if (usage == null) {
+                usage = new Usage();
+                mUsages.put(bitmap, usage);
+            } else
+                // Already cached, its use cannot be tracked anymore
+                usage.handedOut = true;
+            ++usage.keys;
+            mMemCache.put(key, bitmap);
         }
     }
 
+    /**
+     * The bitmap was loaded for requests which have all been cancelled, nothing displays it.
+     * Unless it is read from the cache meanwhile, it goes to the {@link BitmapPool} once evicted.
+     */
+    public void releaseUnused(Bitmap bitmap) {
+        synchronized (mUsages) {
+            final Usage usage = mUsages.get(bitmap);
+            if (usage != null && !usage.handedOut)
+                usage.released = true;
+        }
+    }
+
+    private void onRemoved(Bitmap bitmap) {
+        synchronized (mUsages) {
+            final Usage usage = mUsages.get(bitmap);
+            if (usage == null || --usage.keys > 0)
+                return;
+            mUsages.remove(bitmap);
+            if (!usage.released || usage.handedOut)
+                return;
+        }
+        BitmapPool.getInstance().put(bitmap);
+    }
+
     private Bitmap getBitmapFromMemCache(int resId) {
         return getBitmapFromMemCache("res:" + resId);
     }
@@ -104,10 +171,41 @@ public class BitmapCache {
         addBitmapToMemCache("res:" + resId, bitmap);
     }
 
-    public synchronized void clear() {
+    public void clear() {
         mMemCache.evictAll();
     }
 
+    /**
+     * Release memory according to {@link ComponentCallbacks2#onTrimMemory(int)} level
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE)
+            mMemCache.evictAll();
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)
+            mMemCache.trimToSize(mMemCache.maxSize() / 2);
+        if (LOG_ENABLED)
+            Log.d(TAG, "trimMemory(" + level + ") " + getStats());
+    }
+
+    public int hitCount() {
+        return mMemCache.hitCount();
+    }
+
+    public int missCount() {
+        return mMemCache.missCount();
+    }
+
+    public int evictionCount() {
+        return mMemCache.evictionCount();
+    }
+
+    public String getStats() {
+        return "mem: " + mMemCache.size() / 1024 + "/" + mMemCache.maxSize() / 1024 + "kB, "
+                + mMemCache.toString();
+    }
+
     public static Bitmap getFromResource(Resources res, int resId) {
         BitmapCache cache = BitmapCache.getInstance();
         Bitmap bitmap = cache.getBitmapFromMemCache(resId);
@@ -118,27 +216,12 @@ public class BitmapCache {
         return bitmap;
     }
 
-    private static class CacheableBitmap {
-        final int mSize;
-        final SoftReference<Bitmap> mReference;
-
-        CacheableBitmap(Bitmap bitmap){
-            mReference = new SoftReference<Bitmap>(bitmap);
-            mSize = bitmap == null ? 0 : bitmap.getRowBytes() * bitmap.getHeight();
-        }
-
-        public SoftReference<Bitmap> getReference(){
-            return mReference;
-        }
-
-        public Bitmap get(){
-            if (mReference != null)
-                return mReference.get();
-            return null;
-        }
-
-        public int getSize(){
-            return mSize;
-        }
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static int getBitmapSize(Bitmap bitmap) {
+        if (bitmap == null)
+            return 0;
+        if (AndroidUtil.isKitKatOrLater)
+            return bitmap.getAllocationByteCount();
+        return bitmap.getRowBytes() * bitmap.getHeight();
     }
 }
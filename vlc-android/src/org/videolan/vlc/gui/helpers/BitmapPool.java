@@ -0,0 +1,208 @@
+/*****************************************************************************
+ * BitmapPool.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.gui.helpers;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.support.annotation.Nullable;
+
+import org.videolan.libvlc.util.AndroidUtil;
+import org.videolan.vlc.VLCApplication;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable bitmaps given back by their owner once unreferenced, reused by
+ * decoders through {@link BitmapFactory.Options#inBitmap}.
+ * Bitmaps of the {@link BitmapCache} are shared and must never be put here: the cache
+ * gives back by itself the covers decoded for cancelled requests, once they are evicted.
+ *
+ * Bitmaps are bucketed by allocation size, a decode picks the smallest bucket
+ * big enough for it, without wasting more than twice the needed memory.
+ */
+public class BitmapPool {
+    public final static String TAG = "VLC/BitmapPool";
+
+    private static BitmapPool sInstance;
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+    private final int mMaxSize;
+    private int mSize = 0;
+    private int mHits = 0, mMisses = 0, mPuts = 0, mEvictions = 0;
+
+    public synchronized static BitmapPool getInstance() {
+        if (sInstance == null)
+            sInstance = new BitmapPool();
+        return sInstance;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private BitmapPool() {
+        final ActivityManager am = ((ActivityManager) VLCApplication.getAppContext().getSystemService(
+                Context.ACTIVITY_SERVICE));
+        final int memClass = AndroidUtil.isHoneycombOrLater ? am.getLargeMemoryClass() : am.getMemoryClass();
+        // 1/20th of the available memory, a quarter of the BitmapCache size
+        mMaxSize = 1024 * 1024 * memClass / 20;
+    }
+
+    /**
+     * Give a bitmap back to the pool, it must not be displayed anymore.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable())
+            return;
+        final int size = BitmapCache.getBitmapSize(bitmap);
+        if (size > mMaxSize / 2)
+            return;
+        ArrayDeque<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.push(bitmap);
+        mSize += size;
+        ++mPuts;
+        trimToSize(mMaxSize);
+    }
+
+    @Nullable
+    private synchronized Bitmap get(BitmapFactory.Options options) {
+        final int sampleSize = Math.max(options.inSampleSize, 1);
+        final int byteCount = (options.outWidth / sampleSize) * (options.outHeight / sampleSize)
+                * BitmapUtil.getBytesPerPixel(options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888);
+        if (byteCount <= 0)
+            return null;
+        final Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.ceilingEntry(byteCount);
+        if (entry != null && entry.getKey() <= 2 * byteCount) {
+            final ArrayDeque<Bitmap> bucket = entry.getValue();
+            final Iterator<Bitmap> it = bucket.iterator();
+            while (it.hasNext()) {
+                final Bitmap candidate = it.next();
+                if (BitmapUtil.canUseForInBitmap(candidate, options)) {
+                    it.remove();
+                    if (bucket.isEmpty())
+                        mBuckets.remove(entry.getKey());
+                    mSize -= entry.getKey();
+                    ++mHits;
+                    return candidate;
+                }
+            }
+        }
+        ++mMisses;
+        return null;
+    }
+
+    /**
+     * Decode a file, reusing a pooled bitmap if possible.
+     * options bounds and inSampleSize must already be set.
+     */
+    @Nullable
+    public static Bitmap decodeFile(String path, BitmapFactory.Options options) {
+        prepareOptions(options);
+        Bitmap bitmap = null;
+        try {
+            bitmap = BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException ignored) {}
+        if (bitmap == null && options.inBitmap != null) {
+            // inBitmap rejected by the decoder, fallback to a fresh allocation
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(path, options);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decode a byte array, reusing a pooled bitmap if possible.
+     * options bounds and inSampleSize must already be set.
+     */
+    @Nullable
+    public static Bitmap decodeByteArray(byte[] data, BitmapFactory.Options options) {
+        prepareOptions(options);
+        Bitmap bitmap = null;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException ignored) {}
+        if (bitmap == null && options.inBitmap != null) {
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        return bitmap;
+    }
+
+    private static void prepareOptions(BitmapFactory.Options options) {
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        if (options.outWidth > 0 && options.outHeight > 0)
+            options.inBitmap = getInstance().get(options);
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)
+            clear();
+        else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+            synchronized (this) {
+                trimToSize(mMaxSize / 2);
+            }
+    }
+
+    /* Drop bitmaps from the largest buckets first */
+    private void trimToSize(int maxSize) {
+        while (mSize > maxSize && !mBuckets.isEmpty()) {
+            final Map.Entry<Integer, ArrayDeque<Bitmap>> last = mBuckets.lastEntry();
+            last.getValue().pollLast();
+            if (last.getValue().isEmpty())
+                mBuckets.remove(last.getKey());
+            mSize -= last.getKey();
+            ++mEvictions;
+        }
+    }
+
+    public synchronized float getHitRate() {
+        final int requests = mHits + mMisses;
+        return requests == 0 ? 0f : (float) mHits / requests;
+    }
+
+    public synchronized int hitCount() {
+        return mHits;
+    }
+
+    public synchronized int missCount() {
+        return mMisses;
+    }
+
+    public synchronized String getStats() {
+        return "pool: " + mSize / 1024 + "/" + mMaxSize / 1024 + "kB, hits=" + mHits + ", misses=" + mMisses
+                + ", hitRate=" + (int) (getHitRate() * 100) + "%, puts=" + mPuts + ", evictions=" + mEvictions;
+    }
+}
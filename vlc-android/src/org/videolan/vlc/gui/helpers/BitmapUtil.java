@@ -130,15 +130,14 @@ public class BitmapUtil {
         BitmapFactory.decodeFile(uri, options);
 
         if (options.outWidth > 0 && options.outHeight > 0) {
-            if (options.outWidth > width){
-                options.outWidth = width;
-                options.outHeight = height;
-            }
-            options.inJustDecodeBounds = false;
+            options.inSampleSize = 1;
+            while (options.outWidth / (options.inSampleSize * 2) >= width
+                    && options.outHeight / (options.inSampleSize * 2) >= height)
+                options.inSampleSize *= 2;
 
-            // Decode the file (with memory allocation this time)
+            // Decode the file, in a pooled bitmap if possible
             try {
-                cover = BitmapFactory.decodeFile(uri, options);
+                cover = BitmapPool.decodeFile(uri, options);
             } catch (OutOfMemoryError e) {
                 cover = null;
             }
@@ -0,0 +1,250 @@
+/*
+ * *************************************************************************
+ *  ImageLoaderEngine.java
+ * **************************************************************************
+ *  Copyright © 2017 VLC authors and VideoLAN
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *  ***************************************************************************
+ */
+
+package org.videolan.vlc.gui.helpers;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.support.annotation.Nullable;
+import android.support.v4.util.SimpleArrayMap;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dedicated scheduler for {@link AsyncImageLoader} requests.
+ *
+ * Last submitted requests are served first, so rows currently on screen get their
+ * artwork before the ones scrolled away. Requests for the same key share a single
+ * decode, and a request can be cancelled until its image is delivered.
+ */
+public class ImageLoaderEngine {
+    public final static String TAG = "VLC/ImageLoaderEngine";
+
+    private static final int WORKERS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int QUEUE_CAPACITY = 128;
+
+    private static ImageLoaderEngine sInstance;
+
+    private final Object mLock = new Object();
+    private final SimpleArrayMap<String, Task> mInFlight = new SimpleArrayMap<>();
+    private final LifoBlockingDeque mQueue = new LifoBlockingDeque(QUEUE_CAPACITY);
+    private final ThreadPoolExecutor mExecutor;
+
+    public synchronized static ImageLoaderEngine getInstance() {
+        if (sInstance == null)
+            sInstance = new ImageLoaderEngine();
+        return sInstance;
+    }
+
+    private ImageLoaderEngine() {
+        mExecutor = new ThreadPoolExecutor(WORKERS, WORKERS, 2, TimeUnit.SECONDS, mQueue, THREAD_FACTORY, mDropOldest);
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedule an image load
+     * @param key unique identifier of the image, requests with the same key are coalesced. Can be null.
+     * @return a handle to cancel this request
+     */
+    public Request load(@Nullable String key, AsyncImageLoader.Callbacks cbs, View target) {
+        final Request request = new Request(cbs, target);
+        synchronized (mLock) {
+            final Task running = key != null ? mInFlight.get(key) : null;
+            if (running != null && !running.mDone) {
+                request.mTask = running;
+                running.mRequests.add(request);
+                // Bring it back to the head of the queue, it is wanted again
+                if (!running.mStarted && mQueue.removeFirstOccurrence(running))
+                    mQueue.offerFirst(running);
+                return request;
+            }
+            final Task task = new Task(key);
+            request.mTask = task;
+            task.mRequests.add(request);
+            if (key != null)
+                mInFlight.put(key, task);
+        }
+        mExecutor.execute(request.mTask);
+        return request;
+    }
+
+    public void cancel(Request request) {
+        if (request == null)
+            return;
+        request.mCancelled = true;
+        final Task task = request.mTask;
+        if (task == null)
+            return;
+        synchronized (mLock) {
+            task.mRequests.remove(request);
+            if (!task.mStarted && task.mRequests.isEmpty()) {
+                mExecutor.remove(task);
+                task.mDone = true;
+                if (task.mKey != null && mInFlight.get(task.mKey) == task)
+                    mInFlight.remove(task.mKey);
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        return mQueue.size();
+    }
+
+    public static class Request {
+        final AsyncImageLoader.Callbacks mCallbacks;
+        final View mTarget;
+        volatile boolean mCancelled = false;
+        Task mTask;
+
+        Request(AsyncImageLoader.Callbacks cbs, View target) {
+            mCallbacks = cbs;
+            mTarget = target;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private class Task implements Runnable {
+        final String mKey;
+        final ArrayList<Request> mRequests = new ArrayList<>(1);
+        boolean mStarted = false, mDone = false;
+
+        Task(String key) {
+            mKey = key;
+        }
+
+        @Override
+        public void run() {
+            synchronized (mLock) {
+                if (mDone)
+                    return;
+                mStarted = true;
+            }
+            Bitmap bitmap = null;
+            Request loader;
+            // If the loading request has been cancelled meanwhile, let the next one try
+            while ((loader = nextRequest()) != null) {
+                bitmap = loader.mCallbacks.getImage();
+                if (bitmap != null || !loader.mCancelled)
+                    break;
+            }
+            final Request[] requests;
+            synchronized (mLock) {
+                mDone = true;
+                if (mKey != null && mInFlight.get(mKey) == this)
+                    mInFlight.remove(mKey);
+                requests = mRequests.toArray(new Request[mRequests.size()]);
+            }
+            boolean delivered = false;
+            for (Request request : requests)
+                if (!request.mCancelled) {
+                    request.mCallbacks.updateImage(bitmap, request.mTarget);
+                    delivered = true;
+                }
+            // Rows scrolled away during a fling, the cache can recycle this bitmap
+            if (!delivered && bitmap != null)
+                BitmapCache.getInstance().releaseUnused(bitmap);
+        }
+
+        private Request nextRequest() {
+            synchronized (mLock) {
+                for (Request request : mRequests)
+                    if (!request.mCancelled)
+                        return request;
+                return null;
+            }
+        }
+
+        /* Dropped from a full queue, its requests will be issued again on rebind */
+        void drop() {
+            synchronized (mLock) {
+                mDone = true;
+                if (mKey != null && mInFlight.get(mKey) == this)
+                    mInFlight.remove(mKey);
+            }
+        }
+    }
+
+    private final RejectedExecutionHandler mDropOldest = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown())
+                return;
+            final Runnable oldest = mQueue.pollLast();
+            if (oldest instanceof Task)
+                ((Task) oldest).drop();
+            executor.execute(r);
+        }
+    };
+
+    /* Newest tasks are put at the head of the queue */
+    private static class LifoBlockingDeque extends LinkedBlockingDeque<Runnable> {
+        LifoBlockingDeque(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            return offerFirst(runnable);
+        }
+
+        @Override
+        public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+            return offerFirst(runnable, timeout, unit);
+        }
+
+        @Override
+        public void put(Runnable runnable) throws InterruptedException {
+            putFirst(runnable);
+        }
+
+        @Override
+        public boolean add(Runnable runnable) {
+            addFirst(runnable);
+            return true;
+        }
+    }
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE);
+                    runnable.run();
+                }
+            }, "vlc-image-loader-" + mCount.incrementAndGet());
+        }
+    };
+}
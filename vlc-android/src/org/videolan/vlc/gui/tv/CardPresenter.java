@@ -78,7 +78,7 @@ public class CardPresenter extends Presenter {
 
         void updateCardViewImage(MediaLibraryItem mediaLibraryItem) {
             if (!TextUtils.isEmpty(mediaLibraryItem.getArtworkMrl()) && mediaLibraryItem.getArtworkMrl().startsWith("http")) {
-                AsyncImageLoader.LoadImage(new HttpImageLoader(mediaLibraryItem.getArtworkMrl()), mCardView);
+                AsyncImageLoader.LoadImage(mediaLibraryItem.getArtworkMrl(), new HttpImageLoader(mediaLibraryItem.getArtworkMrl()), mCardView);
             } else {
                 AsyncImageLoader.LoadImage(new CoverFetcher(mediaLibraryItem), mCardView);
             }
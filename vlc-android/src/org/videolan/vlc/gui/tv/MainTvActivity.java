@@ -174,7 +174,7 @@ public class MainTvActivity extends BaseTvActivity implements OnItemViewSelected
         else {
             updateBrowsers();
             updateNowPlayingCard();
-            VLCApplication.runBackground(new Runnable() {
+            VLCApplication.runDatabase(new Runnable() {
                 @Override
                 public void run() {
                     final MediaWrapper[] history = VLCApplication.getMLInstance().lastMediaPlayed();
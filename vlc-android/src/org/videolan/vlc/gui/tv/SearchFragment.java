@@ -77,7 +77,7 @@ public class SearchFragment extends android.support.v17.leanback.app.SearchFragm
         mRowsAdapter.clear();
         if (!TextUtils.isEmpty(words) && words.length() > 2) {
             mDelayedLoad.setSearchQuery(words);
-            VLCApplication.runBackground(mDelayedLoad);
+            VLCApplication.runDatabase(mDelayedLoad);
         }
     }
 
@@ -179,7 +179,7 @@ public class AudioPlayerActivity extends BaseTvActivity implements PlaybackServi
             if (TextUtils.equals(mCurrentCoverArt, mw.getArtworkMrl()))
                 return;
             mCurrentCoverArt = mw.getArtworkMrl();
-            VLCApplication.runBackground(new Runnable() {
+            VLCApplication.runCompute(new Runnable() {
                 @Override
                 public void run() {
                     final Bitmap cover = AudioUtil.readCoverBitmap(Uri.decode(mCurrentCoverArt), mCover.getWidth());
@@ -61,7 +61,7 @@ public class SongsBrowserFragment extends SortedBrowserFragment {
     }
 
     protected void sort(){
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runCompute(new Runnable() {
             @Override
             public void run() {
                 mMediaItemMap = new TreeMap<>(mMediaItemMap); //sort sections
@@ -75,7 +75,7 @@ public class SongsBrowserFragment extends SortedBrowserFragment {
 
     @Override
     public void onItemClicked(Presenter.ViewHolder viewHolder, final Object item, RowPresenter.ViewHolder viewHolder1, Row row) {
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runCompute(new Runnable() {
             @Override
             public void run() {
                 int position = 0;
@@ -165,7 +165,7 @@ public abstract class SortedBrowserFragment extends BrowseFragment implements Br
     }
 
     protected void sort(){
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runCompute(new Runnable() {
             @Override
             public void run() {
                 mMediaItemMap = new TreeMap<>(mMediaItemMap); //sort sections
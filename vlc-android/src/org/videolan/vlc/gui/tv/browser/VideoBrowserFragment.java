@@ -52,7 +52,7 @@ public class VideoBrowserFragment extends SortedBrowserFragment implements Media
 
     @Override
     protected void browse() {
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runDatabase(new Runnable() {
             @Override
             public void run() {
                 mVideos = VLCApplication.getMLInstance().getVideos();
@@ -76,10 +76,13 @@ import org.videolan.vlc.interfaces.IEventsHandler;
 import org.videolan.vlc.interfaces.ISortable;
 import org.videolan.vlc.media.MediaGroup;
 import org.videolan.vlc.media.MediaUtils;
+import org.videolan.vlc.media.PrefixGrouper;
 import org.videolan.vlc.util.FileUtils;
+import org.videolan.vlc.util.PagedQuery;
 import org.videolan.vlc.util.VLCInstance;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class VideoGridFragment extends MediaBrowserFragment implements MediaUpdatedCb, ISortable, SwipeRefreshLayout.OnRefreshListener, DevicesDiscoveryCb, MediaAddedCb, Filterable, IEventsHandler, View.OnClickListener {
@@ -93,6 +96,15 @@ public class VideoGridFragment extends MediaBrowserFragment implements MediaUpda
     protected TextView mTextViewNomedia;
     protected View mViewNomedia;
     protected String mGroup;
+    private PagedQuery<MediaWrapper> mVideosQuery;
+    /*
+     * Results are processed concurrently, a late one must not override a newer one:
+     * sequences are taken when the work is scheduled. Guarded by mGroupLock, except mAppliedSequence
+     */
+    private final Object mGroupLock = new Object();
+    private int mUpdateSequence = 0, mGroupedSequence = 0, mAppliedSequence = 0;
+    /* Grouping of the whole collection, null if not in grouped mode. Guarded by mGroupLock */
+    private PrefixGrouper<MediaWrapper> mGrouper = null;
     private View mSearchButtonView;
     private VideoListAdapter mVideoAdapter;
     private DividerItemDecoration mDividerItemDecoration;
@@ -368,6 +380,28 @@ public class VideoGridFragment extends MediaBrowserFragment implements MediaUpda
     }
 
     public void updateItems(final MediaWrapper[] mediaList) {
+        synchronized (mGroupLock) {
+            if (mGrouper != null) {
+                final PrefixGrouper<MediaWrapper> grouper = mGrouper;
+                final int sequence = ++mUpdateSequence;
+                VLCApplication.runCompute(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (mGroupLock) {
+                            if (grouper != mGrouper)
+                                return;
+                            for (MediaWrapper mw : mediaList)
+                                if (mw != null && mw.getType() == MediaWrapper.TYPE_VIDEO)
+                                    grouper.add(mw);
+                            // The grouper also holds the updates of later tasks which already ran
+                            mGroupedSequence = Math.max(mGroupedSequence, sequence);
+                            publish(getDisplayList(grouper), mGroupedSequence);
+                        }
+                    }
+                });
+                return;
+            }
+        }
         for (final MediaWrapper mw : mediaList)
             if (mw != null && mw.getType() == MediaWrapper.TYPE_VIDEO)
                 mHandler.post(new Runnable() {
@@ -383,28 +417,77 @@ public class VideoGridFragment extends MediaBrowserFragment implements MediaUpda
     public void updateList() {
         mHandler.sendEmptyMessageDelayed(SET_REFRESHING, 300);
 
-        VLCApplication.runBackground(new Runnable() {
+        if (mVideosQuery != null)
+            mVideosQuery.cancel();
+        // Grouping needs the whole collection, a group view can show its first items right away
+        final String group = mGroup;
+        // Pages are grouped as they are read, instead of grouping the whole collection at the end
+        final PrefixGrouper<MediaWrapper> pageGrouper = group == null ? MediaGroup.newGrouper() : null;
+        mVideosQuery = PagedQuery.videos(Medialibrary.SORT_DEFAULT, false, group != null && mVideoAdapter.isEmpty(),
+                new PagedQuery.Callback<MediaWrapper>() {
             @Override
-            public void run() {
-                final MediaWrapper[] itemList = mMediaLibrary.getVideos();
-                final ArrayList<MediaWrapper> displayList = new ArrayList<>();
-                if (mGroup != null || itemList.length <= 10) {
-                    for (MediaWrapper item : itemList) {
-                        String title = item.getTitle().substring(item.getTitle().toLowerCase().startsWith("the") ? 4 : 0);
-                        if (mGroup == null || title.toLowerCase().startsWith(mGroup.toLowerCase()))
-                            displayList.add(item);
-                    }
-                } else {
-                    for (MediaGroup item : MediaGroup.group(itemList))
-                        displayList.add(item.getMedia());
+            public void onItemsLoaded(final MediaWrapper[] itemList, final boolean complete) {
+                final int sequence;
+                synchronized (mGroupLock) {
+                    sequence = ++mUpdateSequence;
                 }
-                VLCApplication.runOnMainThread(new Runnable() {
+                VLCApplication.runCompute(new Runnable() {
                     @Override
                     public void run() {
-                        mVideoAdapter.update(displayList, false);
+                        final ArrayList<MediaWrapper> displayList = new ArrayList<>();
+                        PrefixGrouper<MediaWrapper> grouper = null;
+                        if (group != null || itemList.length <= 10) {
+                            for (MediaWrapper item : itemList) {
+                                String title = item.getTitle().substring(item.getTitle().toLowerCase().startsWith("the") ? 4 : 0);
+                                if (group == null || title.toLowerCase().startsWith(group.toLowerCase()))
+                                    displayList.add(item);
+                            }
+                        } else {
+                            // Not progressive without a group, all the pages have been grouped
+                            grouper = pageGrouper;
+                            displayList.addAll(getDisplayList(grouper));
+                        }
+                        synchronized (mGroupLock) {
+                            if (sequence < mGroupedSequence)
+                                return;
+                            mGroupedSequence = sequence;
+                            // Only complete collections are grouped, keep the grouper for updates
+                            if (complete)
+                                mGrouper = grouper;
+                            publish(displayList, sequence);
+                        }
+                        if (complete)
+                            mHandler.sendEmptyMessage(UNSET_REFRESHING);
                     }
                 });
-                mHandler.sendEmptyMessage(UNSET_REFRESHING);
+            }
+        });
+        if (pageGrouper != null)
+            mVideosQuery.setPageListener(new PagedQuery.PageListener<MediaWrapper>() {
+                @Override
+                public void onPageLoaded(MediaWrapper[] page) {
+                    pageGrouper.addAll(Arrays.asList(page));
+                }
+            });
+        mVideosQuery.execute();
+    }
+
+    private static ArrayList<MediaWrapper> getDisplayList(PrefixGrouper<MediaWrapper> grouper) {
+        final ArrayList<MediaWrapper> displayList = new ArrayList<>(grouper.getGroupCount());
+        for (PrefixGrouper.Group<MediaWrapper> group : grouper.getGroups())
+            displayList.add(MediaGroup.getDisplayMedia(grouper, group));
+        return displayList;
+    }
+
+    private void publish(final ArrayList<MediaWrapper> displayList, final int sequence) {
+        VLCApplication.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                if (sequence < mAppliedSequence)
+                    return;
+                mAppliedSequence = sequence;
+                mVideoAdapter.update(displayList, false);
+                updateEmptyView();
             }
         });
     }
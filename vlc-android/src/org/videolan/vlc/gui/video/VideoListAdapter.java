@@ -497,17 +497,24 @@ public class VideoListAdapter extends RecyclerView.Adapter<VideoListAdapter.View
     }
 
     private void internalUpdate(final ArrayList<MediaWrapper> items, final boolean detectMoves) {
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runCompute(new Runnable() {
             @Override
             public void run() {
                 Collections.sort(items, mVideoComparator);
-                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new VideoItemDiffCallback(mVideos, items), detectMoves);
+                final VideoItemDiffCallback callback = new VideoItemDiffCallback(mVideos, items);
+                // Next pages of a paged query only insert items, no need to diff
+                final int[] insertions = getInsertions(callback);
+                final DiffUtil.DiffResult result = insertions != null ? null : DiffUtil.calculateDiff(callback, detectMoves);
                 VLCApplication.runOnMainThread(new Runnable() {
                     @Override
                     public void run() {
                         mPendingUpdates.remove();
                         mVideos = items;
-                        result.dispatchUpdatesTo(VideoListAdapter.this);
+                        if (insertions != null) {
+                            for (int i = 0; i < insertions.length; i += 2)
+                                notifyItemRangeInserted(insertions[i], insertions[i + 1]);
+                        } else
+                            result.dispatchUpdatesTo(VideoListAdapter.this);
                         mEventsHandler.onUpdateFinished(null);
                         if (!mPendingUpdates.isEmpty())
                             internalUpdate(mPendingUpdates.peek(), true);
@@ -517,7 +524,43 @@ public class VideoListAdapter extends RecyclerView.Adapter<VideoListAdapter.View
         });
     }
 
-    private class VideoItemDiffCallback extends DiffUtil.Callback {
+    /**
+     * @return (position, count) pairs of the ranges inserted in the old list to get
+     * the new one, null if the update is not made of insertions only
+     */
+    @Nullable
+    private static int[] getInsertions(VideoItemDiffCallback callback) {
+        final int oldSize = callback.getOldListSize(), newSize = callback.getNewListSize();
+        if (oldSize == 0 || oldSize >= newSize)
+            return null;
+        final ArrayList<Integer> ranges = new ArrayList<>();
+        int oldPosition = 0, rangeStart = -1;
+        for (int newPosition = 0; newPosition < newSize; ++newPosition) {
+            if (oldPosition < oldSize && callback.areItemsTheSame(oldPosition, newPosition)) {
+                if (!callback.areContentsTheSame(oldPosition, newPosition))
+                    return null;
+                if (rangeStart != -1) {
+                    ranges.add(rangeStart);
+                    ranges.add(newPosition - rangeStart);
+                    rangeStart = -1;
+                }
+                ++oldPosition;
+            } else if (rangeStart == -1)
+                rangeStart = newPosition;
+        }
+        if (oldPosition < oldSize)
+            return null;
+        if (rangeStart != -1) {
+            ranges.add(rangeStart);
+            ranges.add(newSize - rangeStart);
+        }
+        final int[] insertions = new int[ranges.size()];
+        for (int i = 0; i < insertions.length; ++i)
+            insertions[i] = ranges.get(i);
+        return insertions;
+    }
+
+    private static class VideoItemDiffCallback extends DiffUtil.Callback {
         ArrayList<MediaWrapper> oldList, newList;
         VideoItemDiffCallback(ArrayList<MediaWrapper> oldList, ArrayList<MediaWrapper> newList) {
             this.oldList = oldList;
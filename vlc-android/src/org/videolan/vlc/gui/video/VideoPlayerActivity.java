@@ -125,6 +125,7 @@ import org.videolan.vlc.media.MediaUtils;
 import org.videolan.vlc.util.AndroidDevices;
 import org.videolan.vlc.util.FileUtils;
 import org.videolan.vlc.util.Permissions;
+import org.videolan.vlc.util.PlaybackTracer;
 import org.videolan.vlc.util.Strings;
 import org.videolan.vlc.util.SubtitlesDownloader;
 import org.videolan.vlc.util.VLCInstance;
@@ -777,6 +778,7 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
             vlcVout.setSubtitlesView(mPresentation.mSubtitlesSurfaceView);
         }
         vlcVout.addCallback(this);
+        PlaybackTracer.begin(PlaybackTracer.SPAN_SURFACES, PlaybackTracer.SOURCE_ANY);
         vlcVout.attachViews(this);
         mService.setVideoTrackEnabled(true);
 
@@ -960,7 +962,7 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
 
         if(data.hasExtra(FilePickerFragment.EXTRA_MRL)) {
             mService.addSubtitleTrack(Uri.parse(data.getStringExtra(FilePickerFragment.EXTRA_MRL)), true);
-            VLCApplication.runBackground(new Runnable() {
+            VLCApplication.runDatabase(new Runnable() {
                 @Override
                 public void run() {
                     MediaDatabase.getInstance().saveSlave(mService.getCurrentMediaLocation(), Media.Slave.Type.Subtitle, 2, data.getStringExtra(FilePickerFragment.EXTRA_MRL));
@@ -1712,7 +1714,7 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
         if (mService == null)
             return;
         if (mService.getRepeatType() == PlaybackService.REPEAT_ONE){
-            seek(0);
+            seek(0, mService.getLength(), false);
             return;
         }
         if (mService.expand(false) == 0) {
@@ -2619,9 +2621,16 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
     }
 
     private void seek(long position, long length) {
+        seek(position, length, true);
+    }
+
+    /**
+     * @param fromUser false when the player seeks on its own, the seek is not traced
+     */
+    protected void seek(long position, long length, boolean fromUser) {
         mForcedTime = position;
         mLastTime = mService.getTime();
-        mService.seek(position, length);
+        mService.seek(position, length, fromUser);
     }
 
     private void seekDelta(int delta) {
@@ -3605,6 +3614,7 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
 
     @Override
     public void onSurfacesCreated(IVLCVout vlcVout) {
+        PlaybackTracer.end(PlaybackTracer.SPAN_SURFACES);
     }
 
     @Override
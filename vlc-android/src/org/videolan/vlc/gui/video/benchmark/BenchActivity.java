@@ -239,7 +239,7 @@ public class BenchActivity extends ShallowVideoPlayer {
      */
     private void seekScreenshot() {
         if (mProjectionManager != null && mScreenshotCount < mTimestamp.size()) {
-            seek(mTimestamp.get(mScreenshotCount));
+            seek(mTimestamp.get(mScreenshotCount), mService.getLength(), false);
             /* Setting a timeout system */
             mTimeOut = new Runnable() {
                 @Override
@@ -43,7 +43,7 @@ public abstract class AudioMediaSwitcher extends FlingViewGroup {
     }
 
     public void updateMedia(final PlaybackService service) {
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runCompute(new Runnable() {
             @Override
             public void run() {
                 final Bitmap coverPrev = service.getCoverPrev(), coverCurrent = service.getCover(), coverNext = service.getCoverNext();
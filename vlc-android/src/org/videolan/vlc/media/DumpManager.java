@@ -0,0 +1,474 @@
+/*****************************************************************************
+ * DumpManager.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.media;
+
+import android.net.Uri;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.videolan.libvlc.util.Dumper;
+import org.videolan.vlc.VLCApplication;
+import org.videolan.vlc.util.HttpDownload;
+import org.videolan.vlc.util.Util;
+import org.videolan.vlc.util.VLCInstance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queue of media dumps to local files.
+ *
+ * A fixed number of dumps run at the same time, the others wait in the queue.
+ * HTTP sources are downloaded directly and resume where they stopped, other sources
+ * are dumped by libvlc with the shared instance and start over when interrupted.
+ * Unfinished dumps are saved and started again when the queue is loaded after a restart,
+ * failed HTTP downloads are given up after MAX_ATTEMPTS starts.
+ * Dumps are shown in notifications by the {@link DumpNotifier}.
+ */
+public class DumpManager {
+    public final static String TAG = "VLC/DumpManager";
+
+    private static final int MAX_CONCURRENT_DUMPS = 2;
+    private static final int MAGIC = 0x564c4344; // "VLCD"
+    private static final int VERSION = 2;
+    private static final int MAX_JOBS = 4096;
+    /* Failed HTTP downloads are resumed at most this number of times */
+    private static final int MAX_ATTEMPTS = 3;
+    /* Rate sampling of libvlc dumps, which only report buffering */
+    private static final long SAMPLE_INTERVAL = 500L;
+
+    public static final int STATE_QUEUED = 0;
+    public static final int STATE_RUNNING = 1;
+    public static final int STATE_DONE = 2;
+    public static final int STATE_FAILED = 3;
+    public static final int STATE_CANCELLED = 4;
+
+    private static DumpManager sInstance;
+
+    public interface Listener {
+        @MainThread
+        void onDumpProgress(Job job);
+        @MainThread
+        void onDumpFinished(Job job);
+    }
+
+    private static final AtomicInteger sNextJobId = new AtomicInteger();
+
+    public static class Job {
+        /* Unique in this process */
+        public final int id = sNextJobId.getAndIncrement();
+        public final String mrl;
+        public final String path;
+        volatile int state = STATE_QUEUED;
+        volatile long downloaded, total = -1L, bytesPerSecond, eta = -1L;
+        volatile HttpDownload download;
+        volatile Dumper dumper;
+        volatile boolean cancelled;
+        /* Failed runs, saved with the queue */
+        volatile int failures;
+        volatile boolean willResume;
+
+        Job(String mrl, String path, int failures) {
+            this.mrl = mrl;
+            this.path = path;
+            this.failures = failures;
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        public long getDownloaded() {
+            return downloaded;
+        }
+
+        /**
+         * @return -1 if unknown
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * @return remaining time in ms, -1 if unknown
+         */
+        public long getEta() {
+            return eta;
+        }
+
+        /**
+         * @return true if the dump failed but stays queued, to be resumed on next start
+         */
+        public boolean willResume() {
+            return willResume;
+        }
+
+        boolean isHttp() {
+            return mrl.startsWith("http://") || mrl.startsWith("https://");
+        }
+    }
+
+    private final File mFile;
+    private final ThreadPoolExecutor mExecutor;
+    private final Object mWriteLock = new Object();
+    /* Guarded by this */
+    private final ArrayList<Job> mJobs = new ArrayList<>();
+    /* Main thread only */
+    private final ArrayList<Listener> mListeners = new ArrayList<>();
+
+    public synchronized static DumpManager getInstance() {
+        if (sInstance == null) {
+            sInstance = new DumpManager(new File(VLCApplication.getAppContext().getFilesDir(), "dumps"));
+            // Registered before the restarted dumps report anything
+            final DumpManager manager = sInstance;
+            VLCApplication.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    manager.addListener(new DumpNotifier(VLCApplication.getAppContext()));
+                }
+            });
+            sInstance.load();
+        }
+        return sInstance;
+    }
+
+    private DumpManager(File file) {
+        mFile = file;
+        mExecutor = new ThreadPoolExecutor(MAX_CONCURRENT_DUMPS, MAX_CONCURRENT_DUMPS, 5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @MainThread
+    public void addListener(Listener listener) {
+        if (!mListeners.contains(listener))
+            mListeners.add(listener);
+    }
+
+    @MainThread
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Queue the dump of an Uri into a local file
+     */
+    public Job enqueue(Uri uri, String path) {
+        final Job job = new Job(uri.toString(), path, 0);
+        synchronized (this) {
+            mJobs.add(job);
+        }
+        save();
+        mExecutor.execute(new Task(job));
+        return job;
+    }
+
+    /**
+     * Stop a dump and remove it from the queue. Partial HTTP downloads are discarded.
+     */
+    public void cancel(final Job job) {
+        job.cancelled = true;
+        final HttpDownload download = job.download;
+        if (download != null)
+            download.cancel();
+        if (!job.isHttp())
+            // Dumpers are created and finish on the main thread, so this can't race with them
+            VLCApplication.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    final Dumper dumper = job.dumper;
+                    if (dumper != null) {
+                        job.dumper = null;
+                        dumper.cancel();
+                    }
+                }
+            });
+    }
+
+    public synchronized List<Job> getJobs() {
+        return new ArrayList<>(mJobs);
+    }
+
+    /**
+     * @return null if this job is not queued anymore
+     */
+    @Nullable
+    public synchronized Job getJob(int id) {
+        for (Job job : mJobs)
+            if (job.id == id)
+                return job;
+        return null;
+    }
+
+    /**
+     * @return a file of the directory which is neither an existing file nor the destination of a queued dump
+     */
+    public synchronized File getUniqueDestination(File directory, String name) {
+        final HashSet<String> reserved = new HashSet<>(mJobs.size());
+        for (Job job : mJobs)
+            reserved.add(job.path);
+        return HttpDownload.getUniqueDestination(directory, name, reserved);
+    }
+
+    private class Task implements Runnable {
+        final Job mJob;
+
+        Task(Job job) {
+            mJob = job;
+        }
+
+        @Override
+        public void run() {
+            if (mJob.cancelled) {
+                finish(mJob, STATE_CANCELLED);
+                return;
+            }
+            mJob.state = STATE_RUNNING;
+            final long start = SystemClock.elapsedRealtime();
+            final int state = mJob.isHttp() ? download() : dump();
+            if (state == STATE_DONE)
+                Log.i(TAG, "Dumped " + mJob.mrl + ": " + mJob.downloaded / 1024 + "KB in "
+                        + (SystemClock.elapsedRealtime() - start) + "ms");
+            finish(mJob, state);
+        }
+
+        private int download() {
+            final HttpDownload download = new HttpDownload(mJob.mrl, new File(mJob.path));
+            download.setListener(new HttpDownload.Listener() {
+                @Override
+                public void onProgress(HttpDownload d, long downloaded, long total, long bytesPerSecond, long eta) {
+                    mJob.downloaded = downloaded;
+                    mJob.total = total;
+                    mJob.bytesPerSecond = bytesPerSecond;
+                    mJob.eta = eta;
+                    notifyProgress(mJob);
+                }
+            });
+            mJob.download = download;
+            if (mJob.cancelled)
+                return STATE_CANCELLED;
+            try {
+                if (download.run())
+                    return STATE_DONE;
+                download.discard();
+                return STATE_CANCELLED;
+            } catch (IOException e) {
+                Log.w(TAG, "Download of " + mJob.mrl + " failed at " + download.getDownloaded() + " bytes", e);
+                return STATE_FAILED;
+            } finally {
+                mJob.download = null;
+            }
+        }
+
+        private int dump() {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final boolean[] success = new boolean[1];
+            VLCApplication.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (mJob.cancelled) {
+                        latch.countDown();
+                        return;
+                    }
+                    try {
+                        mJob.dumper = new Dumper(VLCInstance.get(), Uri.parse(mJob.mrl), mJob.path, new Dumper.Listener() {
+                            @Override
+                            public void onFinish(boolean result) {
+                                // The dumper releases itself
+                                mJob.dumper = null;
+                                success[0] = result;
+                                latch.countDown();
+                            }
+
+                            @Override
+                            public void onProgress(float progress) {}
+                        });
+                        mJob.dumper.start();
+                    } catch (IllegalStateException e) {
+                        Log.e(TAG, "LibVLC initialisation failed", e);
+                        latch.countDown();
+                    }
+                }
+            });
+            // libvlc doesn't report the dumped size, sample the output file instead
+            final File output = new File(mJob.path);
+            long lastSize = 0L, lastTime = SystemClock.elapsedRealtime();
+            try {
+                while (!latch.await(SAMPLE_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    if (mJob.cancelled) {
+                        // The dumper is cancelled on the main thread, it won't report
+                        return STATE_CANCELLED;
+                    }
+                    final long size = output.length(), now = SystemClock.elapsedRealtime();
+                    final long rate = (size - lastSize) * 1000L / Math.max(1L, now - lastTime);
+                    mJob.downloaded = size;
+                    mJob.bytesPerSecond = mJob.bytesPerSecond == 0L ? rate : (rate + 2 * mJob.bytesPerSecond) / 3;
+                    lastSize = size;
+                    lastTime = now;
+                    notifyProgress(mJob);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return STATE_FAILED;
+            }
+            if (mJob.cancelled)
+                return STATE_CANCELLED;
+            mJob.downloaded = output.length();
+            return success[0] ? STATE_DONE : STATE_FAILED;
+        }
+    }
+
+    private void finish(final Job job, int state) {
+        job.state = state;
+        job.eta = -1L;
+        boolean retry = false;
+        if (state == STATE_FAILED && job.isHttp()) {
+            // Failed HTTP downloads stay queued, they will be resumed on next start
+            retry = ++job.failures < MAX_ATTEMPTS;
+            job.willResume = retry;
+            if (!retry) {
+                Log.w(TAG, "Giving up " + job.mrl + " after " + job.failures + " attempts");
+                new File(job.path).delete();
+            }
+        } else if (state == STATE_CANCELLED && !job.isHttp())
+            new File(job.path).delete();
+        if (!retry)
+            synchronized (this) {
+                mJobs.remove(job);
+            }
+        save();
+        VLCApplication.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : mListeners)
+                    listener.onDumpFinished(job);
+            }
+        });
+    }
+
+    private void notifyProgress(final Job job) {
+        VLCApplication.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : mListeners)
+                    listener.onDumpProgress(job);
+            }
+        });
+    }
+
+    private void load() {
+        if (!mFile.exists())
+            return;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return;
+            final int count = in.readInt();
+            if (count < 0 || count > MAX_JOBS)
+                return;
+            final ArrayList<Job> jobs = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i)
+                jobs.add(new Job(in.readUTF(), in.readUTF(), in.readInt()));
+            synchronized (this) {
+                mJobs.addAll(jobs);
+            }
+            for (Job job : jobs)
+                mExecutor.execute(new Task(job));
+            if (count > 0)
+                Log.i(TAG, "Restarting " + count + " dumps");
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read dump queue", e);
+        } finally {
+            Util.close(in);
+        }
+    }
+
+    /* The whole queue is written each time, it is small and rarely modified */
+    private void save() {
+        VLCApplication.runBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mWriteLock) {
+                    final List<Job> jobs = getJobs();
+                    final File tmp = new File(mFile.getPath() + ".tmp");
+                    DataOutputStream out = null;
+                    try {
+                        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeInt(jobs.size());
+                        for (Job job : jobs) {
+                            out.writeUTF(job.mrl);
+                            out.writeUTF(job.path);
+                            out.writeInt(job.failures);
+                        }
+                        out.close();
+                        out = null;
+                        if (!tmp.renameTo(mFile))
+                            Log.w(TAG, "Could not save dump queue");
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not save dump queue", e);
+                    } finally {
+                        Util.close(out);
+                    }
+                }
+            }
+        });
+    }
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "vlc-dump-" + mCount.incrementAndGet());
+        }
+    };
+}
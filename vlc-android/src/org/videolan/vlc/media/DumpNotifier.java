@@ -0,0 +1,143 @@
+/*****************************************************************************
+ * DumpNotifier.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.media;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.text.format.Formatter;
+import android.util.SparseArray;
+
+import org.videolan.medialibrary.Tools;
+import org.videolan.vlc.R;
+import org.videolan.vlc.StartActivity;
+
+import java.io.File;
+
+/**
+ * One notification per dump of the {@link DumpManager}: progress with a cancel action,
+ * then the result.
+ */
+class DumpNotifier implements DumpManager.Listener {
+    public final static String TAG = "VLC/DumpNotifier";
+
+    private static final String ACTION_CANCEL_DUMP = "action_cancel_dump";
+    private static final String EXTRA_JOB_ID = "job_id";
+    /* Ids of the other notifications of the app are below */
+    private static final int NOTIFICATION_ID_BASE = 1000;
+    /* Notifications updated too often are dropped by the system */
+    private static final long UPDATE_INTERVAL = 1000L;
+
+    private final Context mContext;
+    private final NotificationManagerCompat mNotificationManager;
+    private final SparseArray<NotificationCompat.Builder> mBuilders = new SparseArray<>();
+    private final SparseArray<Long> mLastUpdates = new SparseArray<>();
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final DumpManager manager = DumpManager.getInstance();
+            final DumpManager.Job job = manager.getJob(intent.getIntExtra(EXTRA_JOB_ID, -1));
+            if (job != null)
+                manager.cancel(job);
+        }
+    };
+
+    DumpNotifier(Context context) {
+        mContext = context.getApplicationContext();
+        mNotificationManager = NotificationManagerCompat.from(mContext);
+        mContext.registerReceiver(mReceiver, new IntentFilter(ACTION_CANCEL_DUMP));
+    }
+
+    @MainThread
+    @Override
+    public void onDumpProgress(DumpManager.Job job) {
+        if (job.getState() != DumpManager.STATE_RUNNING)
+            return;
+        final long now = SystemClock.elapsedRealtime();
+        final Long lastUpdate = mLastUpdates.get(job.id);
+        if (lastUpdate != null && now - lastUpdate < UPDATE_INTERVAL)
+            return;
+        mLastUpdates.put(job.id, now);
+        NotificationCompat.Builder builder = mBuilders.get(job.id);
+        if (builder == null) {
+            final PendingIntent cancel = PendingIntent.getBroadcast(mContext, job.id,
+                    new Intent(ACTION_CANCEL_DUMP).putExtra(EXTRA_JOB_ID, job.id), PendingIntent.FLAG_UPDATE_CURRENT);
+            builder = newBuilder(job)
+                    .setSmallIcon(android.R.drawable.stat_sys_download)
+                    .setOngoing(true)
+                    .setOnlyAlertOnce(true)
+                    .addAction(R.drawable.ic_close_normal_w, mContext.getString(R.string.cancel), cancel);
+            mBuilders.put(job.id, builder);
+        }
+        final long total = job.getTotal(), downloaded = job.getDownloaded(), eta = job.getEta();
+        final String rate = Formatter.formatShortFileSize(mContext, job.getBytesPerSecond());
+        String text = total > 0L
+                ? mContext.getString(R.string.dump_progress, Formatter.formatShortFileSize(mContext, downloaded),
+                        Formatter.formatShortFileSize(mContext, total), rate)
+                : mContext.getString(R.string.dump_progress_unknown_size, Formatter.formatShortFileSize(mContext, downloaded), rate);
+        if (eta >= 0L)
+            text += "\n" + mContext.getString(R.string.dump_eta, Tools.millisToString(eta));
+        builder.setContentText(text)
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(text))
+                .setProgress(total > 0L ? 100 : 0, total > 0L ? (int) (100L * downloaded / total) : 0, total <= 0L);
+        mNotificationManager.notify(NOTIFICATION_ID_BASE + job.id, builder.build());
+    }
+
+    @MainThread
+    @Override
+    public void onDumpFinished(DumpManager.Job job) {
+        mBuilders.remove(job.id);
+        mLastUpdates.remove(job.id);
+        final int text;
+        switch (job.getState()) {
+            case DumpManager.STATE_DONE:
+                text = R.string.dump_complete;
+                break;
+            case DumpManager.STATE_FAILED:
+                text = job.willResume() ? R.string.dump_interrupted : R.string.dump_failed;
+                break;
+            default:
+                mNotificationManager.cancel(NOTIFICATION_ID_BASE + job.id);
+                return;
+        }
+        mNotificationManager.notify(NOTIFICATION_ID_BASE + job.id, newBuilder(job)
+                .setSmallIcon(job.getState() == DumpManager.STATE_DONE
+                        ? android.R.drawable.stat_sys_download_done : android.R.drawable.stat_notify_error)
+                .setContentText(mContext.getString(text))
+                .setAutoCancel(true)
+                .build());
+    }
+
+    private NotificationCompat.Builder newBuilder(DumpManager.Job job) {
+        return new NotificationCompat.Builder(mContext)
+                .setContentTitle(new File(job.path).getName())
+                .setContentIntent(PendingIntent.getActivity(mContext, 0, new Intent(mContext, StartActivity.class),
+                        PendingIntent.FLAG_UPDATE_CURRENT))
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+    }
+}
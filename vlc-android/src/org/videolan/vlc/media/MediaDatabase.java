@@ -27,10 +27,12 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.util.ArrayMap;
 import android.text.TextUtils;
 import android.util.Log;
@@ -45,6 +47,7 @@ import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -55,7 +58,14 @@ public class MediaDatabase {
 
     private static MediaDatabase instance;
 
-    private SQLiteDatabase mDb;
+    private final SQLiteDatabase mDb;
+    /* Compiled statements, by SQL. Guarded by this */
+    private final ArrayMap<String, SQLiteStatement> mStatements = new ArrayMap<>();
+    /* Writes waiting for the next commit, guarded by itself */
+    private final ArrayList<Runnable> mPendingWrites = new ArrayList<>();
+    private boolean mFlushScheduled = false;
+    /* Posted writes not committed yet, guarded by mPendingWrites */
+    private int mUncommitted = 0;
     private static final String DB_NAME = "vlc_database";
     private static final int DB_VERSION = 26;
     private static final int CHUNK_SIZE = 50;
@@ -154,6 +164,13 @@ public class MediaDatabase {
         // create or open database
         DatabaseHelper helper = new DatabaseHelper(context);
         this.mDb = helper.getWritableDatabase();
+        // Readers don't wait for the writer, and commits are cheaper
+        if (!mDb.enableWriteAheadLogging())
+            Log.w(TAG, "Write-ahead logging is not available");
+    }
+
+    private MediaDatabase(SQLiteDatabase db) {
+        mDb = db;
     }
 
     public synchronized static MediaDatabase getInstance() {
@@ -260,7 +277,7 @@ public class MediaDatabase {
             db.execSQL(query);
         }
 
-        private void createPlaylistTablesQuery(SQLiteDatabase db) {
+        private static void createPlaylistTablesQuery(SQLiteDatabase db) {
             String createPlaylistTableQuery = "CREATE TABLE IF NOT EXISTS " +
                     PLAYLIST_TABLE_NAME + " (" +
                     PLAYLIST_NAME + " VARCHAR(200) PRIMARY KEY NOT NULL);";
@@ -458,12 +475,100 @@ public class MediaDatabase {
         }
     }
 
+    /**
+     * Get a compiled statement, its bindings are cleared.
+     * Must be called with the instance lock held.
+     */
+    private SQLiteStatement getStatement(String sql) {
+        SQLiteStatement statement = mStatements.get(sql);
+        if (statement == null) {
+            statement = mDb.compileStatement(sql);
+            mStatements.put(sql, statement);
+        } else
+            statement.clearBindings();
+        return statement;
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null)
+            statement.bindNull(index);
+        else
+            statement.bindString(index, value);
+    }
+
+    /**
+     * Queue a write, it will be committed with the other pending ones in a single transaction
+     * on the database lane. The caller doesn't wait for the database.
+     */
+    private void postWrite(Runnable write) {
+        synchronized (mPendingWrites) {
+            mPendingWrites.add(write);
+            ++mUncommitted;
+            if (mFlushScheduled)
+                return;
+            mFlushScheduled = true;
+        }
+        VLCApplication.runDatabase(mFlushRunnable);
+    }
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushWrites();
+        }
+    };
+
+    /**
+     * Commit the queued writes. Synchronous writes call it first, so they are ordered
+     * after the writes posted before them, see also {@link #flushBeforeRead()}.
+     */
+    private synchronized void flushWrites() {
+        final Runnable[] writes;
+        synchronized (mPendingWrites) {
+            mFlushScheduled = false;
+            if (mPendingWrites.isEmpty())
+                return;
+            writes = mPendingWrites.toArray(new Runnable[mPendingWrites.size()]);
+            mPendingWrites.clear();
+        }
+        mDb.beginTransaction();
+        try {
+            for (Runnable write : writes) {
+                try {
+                    write.run();
+                } catch (SQLiteException e) {
+                    // Don't lose the rest of the batch
+                    Log.e(TAG, "Write failed", e);
+                }
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            synchronized (mPendingWrites) {
+                mUncommitted -= writes.length;
+            }
+        }
+    }
+
+    /**
+     * Called by reads, which don't take the instance lock: only wait for the writer
+     * if some writes are not committed yet, possibly being committed by another thread.
+     */
+    private void flushBeforeRead() {
+        synchronized (mPendingWrites) {
+            if (mUncommitted == 0)
+                return;
+        }
+        flushWrites();
+    }
+
     /**
      * Get all playlists in the database
      *
      * @return An array of all the playlist names
      */
-    public synchronized String[] getPlaylists() {
+    public String[] getPlaylists() {
+        flushBeforeRead();
         ArrayList<String> playlists = new ArrayList<String>();
         Cursor c = mDb.query(
                 PLAYLIST_TABLE_NAME,
@@ -490,6 +595,7 @@ public class MediaDatabase {
             return false;
 
         // Check if already exists
+        flushWrites();
         if(playlistExists(name))
             return false;
 
@@ -506,10 +612,17 @@ public class MediaDatabase {
      * @param name Unique name of the playlist
      */
     public synchronized void playlistDelete(String name) {
-        mDb.delete(PLAYLIST_TABLE_NAME, PLAYLIST_NAME + "=?",
-                new String[]{name});
-        mDb.delete(PLAYLIST_MEDIA_TABLE_NAME, PLAYLIST_MEDIA_PLAYLISTNAME
-                + "=?", new String[] { name });
+        flushWrites();
+        mDb.beginTransaction();
+        try {
+            mDb.delete(PLAYLIST_TABLE_NAME, PLAYLIST_NAME + "=?",
+                    new String[]{name});
+            mDb.delete(PLAYLIST_MEDIA_TABLE_NAME, PLAYLIST_MEDIA_PLAYLISTNAME
+                    + "=?", new String[] { name });
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
     }
 
     /**
@@ -518,7 +631,8 @@ public class MediaDatabase {
      * @param name Unique name of the playlist
      * @return true if playlist exists, false otherwise
      */
-    public synchronized boolean playlistExists(String name) {
+    public boolean playlistExists(String name) {
+        flushBeforeRead();
         // Check duplicates
         Cursor c = mDb.query(PLAYLIST_TABLE_NAME,
                 new String[] { PLAYLIST_NAME }, PLAYLIST_NAME + "= ?",
@@ -538,7 +652,8 @@ public class MediaDatabase {
      * @return Array containing MRLs of the playlist in order, or null on error
      */
     @Nullable
-    public synchronized String[] playlistGetItems(String playlistName) {
+    public String[] playlistGetItems(String playlistName) {
+        flushBeforeRead();
         if(!playlistExists(playlistName))
             return null;
 
@@ -571,13 +686,37 @@ public class MediaDatabase {
      * @param mrl MRL of the media
      */
     public synchronized void playlistInsertItem(String playlistName, int position, String mrl) {
-        playlistShiftItems(playlistName, position, 1);
+        playlistInsertItems(playlistName, position, Collections.singletonList(mrl));
+    }
 
-        ContentValues values = new ContentValues();
-        values.put(PLAYLIST_MEDIA_PLAYLISTNAME, playlistName);
-        values.put(PLAYLIST_MEDIA_MEDIALOCATION, mrl);
-        values.put(PLAYLIST_MEDIA_ORDER, position);
-        mDb.insert(PLAYLIST_MEDIA_TABLE_NAME, "NULL", values);
+    /**
+     * Insert items into playlistName, starting at the specified position.
+     * All rows are written in a single transaction.
+     *
+     * @param playlistName Unique name of the playlist
+     * @param position Position to insert the first item into
+     * @param mrls MRLs of the medias, in order
+     */
+    public synchronized void playlistInsertItems(String playlistName, int position, List<String> mrls) {
+        if (mrls.isEmpty())
+            return;
+        flushWrites();
+        mDb.beginTransaction();
+        try {
+            playlistShiftItems(playlistName, position, mrls.size());
+            final SQLiteStatement insert = getStatement("INSERT INTO " + PLAYLIST_MEDIA_TABLE_NAME + " ("
+                    + PLAYLIST_MEDIA_PLAYLISTNAME + "," + PLAYLIST_MEDIA_MEDIALOCATION + ","
+                    + PLAYLIST_MEDIA_ORDER + ") VALUES (?,?,?)");
+            for (String mrl : mrls) {
+                insert.bindString(1, playlistName);
+                insert.bindString(2, mrl);
+                insert.bindLong(3, position++);
+                insert.executeInsert();
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
     }
 
     /**
@@ -600,26 +739,14 @@ public class MediaDatabase {
      * @param position Position to start shifting at
      * @param factor Factor to shift the order by
      */
-    private synchronized void playlistShiftItems(String playlistName, int position, int factor) {
-        // Increment all media orders by 1 after the insert position
-        Cursor c = mDb.query(
-                PLAYLIST_MEDIA_TABLE_NAME,
-                new String[] { PLAYLIST_MEDIA_ID, PLAYLIST_MEDIA_ORDER },
-                PLAYLIST_MEDIA_PLAYLISTNAME + "=? AND " + PLAYLIST_MEDIA_ORDER + " >= ?",
-                new String[] { playlistName, String.valueOf(position) },
-                null, null,
-                PLAYLIST_MEDIA_ORDER + " ASC");
-        if (c != null) {
-            while (c.moveToNext()) {
-                ContentValues cv = new ContentValues();
-                int ii = c.getInt(c.getColumnIndex(PLAYLIST_MEDIA_ORDER)) + factor;
-                Log.d(TAG, "ii = " + ii);
-                cv.put(PLAYLIST_MEDIA_ORDER, ii /* i */);
-                mDb.update(PLAYLIST_MEDIA_TABLE_NAME, cv, PLAYLIST_MEDIA_ID + "=?",
-                        new String[]{c.getString(c.getColumnIndex(PLAYLIST_MEDIA_ID))});
-            }
-            c.close();
-        }
+    private void playlistShiftItems(String playlistName, int position, int factor) {
+        final SQLiteStatement shift = getStatement("UPDATE " + PLAYLIST_MEDIA_TABLE_NAME + " SET "
+                + PLAYLIST_MEDIA_ORDER + "=" + PLAYLIST_MEDIA_ORDER + "+? WHERE "
+                + PLAYLIST_MEDIA_PLAYLISTNAME + "=? AND " + PLAYLIST_MEDIA_ORDER + ">=?");
+        shift.bindLong(1, factor);
+        shift.bindString(2, playlistName);
+        shift.bindLong(3, position);
+        shift.executeUpdateDelete();
     }
 
     /**
@@ -629,12 +756,34 @@ public class MediaDatabase {
      * @param position Position to remove
      */
     public synchronized void playlistRemoveItem(String playlistName, int position) {
-        mDb.delete(PLAYLIST_MEDIA_TABLE_NAME,
-                PLAYLIST_MEDIA_PLAYLISTNAME + "=? AND " +
-                        PLAYLIST_MEDIA_ORDER + "=?",
-                new String[]{playlistName, Integer.toString(position)});
+        playlistRemoveItems(playlistName, position, 1);
+    }
 
-        playlistShiftItems(playlistName, position + 1, -1);
+    /**
+     * Removes count items, starting at the given position
+     *
+     * @param playlistName Unique name of the playlist
+     * @param position Position of the first item to remove
+     * @param count Number of items to remove
+     */
+    public synchronized void playlistRemoveItems(String playlistName, int position, int count) {
+        if (count <= 0)
+            return;
+        flushWrites();
+        mDb.beginTransaction();
+        try {
+            final SQLiteStatement delete = getStatement("DELETE FROM " + PLAYLIST_MEDIA_TABLE_NAME + " WHERE "
+                    + PLAYLIST_MEDIA_PLAYLISTNAME + "=? AND " + PLAYLIST_MEDIA_ORDER + ">=? AND "
+                    + PLAYLIST_MEDIA_ORDER + "<?");
+            delete.bindString(1, playlistName);
+            delete.bindLong(2, position);
+            delete.bindLong(3, position + count);
+            delete.executeUpdateDelete();
+            playlistShiftItems(playlistName, position + count, -count);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
     }
 
     /**
@@ -649,19 +798,24 @@ public class MediaDatabase {
         if(!playlistExists(playlistName) || playlistExists(newPlaylistName))
             return false;
 
-        // Update playlist table
-        ContentValues values = new ContentValues();
-        values.put(PLAYLIST_NAME, newPlaylistName);
-        mDb.update(PLAYLIST_TABLE_NAME, values, PLAYLIST_NAME + " =?",
-                new String[]{playlistName});
-
-        // Update playlist media table
-        values = new ContentValues();
-        values.put(PLAYLIST_MEDIA_PLAYLISTNAME, newPlaylistName);
-        mDb.update(PLAYLIST_MEDIA_TABLE_NAME, values,
-                PLAYLIST_MEDIA_PLAYLISTNAME + " =?",
-                new String[]{playlistName});
-
+        mDb.beginTransaction();
+        try {
+            // Update playlist table
+            ContentValues values = new ContentValues();
+            values.put(PLAYLIST_NAME, newPlaylistName);
+            mDb.update(PLAYLIST_TABLE_NAME, values, PLAYLIST_NAME + " =?",
+                    new String[]{playlistName});
+
+            // Update playlist media table
+            values = new ContentValues();
+            values.put(PLAYLIST_MEDIA_PLAYLISTNAME, newPlaylistName);
+            mDb.update(PLAYLIST_MEDIA_TABLE_NAME, values,
+                    PLAYLIST_MEDIA_PLAYLISTNAME + " =?",
+                    new String[]{playlistName});
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
         return true;
     }
 
@@ -674,11 +828,12 @@ public class MediaDatabase {
 
     /**
      * Add a new media to the database. The picture can only added by update.
+     * The write is queued, it doesn't wait for the database.
      * @param media which you like to add to the database
      */
-    public synchronized void addMedia(MediaWrapper media) {
+    public void addMedia(MediaWrapper media) {
 
-        ContentValues values = new ContentValues();
+        final ContentValues values = new ContentValues();
 
         values.put(MEDIA_LOCATION, media.getUri().toString());
         values.put(MEDIA_TIME, media.getTime());
@@ -698,8 +853,12 @@ public class MediaDatabase {
         values.put(MEDIA_DISCNUMBER, media.getDiscNumber());
         values.put(MEDIA_LAST_MODIFIED, media.getLastModified());
 
-        mDb.replace(MEDIA_TABLE_NAME, "NULL", values);
-
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                mDb.replace(MEDIA_TABLE_NAME, "NULL", values);
+            }
+        });
     }
 
     /**
@@ -707,7 +866,8 @@ public class MediaDatabase {
      * @param location of the item (primary key)
      * @return True if the item exists, false if it does not
      */
-    public synchronized boolean mediaItemExists(Uri uri) {
+    public boolean mediaItemExists(Uri uri) {
+        flushBeforeRead();
         try {
             Cursor cursor = mDb.query(MEDIA_TABLE_NAME,
                     new String[] { MEDIA_LOCATION },
@@ -731,7 +891,7 @@ public class MediaDatabase {
      * @return list of File
      */
     @SuppressWarnings("unused")
-    private synchronized HashSet<File> getMediaFiles() {
+    private HashSet<File> getMediaFiles() {
 
         HashSet<File> files = new HashSet<File>();
         Cursor cursor;
@@ -754,13 +914,14 @@ public class MediaDatabase {
         return files;
     }
 
-    public synchronized Cursor queryMedia(String query){
+    public Cursor queryMedia(String query){
+        flushBeforeRead();
         String[] queryColumns = new String[]{MEDIA_LOCATION, MEDIA_TITLE};
         return mDb.query(MEDIA_VIRTUAL_TABLE_NAME, queryColumns, MEDIA_VIRTUAL_TABLE_NAME+" MATCH ?",
                 new String[]{query + "*"}, null, null, null, null);
     }
 
-    public synchronized ArrayList<String> searchMedia(String filter){
+    public ArrayList<String> searchMedia(String filter){
 
         ArrayList<String> mediaList = new ArrayList<String>();
         Cursor cursor = queryMedia(filter);
@@ -775,17 +936,22 @@ public class MediaDatabase {
         return mediaList;
     }
 
-    public synchronized ArrayMap<String, MediaWrapper> getMedias() {
+    /**
+     * Chunks are read with keyset pagination: each one starts after the last location of
+     * the previous one, instead of skipping all the previous rows with OFFSET.
+     */
+    public ArrayMap<String, MediaWrapper> getMedias() {
 
         Cursor cursor;
         ArrayMap<String, MediaWrapper> medias = new ArrayMap<String, MediaWrapper>();
-        int chunk_count = 0;
+        String last = "";
         int count;
 
+        flushBeforeRead();
         do {
             count = 0;
             cursor = mDb.rawQuery(String.format(Locale.US,
-                    "SELECT %s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s FROM %s LIMIT %d OFFSET %d",
+                    "SELECT %s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s FROM %s WHERE %s>? ORDER BY %s LIMIT %d",
                     MEDIA_LOCATION, //0 string
                     MEDIA_TIME, //1 long
                     MEDIA_LENGTH, //2 long
@@ -804,14 +970,16 @@ public class MediaDatabase {
                     MEDIA_DISCNUMBER, //15 int
                     MEDIA_LAST_MODIFIED, //16 long
                     MEDIA_TABLE_NAME,
-                    CHUNK_SIZE,
-                    chunk_count * CHUNK_SIZE), null);
+                    MEDIA_LOCATION,
+                    MEDIA_LOCATION,
+                    CHUNK_SIZE), new String[] { last });
 
             if (cursor != null) {
                 if (cursor.moveToFirst()) {
                     try {
                         do {
-                            final Uri uri = AndroidUtil.LocationToUri(cursor.getString(0));
+                            last = cursor.getString(0);
+                            final Uri uri = AndroidUtil.LocationToUri(last);
                             MediaWrapper media = new MediaWrapper(uri,
                                     cursor.getLong(1),      // MEDIA_TIME
                                     cursor.getLong(2),      // MEDIA_LENGTH
@@ -840,54 +1008,55 @@ public class MediaDatabase {
 
                 cursor.close();
             }
-            chunk_count++;
         } while (count == CHUNK_SIZE);
 
         return medias;
     }
 
-    public synchronized ArrayMap<String, Long> getVideoTimes() {
+    public ArrayMap<String, Long> getVideoTimes() {
 
         Cursor cursor;
         ArrayMap<String, Long> times = new ArrayMap<String, Long>();
-        int chunk_count = 0;
+        String last = "";
         int count;
 
+        flushBeforeRead();
         do {
             count = 0;
             cursor = mDb.rawQuery(String.format(Locale.US,
-                    "SELECT %s,%s FROM %s WHERE %s=%d LIMIT %d OFFSET %d",
+                    "SELECT %s,%s FROM %s WHERE %s=%d AND %s>? ORDER BY %s LIMIT %d",
                     MEDIA_LOCATION, //0 string
                     MEDIA_TIME, //1 long
                     MEDIA_TABLE_NAME,
                     MEDIA_TYPE,
                     MediaWrapper.TYPE_VIDEO,
-                    CHUNK_SIZE,
-                    chunk_count * CHUNK_SIZE), null);
+                    MEDIA_LOCATION,
+                    MEDIA_LOCATION,
+                    CHUNK_SIZE), new String[] { last });
 
             if (cursor != null) {
                 if (cursor.moveToFirst()) {
                     do {
-                        String location = cursor.getString(0);
+                        last = cursor.getString(0);
                         long time = cursor.getLong(1);
-                        times.put(location, time);
+                        times.put(last, time);
                         count++;
                     } while (cursor.moveToNext());
                 }
 
                 cursor.close();
             }
-            chunk_count++;
         } while (count == CHUNK_SIZE);
 
         return times;
     }
 
-    public synchronized MediaWrapper getMedia(Uri uri) {
+    public MediaWrapper getMedia(Uri uri) {
 
         Cursor cursor;
         MediaWrapper media = null;
 
+        flushBeforeRead();
         try {
             cursor = mDb.query(
                     MEDIA_TABLE_NAME,
@@ -942,12 +1111,17 @@ public class MediaDatabase {
         return media;
     }
 
-    public synchronized Bitmap getPicture(Uri uri) {
+    /**
+     * @deprecated thumbnails are stored on disk by {@link ThumbnailService}
+     */
+    @Deprecated
+    public Bitmap getPicture(Uri uri) {
         /* Used for the lazy loading */
         Cursor cursor;
         Bitmap picture = null;
         byte[] blob;
 
+        flushBeforeRead();
         cursor = mDb.query(
                 MEDIA_TABLE_NAME,
                 new String[] { MEDIA_PICTURE },
@@ -973,18 +1147,16 @@ public class MediaDatabase {
     }
 
     public synchronized void removeMedia(Uri uri) {
-        try {
-            mDb.delete(MEDIA_TABLE_NAME, MEDIA_LOCATION + "=?", new String[]{uri.toString()});
-        } catch (SQLiteException e) {
-            // Some devices have weird issues with FTS table
-        }
+        flushWrites();
+        deleteMedia(uri);
     }
 
     public synchronized void removeMedias(Collection<Uri> uris) {
+        flushWrites();
         mDb.beginTransaction();
         try {
             for (Uri uri : uris)
-                removeMedia(uri);
+                deleteMedia(uri);
             mDb.setTransactionSuccessful();
         } finally {
             mDb.endTransaction();
@@ -992,23 +1164,38 @@ public class MediaDatabase {
     }
 
     public synchronized void removeMediaWrappers(Collection<MediaWrapper> mws) {
+        flushWrites();
         mDb.beginTransaction();
         try {
             for (MediaWrapper mw : mws)
-                removeMedia(mw.getUri());
+                deleteMedia(mw.getUri());
             mDb.setTransactionSuccessful();
         } finally {
             mDb.endTransaction();
         }
     }
 
-    public synchronized void updateMedia(Uri uri, int col,
+    private void deleteMedia(Uri uri) {
+        try {
+            final SQLiteStatement delete = getStatement("DELETE FROM " + MEDIA_TABLE_NAME
+                    + " WHERE " + MEDIA_LOCATION + "=?");
+            delete.bindString(1, uri.toString());
+            delete.executeUpdateDelete();
+        } catch (SQLiteException e) {
+            // Some devices have weird issues with FTS table
+        }
+    }
+
+    /**
+     * Update a field of a media. The write is queued, it doesn't wait for the database.
+     */
+    public void updateMedia(Uri uri, int col,
                                          Object object) {
 
         if (uri == null)
             return;
 
-        ContentValues values = new ContentValues();
+        final ContentValues values = new ContentValues();
         switch (col) {
             case INDEX_MEDIA_PICTURE:
                 if (object != null) {
@@ -1040,7 +1227,13 @@ public class MediaDatabase {
             default:
                 return;
         }
-        mDb.update(MEDIA_TABLE_NAME, values, MEDIA_LOCATION + "=?", new String[]{uri.toString()});
+        final String[] args = new String[]{uri.toString()};
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                mDb.update(MEDIA_TABLE_NAME, values, MEDIA_LOCATION + "=?", args);
+            }
+        });
     }
 
     /**
@@ -1049,6 +1242,7 @@ public class MediaDatabase {
      * @param path
      */
     public synchronized void addDir(String path) {
+        flushWrites();
         ContentValues values = new ContentValues();
         values.put(DIR_ROW_PATH, path);
         mDb.insert(DIR_TABLE_NAME, null, values);
@@ -1060,6 +1254,7 @@ public class MediaDatabase {
      * @param path
      */
     public synchronized void removeDir(String path) {
+        flushWrites();
         mDb.delete(DIR_TABLE_NAME, DIR_ROW_PATH + "=?", new String[]{path});
     }
 
@@ -1069,23 +1264,30 @@ public class MediaDatabase {
      * @param path
      */
     public synchronized void recursiveRemoveDir(String path) {
-        for(File f : getMediaDirs()) {
-            final String dirPath = f.getPath();
-            if(dirPath.startsWith(path))
-                mDb.delete(DIR_TABLE_NAME, DIR_ROW_PATH + "=?", new String[] { dirPath });
+        final List<File> dirs = getMediaDirs();
+        mDb.beginTransaction();
+        try {
+            for (File f : dirs) {
+                final String dirPath = f.getPath();
+                if (dirPath.startsWith(path))
+                    mDb.delete(DIR_TABLE_NAME, DIR_ROW_PATH + "=?", new String[] { dirPath });
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
         }
-
     }
 
     /**
      *
      * @return
      */
-    public synchronized List<File> getMediaDirs() {
+    public List<File> getMediaDirs() {
 
         List<File> paths = new ArrayList<File>();
         Cursor cursor;
 
+        flushBeforeRead();
         cursor = mDb.query(
                 DIR_TABLE_NAME,
                 new String[] { DIR_ROW_PATH },
@@ -1104,7 +1306,8 @@ public class MediaDatabase {
         return paths;
     }
 
-    private synchronized boolean mediaDirExists(String path) {
+    private boolean mediaDirExists(String path) {
+        flushBeforeRead();
         Cursor cursor = mDb.query(DIR_TABLE_NAME,
                 new String[] { DIR_ROW_PATH },
                 DIR_ROW_PATH + "=?",
@@ -1119,20 +1322,26 @@ public class MediaDatabase {
      *
      * @param key
      */
-    public synchronized void addSearchhistoryItem(String key) {
+    public void addSearchhistoryItem(final String key) {
         // set the format to sql date time
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
-        Date date = new Date();
-        ContentValues values = new ContentValues();
-        values.put(SEARCHHISTORY_KEY, key);
-        values.put(SEARCHHISTORY_DATE, dateFormat.format(date));
-
-        mDb.replace(SEARCHHISTORY_TABLE_NAME, null, values);
+        final String date = dateFormat.format(new Date());
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                final SQLiteStatement replace = getStatement("INSERT OR REPLACE INTO " + SEARCHHISTORY_TABLE_NAME
+                        + " (" + SEARCHHISTORY_KEY + "," + SEARCHHISTORY_DATE + ") VALUES (?,?)");
+                bindString(replace, 1, key);
+                replace.bindString(2, date);
+                replace.executeInsert();
+            }
+        });
     }
 
-    public synchronized ArrayList<String> getSearchhistory(int size) {
+    public ArrayList<String> getSearchhistory(int size) {
         ArrayList<String> history = new ArrayList<String>();
 
+        flushBeforeRead();
         Cursor cursor = mDb.query(SEARCHHISTORY_TABLE_NAME,
                 new String[]{SEARCHHISTORY_KEY},
                 null, null, null, null,
@@ -1148,23 +1357,30 @@ public class MediaDatabase {
     }
 
     public synchronized void clearSearchHistory() {
+        flushWrites();
         mDb.delete(SEARCHHISTORY_TABLE_NAME, null, null);
     }
 
-    public synchronized void addMrlhistoryItem(String uri) {
+    public void addMrlhistoryItem(final String uri) {
         // set the format to sql date time
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
-        Date date = new Date();
-        ContentValues values = new ContentValues();
-        values.put(MRL_URI, uri);
-        values.put(MRL_DATE, dateFormat.format(date));
-
-        mDb.replace(MRL_TABLE_NAME, null, values);
+        final String date = dateFormat.format(new Date());
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                final SQLiteStatement replace = getStatement("INSERT OR REPLACE INTO " + MRL_TABLE_NAME
+                        + " (" + MRL_URI + "," + MRL_DATE + ") VALUES (?,?)");
+                bindString(replace, 1, uri);
+                replace.bindString(2, date);
+                replace.executeInsert();
+            }
+        });
     }
 
-    public synchronized ArrayList<String> getMrlhistory() {
+    public ArrayList<String> getMrlhistory() {
         ArrayList<String> history = new ArrayList<>();
 
+        flushBeforeRead();
         Cursor cursor = mDb.query(MRL_TABLE_NAME,
                 new String[] { MRL_URI },
                 null, null, null, null,
@@ -1181,11 +1397,17 @@ public class MediaDatabase {
         return history;
     }
 
-    public synchronized void deleteMrlUri(String uri) {
-        mDb.delete(MRL_TABLE_NAME, MRL_URI + "=?", new String[]{uri});
+    public void deleteMrlUri(final String uri) {
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                mDb.delete(MRL_TABLE_NAME, MRL_URI + "=?", new String[]{uri});
+            }
+        });
     }
 
     public synchronized void clearMrlHistory() {
+        flushWrites();
         mDb.delete(MRL_TABLE_NAME, null, null);
     }
 
@@ -1194,15 +1416,21 @@ public class MediaDatabase {
      * Network favorites management
      */
 
-    public synchronized void addNetworkFavItem(Uri uri, String title, String iconUrl) {
-        ContentValues values = new ContentValues();
+    public void addNetworkFavItem(Uri uri, String title, String iconUrl) {
+        final ContentValues values = new ContentValues();
         values.put(NETWORK_FAV_URI, uri.toString());
         values.put(NETWORK_FAV_TITLE, Uri.encode(title));
         values.put(NETWORK_FAV_ICON_URL, Uri.encode(iconUrl));
-        mDb.replace(NETWORK_FAV_TABLE_NAME, null, values);
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                mDb.replace(NETWORK_FAV_TABLE_NAME, null, values);
+            }
+        });
     }
 
-    public synchronized boolean networkFavExists(Uri uri) {
+    public boolean networkFavExists(Uri uri) {
+        flushBeforeRead();
         Cursor cursor = mDb.query(NETWORK_FAV_TABLE_NAME,
                 new String[] { NETWORK_FAV_URI },
                 NETWORK_FAV_URI + "=?",
@@ -1216,10 +1444,11 @@ public class MediaDatabase {
             return false;
     }
 
-    public synchronized ArrayList<MediaWrapper> getAllNetworkFav() {
+    public ArrayList<MediaWrapper> getAllNetworkFav() {
         ArrayList<MediaWrapper> favs = new ArrayList<MediaWrapper>();
 
         MediaWrapper mw;
+        flushBeforeRead();
         Cursor cursor = mDb.query(NETWORK_FAV_TABLE_NAME,
                 new String[] { NETWORK_FAV_URI , NETWORK_FAV_TITLE, NETWORK_FAV_ICON_URL},
                 null, null, null, null, null);
@@ -1239,11 +1468,18 @@ public class MediaDatabase {
         return favs;
     }
 
-    public synchronized void deleteNetworkFav(Uri uri) {
-        mDb.delete(NETWORK_FAV_TABLE_NAME, NETWORK_FAV_URI + "=?", new String[] { uri.toString() });
+    public void deleteNetworkFav(Uri uri) {
+        final String[] args = new String[] { uri.toString() };
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                mDb.delete(NETWORK_FAV_TABLE_NAME, NETWORK_FAV_URI + "=?", args);
+            }
+        });
     }
 
     public synchronized void clearNetworkFavTable() {
+        flushWrites();
         mDb.delete(NETWORK_FAV_TABLE_NAME, null, null);
     }
 
@@ -1251,18 +1487,25 @@ public class MediaDatabase {
      * External subtitles management
      */
 
-    public synchronized void saveSubtitle(String path, String mediaName) {
+    public void saveSubtitle(final String path, final String mediaName) {
         if (TextUtils.isEmpty(path) || TextUtils.isEmpty(mediaName))
             return;
-        ContentValues values = new ContentValues();
-        values.put(EXTERNAL_SUBTITLES_URI, path);
-        values.put(EXTERNAL_SUBTITLES_MEDIA_NAME, mediaName);
-        mDb.replace(EXTERNAL_SUBTITLES_TABLE_NAME, null, values);
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                final SQLiteStatement replace = getStatement("INSERT OR REPLACE INTO " + EXTERNAL_SUBTITLES_TABLE_NAME
+                        + " (" + EXTERNAL_SUBTITLES_URI + "," + EXTERNAL_SUBTITLES_MEDIA_NAME + ") VALUES (?,?)");
+                replace.bindString(1, path);
+                replace.bindString(2, mediaName);
+                replace.executeInsert();
+            }
+        });
     }
 
-    public synchronized ArrayList<String> getSubtitles(String mediaName) {
+    public ArrayList<String> getSubtitles(String mediaName) {
         if (TextUtils.isEmpty(mediaName))
             return new ArrayList<>();
+        flushBeforeRead();
         Cursor cursor = mDb.query(EXTERNAL_SUBTITLES_TABLE_NAME,
                 new String[] {EXTERNAL_SUBTITLES_MEDIA_NAME, EXTERNAL_SUBTITLES_URI },
                 EXTERNAL_SUBTITLES_MEDIA_NAME + "=?",
@@ -1285,11 +1528,17 @@ public class MediaDatabase {
         return list;
     }
 
-    public synchronized void deleteSubtitle(String path) {
-        mDb.delete(EXTERNAL_SUBTITLES_TABLE_NAME, EXTERNAL_SUBTITLES_URI + "=?", new String[] { path });
+    public void deleteSubtitle(final String path) {
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                mDb.delete(EXTERNAL_SUBTITLES_TABLE_NAME, EXTERNAL_SUBTITLES_URI + "=?", new String[] { path });
+            }
+        });
     }
 
     public synchronized void clearExternalSubtitlesTable() {
+        flushWrites();
         mDb.delete(EXTERNAL_SUBTITLES_TABLE_NAME, null, null);
     }
 
@@ -1297,21 +1546,40 @@ public class MediaDatabase {
      * slaves management
      */
 
-    public synchronized void saveSlave(String mediaPath, int type, int priority, String uriString) {
-        ContentValues values = new ContentValues();
-        values.put(SLAVES_MEDIA_PATH, mediaPath);
-        values.put(SLAVES_TYPE, type);
-        values.put(SLAVES_PRIORITY, priority);
-        values.put(SLAVES_URI, uriString);
-        mDb.replace(SLAVES_TABLE_NAME, null, values);
+    public void saveSlave(final String mediaPath, final int type, final int priority, final String uriString) {
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                replaceSlave(mediaPath, type, priority, uriString);
+            }
+        });
+    }
+
+    public void saveSlaves(MediaWrapper mw) {
+        final String mrl = mw.getLocation();
+        final List<Media.Slave> slaves = new ArrayList<>(mw.getSlaves());
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                for (Media.Slave slave : slaves)
+                    replaceSlave(mrl, slave.type, slave.priority, slave.uri);
+            }
+        });
     }
 
-    public synchronized void saveSlaves(MediaWrapper mw) {
-        for (Media.Slave slave : mw.getSlaves())
-            saveSlave(mw.getLocation(), slave.type, slave.priority, slave.uri);
+    private void replaceSlave(String mediaPath, int type, int priority, String uriString) {
+        final SQLiteStatement replace = getStatement("INSERT OR REPLACE INTO " + SLAVES_TABLE_NAME + " ("
+                + SLAVES_MEDIA_PATH + "," + SLAVES_TYPE + "," + SLAVES_PRIORITY + "," + SLAVES_URI
+                + ") VALUES (?,?,?,?)");
+        bindString(replace, 1, mediaPath);
+        replace.bindLong(2, type);
+        replace.bindLong(3, priority);
+        bindString(replace, 4, uriString);
+        replace.executeInsert();
     }
 
-    public synchronized ArrayList<Media.Slave> getSlaves(String mrl) {
+    public ArrayList<Media.Slave> getSlaves(String mrl) {
+        flushBeforeRead();
         Cursor cursor = mDb.query(SLAVES_TABLE_NAME,
                 new String[] {SLAVES_MEDIA_PATH, SLAVES_TYPE, SLAVES_PRIORITY, SLAVES_URI },
                 SLAVES_MEDIA_PATH + "=?",
@@ -1331,11 +1599,17 @@ public class MediaDatabase {
         return list;
     }
 
-    public synchronized void deleteSlaves(String mrl) {
-        mDb.delete(SLAVES_TABLE_NAME, SLAVES_MEDIA_PATH + "=?", new String[] { mrl });
+    public void deleteSlaves(final String mrl) {
+        postWrite(new Runnable() {
+            @Override
+            public void run() {
+                mDb.delete(SLAVES_TABLE_NAME, SLAVES_MEDIA_PATH + "=?", new String[] { mrl });
+            }
+        });
     }
 
     public synchronized void clearSlavesTable() {
+        flushWrites();
         mDb.delete(SLAVES_TABLE_NAME, null, null);
     }
 
@@ -1344,9 +1618,32 @@ public class MediaDatabase {
      */
 
     public synchronized void emptyDatabase() {
+        flushWrites();
         mDb.delete(MEDIA_TABLE_NAME, null, null);
     }
 
+    /**
+     * @return a database holding only the playlist tables, in memory
+     */
+    @VisibleForTesting
+    static MediaDatabase createPlaylistDatabase() {
+        final SQLiteDatabase db = SQLiteDatabase.create(null);
+        DatabaseHelper.createPlaylistTablesQuery(db);
+        return new MediaDatabase(db);
+    }
+
+    @VisibleForTesting
+    synchronized void close() {
+        for (int i = 0; i < mStatements.size(); ++i)
+            mStatements.valueAt(i).close();
+        mStatements.clear();
+        mDb.close();
+    }
+
+    /**
+     * @deprecated thumbnails are stored on disk by {@link ThumbnailService}
+     */
+    @Deprecated
     public static void setPicture(MediaWrapper m, Bitmap p) {
         Log.d(TAG, "Setting new picture for " + m.getTitle());
         try {
@@ -28,6 +28,7 @@ import org.videolan.vlc.VLCApplication;
 import org.videolan.vlc.gui.helpers.BitmapUtil;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class MediaGroup extends MediaWrapper {
@@ -87,53 +88,57 @@ public class MediaGroup extends MediaWrapper {
         this.mTitle = title;
     }
 
-    public static List<MediaGroup> group(MediaWrapper[] mediaList) {
-        ArrayList<MediaGroup> groups = new ArrayList<>();
-        for (MediaWrapper media : mediaList)
-            insertInto(groups, media);
-        return groups;
-    }
+    private static final PrefixGrouper.Adapter<MediaWrapper> GROUPER_ADAPTER = new PrefixGrouper.Adapter<MediaWrapper>() {
+        @Override
+        public String getId(MediaWrapper item) {
+            return item.getLocation();
+        }
 
-    public static List<MediaGroup> group(List<MediaWrapper> mediaList) {
-        ArrayList<MediaGroup> groups = new ArrayList<>();
-        for (MediaWrapper media : mediaList)
-            insertInto(groups, media);
-        return groups;
-    }
+        @Override
+        public String getTitle(MediaWrapper item) {
+            return item.getTitle();
+        }
+    };
 
-    private static void insertInto(ArrayList<MediaGroup> groups, MediaWrapper media) {
+    /**
+     * @return an empty grouper, using the group length set in preferences
+     */
+    public static PrefixGrouper<MediaWrapper> newGrouper() {
         SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(VLCApplication.getAppContext());
         int minGroupLengthValue = Integer.valueOf(preferences.getString("video_min_group_length", "6"));
-        for (MediaGroup mediaGroup : groups) {
-            String group = mediaGroup.getTitle();
-            String title = media.getTitle();
-
-            //Handle titles starting with "The"
-            int groupOffset = group.toLowerCase().startsWith("the") ? 4 : 0;
-            if (title.toLowerCase().startsWith("the"))
-                title = title.substring(4);
-
-            // find common prefix
-            int commonLength = 0;
-            String groupTitle = group.substring(groupOffset);
-            int minLength = Math.min(groupTitle.length(), title.length());
-            while (commonLength < minLength
-                    && groupTitle.toLowerCase().charAt(commonLength) == title.toLowerCase().charAt(commonLength))
-                ++commonLength;
-
-            if (commonLength >= minGroupLengthValue && minGroupLengthValue != 0) {
-                if (commonLength == group.length()) {
-                    // same prefix name, just add
-                    mediaGroup.add(media);
-                } else {
-                    // not the same prefix, but close : merge
-                    mediaGroup.merge(media, group.substring(0, commonLength+groupOffset));
-                }
-                return;
-            }
+        return new PrefixGrouper<>(minGroupLengthValue, GROUPER_ADAPTER);
+    }
+
+    /**
+     * @return the media to show for a group: its single media, or a MediaGroup which is
+     * kept until the group changes
+     */
+    public static MediaWrapper getDisplayMedia(PrefixGrouper<MediaWrapper> grouper, PrefixGrouper.Group<MediaWrapper> group) {
+        if (group.size() == 1)
+            return group.getFirst();
+        MediaGroup mediaGroup = (MediaGroup) group.getTag();
+        if (mediaGroup == null) {
+            mediaGroup = new MediaGroup(group.getFirst());
+            for (int i = 1; i < group.size(); ++i)
+                mediaGroup.add(group.getItems().get(i));
+            mediaGroup.mTitle = grouper.getTitle(group);
+            group.setTag(mediaGroup);
         }
+        return mediaGroup;
+    }
+
+    public static List<MediaGroup> group(MediaWrapper[] mediaList) {
+        return group(Arrays.asList(mediaList));
+    }
 
-        // does not match any group, so add one
-        groups.add(new MediaGroup(media));
+    public static List<MediaGroup> group(List<MediaWrapper> mediaList) {
+        final PrefixGrouper<MediaWrapper> grouper = newGrouper();
+        grouper.addAll(mediaList);
+        final ArrayList<MediaGroup> groups = new ArrayList<>(grouper.getGroupCount());
+        for (PrefixGrouper.Group<MediaWrapper> group : grouper.getGroups()) {
+            final MediaWrapper media = getDisplayMedia(grouper, group);
+            groups.add(media instanceof MediaGroup ? (MediaGroup) media : new MediaGroup(media));
+        }
+        return groups;
     }
 }
@@ -1,7 +1,7 @@
 /*****************************************************************************
  * MediaWrapperList.java
  *****************************************************************************
- * Copyright © 2013-2015 VLC authors and VideoLAN
+ * Copyright © 2013-2017 VLC authors and VideoLAN
  * Copyright © 2013 Edward Wang
  *
  * This program is free software; you can redistribute it and/or modify it
@@ -25,56 +25,210 @@ import android.support.annotation.Nullable;
 
 import org.videolan.medialibrary.media.MediaWrapper;
 
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Thread-safe playback queue.
+ *
+ * Readers never lock: they work on an immutable {@link Snapshot} which is swapped
+ * on each modification. Writers are serialized, and their changes are delivered to
+ * listeners as a single change set, either per call or for a whole
+ * {@link #startBatch()}/{@link #endBatch()} section.
+ *
+ * Listeners are called without the list lock held, so they can take their own locks.
+ * Change sets are delivered in order, by one thread at a time: a modification made
+ * while another thread is delivering is delivered by that thread.
+ */
 public class MediaWrapperList {
     private static final String TAG = "VLC/MediaWrapperList";
 
     public interface EventListener {
-        void onItemAdded(int index, String mrl);
-        void onItemRemoved(int index, String mrl);
-        void onItemMoved(int indexBefore, int indexAfter, String mrl);
+        /**
+         * @param changes ordered list of changes, each index is relative to the list
+         *                state after the previous change was applied
+         */
+        void onItemsChanged(List<Change> changes);
+    }
+
+    public static final class Change {
+        public static final int ADDED = 0;
+        public static final int REMOVED = 1;
+        public static final int MOVED = 2;
+
+        public final int type;
+        public final int index;
+        /* Destination of a MOVED change, as given to move() */
+        public final int indexAfter;
+        public final String mrl;
+        public final MediaWrapper media;
+
+        Change(int type, int index, int indexAfter, MediaWrapper media) {
+            this.type = type;
+            this.index = index;
+            this.indexAfter = indexAfter;
+            this.media = media;
+            this.mrl = media.getLocation();
+        }
+
+        @Override
+        public String toString() {
+            return (type == ADDED ? "added " : type == REMOVED ? "removed " : "moved ") + index
+                    + (type == MOVED ? " -> " + indexAfter : "") + ": " + mrl;
+        }
     }
 
-    private static final int EVENT_ADDED = 0;
-    private static final int EVENT_REMOVED = 1;
-    private static final int EVENT_MOVED = 2;
+    /**
+     * Immutable state of the list.
+     *
+     * Appending does not copy the list: the new snapshot shares its array with the
+     * previous one, which never reads past its own size.
+     */
+    public static final class Snapshot extends AbstractList<MediaWrapper> {
+        private static final Snapshot EMPTY = new Snapshot(new MediaWrapper[0], 0);
+
+        private final MediaWrapper[] mItems;
+        private final int mSize;
+        private volatile HashMap<String, Integer> mIndex = null;
+
+        private Snapshot(MediaWrapper[] items, int size) {
+            mItems = items;
+            mSize = size;
+        }
+
+        @Override
+        public MediaWrapper get(int position) {
+            if (position >= mSize)
+                throw new IndexOutOfBoundsException("Index " + position + " out of range");
+            return mItems[position];
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
 
-    /* TODO: add locking */
-    private ArrayList<MediaWrapper> mInternalList;
-    private ArrayList<EventListener> mEventListenerList;
+        /**
+         * @return position of the first media with the given location, -1 if absent
+         */
+        @Override
+        public int indexOf(Object o) {
+            if (o instanceof String)
+                return indexOf((String) o);
+            return o instanceof MediaWrapper ? indexOf(((MediaWrapper) o).getLocation()) : -1;
+        }
 
-    public MediaWrapperList() {
-        mEventListenerList = new ArrayList<>();
-        mInternalList = new ArrayList<>();
+        public int indexOf(String mrl) {
+            HashMap<String, Integer> index = mIndex;
+            if (index == null) {
+                // Built on first lookup only, most snapshots are never searched
+                index = new HashMap<>(mSize * 4 / 3 + 1);
+                for (int i = mSize - 1; i >= 0; --i)
+                    index.put(mItems[i].getLocation(), i);
+                mIndex = index;
+            }
+            final Integer position = index.get(mrl);
+            return position != null ? position : -1;
+        }
     }
 
+    private final Object mLock = new Object();
+    private volatile Snapshot mSnapshot = Snapshot.EMPTY;
+    private final CopyOnWriteArrayList<EventListener> mEventListenerList = new CopyOnWriteArrayList<>();
+    /* Guarded by mLock */
+    private final ArrayList<Change> mPendingChanges = new ArrayList<>();
+    private int mBatchDepth = 0;
+    /* Guarded by mLock: change sets waiting for delivery, in order */
+    private final ArrayDeque<List<Change>> mDeliveries = new ArrayDeque<>();
+    private boolean mDelivering = false;
+
     public void add(MediaWrapper media) {
-        mInternalList.add(media);
+        addAll(Collections.singletonList(media));
+    }
+
+    public void addAll(Collection<MediaWrapper> medias) {
+        if (medias.isEmpty())
+            return;
+        synchronized (mLock) {
+            addAllLocked(medias);
+            flushLocked();
+        }
+        deliver();
+    }
+
+    private void addAllLocked(Collection<MediaWrapper> medias) {
+        final Snapshot snapshot = mSnapshot;
+        final int size = snapshot.mSize, newSize = size + medias.size();
+        MediaWrapper[] items = snapshot.mItems;
+        if (newSize > items.length)
+            items = Arrays.copyOf(items, Math.max(newSize, size + (size >> 1) + 8));
+        int i = size;
+        for (MediaWrapper media : medias) {
+            items[i] = media;
+            mPendingChanges.add(new Change(Change.ADDED, i++, -1, media));
+        }
+        mSnapshot = new Snapshot(items, newSize);
     }
 
-    public synchronized void addEventListener(EventListener listener) {
-        if (!mEventListenerList.contains(listener))
-            mEventListenerList.add(listener);
+    public void addEventListener(EventListener listener) {
+        mEventListenerList.addIfAbsent(listener);
     }
 
-    public synchronized void removeEventListener(EventListener listener) {
+    public void removeEventListener(EventListener listener) {
         mEventListenerList.remove(listener);
     }
 
-    private synchronized void signalEventListeners(int event, int arg1, int arg2, String mrl) {
-        for (EventListener listener : mEventListenerList) {
-            switch (event) {
-            case EVENT_ADDED:
-                listener.onItemAdded(arg1, mrl);
-                break;
-            case EVENT_REMOVED:
-                listener.onItemRemoved(arg1, mrl);
-                break;
-            case EVENT_MOVED:
-                listener.onItemMoved(arg1, arg2, mrl);
-                break;
+    /**
+     * Group all following modifications in a single change set, until {@link #endBatch()}.
+     * Calls can be nested.
+     */
+    public void startBatch() {
+        synchronized (mLock) {
+            ++mBatchDepth;
+        }
+    }
+
+    public void endBatch() {
+        synchronized (mLock) {
+            if (mBatchDepth > 0 && --mBatchDepth == 0)
+                flushLocked();
+        }
+        deliver();
+    }
+
+    /* Queue pending changes as a change set, delivered by deliver() once the lock is released */
+    private void flushLocked() {
+        if (mBatchDepth > 0 || mPendingChanges.isEmpty())
+            return;
+        mDeliveries.add(Collections.unmodifiableList(new ArrayList<>(mPendingChanges)));
+        mPendingChanges.clear();
+    }
+
+    /* Must not be called with mLock held */
+    private void deliver() {
+        while (true) {
+            final List<Change> changes;
+            synchronized (mLock) {
+                // Another thread, or a caller up the stack, is delivering and will pick them up
+                if (mDelivering || mDeliveries.isEmpty())
+                    return;
+                changes = mDeliveries.poll();
+                mDelivering = true;
+            }
+            try {
+                for (EventListener listener : mEventListenerList)
+                    listener.onItemsChanged(changes);
+            } finally {
+                synchronized (mLock) {
+                    mDelivering = false;
+                }
             }
         }
     }
@@ -83,22 +237,44 @@ public class MediaWrapperList {
      * Clear the media list. (remove all media)
      */
     public void clear() {
-        // Signal to observers of media being deleted.
-        for(int i = 0; i < mInternalList.size(); i++)
-            signalEventListeners(EVENT_REMOVED, i, -1, mInternalList.get(i).getLocation());
-        mInternalList.clear();
+        synchronized (mLock) {
+            final MediaWrapper[] items = mSnapshot.mItems;
+            // Removed from the end, so indexes stay valid while they are applied
+            for (int i = mSnapshot.mSize - 1; i >= 0; --i)
+                mPendingChanges.add(new Change(Change.REMOVED, i, -1, items[i]));
+            mSnapshot = Snapshot.EMPTY;
+            flushLocked();
+        }
+        deliver();
     }
 
-    private boolean isValid(int position) {
-        return position >= 0 && position < mInternalList.size();
+    private static boolean isValid(Snapshot snapshot, int position) {
+        return position >= 0 && position < snapshot.mSize;
     }
 
     public void insert(int position, Uri uri) {
         insert(position, new MediaWrapper(uri));
     }
+
     public void insert(int position, MediaWrapper media) {
-        mInternalList.add(position, media);
-        signalEventListeners(EVENT_ADDED, position, -1, media.getLocation());
+        synchronized (mLock) {
+            final int size = mSnapshot.mSize;
+            if (position < 0 || position > size)
+                throw new IndexOutOfBoundsException("Index " + position + " out of range");
+            if (position == size)
+                addAllLocked(Collections.singletonList(media));
+            else {
+                final MediaWrapper[] items = mSnapshot.mItems;
+                final MediaWrapper[] newItems = new MediaWrapper[size + 1];
+                System.arraycopy(items, 0, newItems, 0, position);
+                newItems[position] = media;
+                System.arraycopy(items, position, newItems, position + 1, size - position);
+                mSnapshot = new Snapshot(newItems, size + 1);
+                mPendingChanges.add(new Change(Change.ADDED, position, -1, media));
+            }
+            flushLocked();
+        }
+        deliver();
     }
 
     /**
@@ -109,51 +285,111 @@ public class MediaWrapperList {
      * @throws IndexOutOfBoundsException
      */
     public void move(int startPosition, int endPosition) {
-        if (!(isValid(startPosition)
-              && endPosition >= 0 && endPosition <= mInternalList.size()))
-            throw new IndexOutOfBoundsException("Indexes out of range");
+        synchronized (mLock) {
+            final Snapshot snapshot = mSnapshot;
+            final MediaWrapper[] items = snapshot.mItems;
+            if (!(isValid(snapshot, startPosition) && endPosition >= 0 && endPosition <= snapshot.mSize))
+                throw new IndexOutOfBoundsException("Indexes out of range");
 
-        MediaWrapper toMove = mInternalList.get(startPosition);
-        mInternalList.remove(startPosition);
-        if (startPosition >= endPosition)
-            mInternalList.add(endPosition, toMove);
-        else
-            mInternalList.add(endPosition - 1, toMove);
-        signalEventListeners(EVENT_MOVED, startPosition, endPosition, toMove.getLocation());
+            final MediaWrapper toMove = items[startPosition];
+            final int destination = startPosition >= endPosition ? endPosition : endPosition - 1;
+            final MediaWrapper[] newItems = Arrays.copyOf(items, snapshot.mSize);
+            if (destination < startPosition)
+                System.arraycopy(items, destination, newItems, destination + 1, startPosition - destination);
+            else
+                System.arraycopy(items, startPosition + 1, newItems, startPosition, destination - startPosition);
+            newItems[destination] = toMove;
+            mSnapshot = new Snapshot(newItems, newItems.length);
+            mPendingChanges.add(new Change(Change.MOVED, startPosition, endPosition, toMove));
+            flushLocked();
+        }
+        deliver();
     }
 
     public void remove(int position) {
-        if (!isValid(position))
-            return;
-        String uri = mInternalList.get(position).getLocation();
-        mInternalList.remove(position);
-        signalEventListeners(EVENT_REMOVED, position, -1, uri);
+        synchronized (mLock) {
+            final Snapshot snapshot = mSnapshot;
+            if (!isValid(snapshot, position))
+                return;
+            final MediaWrapper[] items = snapshot.mItems;
+            final MediaWrapper[] newItems = new MediaWrapper[snapshot.mSize - 1];
+            System.arraycopy(items, 0, newItems, 0, position);
+            System.arraycopy(items, position + 1, newItems, position, newItems.length - position);
+            mSnapshot = new Snapshot(newItems, newItems.length);
+            mPendingChanges.add(new Change(Change.REMOVED, position, -1, items[position]));
+            flushLocked();
+        }
+        deliver();
     }
 
+    /**
+     * Remove all the media with the given location, in one pass
+     */
     public void remove(String location) {
-        for (int i = 0; i < mInternalList.size(); ++i) {
-            String uri = mInternalList.get(i).getLocation();
-            if (uri.equals(location)) {
-                mInternalList.remove(i);
-                signalEventListeners(EVENT_REMOVED, i, -1, uri);
-                i--;
+        synchronized (mLock) {
+            final Snapshot snapshot = mSnapshot;
+            final MediaWrapper[] items = snapshot.mItems;
+            final MediaWrapper[] kept = new MediaWrapper[snapshot.mSize];
+            int count = 0;
+            for (int i = 0; i < snapshot.mSize; ++i) {
+                final MediaWrapper media = items[i];
+                if (location.equals(media.getLocation()))
+                    // Index in the list as it is once previous removals are applied
+                    mPendingChanges.add(new Change(Change.REMOVED, count, -1, media));
+                else
+                    kept[count++] = media;
+            }
+            if (count == snapshot.mSize)
+                return;
+            mSnapshot = new Snapshot(kept, count);
+            flushLocked();
+        }
+        deliver();
+    }
+
+    /**
+     * Replace items by other instances of the same media, e.g. resolved from the medialibrary.
+     * The list is not modified, so no event is sent.
+     *
+     * @param medias replacements by position, null to keep an item. Items which have been
+     *               moved meanwhile are left untouched.
+     */
+    public void replace(List<MediaWrapper> medias) {
+        synchronized (mLock) {
+            final Snapshot snapshot = mSnapshot;
+            final MediaWrapper[] newItems = Arrays.copyOf(snapshot.mItems, snapshot.mSize);
+            final int count = Math.min(medias.size(), newItems.length);
+            for (int i = 0; i < count; ++i) {
+                final MediaWrapper media = medias.get(i);
+                if (media != null && media.getLocation().equals(newItems[i].getLocation()))
+                    newItems[i] = media;
             }
+            mSnapshot = new Snapshot(newItems, newItems.length);
         }
     }
 
     public int size() {
-        return mInternalList.size();
+        return mSnapshot.mSize;
     }
 
     @Nullable
     public MediaWrapper getMedia(int position) {
-        if (!isValid(position))
-            return null;
-        return mInternalList.get(position);
+        final Snapshot snapshot = mSnapshot;
+        return isValid(snapshot, position) ? snapshot.mItems[position] : null;
+    }
+
+    /**
+     * @return position of the first media with the given location, -1 if absent
+     */
+    public int indexOf(String location) {
+        return mSnapshot.indexOf(location);
     }
 
-    public List<MediaWrapper> getAll() {
-        return mInternalList;
+    /**
+     * @return the current state of the list, not affected by later modifications
+     */
+    public Snapshot getAll() {
+        return mSnapshot;
     }
 
     /**
@@ -161,19 +397,19 @@ public class MediaWrapperList {
      * @return null if not found
      */
     public String getMRL(int position) {
-        if (!isValid(position))
-            return null;
-        return mInternalList.get(position).getLocation();
+        final MediaWrapper media = getMedia(position);
+        return media != null ? media.getLocation() : null;
     }
 
     @Override
     public String toString() {
+        final Snapshot snapshot = mSnapshot;
         StringBuilder sb = new StringBuilder();
         sb.append("LibVLC Media List: {");
-        for(int i = 0; i < size(); i++) {
-            sb.append(((Integer)i).toString());
+        for(int i = 0; i < snapshot.size(); i++) {
+            sb.append(i);
             sb.append(": ");
-            sb.append(getMRL(i));
+            sb.append(snapshot.get(i).getLocation());
             sb.append(", ");
         }
         sb.append("}");
@@ -0,0 +1,177 @@
+/*****************************************************************************
+ * MetadataArtwork.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.media;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import org.videolan.medialibrary.media.MediaWrapper;
+import org.videolan.vlc.R;
+import org.videolan.vlc.VLCApplication;
+import org.videolan.vlc.gui.helpers.AudioUtil;
+import org.videolan.vlc.gui.helpers.BitmapCache;
+import org.videolan.vlc.gui.helpers.BitmapPool;
+
+import java.util.HashSet;
+
+/**
+ * Covers of the played medias, for the MediaSession metadata, the notification and the widget.
+ *
+ * Covers are resolved and scaled in the background, once per album: {@link #get(MediaWrapper)}
+ * never blocks, it returns null and notifies the listener when the artwork is ready.
+ * Variants are immutable copies owned by this class, the bitmaps of the shared cover
+ * caches are never given to the MediaSession or the notification.
+ */
+public class MetadataArtwork {
+    public final static String TAG = "VLC/MetadataArtwork";
+
+    /* Covers of the previous, current and next albums, with some margin */
+    private static final int CACHE_SIZE = 4;
+    /* Shown on the lockscreen and sent to Android Auto */
+    private static final int SESSION_SIZE = 512;
+    private static final int WIDGET_SIZE = 64;
+
+    public interface Listener {
+        /**
+         * @param media the media the artwork was requested for, other medias can share it,
+         *              see {@link #isSameArtwork(MediaWrapper, MediaWrapper)}
+         */
+        @MainThread
+        void onArtworkLoaded(MediaWrapper media);
+    }
+
+    public static class Artwork {
+        /* null if the media has no cover */
+        @Nullable
+        public final Bitmap session, notification, widget;
+
+        Artwork(Bitmap session, Bitmap notification, Bitmap widget) {
+            this.session = session;
+            this.notification = notification;
+            this.widget = widget;
+        }
+    }
+
+    private final Context mContext;
+    private final Listener mListener;
+    private final int mNotificationWidth, mNotificationHeight;
+    private final LruCache<String, Artwork> mCache = new LruCache<>(CACHE_SIZE);
+    private final HashSet<String> mLoading = new HashSet<>();
+    private Bitmap mPlaceholder = null;
+
+    public MetadataArtwork(Context context, Listener listener) {
+        mContext = context.getApplicationContext();
+        mListener = listener;
+        final Resources res = mContext.getResources();
+        mNotificationWidth = res.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+        mNotificationHeight = res.getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+    }
+
+    /**
+     * @return the artwork of media, null if it is not loaded yet
+     */
+    @MainThread
+    @Nullable
+    public Artwork get(final MediaWrapper media) {
+        if (media == null)
+            return null;
+        final String key = getKey(media);
+        final Artwork artwork = mCache.get(key);
+        if (artwork != null || !mLoading.add(key))
+            return artwork;
+        VLCApplication.runBackground(new Runnable() {
+            @Override
+            public void run() {
+                final Artwork loaded = load(media);
+                VLCApplication.runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mLoading.remove(key);
+                        mCache.put(key, loaded);
+                        mListener.onArtworkLoaded(media);
+                    }
+                });
+            }
+        });
+        return null;
+    }
+
+    /**
+     * @return bitmap to show in the notification when there is no cover
+     */
+    @MainThread
+    public Bitmap getPlaceholder() {
+        if (mPlaceholder == null)
+            mPlaceholder = BitmapCache.getFromResource(mContext.getResources(), R.drawable.ic_no_media);
+        return mPlaceholder;
+    }
+
+    /**
+     * @return true if both medias have the same artwork, e.g. they are tracks of the same album
+     */
+    public static boolean isSameArtwork(MediaWrapper a, MediaWrapper b) {
+        return a == b || (a != null && b != null && getKey(a).equals(getKey(b)));
+    }
+
+    /* Tracks of an album share their cover */
+    private static String getKey(MediaWrapper media) {
+        if (media.getArtist() != null && media.getAlbum() != null)
+            return "album:" + media.getArtist() + "\n" + media.getAlbum();
+        return "media:" + media.getLocation() + "\n" + media.getArtworkURL();
+    }
+
+    @WorkerThread
+    private Artwork load(MediaWrapper media) {
+        final Bitmap cover;
+        try {
+            cover = AudioUtil.getCover(mContext, media, SESSION_SIZE);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not load the cover of " + media.getLocation(), e);
+            return new Artwork(null, null, null);
+        }
+        // In case of format not supported
+        if (cover == null || cover.isRecycled() || cover.getConfig() == null)
+            return new Artwork(null, null, null);
+        return new Artwork(scale(cover, SESSION_SIZE, SESSION_SIZE),
+                scale(cover, mNotificationWidth, mNotificationHeight),
+                scale(cover, WIDGET_SIZE, WIDGET_SIZE));
+    }
+
+    /* Immutable copy fitting in width x height */
+    private static Bitmap scale(Bitmap cover, int width, int height) {
+        final float ratio = Math.min((float) width / cover.getWidth(), (float) height / cover.getHeight());
+        if (ratio >= 1f)
+            return cover.copy(cover.getConfig(), false);
+        final Bitmap scaled = Bitmap.createScaledBitmap(cover, Math.max(1, Math.round(cover.getWidth() * ratio)),
+                Math.max(1, Math.round(cover.getHeight() * ratio)), true);
+        if (!scaled.isMutable())
+            return scaled;
+        final Bitmap copy = scaled.copy(scaled.getConfig(), false);
+        BitmapPool.getInstance().put(scaled);
+        return copy;
+    }
+}
@@ -0,0 +1,197 @@
+/*****************************************************************************
+ * NextMediaPreparer.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.media;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.videolan.libvlc.Media;
+import org.videolan.medialibrary.media.MediaWrapper;
+import org.videolan.vlc.BuildConfig;
+import org.videolan.vlc.VLCApplication;
+import org.videolan.vlc.util.FileUtils;
+import org.videolan.vlc.util.LatencyHistogram;
+import org.videolan.vlc.util.VLCInstance;
+import org.videolan.vlc.util.VLCOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prepares the next media of the queue while the current one is playing.
+ *
+ * The Media is created with its options and slaves and parsed ahead of time, and the
+ * slaves saved in {@link MediaDatabase} are loaded, so the transition is only a swap.
+ * Only audio medias are prepared: video ones go through the video player.
+ * The gap between the end of a media and the playback of the next one is measured.
+ */
+public class NextMediaPreparer {
+    public final static String TAG = "VLC/NextMediaPreparer";
+
+    /* Position of the current media after which the next one is prepared, from 0 to 1 */
+    public static final String KEY_THRESHOLD = "preload_next_threshold";
+    public static final float DEFAULT_THRESHOLD = 0.8f;
+
+    /* Flags which change the media options, see VLCOptions.setMediaOptions() */
+    private static final int OPTION_FLAGS = MediaWrapper.MEDIA_VIDEO | MediaWrapper.MEDIA_NO_HWACCEL | MediaWrapper.MEDIA_PAUSED;
+    private static final int PARSE_TIMEOUT = 10000;
+
+    private static final LatencyHistogram sPreparedGaps = new LatencyHistogram();
+    private static final LatencyHistogram sColdGaps = new LatencyHistogram();
+
+    public static class Prepared {
+        public final Media media;
+        /* Slaves saved in database, null if they were not loaded in time */
+        @Nullable
+        public final List<Media.Slave> slaves;
+
+        Prepared(Media media, @Nullable List<Media.Slave> slaves) {
+            this.media = media;
+            this.slaves = slaves;
+        }
+    }
+
+    private final Context mContext;
+    private MediaWrapper mWrapper = null;
+    private Media mMedia = null;
+    private int mFlags;
+    private volatile List<Media.Slave> mSlaves = null;
+    /* Set when the current media ends, until the next one plays */
+    private long mEndTime = -1L;
+    private boolean mPreparedTransition = false;
+
+    public NextMediaPreparer(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    @MainThread
+    public boolean isPrepared(MediaWrapper mw) {
+        return mWrapper == mw && mMedia != null;
+    }
+
+    /**
+     * Create and parse the media of mw, replacing the one previously prepared
+     */
+    @MainThread
+    public void prepare(final MediaWrapper mw) {
+        release();
+        if (mw == null || mw.getType() == MediaWrapper.TYPE_VIDEO)
+            return;
+        final Media media;
+        try {
+            media = new Media(VLCInstance.get(), FileUtils.getUri(mw.getUri()));
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "LibVLC initialisation failed", e);
+            return;
+        }
+        mFlags = mw.getFlags() & OPTION_FLAGS;
+        VLCOptions.setMediaOptions(media, mContext, mFlags);
+        if (mw.getSlaves() != null)
+            for (Media.Slave slave : mw.getSlaves())
+                media.addSlave(slave);
+        // Opens the network connection, probes and reads the metadata
+        final boolean local = TextUtils.equals(mw.getUri().getScheme(), "file");
+        media.parseAsync(local ? Media.Parse.FetchLocal : Media.Parse.ParseNetwork | Media.Parse.FetchLocal, PARSE_TIMEOUT);
+        mWrapper = mw;
+        mMedia = media;
+        final String location = mw.getLocation();
+        VLCApplication.runDatabase(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<Media.Slave> slaves = MediaDatabase.getInstance().getSlaves(location);
+                VLCApplication.runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mMedia == media)
+                            mSlaves = slaves;
+                    }
+                });
+            }
+        });
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Preparing " + location);
+    }
+
+    /**
+     * Take the prepared media, if it was prepared for mw with the same options.
+     * The caller then owns the media and has to release it.
+     *
+     * @return null if mw was not prepared
+     */
+    @MainThread
+    @Nullable
+    public Prepared take(MediaWrapper mw, int flags) {
+        if (mWrapper != mw || mMedia == null || (flags & OPTION_FLAGS) != mFlags) {
+            release();
+            return null;
+        }
+        final Prepared prepared = new Prepared(mMedia, mSlaves);
+        mMedia = null;
+        mWrapper = null;
+        mSlaves = null;
+        mPreparedTransition = true;
+        return prepared;
+    }
+
+    @MainThread
+    public void release() {
+        if (mMedia != null)
+            mMedia.release();
+        mMedia = null;
+        mWrapper = null;
+        mSlaves = null;
+    }
+
+    @MainThread
+    public void onEndReached() {
+        mEndTime = SystemClock.elapsedRealtime();
+        mPreparedTransition = false;
+    }
+
+    @MainThread
+    public void onPlaying() {
+        if (mEndTime == -1L)
+            return;
+        final long gap = SystemClock.elapsedRealtime() - mEndTime;
+        (mPreparedTransition ? sPreparedGaps : sColdGaps).record(gap);
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Transition in " + gap + "ms" + (mPreparedTransition ? ", prepared" : ""));
+        mEndTime = -1L;
+        mPreparedTransition = false;
+    }
+
+    /**
+     * Playback stopped, don't count the time until the next play as a gap
+     */
+    @MainThread
+    public void onStopped() {
+        mEndTime = -1L;
+        release();
+    }
+
+    public static String getStats() {
+        return "prepared transitions: " + sPreparedGaps + "\ncold transitions: " + sColdGaps;
+    }
+}
@@ -0,0 +1,220 @@
+/*****************************************************************************
+ * PrefixGrouper.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.media;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Groups items whose titles share a common prefix, ignoring case and a leading "the".
+ *
+ * Two titles belong to the same group when their first {@code minLength} characters
+ * are the same, so each item is put in its group with a single hash lookup instead of
+ * being compared to all groups. The group title is the longest common prefix of its
+ * items. Items can be added, updated and removed after the initial grouping.
+ *
+ * Not thread-safe. This class has no Android dependency, it is unit tested on the JVM.
+ */
+public class PrefixGrouper<T> {
+
+    public interface Adapter<T> {
+        /** @return a unique and stable identifier of the item */
+        String getId(T item);
+        String getTitle(T item);
+    }
+
+    public static final class Group<T> {
+        private final ArrayList<T> mItems = new ArrayList<>(1);
+        /* Key in the groups map, the prefix key or the group itself if its item cannot be grouped */
+        private Object mKey;
+        /* Length of the common prefix, not counting the leading "the" of the first title */
+        private int mPrefixLength;
+        private Object mTag;
+
+        public List<T> getItems() {
+            return mItems;
+        }
+
+        public int size() {
+            return mItems.size();
+        }
+
+        public T getFirst() {
+            return mItems.get(0);
+        }
+
+        /**
+         * Data attached to this group state, cleared on each modification of the group
+         */
+        public Object getTag() {
+            return mTag;
+        }
+
+        public void setTag(Object tag) {
+            mTag = tag;
+        }
+    }
+
+    private final int mMinLength;
+    private final Adapter<T> mAdapter;
+    /* In creation order */
+    private final LinkedHashMap<Object, Group<T>> mGroups = new LinkedHashMap<>();
+    private final HashMap<String, Group<T>> mGroupsById = new HashMap<>();
+
+    /**
+     * @param minLength number of characters titles must share to be grouped, 0 to disable grouping
+     */
+    public PrefixGrouper(int minLength, Adapter<T> adapter) {
+        mMinLength = minLength;
+        mAdapter = adapter;
+    }
+
+    public void addAll(Collection<T> items) {
+        for (T item : items)
+            add(item);
+    }
+
+    /**
+     * Add an item, or update it if an item with the same id has already been added
+     * @return the group of the item
+     */
+    public Group<T> add(T item) {
+        final String id = mAdapter.getId(item);
+        final String title = getTitle(item);
+        final Group<T> current = mGroupsById.get(id);
+        if (current != null) {
+            final int index = indexOf(current, id);
+            // Same title, the item keeps its place
+            if (index != -1 && title.equals(getTitle(current.mItems.get(index)))) {
+                current.mItems.set(index, item);
+                current.mTag = null;
+                return current;
+            }
+            remove(id);
+        }
+        final int offset = getOffset(title);
+        final String key = mMinLength > 0 && title.length() - offset >= mMinLength
+                ? getKey(title, offset, mMinLength) : null;
+        Group<T> group = key != null ? mGroups.get(key) : null;
+        if (group == null) {
+            group = new Group<>();
+            group.mKey = key != null ? key : group;
+            group.mPrefixLength = title.length() - offset;
+            mGroups.put(group.mKey, group);
+        } else {
+            final String first = getTitle(group.getFirst());
+            group.mPrefixLength = Math.min(group.mPrefixLength,
+                    commonPrefixLength(first, getOffset(first), title, offset));
+        }
+        group.mItems.add(item);
+        group.mTag = null;
+        mGroupsById.put(id, group);
+        return group;
+    }
+
+    /**
+     * @return the group the item was removed from, null if the item was unknown
+     */
+    public Group<T> remove(String id) {
+        final Group<T> group = mGroupsById.remove(id);
+        if (group == null)
+            return null;
+        final int index = indexOf(group, id);
+        if (index == -1)
+            return group;
+        final T removed = group.mItems.remove(index);
+        group.mTag = null;
+        if (group.mItems.isEmpty())
+            mGroups.remove(group.mKey);
+        else if (index == 0 || isPrefixBound(group, getTitle(removed)))
+            computePrefix(group);
+        return group;
+    }
+
+    public List<Group<T>> getGroups() {
+        return new ArrayList<>(mGroups.values());
+    }
+
+    public int getGroupCount() {
+        return mGroups.size();
+    }
+
+    /**
+     * @return the title of the group: the first item title, truncated to the common prefix
+     */
+    public String getTitle(Group<T> group) {
+        final String first = getTitle(group.getFirst());
+        return first.substring(0, Math.min(first.length(), getOffset(first) + group.mPrefixLength));
+    }
+
+    private void computePrefix(Group<T> group) {
+        final String first = getTitle(group.getFirst());
+        final int firstOffset = getOffset(first);
+        int length = first.length() - firstOffset;
+        for (int i = 1; i < group.mItems.size(); ++i) {
+            final String title = getTitle(group.mItems.get(i));
+            length = Math.min(length, commonPrefixLength(first, firstOffset, title, getOffset(title)));
+        }
+        group.mPrefixLength = length;
+    }
+
+    private int indexOf(Group<T> group, String id) {
+        for (int i = 0; i < group.mItems.size(); ++i)
+            if (id.equals(mAdapter.getId(group.mItems.get(i))))
+                return i;
+        return -1;
+    }
+
+    /* Whether this title may be the one the group prefix is limited by */
+    private boolean isPrefixBound(Group<T> group, String title) {
+        final String first = getTitle(group.getFirst());
+        return commonPrefixLength(first, getOffset(first), title, getOffset(title)) <= group.mPrefixLength;
+    }
+
+    private String getTitle(T item) {
+        final String title = mAdapter.getTitle(item);
+        return title != null ? title : "";
+    }
+
+    /* Titles starting with "the" are compared without it */
+    static int getOffset(String title) {
+        return title.regionMatches(true, 0, "the", 0, 3) ? Math.min(4, title.length()) : 0;
+    }
+
+    private static String getKey(String title, int offset, int length) {
+        final char[] key = new char[length];
+        for (int i = 0; i < length; ++i)
+            key[i] = Character.toLowerCase(title.charAt(offset + i));
+        return new String(key);
+    }
+
+    private static int commonPrefixLength(String a, int aOffset, String b, int bOffset) {
+        final int max = Math.min(a.length() - aOffset, b.length() - bOffset);
+        int length = 0;
+        while (length < max && Character.toLowerCase(a.charAt(aOffset + length))
+                == Character.toLowerCase(b.charAt(bOffset + length)))
+            ++length;
+        return length;
+    }
+}
@@ -0,0 +1,505 @@
+/*****************************************************************************
+ * QueueStore.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.media;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Binary journal of the play queue.
+ *
+ * The file starts with a snapshot of the queue, followed by the modifications
+ * (insert, remove, move, resume times, playback state and shuffle order) appended as
+ * they happen. The shuffle order is only written when it changes. Once the journal
+ * holds more records or more bytes than the queue itself, it is compacted into a new
+ * snapshot.
+ *
+ * Records are encoded in memory by the caller and written by the given executor,
+ * which must not reorder tasks it runs concurrently (a file write is serialized here).
+ */
+public class QueueStore {
+
+    private static final int MAGIC = 0x564c4351; // "VLCQ"
+    private static final int VERSION = 1;
+    private static final int MIN_COMPACT_RECORDS = 512;
+    private static final int MIN_COMPACT_BYTES = 64 * 1024;
+    private static final int MAX_STRING_LENGTH = 1024 * 1024;
+    private static final int MAX_ITEMS = 1 << 24;
+
+    private static final byte SNAPSHOT = 'S';
+    private static final byte INSERT = 'I';
+    private static final byte REMOVE = 'R';
+    private static final byte MOVE = 'M';
+    private static final byte RESUME_TIME = 'T';
+    private static final byte STATE = 'P';
+    private static final byte SHUFFLE = 'O';
+
+    public static class Item {
+        public final String mrl;
+        public final long id;
+        public long time;
+
+        public Item(String mrl, long id, long time) {
+            this.mrl = mrl;
+            this.id = id;
+            this.time = time;
+        }
+    }
+
+    public static class State {
+        public final List<Item> items;
+        public final int position;
+        public final long time;
+        /* null if shuffle was off, or if it could not be restored */
+        public final ShuffleOrder shuffleOrder;
+
+        public State(List<Item> items, int position, long time, ShuffleOrder shuffleOrder) {
+            this.items = items;
+            this.position = position;
+            this.time = time;
+            this.shuffleOrder = shuffleOrder;
+        }
+    }
+
+    private final File mFile;
+    private final Executor mWriter;
+    private final Object mWriteLock = new Object();
+
+    /* Guarded by this */
+    private final ArrayList<Item> mItems = new ArrayList<>();
+    private int mPosition = -1;
+    private long mTime = 0L;
+    private byte[] mShuffleOrder = null;
+    private ByteArrayOutputStream mPending = new ByteArrayOutputStream();
+    private DataOutputStream mPendingOut = new DataOutputStream(mPending);
+    /* Pending records start with a snapshot, replacing the file */
+    private boolean mRewrite = false;
+    /* The file does not match mItems, next record has to be a snapshot */
+    private boolean mNeedsSnapshot = true;
+    private boolean mFlushScheduled = false;
+    private int mRecords = 0;
+    /* Size of the last snapshot and of the records appended to it */
+    private long mSnapshotBytes = 0L, mJournalBytes = 0L;
+    /* mPendingOut.size() when the last record was counted */
+    private int mCountedBytes = 0;
+
+    public QueueStore(File file, Executor writer) {
+        mFile = file;
+        mWriter = writer;
+    }
+
+    /**
+     * Read the saved queue. Following modifications are recorded on top of it.
+     *
+     * @return null if there is no saved queue or if it is unreadable
+     */
+    public synchronized State load() {
+        mItems.clear();
+        mPosition = -1;
+        mTime = 0L;
+        mShuffleOrder = null;
+        mRecords = 0;
+        mPending.reset();
+        mCountedBytes = mPendingOut.size();
+        mJournalBytes = 0L;
+        mRewrite = false;
+        mNeedsSnapshot = true;
+        if (!mFile.exists())
+            return null;
+        // Where the snapshot ends is not tracked, the whole file counts as one
+        mSnapshotBytes = mFile.length();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), 16 * 1024));
+            if (in.readInt() != MAGIC)
+                return null;
+            if (in.readInt() != VERSION)
+                return null;
+            boolean truncated = false;
+            while (true) {
+                final int op = in.read();
+                if (op == -1)
+                    break;
+                try {
+                    if (!replay((byte) op, in)) {
+                        truncated = true;
+                        break;
+                    }
+                } catch (EOFException e) {
+                    // Last record was not fully written
+                    truncated = true;
+                    break;
+                }
+                ++mRecords;
+            }
+            // A clean file is appended to, otherwise it is rewritten on next modification
+            mNeedsSnapshot = truncated;
+        } catch (IOException e) {
+            mItems.clear();
+            return null;
+        } finally {
+            close(in);
+        }
+        final ArrayList<Item> items = new ArrayList<>(mItems.size());
+        for (Item item : mItems)
+            items.add(new Item(item.mrl, item.id, item.time));
+        return new State(items, mPosition, mTime, readShuffleOrder(mShuffleOrder, items.size()));
+    }
+
+    private boolean replay(byte op, DataInputStream in) throws IOException {
+        switch (op) {
+            case SNAPSHOT:
+                mItems.clear();
+                final int count = in.readInt();
+                if (count < 0 || count > MAX_ITEMS)
+                    return false;
+                mItems.ensureCapacity(count);
+                for (int i = 0; i < count; ++i)
+                    mItems.add(new Item(readString(in), in.readLong(), in.readLong()));
+                return true;
+            case INSERT: {
+                final int index = in.readInt();
+                final Item item = new Item(readString(in), in.readLong(), 0L);
+                if (index < 0 || index > mItems.size())
+                    return false;
+                mItems.add(index, item);
+                return true;
+            }
+            case REMOVE: {
+                final int index = in.readInt();
+                if (index < 0 || index >= mItems.size())
+                    return false;
+                mItems.remove(index);
+                return true;
+            }
+            case MOVE: {
+                final int from = in.readInt(), to = in.readInt();
+                if (from < 0 || from >= mItems.size() || to < 0 || to > mItems.size())
+                    return false;
+                mItems.add(from >= to ? to : to - 1, mItems.remove(from));
+                return true;
+            }
+            case RESUME_TIME: {
+                final int index = in.readInt();
+                final long time = in.readLong();
+                if (index < 0 || index >= mItems.size())
+                    return false;
+                mItems.get(index).time = time;
+                return true;
+            }
+            case STATE:
+                mPosition = in.readInt();
+                mTime = in.readLong();
+                return true;
+            case SHUFFLE:
+                readShuffleRecord(in);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void readShuffleRecord(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length > 0) {
+            mShuffleOrder = new byte[length];
+            in.readFully(mShuffleOrder);
+        } else
+            mShuffleOrder = null;
+    }
+
+    private static ShuffleOrder readShuffleOrder(byte[] data, int size) {
+        if (data == null)
+            return null;
+        try {
+            final ShuffleOrder order = ShuffleOrder.readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+            return order.size() == size ? order : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replace the saved queue
+     */
+    public synchronized void reset(List<Item> items) {
+        mItems.clear();
+        for (Item item : items)
+            mItems.add(new Item(item.mrl, item.id, item.time));
+        mPosition = -1;
+        mTime = 0L;
+        mShuffleOrder = null;
+        compact();
+    }
+
+    public synchronized int size() {
+        return mItems.size();
+    }
+
+    /**
+     * @return false if the index does not match the saved queue, which should then be {@link #reset(List)}
+     */
+    public synchronized boolean insert(int index, String mrl, long id) {
+        if (index < 0 || index > mItems.size())
+            return false;
+        mItems.add(index, new Item(mrl, id, 0L));
+        try {
+            mPendingOut.writeByte(INSERT);
+            mPendingOut.writeInt(index);
+            writeString(mPendingOut, mrl);
+            mPendingOut.writeLong(id);
+        } catch (IOException ignored) {} // Not thrown by a ByteArrayOutputStream
+        onRecord();
+        return true;
+    }
+
+    public synchronized boolean remove(int index) {
+        if (index < 0 || index >= mItems.size())
+            return false;
+        mItems.remove(index);
+        try {
+            mPendingOut.writeByte(REMOVE);
+            mPendingOut.writeInt(index);
+        } catch (IOException ignored) {}
+        onRecord();
+        return true;
+    }
+
+    /**
+     * Same semantics as {@link MediaWrapperList#move(int, int)}
+     */
+    public synchronized boolean move(int startPosition, int endPosition) {
+        if (startPosition < 0 || startPosition >= mItems.size() || endPosition < 0 || endPosition > mItems.size())
+            return false;
+        mItems.add(startPosition >= endPosition ? endPosition : endPosition - 1, mItems.remove(startPosition));
+        try {
+            mPendingOut.writeByte(MOVE);
+            mPendingOut.writeInt(startPosition);
+            mPendingOut.writeInt(endPosition);
+        } catch (IOException ignored) {}
+        onRecord();
+        return true;
+    }
+
+    public synchronized void setResumeTime(int index, long time) {
+        if (index < 0 || index >= mItems.size() || mItems.get(index).time == time)
+            return;
+        mItems.get(index).time = time;
+        try {
+            mPendingOut.writeByte(RESUME_TIME);
+            mPendingOut.writeInt(index);
+            mPendingOut.writeLong(time);
+        } catch (IOException ignored) {}
+        onRecord();
+    }
+
+    /**
+     * Save the current item, its playback time and the shuffle order
+     */
+    public synchronized void setState(int position, long time, ShuffleOrder shuffleOrder) {
+        byte[] order = null;
+        if (shuffleOrder != null) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + 4 * shuffleOrder.size());
+            try {
+                shuffleOrder.writeTo(new DataOutputStream(bytes));
+            } catch (IOException ignored) {}
+            order = bytes.toByteArray();
+        }
+        // The order is as large as the queue, most state changes don't modify it
+        if (!Arrays.equals(order, mShuffleOrder)) {
+            mShuffleOrder = order;
+            writeShuffleOrder(mPendingOut);
+            onRecord();
+        }
+        mPosition = position;
+        mTime = time;
+        writeState(mPendingOut);
+        onRecord();
+    }
+
+    private void writeState(DataOutputStream out) {
+        try {
+            out.writeByte(STATE);
+            out.writeInt(mPosition);
+            out.writeLong(mTime);
+        } catch (IOException ignored) {}
+    }
+
+    private void writeShuffleOrder(DataOutputStream out) {
+        try {
+            out.writeByte(SHUFFLE);
+            if (mShuffleOrder != null) {
+                out.writeInt(mShuffleOrder.length);
+                out.write(mShuffleOrder);
+            } else
+                out.writeInt(0);
+        } catch (IOException ignored) {}
+    }
+
+    private void onRecord() {
+        mJournalBytes += mPendingOut.size() - mCountedBytes;
+        mCountedBytes = mPendingOut.size();
+        // The journal is compacted once it holds more records, or more bytes, than a snapshot would
+        if (mNeedsSnapshot || ++mRecords > Math.max(MIN_COMPACT_RECORDS, mItems.size())
+                || mJournalBytes > Math.max(MIN_COMPACT_BYTES, mSnapshotBytes))
+            compact();
+        else
+            scheduleFlush();
+    }
+
+    /* Replace pending records with a snapshot of the queue */
+    private void compact() {
+        mPending = new ByteArrayOutputStream(64 + 64 * mItems.size());
+        mPendingOut = new DataOutputStream(mPending);
+        try {
+            mPendingOut.writeInt(MAGIC);
+            mPendingOut.writeInt(VERSION);
+            mPendingOut.writeByte(SNAPSHOT);
+            mPendingOut.writeInt(mItems.size());
+            for (Item item : mItems) {
+                writeString(mPendingOut, item.mrl);
+                mPendingOut.writeLong(item.id);
+                mPendingOut.writeLong(item.time);
+            }
+        } catch (IOException ignored) {}
+        writeState(mPendingOut);
+        if (mShuffleOrder != null)
+            writeShuffleOrder(mPendingOut);
+        mRecords = mShuffleOrder != null ? 3 : 2;
+        mSnapshotBytes = mCountedBytes = mPendingOut.size();
+        mJournalBytes = 0L;
+        mRewrite = true;
+        mNeedsSnapshot = false;
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (mFlushScheduled)
+            return;
+        mFlushScheduled = true;
+        mWriter.execute(mFlushRunnable);
+    }
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Write pending records, called by the writer executor
+     */
+    public void flush() {
+        synchronized (mWriteLock) {
+            final byte[] data;
+            final boolean rewrite;
+            synchronized (this) {
+                mFlushScheduled = false;
+                if (mPending.size() == 0)
+                    return;
+                data = mPending.toByteArray();
+                rewrite = mRewrite;
+                mPending.reset();
+                mRewrite = false;
+            }
+            if (!write(data, rewrite)) {
+                // The next modification will write a full snapshot
+                synchronized (this) {
+                    mNeedsSnapshot = true;
+                }
+            }
+        }
+    }
+
+    private boolean write(byte[] data, boolean rewrite) {
+        final File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+            return false;
+        final File target = rewrite ? new File(mFile.getPath() + ".tmp") : mFile;
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(target, !rewrite), 16 * 1024);
+            out.write(data);
+            out.close();
+            out = null;
+            return !rewrite || target.renameTo(mFile);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            close(out);
+        }
+    }
+
+    public void delete() {
+        synchronized (mWriteLock) {
+            synchronized (this) {
+                mItems.clear();
+                mPending.reset();
+                mRewrite = false;
+                mNeedsSnapshot = true;
+                mRecords = 0;
+                mJournalBytes = 0L;
+                mCountedBytes = mPendingOut.size();
+            }
+            mFile.delete();
+        }
+    }
+
+    /* MRLs are not bounded to the 64kB of writeUTF() */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        final byte[] bytes = string.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH)
+            throw new IOException("Invalid string length " + length);
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
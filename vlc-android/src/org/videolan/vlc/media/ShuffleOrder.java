@@ -0,0 +1,245 @@
+/*****************************************************************************
+ * ShuffleOrder.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.media;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Play order of a shuffled queue.
+ *
+ * The permutation is computed once from a seed, then kept in sync with the queue
+ * modifications, so next and previous are O(1) lookups and queue edits are O(n).
+ * Items added to the queue are put at random positions, the rest of the order
+ * is not reshuffled.
+ */
+public class ShuffleOrder {
+
+    /* position in play order -> index in queue */
+    private int[] mOrder;
+    /* index in queue -> position in play order */
+    private int[] mPositions;
+    private long mSeed;
+    private Random mRandom;
+
+    /**
+     * @param first index to put at the beginning of the order, -1 for none
+     */
+    public ShuffleOrder(int size, long seed, int first) {
+        mOrder = new int[size];
+        shuffle(seed, first);
+    }
+
+    private ShuffleOrder(int[] order, long seed) {
+        mOrder = order;
+        mSeed = seed;
+        mRandom = new Random(seed);
+        updatePositions();
+    }
+
+    /**
+     * Compute a new order, keeping the same size
+     * @param first index to put at the beginning of the order, -1 for none
+     */
+    public void shuffle(long seed, int first) {
+        mSeed = seed;
+        mRandom = new Random(seed);
+        final int size = mOrder.length;
+        for (int i = 0; i < size; ++i)
+            mOrder[i] = i;
+        for (int i = size - 1; i > 0; --i)
+            swap(mOrder, i, mRandom.nextInt(i + 1));
+        if (first >= 0 && first < size) {
+            for (int i = 0; i < size; ++i) {
+                if (mOrder[i] == first) {
+                    swap(mOrder, 0, i);
+                    break;
+                }
+            }
+        }
+        updatePositions();
+    }
+
+    public int size() {
+        return mOrder.length;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    /**
+     * @return position of the queue index in the play order, -1 if out of range
+     */
+    public int getPosition(int index) {
+        return index >= 0 && index < mPositions.length ? mPositions[index] : -1;
+    }
+
+    /**
+     * @return queue index played after the given one, -1 if it is the last one
+     */
+    public int getNext(int index) {
+        final int position = getPosition(index);
+        return position != -1 && position + 1 < mOrder.length ? mOrder[position + 1] : -1;
+    }
+
+    /**
+     * @return queue index played before the given one, -1 if it is the first one
+     */
+    public int getPrevious(int index) {
+        final int position = getPosition(index);
+        return position > 0 ? mOrder[position - 1] : -1;
+    }
+
+    public int getFirst() {
+        return mOrder.length > 0 ? mOrder[0] : -1;
+    }
+
+    public int getLast() {
+        return mOrder.length > 0 ? mOrder[mOrder.length - 1] : -1;
+    }
+
+    /**
+     * Items have been inserted in the queue.
+     * They get random positions in the play order, after {@code minPosition}.
+     *
+     * @param index queue index of the first inserted item
+     * @param count number of consecutive items inserted
+     * @param minPosition lowest position in the order the new items can take
+     */
+    public void insert(int index, int count, int minPosition) {
+        final int size = mOrder.length, newSize = size + count;
+        if (count <= 0)
+            return;
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of range");
+        minPosition = Math.max(0, Math.min(minPosition, size));
+
+        // Selection sampling: pick count slots among [minPosition, newSize[
+        final boolean[] isNew = new boolean[newSize];
+        int needed = count;
+        for (int position = minPosition; position < newSize && needed > 0; ++position) {
+            if (mRandom.nextInt(newSize - position) < needed) {
+                isNew[position] = true;
+                --needed;
+            }
+        }
+        final int[] inserted = new int[count];
+        for (int i = 0; i < count; ++i)
+            inserted[i] = index + i;
+        for (int i = count - 1; i > 0; --i)
+            swap(inserted, i, mRandom.nextInt(i + 1));
+
+        final int[] order = new int[newSize];
+        for (int position = 0, old = 0, k = 0; position < newSize; ++position) {
+            if (isNew[position])
+                order[position] = inserted[k++];
+            else {
+                final int value = mOrder[old++];
+                order[position] = value >= index ? value + count : value;
+            }
+        }
+        mOrder = order;
+        updatePositions();
+    }
+
+    /**
+     * An item has been removed from the queue
+     */
+    public void remove(int index) {
+        final int size = mOrder.length;
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of range");
+        final int[] order = new int[size - 1];
+        for (int position = 0, k = 0; position < size; ++position) {
+            final int value = mOrder[position];
+            if (value != index)
+                order[k++] = value > index ? value - 1 : value;
+        }
+        mOrder = order;
+        updatePositions();
+    }
+
+    /**
+     * An item has been moved in the queue, it keeps its position in the play order.
+     * Same semantics as {@link MediaWrapperList#move(int, int)}.
+     */
+    public void move(int startPosition, int endPosition) {
+        final int size = mOrder.length;
+        if (startPosition < 0 || startPosition >= size || endPosition < 0 || endPosition > size)
+            throw new IndexOutOfBoundsException("Indexes out of range");
+        final int destination = startPosition >= endPosition ? endPosition : endPosition - 1;
+        if (destination == startPosition)
+            return;
+        for (int position = 0; position < size; ++position) {
+            final int value = mOrder[position];
+            if (value == startPosition)
+                mOrder[position] = destination;
+            else if (startPosition < destination && value > startPosition && value <= destination)
+                mOrder[position] = value - 1;
+            else if (startPosition > destination && value >= destination && value < startPosition)
+                mOrder[position] = value + 1;
+        }
+        updatePositions();
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(mSeed);
+        out.writeInt(mOrder.length);
+        for (int index : mOrder)
+            out.writeInt(index);
+    }
+
+    /**
+     * @throws IOException if the data is truncated or is not a valid order
+     */
+    public static ShuffleOrder readFrom(DataInput in) throws IOException {
+        final long seed = in.readLong();
+        final int size = in.readInt();
+        if (size < 0)
+            throw new IOException("Invalid shuffle order size " + size);
+        final int[] order = new int[size];
+        final boolean[] seen = new boolean[size];
+        for (int i = 0; i < size; ++i) {
+            final int index = in.readInt();
+            if (index < 0 || index >= size || seen[index])
+                throw new IOException("Invalid shuffle order");
+            seen[index] = true;
+            order[i] = index;
+        }
+        return new ShuffleOrder(order, seed);
+    }
+
+    private void updatePositions() {
+        if (mPositions == null || mPositions.length != mOrder.length)
+            mPositions = new int[mOrder.length];
+        for (int position = 0; position < mOrder.length; ++position)
+            mPositions[mOrder[position]] = position;
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        final int tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+    }
+}
@@ -0,0 +1,322 @@
+/*****************************************************************************
+ * ThumbnailService.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.media;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import org.videolan.libvlc.util.VLCUtil;
+import org.videolan.medialibrary.media.MediaWrapper;
+import org.videolan.vlc.BuildConfig;
+import org.videolan.vlc.VLCApplication;
+import org.videolan.vlc.gui.helpers.BitmapPool;
+import org.videolan.vlc.gui.helpers.BitmapUtil;
+import org.videolan.vlc.util.ThumbnailCache;
+import org.videolan.vlc.util.VLCInstance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates video thumbnails with libvlc and keeps them in a disk cache.
+ *
+ * Extractions run on a fixed number of workers, sized to the CPU cores since each one
+ * decodes video. The memory used by raw frames being processed is capped as well.
+ * Requests for a thumbnail already being generated share its extraction.
+ * Waiting requests are run last in first out, so the items just scrolled to come first,
+ * and the oldest ones are dropped once MAX_QUEUED are waiting.
+ * Thumbnails are stored as JPEG files, named after the source location, size, date and
+ * the thumbnail dimensions.
+ */
+public class ThumbnailService {
+    public final static String TAG = "VLC/ThumbnailService";
+
+    private static final int WORKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    /* Budget for the RGBA frames and bitmaps of the extractions in progress, in KB */
+    private static final int MEMORY_BUDGET_KB = 16 * 1024;
+    private static final int MAX_DIMENSION = 1280;
+    private static final long MAX_CACHE_SIZE = 64 * 1024 * 1024L;
+    private static final int JPEG_QUALITY = 85;
+    /* About two screens of grid items */
+    private static final int MAX_QUEUED = 48;
+
+    private static ThumbnailService sInstance;
+
+    public interface Callback {
+        /**
+         * Called on a worker thread, or on the calling thread if the thumbnail was cached
+         * @param thumbnail null if it could not be generated, or if the request was dropped
+         */
+        void onThumbnail(MediaWrapper media, @Nullable File thumbnail);
+    }
+
+    public interface BatchCallback {
+        /**
+         * Called on a worker thread, after each media of the batch
+         * @param thumbsPerSecond generation rate since the batch started
+         */
+        void onBatchProgress(int done, int failed, int total, float thumbsPerSecond);
+    }
+
+    private final ThumbnailCache mCache;
+    private final ThreadPoolExecutor mExecutor;
+    /* Executor queue, guarded by mInFlight for insertions and drops */
+    private final LinkedBlockingDeque<Runnable> mQueue = new LinkedBlockingDeque<Runnable>() {
+        @Override
+        public boolean offer(Runnable runnable) {
+            return offerFirst(runnable);
+        }
+    };
+    private final Semaphore mMemory = new Semaphore(MEMORY_BUDGET_KB, true);
+    private final HashMap<String, Task> mInFlight = new HashMap<>();
+    private final AtomicInteger mGenerated = new AtomicInteger(), mFailed = new AtomicInteger();
+    private final AtomicLong mGenerationTime = new AtomicLong();
+
+    public synchronized static ThumbnailService getInstance() {
+        if (sInstance == null)
+            sInstance = new ThumbnailService(new ThumbnailCache(
+                    new File(VLCApplication.getAppContext().getCacheDir(), "thumbnails"), MAX_CACHE_SIZE));
+        return sInstance;
+    }
+
+    private ThumbnailService(ThumbnailCache cache) {
+        mCache = cache;
+        mExecutor = new ThreadPoolExecutor(WORKERS, WORKERS, 5, TimeUnit.SECONDS,
+                mQueue, THREAD_FACTORY);
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the cached thumbnail, null if it has not been generated yet
+     */
+    @WorkerThread
+    @Nullable
+    public File getCachedThumbnail(MediaWrapper media, int width, int height) {
+        return mCache.get(getKey(media, width, height));
+    }
+
+    /**
+     * Get a thumbnail, generating it if needed
+     */
+    @WorkerThread
+    public void request(MediaWrapper media, int width, int height, Callback callback) {
+        request(media, width, height, false, callback);
+    }
+
+    private void request(MediaWrapper media, int width, int height, boolean force, Callback callback) {
+        if (width > MAX_DIMENSION || height > MAX_DIMENSION) {
+            final float ratio = Math.min(MAX_DIMENSION / (float) width, MAX_DIMENSION / (float) height);
+            width = (int) (width * ratio);
+            height = (int) (height * ratio);
+        }
+        final String key = getKey(media, width, height);
+        if (!force) {
+            final File cached = mCache.get(key);
+            if (cached != null) {
+                callback.onThumbnail(media, cached);
+                return;
+            }
+        }
+        Task dropped = null;
+        synchronized (mInFlight) {
+            final Task running = mInFlight.get(key);
+            if (running != null) {
+                running.mCallbacks.add(callback);
+                return;
+            }
+            if (mQueue.size() >= MAX_QUEUED) {
+                dropped = (Task) mQueue.pollLast();
+                if (dropped != null)
+                    mInFlight.remove(dropped.mKey);
+            }
+            final Task task = new Task(key, media, width, height);
+            task.mCallbacks.add(callback);
+            mInFlight.put(key, task);
+            mExecutor.execute(task);
+        }
+        if (dropped != null)
+            for (Callback droppedCallback : dropped.mCallbacks)
+                droppedCallback.onThumbnail(dropped.mMedia, null);
+    }
+
+    /**
+     * The callback doesn't need its thumbnails anymore, e.g. its view has been recycled.
+     * Extractions not started yet are cancelled if no other callback waits for them.
+     */
+    public void cancel(Callback callback) {
+        synchronized (mInFlight) {
+            final Iterator<Task> it = mInFlight.values().iterator();
+            while (it.hasNext()) {
+                final Task task = it.next();
+                if (task.mCallbacks.remove(callback) && task.mCallbacks.isEmpty() && mQueue.remove(task))
+                    it.remove();
+            }
+        }
+    }
+
+    /**
+     * Generate thumbnails of a list of videos, the rate is reported to the callback and logged
+     * @param force true to generate them again even if they are cached
+     */
+    @WorkerThread
+    public void regenerate(final List<MediaWrapper> medias, int width, int height, boolean force,
+                           @Nullable final BatchCallback callback) {
+        final int total = medias.size();
+        final long start = SystemClock.elapsedRealtime();
+        final AtomicInteger done = new AtomicInteger(), failed = new AtomicInteger();
+        // Submitted a few at a time, so the batch doesn't fill the bounded queue
+        final Semaphore pending = new Semaphore(2 * WORKERS);
+        final Callback mediaCallback = new Callback() {
+            @Override
+            public void onThumbnail(MediaWrapper media, @Nullable File thumbnail) {
+                pending.release();
+                if (thumbnail == null)
+                    failed.incrementAndGet();
+                final int count = done.incrementAndGet();
+                final long elapsed = Math.max(1L, SystemClock.elapsedRealtime() - start);
+                final float rate = count * 1000f / elapsed;
+                if (callback != null)
+                    callback.onBatchProgress(count, failed.get(), total, rate);
+                if (count == total)
+                    Log.i(TAG, "Generated " + (count - failed.get()) + "/" + total + " thumbnails in " + elapsed
+                            + "ms, " + rate + " thumbs/s with " + WORKERS + " workers");
+            }
+        };
+        for (MediaWrapper media : medias) {
+            pending.acquireUninterruptibly();
+            request(media, width, height, force, mediaCallback);
+        }
+    }
+
+    public String getStats() {
+        final int generated = mGenerated.get();
+        return "generated=" + generated + ", failed=" + mFailed.get() + ", mean="
+                + (generated == 0 ? 0 : mGenerationTime.get() / generated) + "ms, queued="
+                + mExecutor.getQueue().size() + ", cache=" + mCache.getSize() / 1024 + "KB";
+    }
+
+    public void clearCache() {
+        mCache.clear();
+    }
+
+    private static String getKey(MediaWrapper media, int width, int height) {
+        final Uri uri = media.getUri();
+        long size = -1L, modified = -1L;
+        if ("file".equals(uri.getScheme())) {
+            final File file = new File(uri.getPath());
+            size = file.length();
+            modified = file.lastModified();
+        }
+        return ThumbnailCache.getKey(uri, size, modified, width, height);
+    }
+
+    private class Task implements Runnable {
+        final String mKey;
+        final MediaWrapper mMedia;
+        final int mWidth, mHeight;
+        final ArrayList<Callback> mCallbacks = new ArrayList<>(1);
+
+        Task(String key, MediaWrapper media, int width, int height) {
+            mKey = key;
+            mMedia = media;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void run() {
+            final long start = SystemClock.elapsedRealtime();
+            // The RGBA frame, and the bitmap it is copied to
+            final int memory = Math.min(MEMORY_BUDGET_KB, 2 * mWidth * mHeight * 4 / 1024 + 1);
+            mMemory.acquireUninterruptibly(memory);
+            File file = null;
+            try {
+                file = generate();
+            } catch (OutOfMemoryError e) {
+                Log.w(TAG, "Not enough memory to generate thumbnail of " + mMedia.getLocation());
+            } finally {
+                mMemory.release(memory);
+            }
+            if (file != null) {
+                mGenerated.incrementAndGet();
+                mGenerationTime.addAndGet(SystemClock.elapsedRealtime() - start);
+            } else
+                mFailed.incrementAndGet();
+            final Callback[] callbacks;
+            synchronized (mInFlight) {
+                mInFlight.remove(mKey);
+                callbacks = mCallbacks.toArray(new Callback[mCallbacks.size()]);
+            }
+            for (Callback callback : callbacks)
+                callback.onThumbnail(mMedia, file);
+        }
+
+        private File generate() {
+            final byte[] frame = VLCUtil.getThumbnail(VLCInstance.get(), mMedia.getUri(), mWidth, mHeight);
+            if (frame == null)
+                return null;
+            final Bitmap bitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(frame));
+            final Bitmap cropped = BitmapUtil.cropBorders(bitmap, mWidth, mHeight);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+            cropped.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            if (cropped != bitmap)
+                cropped.recycle();
+            // Never displayed, the frame buffer can back the next decode
+            BitmapPool.getInstance().put(bitmap);
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "Thumbnail of " + mMedia.getLocation() + ": " + out.size() / 1024 + "KB");
+            return mCache.put(mKey, out.toByteArray());
+        }
+    }
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "vlc-thumbnailer-" + mCount.incrementAndGet());
+        }
+    };
+}
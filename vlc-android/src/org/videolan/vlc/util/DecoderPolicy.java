@@ -0,0 +1,323 @@
+/*****************************************************************************
+ * DecoderPolicy.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hardware decoding mode learnt from the outcome of previous playbacks.
+ *
+ * Outcomes (errors, lost pictures, startup time) are recorded per codec, profile and
+ * resolution, and per resolution only so a new media of a known size gets a decision too.
+ * Modes are tried from the most accelerated one: FULL, then DECODING, then DISABLED
+ * once the previous ones failed. A downgraded mode still probes the upper one from time
+ * to time, and old outcomes fade, so a fixed driver gets hardware decoding back.
+ *
+ * Modes have the values of VLCOptions.HW_ACCELERATION_*. No Android dependency, see
+ * DecoderPolicyTest.
+ */
+public class DecoderPolicy {
+
+    public static final int NO_DECISION = -1;
+    public static final int DISABLED = 0;
+    public static final int DECODING = 1;
+    public static final int FULL = 2;
+    private static final int MODES = 3;
+
+    private static final int MAGIC = 0x564c4850; // "VLHP"
+    private static final int VERSION = 1;
+    private static final int MAX_ENTRIES = 1024;
+    private static final int MAX_LOCATIONS = 256;
+
+    /* Sessions needed before judging a mode */
+    private static final int MIN_SESSIONS = 3;
+    /* Counters are halved past this number of sessions */
+    private static final int MAX_SESSIONS = 16;
+    /* A downgraded mode probes the upper one every PROBE_INTERVAL sessions */
+    private static final int PROBE_INTERVAL = 8;
+    private static final float MAX_FAILURE_RATE = 0.2f;
+    private static final float MAX_DROP_RATE = 0.05f;
+    /* Extra startup time tolerated compared to software decoding */
+    private static final long MAX_STARTUP_OVERHEAD = 1500L;
+
+    /* Counters of one mode, in this order */
+    private static final int SESSIONS = 0, FAILURES = 1, DISPLAYED = 2, LOST = 3, STARTUP_SUM = 4, STARTUPS = 5;
+    private static final int FIELDS = 6;
+
+    /**
+     * Playback of a media with a mode, filled as it goes
+     */
+    public static class Session {
+        final String location;
+        final int mode;
+        final long startTime;
+        int height;
+        String codec = null;
+        int profile = -1;
+        long startup = -1L;
+
+        Session(String location, int height, int mode, long startTime) {
+            this.location = location;
+            this.height = height;
+            this.mode = mode;
+            this.startTime = startTime;
+        }
+
+        public int getMode() {
+            return mode;
+        }
+
+        /**
+         * The video output started
+         *
+         * @param codec fourcc of the video track, null if unknown
+         */
+        public void onVideoStarted(String codec, int profile, int height, long time) {
+            if (startup != -1L)
+                return;
+            startup = time - startTime;
+            this.codec = codec;
+            this.profile = profile;
+            if (height > 0)
+                this.height = height;
+        }
+    }
+
+    /* Counters by key, FIELDS ints per mode */
+    private final HashMap<String, int[]> mEntries = new HashMap<>();
+    /* Key of the last medias played, so they don't need to be parsed to get one */
+    private final LinkedHashMap<String, String> mLocations = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_LOCATIONS;
+        }
+    };
+
+    public static String getKey(String codec, int profile, int height) {
+        return codec + "/" + profile + "/" + getResolutionClass(height);
+    }
+
+    public static String getResolutionKey(int height) {
+        return "*/" + getResolutionClass(height);
+    }
+
+    private static int getResolutionClass(int height) {
+        if (height <= 576)
+            return 576;
+        if (height <= 720)
+            return 720;
+        if (height <= 1088)
+            return 1080;
+        return 2160;
+    }
+
+    public Session newSession(String location, int height, int mode, long startTime) {
+        return new Session(location, height, mode, startTime);
+    }
+
+    /**
+     * @param height height of the video if known, 0 otherwise
+     * @return mode to use for this media, NO_DECISION to keep the default
+     */
+    public synchronized int select(String location, int height) {
+        final String key = mLocations.get(location);
+        final int[] exact = key != null ? mEntries.get(key) : null;
+        final String resolutionKey = height > 0 ? getResolutionKey(height)
+                : key != null ? "*/" + key.substring(key.lastIndexOf('/') + 1) : null;
+        final int[] resolution = resolutionKey != null ? mEntries.get(resolutionKey) : null;
+        if (exact == null && resolution == null)
+            return NO_DECISION;
+        for (int mode = FULL; mode > DISABLED; --mode) {
+            final int[] entry = pick(exact, resolution, mode);
+            if (entry == null || isUsable(entry, mode))
+                return mode == FULL ? NO_DECISION : probe(entry, mode);
+        }
+        return probe(pick(exact, resolution, DISABLED), DISABLED);
+    }
+
+    /*
+     * The outcomes of the media itself, unless there are too few of them with this mode:
+     * a media which fails to start never gets its codec known, only its resolution.
+     */
+    private static int[] pick(int[] exact, int[] resolution, int mode) {
+        if (exact != null && (resolution == null || exact[mode * FIELDS + SESSIONS] >= MIN_SESSIONS))
+            return exact;
+        return resolution;
+    }
+
+    /* Try the upper mode once in a while */
+    private static int probe(int[] entry, int mode) {
+        if (entry == null)
+            return mode;
+        final int sessions = entry[mode * FIELDS + SESSIONS] + entry[(mode + 1) * FIELDS + SESSIONS];
+        if (entry[mode * FIELDS + SESSIONS] > 0 && sessions % PROBE_INTERVAL == 0)
+            return mode + 1 == FULL ? NO_DECISION : mode + 1;
+        return mode;
+    }
+
+    private static boolean isUsable(int[] entry, int mode) {
+        final int offset = mode * FIELDS;
+        final int sessions = entry[offset + SESSIONS];
+        final int failures = entry[offset + FAILURES];
+        if (sessions < MIN_SESSIONS)
+            return failures < 2;
+        if (failures > sessions * MAX_FAILURE_RATE)
+            return false;
+        final long pictures = (long) entry[offset + DISPLAYED] + entry[offset + LOST];
+        if (pictures > 0 && entry[offset + LOST] > pictures * MAX_DROP_RATE)
+            return false;
+        final int startups = entry[offset + STARTUPS];
+        final int softwareStartups = entry[DISABLED * FIELDS + STARTUPS];
+        if (mode != DISABLED && startups > 0 && softwareStartups > 0) {
+            final long startup = entry[offset + STARTUP_SUM] / startups;
+            final long softwareStartup = entry[DISABLED * FIELDS + STARTUP_SUM] / softwareStartups;
+            if (startup > softwareStartup + MAX_STARTUP_OVERHEAD)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Record the outcome of a session
+     *
+     * @param error true if the playback failed
+     * @param displayed pictures displayed during the session
+     * @param lost pictures lost during the session
+     * @return false if there was nothing to record
+     */
+    public synchronized boolean record(Session session, boolean error, long displayed, long lost) {
+        // Stopped before anything was shown, there is no outcome
+        if (!error && session.startup == -1L)
+            return false;
+        String key = session.codec != null ? getKey(session.codec, session.profile, session.height) : null;
+        if (key == null)
+            key = mLocations.get(session.location);
+        if (key == null && session.height <= 0)
+            return false;
+        if (key != null)
+            add(key, session, error, displayed, lost);
+        if (session.height > 0) {
+            final String resolutionKey = getResolutionKey(session.height);
+            add(resolutionKey, session, error, displayed, lost);
+            if (key == null)
+                key = resolutionKey;
+        }
+        mLocations.put(session.location, key);
+        return true;
+    }
+
+    private void add(String key, Session session, boolean error, long displayed, long lost) {
+        int[] entry = mEntries.get(key);
+        if (entry == null) {
+            if (mEntries.size() >= MAX_ENTRIES)
+                return;
+            entry = new int[MODES * FIELDS];
+            mEntries.put(key, entry);
+        }
+        final int offset = session.mode * FIELDS;
+        if (entry[offset + SESSIONS] >= MAX_SESSIONS)
+            for (int i = offset; i < offset + FIELDS; ++i)
+                entry[i] /= 2;
+        ++entry[offset + SESSIONS];
+        if (error)
+            ++entry[offset + FAILURES];
+        entry[offset + DISPLAYED] = saturatedAdd(entry[offset + DISPLAYED], displayed);
+        entry[offset + LOST] = saturatedAdd(entry[offset + LOST], lost);
+        if (session.startup >= 0L) {
+            entry[offset + STARTUP_SUM] = saturatedAdd(entry[offset + STARTUP_SUM], session.startup);
+            ++entry[offset + STARTUPS];
+        }
+    }
+
+    private static int saturatedAdd(int value, long add) {
+        return (int) Math.min(Integer.MAX_VALUE, value + Math.max(0L, add));
+    }
+
+    public synchronized void load(File file) throws IOException {
+        if (!file.exists())
+            return;
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return;
+            final HashMap<String, int[]> entries = new HashMap<>();
+            final int count = in.readInt();
+            if (count < 0 || count > MAX_ENTRIES)
+                return;
+            for (int i = 0; i < count; ++i) {
+                final String key = in.readUTF();
+                final int[] entry = new int[MODES * FIELDS];
+                for (int j = 0; j < entry.length; ++j)
+                    entry[j] = in.readInt();
+                entries.put(key, entry);
+            }
+            final int locations = in.readInt();
+            if (locations < 0 || locations > MAX_LOCATIONS)
+                return;
+            final LinkedHashMap<String, String> locationKeys = new LinkedHashMap<>();
+            for (int i = 0; i < locations; ++i)
+                locationKeys.put(in.readUTF(), in.readUTF());
+            mEntries.clear();
+            mEntries.putAll(entries);
+            mLocations.clear();
+            mLocations.putAll(locationKeys);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write to a temporary file which replaces the previous one
+     */
+    public synchronized void save(File file) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mEntries.size());
+            for (Map.Entry<String, int[]> entry : mEntries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                for (int value : entry.getValue())
+                    out.writeInt(value);
+            }
+            out.writeInt(mLocations.size());
+            for (Map.Entry<String, String> location : mLocations.entrySet()) {
+                out.writeUTF(location.getKey());
+                out.writeUTF(location.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file))
+            throw new IOException("Cannot rename " + tmp);
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * ************************************************************************
+ *  HttpDownload.java
+ * *************************************************************************
+ *  Copyright © 2017 VLC authors and VideoLAN
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *
+ *  *************************************************************************
+ */
+
+package org.videolan.vlc.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collection;
+
+/**
+ * Resumable HTTP download to a local file.
+ *
+ * Data is written to a ".part" file next to the destination, which is renamed once complete.
+ * An existing destination is never replaced, see {@link #getUniqueDestination(File, String, Collection)}.
+ * When the download is run again, it resumes from the end of the partial file with a Range request.
+ * The ETag or Last-Modified date of the first response is kept in a ".meta" file and sent as
+ * If-Range, so a modified resource is downloaded again from the start instead of being spliced.
+ *
+ * Plain Java, tested against a local server in HttpDownloadTest.
+ */
+public class HttpDownload {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 30000;
+    private static final long PROGRESS_INTERVAL = 250L;
+    /* Weight of the last sample in the smoothed rate */
+    private static final float RATE_SMOOTHING = 0.3f;
+
+    public interface Listener {
+        /**
+         * Called on the downloading thread, at most every 250ms
+         * @param total -1 if unknown
+         * @param eta remaining time in ms, -1 if unknown
+         */
+        void onProgress(HttpDownload download, long downloaded, long total, long bytesPerSecond, long eta);
+    }
+
+    private final String mUrl;
+    private final File mDestination, mPart, mMeta;
+    private Listener mListener;
+    private volatile boolean mCancelled;
+    private volatile HttpURLConnection mConnection;
+    private volatile long mDownloaded, mTotal = -1L, mBytesPerSecond;
+    private long mResumedFrom;
+
+    public HttpDownload(String url, File destination) {
+        mUrl = url;
+        mDestination = destination;
+        mPart = new File(destination.getPath() + ".part");
+        mMeta = new File(destination.getPath() + ".meta");
+    }
+
+    /**
+     * @param reserved paths of the downloads which are not complete yet
+     * @return a file of the directory which is not used yet, named "name (n).ext" if name is taken
+     */
+    public static File getUniqueDestination(File directory, String name, Collection<String> reserved) {
+        final int dot = name.lastIndexOf('.');
+        final String base = dot > 0 ? name.substring(0, dot) : name, extension = dot > 0 ? name.substring(dot) : "";
+        File file = new File(directory, name);
+        for (int i = 1; file.exists() || new File(file.getPath() + ".part").exists()
+                || reserved.contains(file.getPath()); ++i)
+            file = new File(directory, base + " (" + i + ")" + extension);
+        return file;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public File getDestination() {
+        return mDestination;
+    }
+
+    public long getDownloaded() {
+        return mDownloaded;
+    }
+
+    /**
+     * @return -1 if unknown
+     */
+    public long getTotal() {
+        return mTotal;
+    }
+
+    public long getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    /**
+     * @return the offset the last run resumed from, 0 if it started over
+     */
+    public long getResumedFrom() {
+        return mResumedFrom;
+    }
+
+    /**
+     * Stop the download, the partial file is kept so it can be resumed.
+     * Can be called from any thread.
+     */
+    public void cancel() {
+        mCancelled = true;
+        final HttpURLConnection connection = mConnection;
+        if (connection != null)
+            connection.disconnect();
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Remove the partial data, the next run will start over
+     */
+    public void discard() {
+        mPart.delete();
+        mMeta.delete();
+    }
+
+    /**
+     * Download, resuming from the partial file if there is one. Blocking.
+     * @return true if the file is complete, false if cancelled
+     * @throws IOException if the download failed, it can be resumed by calling this method again
+     */
+    public boolean run() throws IOException {
+        mCancelled = false;
+        long offset = mPart.length();
+        final String validator = offset > 0L ? readValidator() : null;
+        if (offset > 0L && validator == null)
+            offset = 0L;
+        final HttpURLConnection connection = (HttpURLConnection) new URL(mUrl).openConnection();
+        mConnection = connection;
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setRequestProperty("Accept-Encoding", "identity");
+            if (offset > 0L) {
+                connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                connection.setRequestProperty("If-Range", validator);
+            }
+            final int code = connection.getResponseCode();
+            if (mCancelled)
+                return false;
+            if (code == 416 && offset > 0L) {
+                // We already have everything, or the resource shrank: let the next run start over
+                final long total = parseTotal(connection.getHeaderField("Content-Range"));
+                if (total == offset)
+                    return complete(offset);
+                discard();
+                throw new IOException("Range not satisfiable for " + mUrl);
+            }
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                final String range = connection.getHeaderField("Content-Range");
+                if (range == null || !range.startsWith("bytes " + offset + "-"))
+                    throw new IOException("Unexpected range " + range + " for " + mUrl);
+                mTotal = parseTotal(range);
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                // Range ignored or resource modified, start over
+                offset = 0L;
+                mTotal = parseLength(connection.getHeaderField("Content-Length"));
+                writeValidator(connection);
+            } else
+                throw new IOException("HTTP " + code + " for " + mUrl);
+            mResumedFrom = offset;
+            mDownloaded = offset;
+            copy(connection.getInputStream(), offset > 0L);
+            if (mCancelled)
+                return false;
+            if (mTotal != -1L && mDownloaded != mTotal)
+                throw new IOException("Connection closed at " + mDownloaded + "/" + mTotal + " for " + mUrl);
+            return complete(mDownloaded);
+        } catch (IOException e) {
+            if (mCancelled)
+                return false;
+            throw e;
+        } finally {
+            mConnection = null;
+            connection.disconnect();
+        }
+    }
+
+    private void copy(InputStream in, boolean append) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(mPart, append);
+            long lastTime = System.currentTimeMillis(), lastBytes = mDownloaded;
+            int read;
+            while (!mCancelled && (read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                mDownloaded += read;
+                final long now = System.currentTimeMillis();
+                if (now - lastTime >= PROGRESS_INTERVAL) {
+                    updateRate(mDownloaded - lastBytes, now - lastTime);
+                    lastTime = now;
+                    lastBytes = mDownloaded;
+                    notifyProgress();
+                }
+            }
+        } finally {
+            in.close();
+            if (out != null)
+                out.close();
+        }
+    }
+
+    private void updateRate(long bytes, long elapsed) {
+        final long rate = bytes * 1000L / elapsed;
+        mBytesPerSecond = mBytesPerSecond == 0L ? rate
+                : (long) (RATE_SMOOTHING * rate + (1f - RATE_SMOOTHING) * mBytesPerSecond);
+    }
+
+    private void notifyProgress() {
+        if (mListener == null)
+            return;
+        final long total = mTotal, downloaded = mDownloaded, rate = mBytesPerSecond;
+        final long eta = total != -1L && rate > 0L ? (total - downloaded) * 1000L / rate : -1L;
+        mListener.onProgress(this, downloaded, total, rate, eta);
+    }
+
+    private boolean complete(long size) throws IOException {
+        if (mDestination.exists())
+            throw new IOException(mDestination + " already exists");
+        if (!mPart.renameTo(mDestination))
+            throw new IOException("Cannot rename " + mPart);
+        mMeta.delete();
+        mDownloaded = size;
+        mTotal = size;
+        notifyProgress();
+        return true;
+    }
+
+    /* Parse the total size of a "bytes 0-99/1000" or "bytes *\/1000" Content-Range */
+    static long parseTotal(String contentRange) {
+        if (contentRange == null)
+            return -1L;
+        final int slash = contentRange.lastIndexOf('/');
+        if (slash == -1)
+            return -1L;
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private static long parseLength(String contentLength) {
+        if (contentLength == null)
+            return -1L;
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private String readValidator() {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(mMeta));
+            final String line = reader.readLine();
+            return line == null || line.isEmpty() ? null : line;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            close(reader);
+        }
+    }
+
+    private void writeValidator(HttpURLConnection connection) throws IOException {
+        String validator = connection.getHeaderField("ETag");
+        // Weak ETags can't be used for If-Range
+        if (validator == null || validator.startsWith("W/"))
+            validator = connection.getHeaderField("Last-Modified");
+        if (validator == null) {
+            mMeta.delete();
+            return;
+        }
+        final File parent = mMeta.getParentFile();
+        if (parent != null && !parent.exists())
+            parent.mkdirs();
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(mMeta);
+            writer.write(validator);
+        } finally {
+            close(writer);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null)
+            try {
+                closeable.close();
+            } catch (IOException ignored) {}
+    }
+}
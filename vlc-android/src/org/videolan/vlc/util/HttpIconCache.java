@@ -0,0 +1,406 @@
+/*
+ * ************************************************************************
+ *  HttpIconCache.java
+ * *************************************************************************
+ *  Copyright © 2017 VLC authors and VideoLAN
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *
+ *  *************************************************************************
+ */
+
+package org.videolan.vlc.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent HTTP cache for server icons and artworks.
+ *
+ * Responses are stored on disk with their validators and expiry date, as given by
+ * Cache-Control / Expires headers. Stale entries are revalidated with
+ * If-None-Match / If-Modified-Since, so unchanged icons cost a 304 only.
+ * Concurrent requests for the same URL share a single download, and connections
+ * to a host are capped under the HttpURLConnection keep-alive pool size
+ * (http.maxConnections, 5 by default) so sockets get reused.
+ *
+ * This class has no Android dependency, it is unit tested on the JVM.
+ */
+public class HttpIconCache {
+
+    private static final int META_VERSION = 1;
+    private static final String DATA_EXT = ".data";
+    private static final String META_EXT = ".meta";
+    static final long DEFAULT_TTL = 60 * 60 * 1000L;
+    private static final long MAX_HEURISTIC_TTL = 24 * 60 * 60 * 1000L;
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 10000;
+    private static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private final int mMaxConnectionsPerHost;
+    private long mSize = -1L;
+
+    private final ConcurrentHashMap<String, FutureTask<byte[]>> mInFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Semaphore> mHostPermits = new ConcurrentHashMap<>();
+
+    private final AtomicInteger mFreshHits = new AtomicInteger();
+    private final AtomicInteger mRevalidations = new AtomicInteger();
+    private final AtomicInteger mDownloads = new AtomicInteger();
+    private final AtomicInteger mCoalesced = new AtomicInteger();
+
+    public HttpIconCache(File directory, long maxSize, int maxConnectionsPerHost) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        mMaxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Get the content at the given URL, from the cache if it is still valid.
+     * Blocking, must not be called from the main thread.
+     * @return the response body, null on failure
+     */
+    public byte[] get(final String url) {
+        FutureTask<byte[]> task = mInFlight.get(url);
+        if (task == null) {
+            final FutureTask<byte[]> newTask = new FutureTask<>(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return load(url);
+                }
+            });
+            task = mInFlight.putIfAbsent(url, newTask);
+            if (task == null) {
+                task = newTask;
+                try {
+                    newTask.run();
+                } finally {
+                    mInFlight.remove(url, newTask);
+                }
+            } else
+                mCoalesced.incrementAndGet();
+        } else
+            mCoalesced.incrementAndGet();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private byte[] load(String url) throws IOException {
+        final String name = Long.toHexString(MurmurHash.hash64(url));
+        final Entry cached = readEntry(name);
+        final long now = System.currentTimeMillis();
+        if (cached != null && cached.expires > now) {
+            mFreshHits.incrementAndGet();
+            return cached.data;
+        }
+        final Semaphore permits = getHostPermits(new URL(url).getHost());
+        permits.acquireUninterruptibly();
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            if (cached != null) {
+                if (cached.etag != null)
+                    connection.setRequestProperty("If-None-Match", cached.etag);
+                if (cached.lastModified != null)
+                    connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+            }
+            final int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                drain(connection);
+                mRevalidations.incrementAndGet();
+                final long expires = computeExpiry(connection, now);
+                if (expires >= 0L) {
+                    cached.expires = expires;
+                    writeMeta(name, cached);
+                }
+                return cached.data;
+            }
+            if (code != HttpURLConnection.HTTP_OK)
+                throw new IOException("Unexpected response " + code + " for " + url);
+            final Entry entry = new Entry();
+            entry.data = readFully(connection.getInputStream());
+            entry.etag = connection.getHeaderField("ETag");
+            entry.lastModified = connection.getHeaderField("Last-Modified");
+            entry.expires = computeExpiry(connection, now);
+            mDownloads.incrementAndGet();
+            if (entry.expires >= 0L)
+                writeEntry(name, entry);
+            else
+                deleteEntry(name);
+            return entry.data;
+        } catch (IOException e) {
+            // Serve stale content rather than nothing if the server is unreachable
+            if (cached != null)
+                return cached.data;
+            throw e;
+        } finally {
+            // Do not disconnect, the body has been consumed so the socket goes back to the keep-alive pool
+            permits.release();
+        }
+    }
+
+    /**
+     * @return expiry date in ms, -1 if the response must not be stored
+     */
+    static long computeExpiry(HttpURLConnection connection, long now) {
+        final String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            final String cc = cacheControl.toLowerCase(Locale.US);
+            if (cc.contains("no-store"))
+                return -1L;
+            if (cc.contains("no-cache"))
+                return now;
+            final Matcher matcher = MAX_AGE.matcher(cc);
+            if (matcher.find()) {
+                try {
+                    return now + Long.parseLong(matcher.group(1)) * 1000L;
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        final long expires = connection.getHeaderFieldDate("Expires", 0L);
+        if (expires > 0L)
+            return expires;
+        // Heuristic freshness: 10% of the document age
+        final long lastModified = connection.getHeaderFieldDate("Last-Modified", 0L);
+        if (lastModified > 0L && lastModified < now)
+            return now + Math.min(MAX_HEURISTIC_TTL, (now - lastModified) / 10);
+        return now + DEFAULT_TTL;
+    }
+
+    private Semaphore getHostPermits(String host) {
+        Semaphore permits = mHostPermits.get(host);
+        if (permits == null) {
+            final Semaphore newPermits = new Semaphore(mMaxConnectionsPerHost);
+            permits = mHostPermits.putIfAbsent(host, newPermits);
+            if (permits == null)
+                permits = newPermits;
+        }
+        return permits;
+    }
+
+    public int getFreshHitCount() {
+        return mFreshHits.get();
+    }
+
+    public int getRevalidationCount() {
+        return mRevalidations.get();
+    }
+
+    public int getDownloadCount() {
+        return mDownloads.get();
+    }
+
+    public int getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    public String getStats() {
+        return "http cache: fresh=" + mFreshHits.get() + ", revalidated=" + mRevalidations.get()
+                + ", downloads=" + mDownloads.get() + ", coalesced=" + mCoalesced.get();
+    }
+
+    public synchronized void clear() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        mSize = 0L;
+    }
+
+    /*
+     * Storage
+     */
+
+    private static class Entry {
+        byte[] data;
+        String etag;
+        String lastModified;
+        long expires;
+    }
+
+    private Entry readEntry(String name) {
+        final File meta = new File(mDirectory, name + META_EXT);
+        final File data = new File(mDirectory, name + DATA_EXT);
+        if (!meta.exists() || !data.exists())
+            return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(meta));
+            if (in.readInt() != META_VERSION)
+                return null;
+            final Entry entry = new Entry();
+            entry.etag = readString(in);
+            entry.lastModified = readString(in);
+            entry.expires = in.readLong();
+            entry.data = readFully(new FileInputStream(data));
+            return entry;
+        } catch (IOException e) {
+            deleteEntry(name);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    private synchronized void writeEntry(String name, Entry entry) {
+        final File data = new File(mDirectory, name + DATA_EXT);
+        final File tmp = new File(mDirectory, name + DATA_EXT + ".tmp");
+        if (!mDirectory.exists() && !mDirectory.mkdirs())
+            return;
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            out.write(entry.data);
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        } finally {
+            close(out);
+        }
+        final long previous = data.length();
+        if (!tmp.renameTo(data)) {
+            tmp.delete();
+            return;
+        }
+        writeMeta(name, entry);
+        if (mSize >= 0L)
+            mSize += data.length() - previous;
+        trimToSize();
+    }
+
+    private synchronized void writeMeta(String name, Entry entry) {
+        final File meta = new File(mDirectory, name + META_EXT);
+        final File tmp = new File(mDirectory, name + META_EXT + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(tmp));
+            out.writeInt(META_VERSION);
+            writeString(out, entry.etag);
+            writeString(out, entry.lastModified);
+            out.writeLong(entry.expires);
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        } finally {
+            close(out);
+        }
+        if (!tmp.renameTo(meta))
+            tmp.delete();
+    }
+
+    private synchronized void deleteEntry(String name) {
+        final File data = new File(mDirectory, name + DATA_EXT);
+        if (mSize >= 0L)
+            mSize -= data.length();
+        data.delete();
+        new File(mDirectory, name + META_EXT).delete();
+    }
+
+    /* Remove least recently written entries until the cache fits in mMaxSize */
+    private void trimToSize() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null)
+            return;
+        if (mSize < 0L) {
+            mSize = 0L;
+            for (File file : files)
+                if (file.getName().endsWith(DATA_EXT))
+                    mSize += file.length();
+        }
+        if (mSize <= mMaxSize)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long l = lhs.lastModified(), r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (mSize <= mMaxSize)
+                break;
+            final String fileName = file.getName();
+            if (fileName.endsWith(DATA_EXT))
+                deleteEntry(fileName.substring(0, fileName.length() - DATA_EXT.length()));
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    private static void drain(HttpURLConnection connection) {
+        try {
+            final InputStream in = connection.getInputStream();
+            if (in != null)
+                readFully(in);
+        } catch (IOException ignored) {}
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        final byte[] buffer = new byte[4096];
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+        } finally {
+            close(in);
+        }
+        return out.toByteArray();
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null)
+            try {
+                closeable.close();
+            } catch (IOException ignored) {}
+    }
+}
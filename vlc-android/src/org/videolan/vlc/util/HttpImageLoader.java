@@ -33,7 +33,6 @@ import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v17.leanback.widget.ImageCardView;
-import android.support.v4.util.SimpleArrayMap;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -41,18 +40,18 @@ import android.widget.TextView;
 import org.videolan.vlc.BR;
 import org.videolan.vlc.VLCApplication;
 import org.videolan.vlc.gui.helpers.AsyncImageLoader.Callbacks;
+import org.videolan.vlc.gui.helpers.BitmapCache;
+import org.videolan.vlc.gui.helpers.BitmapPool;
 
-import java.io.BufferedInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.lang.ref.SoftReference;
-import java.net.HttpURLConnection;
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 
 public class HttpImageLoader implements Callbacks {
 
-    private static SimpleArrayMap<String, SoftReference<Bitmap>> iconsMap = new SimpleArrayMap<>();
+    private static final long ICON_CACHE_SIZE = 10 * 1024 * 1024;
+    private static final int MAX_CONNECTIONS_PER_HOST = 4;
+    private static HttpIconCache sIconCache = null;
     private String mImageLink;
     private ViewDataBinding mBinding;
     private boolean bindChanged = false;
@@ -96,19 +95,11 @@ public class HttpImageLoader implements Callbacks {
 
     @Nullable
     public static Bitmap getBitmapFromIconCache(String imageUrl) {
-        if (iconsMap.containsKey(imageUrl)) {
-            Bitmap bd = iconsMap.get(imageUrl).get();
-            if (bd != null) {
-                return bd;
-            } else
-                iconsMap.remove(imageUrl);
-        }
-        return null;
+        return BitmapCache.getInstance().getBitmapFromMemCache(imageUrl);
     }
 
     @Nullable
     public static Bitmap downloadBitmap(String imageUrl) {
-        HttpURLConnection urlConnection = null;
         Bitmap icon = getBitmapFromIconCache(imageUrl);
         if (icon != null)
             return icon;
@@ -116,21 +107,28 @@ public class HttpImageLoader implements Callbacks {
             URL url = new URL(imageUrl);
             if (url.getPort() <= 0)
                 return null;
-            urlConnection = (HttpURLConnection) url.openConnection();
-            InputStream in = new BufferedInputStream(urlConnection.getInputStream());
-            icon = BitmapFactory.decodeStream(in);
-            iconsMap.put(imageUrl, new SoftReference<>(icon));
         } catch (MalformedURLException e) {
             e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (urlConnection != null)
-                urlConnection.disconnect();
+            return null;
         }
+        final byte[] data = getIconCache().get(imageUrl);
+        if (data == null)
+            return null;
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        icon = options.outWidth > 0 ? BitmapPool.decodeByteArray(data, options) : null;
+        BitmapCache.getInstance().addBitmapToMemCache(imageUrl, icon);
         return icon;
     }
 
+    private static synchronized HttpIconCache getIconCache() {
+        if (sIconCache == null)
+            sIconCache = new HttpIconCache(new File(VLCApplication.getAppContext().getCacheDir(), "http_icons"),
+                    ICON_CACHE_SIZE, MAX_CONNECTIONS_PER_HOST);
+        return sIconCache;
+    }
+
     @Override
     public void updateImage(final Bitmap bitmap, final View target) {
         if (bitmap == null || bitmap.getWidth() == 1 || bitmap.getHeight() == 1)
@@ -0,0 +1,97 @@
+/*****************************************************************************
+ * LatencyHistogram.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in milliseconds.
+ * Bucket i counts the values in [2^(i-1), 2^i[, so percentiles are given
+ * with a power of two precision, which is enough to spot regressions.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 24; // up to ~2.3 hours
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void record(long durationMs) {
+        if (durationMs < 0)
+            durationMs = 0;
+        final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(durationMs));
+        mBuckets.incrementAndGet(bucket);
+        mCount.incrementAndGet();
+        mSum.addAndGet(durationMs);
+        long max;
+        while (durationMs > (max = mMax.get()))
+            if (mMax.compareAndSet(max, durationMs))
+                break;
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    public long getMean() {
+        final long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    /**
+     * @param percentile in ]0, 100]
+     * @return upper bound of the bucket containing the given percentile, in ms
+     */
+    public long getPercentile(double percentile) {
+        final long count = mCount.get();
+        if (count == 0)
+            return 0;
+        final long rank = (long) Math.ceil(count * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += mBuckets.get(i);
+            if (seen >= rank)
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, mMax.get());
+        }
+        return mMax.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i)
+            mBuckets.set(i, 0);
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + getMean() + "ms, p50=" + getPercentile(50) + "ms, p90="
+                + getPercentile(90) + "ms, p99=" + getPercentile(99) + "ms, max=" + getMax() + "ms";
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * ************************************************************************
+ *  ListingCache.java
+ * *************************************************************************
+ *  Copyright © 2017 VLC authors and VideoLAN
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *
+ *  *************************************************************************
+ */
+
+package org.videolan.vlc.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Persistent cache of directory listings, keyed by directory MRL.
+ *
+ * Each listing is stored in its own file, named after the hash of the MRL.
+ * Reading a listing refreshes its file date, so the least recently used listings
+ * are the ones removed when the cache holds more than its maximum count.
+ *
+ * This class has no Android dependency, it is unit tested on the JVM.
+ */
+public class ListingCache {
+
+    private static final int MAGIC = 0x564C434C; // "VLCL"
+    private static final int VERSION = 1;
+    private static final String EXT = ".listing";
+
+    public static class Entry {
+        public final String mrl;
+        public final String title;
+        public final int type;
+        /* Duration in ms, 0 if unknown */
+        public final long length;
+        /* File size in bytes and modification date in ms, -1 if unknown */
+        public final long size;
+        public final long lastModified;
+
+        public Entry(String mrl, String title, int type, long length, long size, long lastModified) {
+            this.mrl = mrl;
+            this.title = title;
+            this.type = type;
+            this.length = length;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        boolean isSame(Entry other) {
+            return type == other.type && length == other.length && size == other.size
+                    && lastModified == other.lastModified && mrl.equals(other.mrl)
+                    && (title == null ? other.title == null : title.equals(other.title));
+        }
+    }
+
+    public static class Listing {
+        public final String mrl;
+        /* Date of the browsing, in ms since epoch */
+        public final long time;
+        public final List<Entry> entries;
+
+        Listing(String mrl, long time, List<Entry> entries) {
+            this.mrl = mrl;
+            this.time = time;
+            this.entries = entries;
+        }
+    }
+
+    private final File mDirectory;
+    private final int mMaxListings;
+
+    public ListingCache(File directory, int maxListings) {
+        mDirectory = directory;
+        mMaxListings = maxListings;
+    }
+
+    /**
+     * @return the cached listing, null if there is none
+     */
+    public Listing get(String mrl) {
+        final File file = getFile(mrl);
+        if (!file.exists())
+            return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Unknown format");
+            // Hash collision
+            if (!mrl.equals(in.readUTF()))
+                return null;
+            final long time = in.readLong();
+            final int count = in.readInt();
+            if (count < 0)
+                throw new IOException("Invalid entry count");
+            final ArrayList<Entry> entries = new ArrayList<>(Math.min(count, 4096));
+            for (int i = 0; i < count; ++i) {
+                final String entryMrl = in.readUTF();
+                final String title = in.readBoolean() ? in.readUTF() : null;
+                entries.add(new Entry(entryMrl, title, in.readInt(), in.readLong(), in.readLong(), in.readLong()));
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return new Listing(mrl, time, Collections.unmodifiableList(entries));
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    public synchronized void put(String mrl, List<Entry> entries) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs())
+            return;
+        final File file = getFile(mrl);
+        final File tmp = new File(mDirectory, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 8192));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mrl);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.mrl);
+                out.writeBoolean(entry.title != null);
+                if (entry.title != null)
+                    out.writeUTF(entry.title);
+                out.writeInt(entry.type);
+                out.writeLong(entry.length);
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        } finally {
+            close(out);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        trim();
+    }
+
+    public synchronized void remove(String mrl) {
+        getFile(mrl).delete();
+    }
+
+    public synchronized void clear() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+    }
+
+    /**
+     * @return true if both lists have the same entries, in the same order
+     */
+    public static boolean isSame(List<Entry> entries, List<Entry> others) {
+        if (entries.size() != others.size())
+            return false;
+        for (int i = 0; i < entries.size(); ++i)
+            if (!entries.get(i).isSame(others.get(i)))
+                return false;
+        return true;
+    }
+
+    private File getFile(String mrl) {
+        return new File(mDirectory, Long.toHexString(MurmurHash.hash64(mrl)) + EXT);
+    }
+
+    /* Remove least recently used listings */
+    private void trim() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null || files.length <= mMaxListings)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long l = lhs.lastModified(), r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - mMaxListings; ++i)
+            files[i].delete();
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null)
+            try {
+                closeable.close();
+            } catch (IOException ignored) {}
+    }
+}
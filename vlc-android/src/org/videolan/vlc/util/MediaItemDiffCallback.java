@@ -1,8 +1,10 @@
 package org.videolan.vlc.util;
 
 import android.support.v7.util.DiffUtil;
+import android.text.TextUtils;
 
 import org.videolan.medialibrary.media.MediaLibraryItem;
+import org.videolan.medialibrary.media.MediaWrapper;
 
 import java.util.List;
 
@@ -31,13 +33,41 @@ public class MediaItemDiffCallback extends DiffUtil.Callback {
         return newList == null ? 0 : newList.length;
     }
 
+    /* Same medialibrary id and type, or same location for items out of the medialibrary */
     @Override
     public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-        return (oldList[oldItemPosition] == null ) == ( newList[newItemPosition] == null) && oldList[oldItemPosition].equals(newList[newItemPosition]);
+        final MediaLibraryItem oldItem = oldList[oldItemPosition], newItem = newList[newItemPosition];
+        return oldItem == null ? newItem == null : oldItem.equals(newItem);
     }
 
+    /*
+     * Items are compared on what they display.
+     * An instance kept in both lists is unchanged: code updating an item in place
+     * notifies its adapter itself, with notifyItemChanged().
+     */
     @Override
     public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-        return true;
+        final MediaLibraryItem oldItem = oldList[oldItemPosition], newItem = newList[newItemPosition];
+        if (oldItem == newItem)
+            return true;
+        return oldItem != null && newItem != null && isSameContent(oldItem, newItem);
+    }
+
+    private static boolean isSameContent(MediaLibraryItem oldItem, MediaLibraryItem newItem) {
+        if (!TextUtils.equals(oldItem.getTitle(), newItem.getTitle())
+                || !TextUtils.equals(oldItem.getDescription(), newItem.getDescription())
+                || !TextUtils.equals(oldItem.getArtworkMrl(), newItem.getArtworkMrl())
+                || oldItem.hasStateFlags(MediaLibraryItem.FLAG_SELECTED) != newItem.hasStateFlags(MediaLibraryItem.FLAG_SELECTED)
+                || oldItem.getItemType() != newItem.getItemType())
+            return false;
+        if (oldItem.getItemType() != MediaLibraryItem.TYPE_MEDIA)
+            return true;
+        final MediaWrapper oldMedia = (MediaWrapper) oldItem, newMedia = (MediaWrapper) newItem;
+        return oldMedia.getType() == newMedia.getType()
+                && oldMedia.getFlags() == newMedia.getFlags()
+                && oldMedia.getLength() == newMedia.getLength()
+                && oldMedia.getTime() == newMedia.getTime()
+                && TextUtils.equals(oldMedia.getArtist(), newMedia.getArtist())
+                && TextUtils.equals(oldMedia.getAlbum(), newMedia.getAlbum());
     }
 }
@@ -12,25 +12,33 @@ public abstract class MediaItemFilter extends Filter {
 
     protected static final String TAG = "VLC/MediaItemFilter";
 
+    private static final SearchIndex.TitleProvider<MediaLibraryItem> TITLE_PROVIDER = new SearchIndex.TitleProvider<MediaLibraryItem>() {
+        @Override
+        public String getTitle(MediaLibraryItem item) {
+            return item.getTitle();
+        }
+    };
+
+    /**
+     * @return the list to filter, the same instance as long as its content does not change
+     */
     protected abstract List<? extends MediaLibraryItem> initData();
 
     protected List<MediaLibraryItem> referenceList;
 
+    /* Only accessed from the filtering thread */
+    private List<? extends MediaLibraryItem> mIndexedData;
+    private SearchIndex<MediaLibraryItem> mIndex;
+
     @Override
     protected FilterResults performFiltering(CharSequence charSequence) {
-        final String[] queryStrings = charSequence.toString().trim().toLowerCase().split(" ");
-        FilterResults results = new FilterResults();
-        ArrayList<MediaLibraryItem> list = new ArrayList<>();
-        for (MediaLibraryItem item : initData()) {
-            for (String queryString : queryStrings) {
-                if (queryString.length() < 2)
-                    continue;
-                if (item.getTitle() != null && item.getTitle().toLowerCase().contains(queryString)) {
-                    list.add(item);
-                    break ; //avoid duplicates in search results, and skip useless processing
-                }
-            }
+        final List<? extends MediaLibraryItem> data = initData();
+        if (mIndex == null || data != mIndexedData || data.size() != mIndex.size()) {
+            mIndex = new SearchIndex<>(data, TITLE_PROVIDER);
+            mIndexedData = data;
         }
+        final ArrayList<MediaLibraryItem> list = mIndex.search(charSequence);
+        FilterResults results = new FilterResults();
         results.values = list;
         results.count = list.size();
         return results;
@@ -0,0 +1,203 @@
+/*****************************************************************************
+ * PagedQuery.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.util;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.WorkerThread;
+
+import org.videolan.medialibrary.Medialibrary;
+import org.videolan.medialibrary.media.Album;
+import org.videolan.medialibrary.media.Artist;
+import org.videolan.medialibrary.media.MediaWrapper;
+import org.videolan.vlc.VLCApplication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Loads a medialibrary collection page by page, on the database thread.
+ *
+ * In progressive mode, the first page is published as soon as it is read so the
+ * list can be shown before the whole collection has crossed JNI, then the
+ * complete collection is published once. Otherwise only the complete collection
+ * is published.
+ * The collection is not locked between pages: a concurrent modification can be
+ * missed, the medialibrary callbacks trigger a new query anyway.
+ */
+public abstract class PagedQuery<T> implements Runnable {
+
+    static final int FIRST_PAGE_SIZE = 100;
+    static final int PAGE_SIZE = 1000;
+
+    public interface Callback<T> {
+        /**
+         * @param complete false if only the first page has been loaded so far
+         */
+        @MainThread
+        void onItemsLoaded(T[] items, boolean complete);
+    }
+
+    public interface PageListener<T> {
+        /**
+         * Called with each page as it is read, in order, before the items are published
+         */
+        @WorkerThread
+        void onPageLoaded(T[] page);
+    }
+
+    protected final Medialibrary mMedialibrary = Medialibrary.getInstance();
+    private final Callback<T> mCallback;
+    private final boolean mProgressive;
+    private PageListener<T> mPageListener = null;
+    private volatile boolean mCancelled = false;
+
+    protected PagedQuery(Callback<T> callback, boolean progressive) {
+        mCallback = callback;
+        mProgressive = progressive;
+    }
+
+    /**
+     * @param limit max number of items, -1 for all the remaining ones
+     */
+    @WorkerThread
+    protected abstract T[] getPage(int offset, int limit);
+
+    protected abstract T[] newArray(int size);
+
+    /**
+     * Results of this query will not be published anymore
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Must be set before {@link #execute()}
+     */
+    public PagedQuery<T> setPageListener(PageListener<T> listener) {
+        mPageListener = listener;
+        return this;
+    }
+
+    public PagedQuery<T> execute() {
+        VLCApplication.runDatabase(this);
+        return this;
+    }
+
+    @Override
+    public void run() {
+        if (mCancelled)
+            return;
+        // A short page ends the query, counting first would build the whole collection once more
+        int limit = FIRST_PAGE_SIZE;
+        T[] page = getPage(0, limit);
+        onPageLoaded(page);
+        if (page.length < limit) {
+            publish(page, true);
+            return;
+        }
+        final ArrayList<T> items = new ArrayList<>(FIRST_PAGE_SIZE + PAGE_SIZE);
+        if (mProgressive)
+            publish(page, false);
+        while (!mCancelled) {
+            Collections.addAll(items, page);
+            if (page.length < limit)
+                break;
+            limit = PAGE_SIZE;
+            page = getPage(items.size(), limit);
+            onPageLoaded(page);
+        }
+        publish(items.toArray(newArray(items.size())), true);
+    }
+
+    private void onPageLoaded(T[] page) {
+        if (mPageListener != null && !mCancelled)
+            mPageListener.onPageLoaded(page);
+    }
+
+    private void publish(final T[] items, final boolean complete) {
+        if (mCancelled)
+            return;
+        VLCApplication.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled)
+                    mCallback.onItemsLoaded(items, complete);
+            }
+        });
+    }
+
+    public static PagedQuery<MediaWrapper> videos(final int sort, final boolean desc, boolean progressive, Callback<MediaWrapper> callback) {
+        return new PagedQuery<MediaWrapper>(callback, progressive) {
+            @Override
+            protected MediaWrapper[] getPage(int offset, int limit) {
+                return mMedialibrary.getPagedVideos(sort, desc, offset, limit);
+            }
+
+            @Override
+            protected MediaWrapper[] newArray(int size) {
+                return new MediaWrapper[size];
+            }
+        };
+    }
+
+    public static PagedQuery<MediaWrapper> audio(final int sort, final boolean desc, boolean progressive, Callback<MediaWrapper> callback) {
+        return new PagedQuery<MediaWrapper>(callback, progressive) {
+            @Override
+            protected MediaWrapper[] getPage(int offset, int limit) {
+                return mMedialibrary.getPagedAudio(sort, desc, offset, limit);
+            }
+
+            @Override
+            protected MediaWrapper[] newArray(int size) {
+                return new MediaWrapper[size];
+            }
+        };
+    }
+
+    public static PagedQuery<Album> albums(boolean progressive, Callback<Album> callback) {
+        return new PagedQuery<Album>(callback, progressive) {
+            @Override
+            protected Album[] getPage(int offset, int limit) {
+                return mMedialibrary.getPagedAlbums(offset, limit);
+            }
+
+            @Override
+            protected Album[] newArray(int size) {
+                return new Album[size];
+            }
+        };
+    }
+
+    public static PagedQuery<Artist> artists(boolean progressive, Callback<Artist> callback) {
+        return new PagedQuery<Artist>(callback, progressive) {
+            @Override
+            protected Artist[] getPage(int offset, int limit) {
+                return mMedialibrary.getPagedArtists(offset, limit);
+            }
+
+            @Override
+            protected Artist[] newArray(int size) {
+                return new Artist[size];
+            }
+        };
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * ************************************************************************
+ *  PlaybackQos.java
+ * *************************************************************************
+ *  Copyright © 2017 VLC authors and VideoLAN
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *
+ *  *************************************************************************
+ */
+
+package org.videolan.vlc.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Quality of service of a playback session, sampled from the libvlc input statistics.
+ *
+ * The statistics are cumulative counters, sampled at a fixed cadence into a ring buffer of
+ * primitive arrays: recording a sample doesn't allocate. Drop rate, bitrate and buffering
+ * ratio are derived from the difference between samples. Session totals are kept aside,
+ * so they cover the whole session even once the oldest samples are overwritten.
+ *
+ * Pure Java, see PlaybackQosTest.
+ */
+public class PlaybackQos {
+
+    public static final long SAMPLE_INTERVAL = 1000L;
+    /* 10 minutes at the default interval */
+    public static final int DEFAULT_CAPACITY = 600;
+
+    private static final byte FLAG_BUFFERING = 1;
+    /* First sample after a pause or a counters reset, not compared to the previous one */
+    private static final byte FLAG_SEGMENT_START = 2;
+
+    private final String mLocation;
+    private final long mStartTime;
+    private final int mCapacity;
+
+    private final long[] mTimes;
+    private final int[] mReadBytes;
+    private final int[] mDisplayedPictures;
+    private final int[] mLostPictures;
+    private final int[] mPlayedAudio;
+    private final int[] mLostAudio;
+    private final int[] mCorrupted;
+    private final int[] mDiscontinuities;
+    private final byte[] mFlags;
+    /* Index of the next sample to write */
+    private int mHead = 0;
+    private int mSize = 0;
+    private boolean mNewSegment = true;
+
+    private long mTotalBytes, mTotalDisplayed, mTotalLost, mTotalPlayedAudio, mTotalLostAudio;
+    private long mTotalCorrupted, mTotalDiscontinuities;
+    private long mSampledTime, mBufferingTime;
+    private float mMaxBitrate = 0f;
+    private int mStalls = 0;
+
+    public PlaybackQos(String location, long startTime) {
+        this(location, startTime, DEFAULT_CAPACITY);
+    }
+
+    public PlaybackQos(String location, long startTime, int capacity) {
+        mLocation = location;
+        mStartTime = startTime;
+        mCapacity = capacity;
+        mTimes = new long[capacity];
+        mReadBytes = new int[capacity];
+        mDisplayedPictures = new int[capacity];
+        mLostPictures = new int[capacity];
+        mPlayedAudio = new int[capacity];
+        mLostAudio = new int[capacity];
+        mCorrupted = new int[capacity];
+        mDiscontinuities = new int[capacity];
+        mFlags = new byte[capacity];
+    }
+
+    public String getLocation() {
+        return mLocation;
+    }
+
+    /**
+     * Record the counters of the input statistics
+     *
+     * @param time sampling time in ms, monotonic
+     * @param buffering true if the player is buffering
+     */
+    public synchronized void record(long time, int readBytes, int displayedPictures, int lostPictures,
+                                    int playedAudio, int lostAudio, int demuxCorrupted,
+                                    int demuxDiscontinuity, boolean buffering) {
+        final int last = mSize > 0 ? previous(mHead) : -1;
+        boolean segmentStart = mNewSegment || last == -1;
+        // Counters start over when the input is restarted
+        if (!segmentStart && (readBytes < mReadBytes[last] || displayedPictures < mDisplayedPictures[last]
+                || playedAudio < mPlayedAudio[last]))
+            segmentStart = true;
+        if (!segmentStart) {
+            final long elapsed = time - mTimes[last];
+            final int bytes = readBytes - mReadBytes[last];
+            mTotalBytes += bytes;
+            mTotalDisplayed += displayedPictures - mDisplayedPictures[last];
+            mTotalLost += Math.max(0, lostPictures - mLostPictures[last]);
+            mTotalPlayedAudio += playedAudio - mPlayedAudio[last];
+            mTotalLostAudio += Math.max(0, lostAudio - mLostAudio[last]);
+            mTotalCorrupted += Math.max(0, demuxCorrupted - mCorrupted[last]);
+            mTotalDiscontinuities += Math.max(0, demuxDiscontinuity - mDiscontinuities[last]);
+            mSampledTime += elapsed;
+            if (buffering)
+                mBufferingTime += elapsed;
+            if (elapsed > 0L)
+                mMaxBitrate = Math.max(mMaxBitrate, bytes * 8000f / elapsed);
+        }
+        if (buffering && (segmentStart || (mFlags[last] & FLAG_BUFFERING) == 0))
+            ++mStalls;
+
+        mTimes[mHead] = time;
+        mReadBytes[mHead] = readBytes;
+        mDisplayedPictures[mHead] = displayedPictures;
+        mLostPictures[mHead] = lostPictures;
+        mPlayedAudio[mHead] = playedAudio;
+        mLostAudio[mHead] = lostAudio;
+        mCorrupted[mHead] = demuxCorrupted;
+        mDiscontinuities[mHead] = demuxDiscontinuity;
+        mFlags[mHead] = (byte) ((buffering ? FLAG_BUFFERING : 0) | (segmentStart ? FLAG_SEGMENT_START : 0));
+        mHead = (mHead + 1) % mCapacity;
+        if (mSize < mCapacity)
+            ++mSize;
+        mNewSegment = false;
+    }
+
+    /**
+     * Playback is paused, the next sample must not be compared to the last one
+     */
+    public synchronized void suspend() {
+        mNewSegment = true;
+    }
+
+    public synchronized int getSampleCount() {
+        return mSize;
+    }
+
+    /**
+     * @return pictures displayed during the whole session
+     */
+    public synchronized long getDisplayedPictures() {
+        return mTotalDisplayed;
+    }
+
+    /**
+     * @return pictures lost during the whole session
+     */
+    public synchronized long getLostPictures() {
+        return mTotalLost;
+    }
+
+    /**
+     * @return ratio of lost pictures during the last interval, -1 if unknown
+     */
+    public synchronized float getDropRate() {
+        final int last = previous(mHead);
+        if (!hasInterval(last))
+            return -1f;
+        final int prev = previous(last);
+        final int lost = mLostPictures[last] - mLostPictures[prev];
+        final int total = mDisplayedPictures[last] - mDisplayedPictures[prev] + lost;
+        return total <= 0 ? 0f : lost / (float) total;
+    }
+
+    /**
+     * @return input bitrate of the last interval in bits/s, -1 if unknown
+     */
+    public synchronized float getBitrate() {
+        final int last = previous(mHead);
+        if (!hasInterval(last))
+            return -1f;
+        final int prev = previous(last);
+        final long elapsed = mTimes[last] - mTimes[prev];
+        return elapsed <= 0L ? -1f : (mReadBytes[last] - mReadBytes[prev]) * 8000f / elapsed;
+    }
+
+    /**
+     * @param window duration in ms, ending at the last sample
+     * @return ratio of the time spent buffering during the window, -1 if unknown
+     */
+    public synchronized float getBufferingRatio(long window) {
+        if (mSize < 2)
+            return -1f;
+        final long end = mTimes[previous(mHead)];
+        long total = 0L, buffering = 0L;
+        int index = previous(mHead);
+        for (int i = 1; i < mSize && mTimes[index] > end - window; ++i) {
+            final int prev = previous(index);
+            if (hasInterval(index)) {
+                final long elapsed = mTimes[index] - mTimes[prev];
+                total += elapsed;
+                if ((mFlags[index] & FLAG_BUFFERING) != 0)
+                    buffering += elapsed;
+            }
+            index = prev;
+        }
+        return total == 0L ? -1f : buffering / (float) total;
+    }
+
+    /**
+     * @return human readable summary of the whole session
+     */
+    public synchronized String getReport() {
+        final float seconds = mSampledTime / 1000f;
+        final long pictures = mTotalDisplayed + mTotalLost;
+        final long audio = mTotalPlayedAudio + mTotalLostAudio;
+        return String.format(Locale.US,
+                "QoS of %s\n"
+                        + "sampled: %.1fs, %d samples kept\n"
+                        + "bitrate: mean %.0f kb/s, max %.0f kb/s\n"
+                        + "pictures: %d displayed, %d lost (%.2f%%)\n"
+                        + "audio buffers: %d played, %d lost (%.2f%%)\n"
+                        + "demux: %d corrupted, %d discontinuities\n"
+                        + "buffering: %.2f%% of the time, %d stalls",
+                mLocation,
+                seconds, mSize,
+                seconds > 0f ? mTotalBytes * 8f / 1000f / seconds : 0f, mMaxBitrate / 1000f,
+                mTotalDisplayed, mTotalLost, pictures > 0 ? mTotalLost * 100f / pictures : 0f,
+                mTotalPlayedAudio, mTotalLostAudio, audio > 0 ? mTotalLostAudio * 100f / audio : 0f,
+                mTotalCorrupted, mTotalDiscontinuities,
+                mSampledTime > 0L ? mBufferingTime * 100f / mSampledTime : 0f, mStalls);
+    }
+
+    /**
+     * Write the kept samples as CSV, one line per sample, oldest first.
+     * Rates are empty for the first sample of a segment.
+     */
+    public synchronized void writeCsv(Writer writer) throws IOException {
+        writer.write("time_ms,read_bytes,bitrate_bps,displayed_pictures,lost_pictures,drop_rate,"
+                + "played_audio,lost_audio,demux_corrupted,demux_discontinuities,buffering\n");
+        int index = (mHead - mSize + mCapacity) % mCapacity;
+        for (int i = 0; i < mSize; ++i) {
+            String bitrate = "", dropRate = "";
+            if (i > 0 && hasInterval(index)) {
+                final int prev = previous(index);
+                final long elapsed = mTimes[index] - mTimes[prev];
+                if (elapsed > 0L)
+                    bitrate = Long.toString((mReadBytes[index] - mReadBytes[prev]) * 8000L / elapsed);
+                final int lost = mLostPictures[index] - mLostPictures[prev];
+                final int total = mDisplayedPictures[index] - mDisplayedPictures[prev] + lost;
+                dropRate = total > 0 ? String.format(Locale.US, "%.4f", lost / (float) total) : "0";
+            }
+            writer.write(String.format(Locale.US, "%d,%d,%s,%d,%d,%s,%d,%d,%d,%d,%d\n",
+                    mTimes[index] - mStartTime, mReadBytes[index], bitrate,
+                    mDisplayedPictures[index], mLostPictures[index], dropRate,
+                    mPlayedAudio[index], mLostAudio[index], mCorrupted[index], mDiscontinuities[index],
+                    (mFlags[index] & FLAG_BUFFERING) != 0 ? 1 : 0));
+            index = (index + 1) % mCapacity;
+        }
+    }
+
+    private int previous(int index) {
+        return (index - 1 + mCapacity) % mCapacity;
+    }
+
+    /* The sample at index can be compared to the previous one */
+    private boolean hasInterval(int index) {
+        return mSize >= 2 && (mFlags[index] & FLAG_SEGMENT_START) == 0;
+    }
+}
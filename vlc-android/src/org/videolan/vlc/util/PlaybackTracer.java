@@ -0,0 +1,221 @@
+/*****************************************************************************
+ * PlaybackTracer.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.util;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency of playback steps, aggregated by source.
+ *
+ * A span is opened when a step starts and closed by the event which ends it, e.g. from
+ * PlaybackService.playIndex() to MediaPlayer.Event.Playing. One span of each name can be
+ * open at a time, opening it again restarts it. Closed spans are recorded in a
+ * {@link LatencyHistogram} per span and source, which can be exported as JSON.
+ */
+public class PlaybackTracer {
+
+    /* From playIndex() to MediaPlayer.Event.Playing */
+    public static final String SPAN_PLAYING = "playing";
+    /* From playIndex() to the first MediaPlayer.Event.Vout of a video */
+    public static final String SPAN_VOUT = "vout";
+    /* From a user seek to the first MediaPlayer.Event.TimeChanged at the new position */
+    public static final String SPAN_SEEK = "seek";
+    /* From IVLCVout.attachViews() to IVLCVout.Callback.onSurfacesCreated(), which AWindow calls */
+    public static final String SPAN_SURFACES = "surfaces";
+
+    public static final String SOURCE_FILE = "file";
+    public static final String SOURCE_HTTP = "http";
+    public static final String SOURCE_SMB = "smb";
+    public static final String SOURCE_UPNP = "upnp";
+    public static final String SOURCE_OTHER = "other";
+    /* For spans which don't depend on the media */
+    public static final String SOURCE_ANY = "any";
+
+    private static class OpenSpan {
+        final String source;
+        final long start;
+
+        OpenSpan(String source, long start) {
+            this.source = source;
+            this.start = start;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, OpenSpan> sOpenSpans = new ConcurrentHashMap<>();
+    /* Keyed by span name, then source */
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, LatencyHistogram>> sHistograms = new ConcurrentHashMap<>();
+
+    /**
+     * @param scheme scheme of the media uri
+     * @return the source the spans of this media are aggregated in
+     */
+    public static String getSource(String scheme) {
+        if (scheme == null)
+            return SOURCE_OTHER;
+        scheme = scheme.toLowerCase(Locale.US);
+        switch (scheme) {
+            case "file":
+            case "content":
+                return SOURCE_FILE;
+            case "http":
+            case "https":
+                return SOURCE_HTTP;
+            case "smb":
+                return SOURCE_SMB;
+            case "upnp":
+                return SOURCE_UPNP;
+            default:
+                return SOURCE_OTHER;
+        }
+    }
+
+    public static void begin(String span, String source) {
+        begin(span, source, now());
+    }
+
+    public static void begin(String span, String source, long time) {
+        sOpenSpans.put(span, new OpenSpan(source, time));
+    }
+
+    public static boolean isOpen(String span) {
+        return sOpenSpans.containsKey(span);
+    }
+
+    /**
+     * Close the span and record its duration
+     *
+     * @return the duration in ms, -1 if the span was not open
+     */
+    public static long end(String span) {
+        return end(span, now());
+    }
+
+    public static long end(String span, long time) {
+        final OpenSpan open = sOpenSpans.remove(span);
+        if (open == null)
+            return -1L;
+        final long duration = time - open.start;
+        getHistogram(span, open.source).record(duration);
+        return duration;
+    }
+
+    /**
+     * Close the span without recording it, the step was interrupted
+     */
+    public static void cancel(String span) {
+        sOpenSpans.remove(span);
+    }
+
+    public static LatencyHistogram getHistogram(String span, String source) {
+        ConcurrentHashMap<String, LatencyHistogram> sources = sHistograms.get(span);
+        if (sources == null) {
+            final ConcurrentHashMap<String, LatencyHistogram> created = new ConcurrentHashMap<>();
+            sources = sHistograms.putIfAbsent(span, created);
+            if (sources == null)
+                sources = created;
+        }
+        LatencyHistogram histogram = sources.get(source);
+        if (histogram == null) {
+            final LatencyHistogram created = new LatencyHistogram();
+            histogram = sources.putIfAbsent(source, created);
+            if (histogram == null)
+                histogram = created;
+        }
+        return histogram;
+    }
+
+    public static void reset() {
+        sOpenSpans.clear();
+        sHistograms.clear();
+    }
+
+    /**
+     * @return one line per span and source, sorted by name
+     */
+    public static String getReport() {
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, TreeMap<String, LatencyHistogram>> span : sorted().entrySet())
+            for (Map.Entry<String, LatencyHistogram> source : span.getValue().entrySet()) {
+                if (sb.length() > 0)
+                    sb.append('\n');
+                sb.append(span.getKey()).append(" (").append(source.getKey()).append("): ").append(source.getValue());
+            }
+        return sb.toString();
+    }
+
+    /**
+     * @return {"span": {"source": {"count": n, "mean": ms, "p50": ms, "p90": ms, "p99": ms, "max": ms}}}
+     */
+    public static String toJson() {
+        final StringBuilder sb = new StringBuilder("{");
+        boolean firstSpan = true;
+        for (Map.Entry<String, TreeMap<String, LatencyHistogram>> span : sorted().entrySet()) {
+            if (!firstSpan)
+                sb.append(',');
+            firstSpan = false;
+            appendString(sb, span.getKey()).append(":{");
+            boolean firstSource = true;
+            for (Map.Entry<String, LatencyHistogram> source : span.getValue().entrySet()) {
+                if (!firstSource)
+                    sb.append(',');
+                firstSource = false;
+                final LatencyHistogram histogram = source.getValue();
+                appendString(sb, source.getKey()).append(":{\"count\":").append(histogram.getCount())
+                        .append(",\"mean\":").append(histogram.getMean())
+                        .append(",\"p50\":").append(histogram.getPercentile(50))
+                        .append(",\"p90\":").append(histogram.getPercentile(90))
+                        .append(",\"p99\":").append(histogram.getPercentile(99))
+                        .append(",\"max\":").append(histogram.getMax()).append('}');
+            }
+            sb.append('}');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static TreeMap<String, TreeMap<String, LatencyHistogram>> sorted() {
+        final TreeMap<String, TreeMap<String, LatencyHistogram>> spans = new TreeMap<>();
+        for (Map.Entry<String, ConcurrentHashMap<String, LatencyHistogram>> span : sHistograms.entrySet())
+            spans.put(span.getKey(), new TreeMap<>(span.getValue()));
+        return spans;
+    }
+
+    private static StringBuilder appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format(Locale.US, "\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    /* Monotonic, unlike System.currentTimeMillis() */
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+}
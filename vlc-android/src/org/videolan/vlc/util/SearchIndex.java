@@ -0,0 +1,235 @@
+/*****************************************************************************
+ * SearchIndex.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Immutable index of item titles, for search as you type.
+ *
+ * Titles are split in words, lowercased and stripped of their accents. Words are kept
+ * in a sorted array, each with the list of items it belongs to, so a query word is
+ * looked up by binary search and matches all words it is a prefix of.
+ * Items are returned when every word of the query matches, in the order of the indexed list.
+ *
+ * Plain Java, covered by SearchIndexTest.
+ */
+public class SearchIndex<T> {
+
+    /* Shorter query words are ignored, except ideographs */
+    private static final int MIN_QUERY_LENGTH = 2;
+
+    public interface TitleProvider<T> {
+        String getTitle(T item);
+    }
+
+    private final Object[] mItems;
+    /* Sorted unique words */
+    private final String[] mWords;
+    /* Items of mWords[i] are mPostings[mStarts[i]] to mPostings[mStarts[i + 1]], ascending */
+    private final int[] mStarts;
+    private final int[] mPostings;
+
+    public SearchIndex(List<? extends T> items, TitleProvider<? super T> provider) {
+        mItems = items.toArray();
+        final HashMap<String, IntList> postings = new HashMap<>();
+        final ArrayList<String> words = new ArrayList<>();
+        int count = 0;
+        for (int i = 0; i < mItems.length; ++i) {
+            @SuppressWarnings("unchecked")
+            final String title = provider.getTitle((T) mItems[i]);
+            if (title == null)
+                continue;
+            words.clear();
+            tokenize(normalize(title), words, true);
+            for (String word : words) {
+                IntList list = postings.get(word);
+                if (list == null) {
+                    list = new IntList();
+                    postings.put(word, list);
+                }
+                // A word can be repeated in a title
+                if (list.size == 0 || list.values[list.size - 1] != i) {
+                    list.add(i);
+                    ++count;
+                }
+            }
+        }
+        mWords = postings.keySet().toArray(new String[postings.size()]);
+        Arrays.sort(mWords);
+        mStarts = new int[mWords.length + 1];
+        mPostings = new int[count];
+        int offset = 0;
+        for (int i = 0; i < mWords.length; ++i) {
+            final IntList list = postings.get(mWords[i]);
+            mStarts[i] = offset;
+            System.arraycopy(list.values, 0, mPostings, offset, list.size);
+            offset += list.size;
+        }
+        mStarts[mWords.length] = offset;
+    }
+
+    public int size() {
+        return mItems.length;
+    }
+
+    /**
+     * @return the items matching all the words of the query, empty if the query has no usable word
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<T> search(CharSequence query) {
+        final ArrayList<String> words = new ArrayList<>();
+        tokenize(normalize(query.toString()), words, false);
+        int[] matches = null;
+        for (String word : words) {
+            if (word.length() < MIN_QUERY_LENGTH && !isIdeographic(word.charAt(0)))
+                continue;
+            final int[] wordMatches = lookup(word);
+            matches = matches == null ? wordMatches : intersect(matches, wordMatches);
+            if (matches.length == 0)
+                break;
+        }
+        if (matches == null)
+            return new ArrayList<>(0);
+        final ArrayList<T> results = new ArrayList<>(matches.length);
+        for (int index : matches)
+            results.add((T) mItems[index]);
+        return results;
+    }
+
+    /* Sorted indexes of the items with a word starting with prefix */
+    private int[] lookup(String prefix) {
+        int low = 0, high = mWords.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mWords[mid].compareTo(prefix) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        int end = low;
+        while (end < mWords.length && mWords[end].startsWith(prefix))
+            ++end;
+        if (end == low)
+            return new int[0];
+        if (end == low + 1)
+            return Arrays.copyOfRange(mPostings, mStarts[low], mStarts[end]);
+        final int[] merged = Arrays.copyOfRange(mPostings, mStarts[low], mStarts[end]);
+        Arrays.sort(merged);
+        int size = 0;
+        for (int i = 0; i < merged.length; ++i)
+            if (size == 0 || merged[size - 1] != merged[i])
+                merged[size++] = merged[i];
+        return size == merged.length ? merged : Arrays.copyOf(merged, size);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        final int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j])
+                ++i;
+            else if (a[i] > b[j])
+                ++j;
+            else {
+                result[size++] = a[i];
+                ++i;
+                ++j;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Lowercase and remove diacritics: "Éléphant" becomes "elephant"
+     */
+    static String normalize(String text) {
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; ++i)
+            ascii = text.charAt(i) < 0x80;
+        if (ascii)
+            return text.toLowerCase();
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        final StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); ++i) {
+            final char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK)
+                sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Split a normalized text in words of letters and digits.
+     * Languages written without spaces get a word for each position of the run of ideographs,
+     * when indexing, so a query can match in the middle of the run.
+     */
+    static void tokenize(String text, List<String> words, boolean indexing) {
+        final int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; ++i) {
+            final char c = i < length ? text.charAt(i) : ' ';
+            final boolean ideographic = isIdeographic(c);
+            final boolean inWord = ideographic || Character.isLetterOrDigit(c);
+            if (start != -1 && (!inWord || ideographic != isIdeographic(text.charAt(start)))) {
+                addWord(text, start, i, words, indexing);
+                start = -1;
+            }
+            if (inWord && start == -1)
+                start = i;
+        }
+    }
+
+    private static void addWord(String text, int start, int end, List<String> words, boolean indexing) {
+        if (indexing && isIdeographic(text.charAt(start))) {
+            for (int i = start; i < end; ++i)
+                words.add(text.substring(i, end));
+        } else
+            words.add(text.substring(start, end));
+    }
+
+    private static boolean isIdeographic(char c) {
+        if (c < 0x2E80)
+            return false;
+        final Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                || block == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS
+                || block == Character.UnicodeBlock.HIRAGANA
+                || block == Character.UnicodeBlock.KATAKANA
+                || block == Character.UnicodeBlock.HANGUL_SYLLABLES;
+    }
+
+    private static class IntList {
+        int[] values = new int[2];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+}
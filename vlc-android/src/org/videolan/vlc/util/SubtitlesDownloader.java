@@ -107,7 +107,7 @@ public class SubtitlesDownloader {
             languages =  pref.getStringSet("languages_download_list", languages);
         }
         final ArrayList<String> finalLanguages = new ArrayList<>(languages);
-        VLCApplication.runBackground(new Runnable() {
+        VLCApplication.runNetwork(new Runnable() {
             @Override
             public void run() {
                 FileUtils.SUBTITLES_DIRECTORY.mkdirs();
@@ -0,0 +1,153 @@
+/*
+ * ************************************************************************
+ *  ThumbnailCache.java
+ * *************************************************************************
+ *  Copyright © 2017 VLC authors and VideoLAN
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *
+ *  *************************************************************************
+ */
+
+package org.videolan.vlc.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk cache of compressed thumbnails.
+ *
+ * Files are named after the hash of what the thumbnail is made from, see {@link #getKey(Object...)}:
+ * a modified source gets a new key, so entries never need to be invalidated.
+ * The least recently used files are removed when the cache exceeds its maximum size.
+ *
+ * Pure Java, see ThumbnailCacheTest.
+ */
+public class ThumbnailCache {
+
+    private static final String EXT = ".thumb";
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    /* Total size of the files, -1 until first computed */
+    private long mSize = -1L;
+
+    public ThumbnailCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @param parts what the thumbnail depends on: source location, size and date, thumbnail dimensions…
+     */
+    public static String getKey(Object... parts) {
+        final StringBuilder sb = new StringBuilder();
+        for (Object part : parts)
+            sb.append(part).append('\n');
+        return Long.toHexString(MurmurHash.hash64(sb.toString()));
+    }
+
+    /**
+     * @return the thumbnail file, null if it is not cached
+     */
+    public File get(String key) {
+        final File file = getFile(key);
+        if (!file.exists())
+            return null;
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * @return the thumbnail file, null if it could not be written
+     */
+    public synchronized File put(String key, byte[] data) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs())
+            return null;
+        final File file = getFile(key);
+        final File tmp = new File(mDirectory, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            out.write(data);
+        } catch (IOException e) {
+            tmp.delete();
+            return null;
+        } finally {
+            if (out != null)
+                try {
+                    out.close();
+                } catch (IOException ignored) {}
+        }
+        final long previous = file.length();
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return null;
+        }
+        if (mSize != -1L)
+            mSize += data.length - previous;
+        trim();
+        return file;
+    }
+
+    public synchronized long getSize() {
+        if (mSize == -1L) {
+            long size = 0L;
+            final File[] files = mDirectory.listFiles();
+            if (files != null)
+                for (File file : files)
+                    size += file.length();
+            mSize = size;
+        }
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        mSize = 0L;
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, key + EXT);
+    }
+
+    /* Remove least recently used thumbnails, down to 90% of the max size */
+    private void trim() {
+        if (getSize() <= mMaxSize)
+            return;
+        final File[] files = mDirectory.listFiles();
+        if (files == null)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long l = lhs.lastModified(), r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        final long target = mMaxSize * 9 / 10;
+        for (int i = 0; i < files.length && mSize > target; ++i) {
+            final long length = files[i].length();
+            if (files[i].delete())
+                mSize -= length;
+        }
+    }
+}
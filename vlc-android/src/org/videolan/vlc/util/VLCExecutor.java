@@ -0,0 +1,233 @@
+/*****************************************************************************
+ * VLCExecutor.java
+ *****************************************************************************
+ * Copyright © 2017 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.util;
+
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.videolan.libvlc.util.AndroidUtil;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Named and bounded background executor, reporting its load.
+ *
+ * Background work is split in lanes so a slow task of one kind (e.g. a SMB
+ * listing) cannot starve the others:
+ * <ul>
+ * <li>{@link #IO}: local storage access, file copies</li>
+ * <li>{@link #CPU}: decoding, diffs and sorting of lists</li>
+ * <li>{@link #NETWORK}: remote requests</li>
+ * <li>{@link #DATABASE}: medialibrary and {@link org.videolan.vlc.media.MediaDatabase} queries</li>
+ * </ul>
+ */
+public class VLCExecutor extends ThreadPoolExecutor {
+    public final static String TAG = "VLC/VLCExecutor";
+
+    private static final int CPU_COUNT = Math.max(AndroidUtil.isJellyBeanMR1OrLater ? Runtime.getRuntime().availableProcessors() : 2, 1);
+
+    /*
+     * When the queue is full, background callers run the task themselves,
+     * the main thread delegates it to a one-shot thread not to freeze the UI.
+     */
+    private static final RejectedExecutionHandler BACKPRESSURE = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown())
+                return;
+            final VLCExecutor vlcExecutor = (VLCExecutor) executor;
+            vlcExecutor.mRejected.incrementAndGet();
+            Log.w(TAG, vlcExecutor.mName + " queue is full, " + vlcExecutor.getQueueDepth() + " tasks pending");
+            if (Looper.myLooper() == Looper.getMainLooper())
+                executor.getThreadFactory().newThread(r).start();
+            else
+                r.run();
+        }
+    };
+
+    public static final VLCExecutor IO = new VLCExecutor("io", Math.max(2, CPU_COUNT), 256);
+    public static final VLCExecutor CPU = new VLCExecutor("cpu", CPU_COUNT, 128);
+    public static final VLCExecutor NETWORK = new VLCExecutor("network", 4, 64);
+    public static final VLCExecutor DATABASE = new VLCExecutor("database", 2, 256);
+
+    private final String mName;
+    private final LatencyHistogram mWaitHistogram = new LatencyHistogram();
+    private final LatencyHistogram mRunHistogram = new LatencyHistogram();
+    private final Set<TimedRunnable> mRunning = Collections.newSetFromMap(new ConcurrentHashMap<TimedRunnable, Boolean>());
+    private final AtomicInteger mRejected = new AtomicInteger();
+    private volatile String mLongestTask = null;
+    private volatile long mLongestDuration = 0L;
+
+    /* Inactive threads are killed after 2 seconds */
+    private VLCExecutor(String name, int threads, int queueCapacity) {
+        super(threads, threads, 2, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory(name));
+        mName = name;
+        setRejectedExecutionHandler(BACKPRESSURE);
+        allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(command instanceof TimedRunnable ? command : new TimedRunnable(command));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        if (r instanceof TimedRunnable) {
+            final TimedRunnable task = (TimedRunnable) r;
+            task.mStartTime = System.currentTimeMillis();
+            mWaitHistogram.record(task.mStartTime - task.mSubmitTime);
+            mRunning.add(task);
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        if (r instanceof TimedRunnable) {
+            final TimedRunnable task = (TimedRunnable) r;
+            mRunning.remove(task);
+            final long duration = System.currentTimeMillis() - task.mStartTime;
+            mRunHistogram.record(duration);
+            if (duration > mLongestDuration) {
+                mLongestDuration = duration;
+                mLongestTask = task.getName();
+            }
+        }
+    }
+
+    /**
+     * Remove a task which has not started yet
+     */
+    @Override
+    public boolean remove(Runnable task) {
+        for (Iterator<Runnable> it = getQueue().iterator(); it.hasNext(); ) {
+            final Runnable queued = it.next();
+            if (queued == task || (queued instanceof TimedRunnable && ((TimedRunnable) queued).mRunnable == task)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    public int getRejectedCount() {
+        return mRejected.get();
+    }
+
+    /**
+     * @return time spent in queue before execution
+     */
+    public LatencyHistogram getWaitHistogram() {
+        return mWaitHistogram;
+    }
+
+    /**
+     * @return tasks execution time
+     */
+    public LatencyHistogram getRunHistogram() {
+        return mRunHistogram;
+    }
+
+    /**
+     * @return the currently running task which started first, with its running time
+     */
+    @Nullable
+    public String getLongestRunningTask() {
+        final long now = System.currentTimeMillis();
+        TimedRunnable longest = null;
+        for (TimedRunnable task : mRunning)
+            if (longest == null || task.mStartTime < longest.mStartTime)
+                longest = task;
+        return longest != null ? longest.getName() + " (" + (now - longest.mStartTime) + "ms)" : null;
+    }
+
+    public String getStats() {
+        return mName + ": active=" + getActiveCount() + "/" + getPoolSize() + ", queued=" + getQueueDepth()
+                + ", completed=" + getCompletedTaskCount() + ", rejected=" + mRejected.get()
+                + "\n  wait: " + mWaitHistogram + "\n  run: " + mRunHistogram
+                + "\n  running: " + getLongestRunningTask()
+                + "\n  slowest: " + mLongestTask + " (" + mLongestDuration + "ms)";
+    }
+
+    public static String dumpStats() {
+        final StringBuilder sb = new StringBuilder();
+        for (VLCExecutor executor : new VLCExecutor[]{IO, CPU, NETWORK, DATABASE})
+            sb.append(executor.getStats()).append('\n');
+        return sb.toString();
+    }
+
+    private static class TimedRunnable implements Runnable {
+        final Runnable mRunnable;
+        final long mSubmitTime = System.currentTimeMillis();
+        volatile long mStartTime;
+
+        TimedRunnable(Runnable runnable) {
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            mRunnable.run();
+        }
+
+        String getName() {
+            return mRunnable.getClass().getName();
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "vlc-" + mName + "-" + mCount.incrementAndGet());
+            thread.setPriority(Process.THREAD_PRIORITY_DEFAULT+Process.THREAD_PRIORITY_LESS_FAVORABLE);
+            return thread;
+        }
+    }
+}
@@ -172,17 +172,26 @@ public class VLCOptions {
     }
 
     public static void setMediaOptions(Media media, Context context, int flags) {
-        boolean noHardwareAcceleration = (flags & MediaWrapper.MEDIA_NO_HWACCEL) != 0;
-        boolean noVideo = (flags & MediaWrapper.MEDIA_VIDEO) == 0;
-        final boolean paused = (flags & MediaWrapper.MEDIA_PAUSED) != 0;
-        int hardwareAcceleration = HW_ACCELERATION_DISABLED;
+        setMediaOptions(media, flags, getHardwareAcceleration(context, flags));
+    }
 
-        if (!noHardwareAcceleration) {
-            try {
-                final SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(context);
-                hardwareAcceleration = Integer.parseInt(pref.getString("hardware_acceleration", "-1"));
-            } catch (NumberFormatException ignored) {}
+    /**
+     * @return the HW_ACCELERATION_* mode set in the preferences, or disabled by the flags
+     */
+    public static int getHardwareAcceleration(Context context, int flags) {
+        if ((flags & MediaWrapper.MEDIA_NO_HWACCEL) != 0)
+            return HW_ACCELERATION_DISABLED;
+        try {
+            final SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(context);
+            return Integer.parseInt(pref.getString("hardware_acceleration", "-1"));
+        } catch (NumberFormatException ignored) {
+            return HW_ACCELERATION_DISABLED;
         }
+    }
+
+    public static void setMediaOptions(Media media, int flags, int hardwareAcceleration) {
+        final boolean paused = (flags & MediaWrapper.MEDIA_PAUSED) != 0;
+
         if (hardwareAcceleration == HW_ACCELERATION_DISABLED)
             media.setHWDecoderEnabled(false, false);
         else if (hardwareAcceleration == HW_ACCELERATION_FULL || hardwareAcceleration == HW_ACCELERATION_DECODING) {
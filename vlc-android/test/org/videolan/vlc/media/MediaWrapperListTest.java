@@ -0,0 +1,182 @@
+package org.videolan.vlc.media;
+
+import org.junit.Test;
+import org.videolan.medialibrary.media.MediaWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MediaWrapperListTest {
+
+    /* No android.net.Uri on the JVM, the location is all the list needs */
+    private static class TestMedia extends MediaWrapper {
+        private final String mLocation;
+
+        TestMedia(String location) {
+            super(null, 0L, 0L, TYPE_AUDIO, null, null, null, null, null, null, 0, 0, null, 0, 0, 0, 0, 0L);
+            mLocation = location;
+        }
+
+        @Override
+        public String getLocation() {
+            return mLocation;
+        }
+    }
+
+    private static class Recorder implements MediaWrapperList.EventListener {
+        final List<List<MediaWrapperList.Change>> changeSets = new ArrayList<>();
+
+        @Override
+        public void onItemsChanged(List<MediaWrapperList.Change> changes) {
+            changeSets.add(changes);
+        }
+    }
+
+    private static void assertList(List<String> expected, MediaWrapperList list) {
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); ++i)
+            assertEquals(expected.get(i), list.getMRL(i));
+    }
+
+    @Test
+    public void testChangeSets() {
+        final MediaWrapperList list = new MediaWrapperList();
+        final Recorder recorder = new Recorder();
+        list.addEventListener(recorder);
+        final List<MediaWrapper> medias = new ArrayList<>();
+        for (int i = 0; i < 3; ++i)
+            medias.add(new TestMedia("m" + i));
+        list.addAll(medias);
+        list.startBatch();
+        list.insert(0, new TestMedia("first"));
+        list.move(0, 4);
+        list.remove(0);
+        list.endBatch();
+        assertEquals(2, recorder.changeSets.size());
+        assertEquals(3, recorder.changeSets.get(0).size());
+        final List<MediaWrapperList.Change> batch = recorder.changeSets.get(1);
+        assertEquals(3, batch.size());
+        assertEquals(MediaWrapperList.Change.ADDED, batch.get(0).type);
+        assertEquals(MediaWrapperList.Change.MOVED, batch.get(1).type);
+        assertEquals(4, batch.get(1).indexAfter);
+        assertEquals(MediaWrapperList.Change.REMOVED, batch.get(2).type);
+        assertEquals("m1", list.getMRL(0));
+        assertEquals("first", list.getMRL(2));
+    }
+
+    @Test
+    public void testModificationFromListener() {
+        final MediaWrapperList list = new MediaWrapperList();
+        final Recorder recorder = new Recorder();
+        list.addEventListener(new MediaWrapperList.EventListener() {
+            @Override
+            public void onItemsChanged(List<MediaWrapperList.Change> changes) {
+                if (list.size() == 1)
+                    list.add(new TestMedia("from listener"));
+            }
+        });
+        list.addEventListener(recorder);
+        list.add(new TestMedia("first"));
+        // The nested change set is delivered after the current one, to every listener
+        assertEquals(2, recorder.changeSets.size());
+        assertEquals("first", recorder.changeSets.get(0).get(0).mrl);
+        assertEquals("from listener", recorder.changeSets.get(1).get(0).mrl);
+    }
+
+    /* A listener taking a lock held by another writer, like PlaybackService does */
+    @Test
+    public void testListenerLockDoesNotDeadlock() throws InterruptedException {
+        final MediaWrapperList list = new MediaWrapperList();
+        final Object serviceLock = new Object();
+        final CountDownLatch inListener = new CountDownLatch(1);
+        final Recorder recorder = new Recorder();
+        list.addEventListener(new MediaWrapperList.EventListener() {
+            @Override
+            public void onItemsChanged(List<MediaWrapperList.Change> changes) {
+                inListener.countDown();
+                synchronized (serviceLock) {
+                    recorder.onItemsChanged(changes);
+                }
+            }
+        });
+        final Thread service = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (serviceLock) {
+                    try {
+                        inListener.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    list.add(new TestMedia("service"));
+                }
+            }
+        });
+        final Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                list.add(new TestMedia("other"));
+            }
+        });
+        service.start();
+        other.start();
+        service.join(TimeUnit.SECONDS.toMillis(10));
+        other.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(service.isAlive() || other.isAlive());
+        assertEquals(2, recorder.changeSets.size());
+        assertEquals("other", recorder.changeSets.get(0).get(0).mrl);
+        assertEquals("service", recorder.changeSets.get(1).get(0).mrl);
+    }
+
+    /* Large queue, checked against an ArrayList applying the same operations */
+    @Test
+    public void testLargeQueue() {
+        final int count = 10000;
+        final MediaWrapperList list = new MediaWrapperList();
+        final List<String> expected = new ArrayList<>(count);
+        final List<String> replayed = new ArrayList<>(count);
+        list.addEventListener(new MediaWrapperList.EventListener() {
+            @Override
+            public void onItemsChanged(List<MediaWrapperList.Change> changes) {
+                for (MediaWrapperList.Change change : changes) {
+                    switch (change.type) {
+                        case MediaWrapperList.Change.ADDED:
+                            replayed.add(change.index, change.mrl);
+                            break;
+                        case MediaWrapperList.Change.REMOVED:
+                            replayed.remove(change.index);
+                            break;
+                        case MediaWrapperList.Change.MOVED:
+                            final int to = change.indexAfter;
+                            replayed.add(change.index >= to ? to : to - 1, replayed.remove(change.index));
+                            break;
+                    }
+                }
+            }
+        });
+        for (int i = 0; i < count; ++i) {
+            final String mrl = "file:///sdcard/Music/" + i % 1000 + ".mp3";
+            list.add(new TestMedia(mrl));
+            expected.add(mrl);
+        }
+        final Random random = new Random(1);
+        for (int i = 0; i < 1000; ++i) {
+            final int from = random.nextInt(count), to = random.nextInt(count + 1);
+            list.move(from, to);
+            expected.add(from >= to ? to : to - 1, expected.remove(from));
+        }
+        for (int i = 0; i < 20; ++i) {
+            final String mrl = "file:///sdcard/Music/" + i * 7 + ".mp3";
+            list.remove(mrl);
+            while (expected.remove(mrl));
+        }
+        assertList(expected, list);
+        assertEquals(expected, replayed);
+        assertEquals(expected.indexOf(expected.get(count / 2)), list.indexOf(expected.get(count / 2)));
+    }
+}
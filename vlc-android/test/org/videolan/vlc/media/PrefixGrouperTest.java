@@ -0,0 +1,187 @@
+package org.videolan.vlc.media;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PrefixGrouperTest {
+
+    private static final PrefixGrouper.Adapter<String> ADAPTER = new PrefixGrouper.Adapter<String>() {
+        @Override
+        public String getId(String item) {
+            return item;
+        }
+
+        @Override
+        public String getTitle(String item) {
+            return item;
+        }
+    };
+
+    private static final String[] WORDS = { "Star", "Trek", "the", "The", "Office", "Lost", "Season", "Episode",
+            "Holiday", "Birthday", "Vacation", "2016", "2017", "Paris", "paris", "Video", "VID", "Movie" };
+
+    private static List<String> titles(int count, long seed) {
+        final Random random = new Random(seed);
+        final List<String> titles = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            final StringBuilder sb = new StringBuilder();
+            final int words = 1 + random.nextInt(4);
+            for (int w = 0; w < words; ++w) {
+                if (w > 0)
+                    sb.append(' ');
+                sb.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            sb.append(' ').append(i);
+            titles.add(sb.toString());
+        }
+        return titles;
+    }
+
+    /* Former MediaGroup.insertInto, on titles */
+    private static final class ReferenceGroup {
+        String title;
+        final List<String> items = new ArrayList<>();
+    }
+
+    private static List<ReferenceGroup> referenceGroup(List<String> titles, int minGroupLengthValue) {
+        final List<ReferenceGroup> groups = new ArrayList<>();
+        for (String media : titles) {
+            boolean added = false;
+            for (ReferenceGroup mediaGroup : groups) {
+                String group = mediaGroup.title;
+                String title = media;
+                int groupOffset = group.toLowerCase().startsWith("the") ? 4 : 0;
+                if (title.toLowerCase().startsWith("the"))
+                    title = title.substring(4);
+                int commonLength = 0;
+                String groupTitle = group.substring(groupOffset);
+                int minLength = Math.min(groupTitle.length(), title.length());
+                while (commonLength < minLength
+                        && groupTitle.toLowerCase().charAt(commonLength) == title.toLowerCase().charAt(commonLength))
+                    ++commonLength;
+                if (commonLength >= minGroupLengthValue && minGroupLengthValue != 0) {
+                    if (commonLength != group.length())
+                        mediaGroup.title = group.substring(0, commonLength + groupOffset);
+                    mediaGroup.items.add(media);
+                    added = true;
+                    break;
+                }
+            }
+            if (!added) {
+                final ReferenceGroup group = new ReferenceGroup();
+                group.title = media;
+                group.items.add(media);
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    private static void assertSameGroups(List<ReferenceGroup> expected, PrefixGrouper<String> grouper) {
+        final List<PrefixGrouper.Group<String>> groups = grouper.getGroups();
+        assertEquals(expected.size(), groups.size());
+        for (int i = 0; i < groups.size(); ++i) {
+            assertEquals(expected.get(i).items, groups.get(i).getItems());
+            assertEquals(expected.get(i).title, grouper.getTitle(groups.get(i)));
+        }
+    }
+
+    @Test
+    public void testSameGroupsAsFormerAlgorithm() {
+        for (int minLength : new int[] { 0, 1, 6, 10 }) {
+            final List<String> titles = titles(2000, minLength);
+            final PrefixGrouper<String> grouper = new PrefixGrouper<>(minLength, ADAPTER);
+            grouper.addAll(titles);
+            assertSameGroups(referenceGroup(titles, minLength), grouper);
+        }
+    }
+
+    @Test
+    public void testTitles() {
+        final PrefixGrouper<String> grouper = new PrefixGrouper<>(4, ADAPTER);
+        grouper.add("The Office S01E01");
+        grouper.add("office s01e02");
+        grouper.add("Star Trek");
+        final List<PrefixGrouper.Group<String>> groups = grouper.getGroups();
+        assertEquals(2, groups.size());
+        assertEquals("The Office S01E0", grouper.getTitle(groups.get(0)));
+        assertEquals("Star Trek", grouper.getTitle(groups.get(1)));
+    }
+
+    @Test
+    public void testShortTitlesAreNotGrouped() {
+        final PrefixGrouper<String> grouper = new PrefixGrouper<>(6, ADAPTER);
+        grouper.add("Lost");
+        grouper.add("lost");
+        grouper.add("the");
+        assertEquals(3, grouper.getGroupCount());
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        final List<String> titles = titles(500, 42);
+        final PrefixGrouper<String> grouper = new PrefixGrouper<>(6, ADAPTER);
+        grouper.addAll(titles.subList(0, 250));
+        grouper.addAll(titles.subList(250, 500));
+        assertSameGroups(referenceGroup(titles, 6), grouper);
+
+        // Adding an item twice updates it, in place
+        grouper.add(titles.get(10));
+        int count = 0;
+        for (PrefixGrouper.Group<String> group : grouper.getGroups())
+            count += group.size();
+        assertEquals(500, count);
+        assertSameGroups(referenceGroup(titles, 6), grouper);
+
+        // Removing the first item of a group recomputes its title
+        final PrefixGrouper<String> small = new PrefixGrouper<>(3, ADAPTER);
+        small.add("Holiday 2016");
+        small.add("Holiday 2017");
+        small.add("Holiday 2017 beach");
+        assertEquals("Holiday 201", small.getTitle(small.getGroups().get(0)));
+        small.remove("Holiday 2016");
+        assertEquals("Holiday 2017", small.getTitle(small.getGroups().get(0)));
+        small.remove("Holiday 2017");
+        small.remove("Holiday 2017 beach");
+        assertEquals(0, small.getGroupCount());
+        assertNull(small.remove("unknown"));
+    }
+
+    @Test
+    public void testTagIsClearedOnChange() {
+        final PrefixGrouper<String> grouper = new PrefixGrouper<>(3, ADAPTER);
+        final PrefixGrouper.Group<String> group = grouper.add("Paris 1");
+        group.setTag("cached");
+        grouper.add("paris 2");
+        assertNull(group.getTag());
+    }
+
+    /* Large collection grouped page by page, like VideoGridFragment does */
+    @Test
+    public void testLargeCollection() {
+        final List<String> titles = titles(20000, 7);
+        final PrefixGrouper<String> grouper = new PrefixGrouper<>(6, ADAPTER);
+        for (int offset = 0; offset < titles.size(); offset += 1000)
+            grouper.addAll(titles.subList(offset, offset + 1000));
+        final PrefixGrouper<String> reference = new PrefixGrouper<>(6, ADAPTER);
+        reference.addAll(titles);
+        assertEquals(reference.getGroupCount(), grouper.getGroupCount());
+        final List<PrefixGrouper.Group<String>> groups = grouper.getGroups(), expected = reference.getGroups();
+        for (int i = 0; i < groups.size(); ++i) {
+            assertEquals(expected.get(i).getItems(), groups.get(i).getItems());
+            assertEquals(reference.getTitle(expected.get(i)), grouper.getTitle(groups.get(i)));
+        }
+
+        for (int i = 0; i < 1000; ++i)
+            grouper.add(titles.get(i * 13));
+        int count = 0;
+        for (PrefixGrouper.Group<String> group : grouper.getGroups())
+            count += group.size();
+        assertEquals(20000, count);
+    }
+}
@@ -0,0 +1,180 @@
+package org.videolan.vlc.media;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class QueueStoreTest {
+
+    /* Records are written synchronously */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(System.getProperty("java.io.tmpdir"), "queue_" + System.nanoTime() + ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        new File(mFile.getPath() + ".tmp").delete();
+    }
+
+    private static List<QueueStore.Item> items(int count) {
+        final List<QueueStore.Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i)
+            items.add(new QueueStore.Item("file:///sdcard/Music/Artist%20" + i / 10 + "/Track%20" + i + ".mp3", i + 1, 0L));
+        return items;
+    }
+
+    private static void assertQueue(List<String> expected, QueueStore.State state) {
+        assertEquals(expected.size(), state.items.size());
+        for (int i = 0; i < expected.size(); ++i)
+            assertEquals(expected.get(i), state.items.get(i).mrl);
+    }
+
+    @Test
+    public void testNoSavedQueue() {
+        assertNull(new QueueStore(mFile, DIRECT).load());
+    }
+
+    @Test
+    public void testDeltasAreReplayed() {
+        final QueueStore store = new QueueStore(mFile, DIRECT);
+        store.reset(items(3));
+        final long sizeAfterSnapshot = mFile.length();
+        assertTrue(store.insert(1, "new", 0L));
+        assertTrue(store.move(0, 4));
+        assertTrue(store.remove(2));
+        assertFalse(store.remove(10));
+        store.setResumeTime(0, 1234L);
+        final ShuffleOrder order = new ShuffleOrder(3, 5, 1);
+        store.setState(1, 5678L, order);
+        // Only the modifications have been appended
+        assertTrue(mFile.length() > sizeAfterSnapshot);
+        assertTrue(mFile.length() < 2 * sizeAfterSnapshot + 64);
+
+        final QueueStore.State state = new QueueStore(mFile, DIRECT).load();
+        final List<String> expected = new ArrayList<>();
+        expected.add("new");
+        expected.add(items(3).get(1).mrl);
+        expected.add(items(3).get(0).mrl);
+        assertQueue(expected, state);
+        assertEquals(1234L, state.items.get(0).time);
+        assertEquals(1, state.position);
+        assertEquals(5678L, state.time);
+        assertNotNull(state.shuffleOrder);
+        assertEquals(order.getSeed(), state.shuffleOrder.getSeed());
+        assertEquals(1, state.shuffleOrder.getFirst());
+    }
+
+    @Test
+    public void testRecordsAfterLoad() {
+        final QueueStore store = new QueueStore(mFile, DIRECT);
+        store.reset(items(2));
+        final QueueStore other = new QueueStore(mFile, DIRECT);
+        other.load();
+        other.insert(2, "appended", 0L);
+        final QueueStore.State state = new QueueStore(mFile, DIRECT).load();
+        assertEquals(3, state.items.size());
+        assertEquals("appended", state.items.get(2).mrl);
+    }
+
+    @Test
+    public void testCompaction() {
+        final QueueStore store = new QueueStore(mFile, DIRECT);
+        store.reset(items(10));
+        for (int i = 0; i < 2000; ++i)
+            store.move(0, 10);
+        // The journal does not grow with the number of modifications
+        assertTrue(mFile.length() < 64 * 1024);
+        final QueueStore.State state = new QueueStore(mFile, DIRECT).load();
+        assertEquals(items(10).get(0).mrl, state.items.get(0).mrl);
+    }
+
+    @Test
+    public void testTruncatedRecordIsIgnored() throws IOException {
+        final QueueStore store = new QueueStore(mFile, DIRECT);
+        store.reset(items(5));
+        store.remove(0);
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.setLength(file.length() - 2);
+        file.close();
+        final QueueStore reader = new QueueStore(mFile, DIRECT);
+        assertEquals(5, reader.load().items.size());
+        // Next modification rewrites a clean file
+        reader.remove(4);
+        assertEquals(4, new QueueStore(mFile, DIRECT).load().items.size());
+    }
+
+    @Test
+    public void testShuffleOrderSizeMismatch() {
+        final QueueStore store = new QueueStore(mFile, DIRECT);
+        store.reset(items(4));
+        store.setState(0, 0L, new ShuffleOrder(4, 1, 0));
+        store.remove(0);
+        assertNull(new QueueStore(mFile, DIRECT).load().shuffleOrder);
+    }
+
+    @Test
+    public void testLargeQueue() {
+        final int count = 5000;
+        final QueueStore store = new QueueStore(mFile, DIRECT);
+        store.reset(items(count));
+        final long sizeAfterSnapshot = mFile.length();
+        for (int i = 0; i < 100; ++i)
+            store.insert(i * 37 % count, "inserted" + i, 0L);
+        // Inserts are appended, the queue is not written again
+        assertTrue(mFile.length() < sizeAfterSnapshot + 100 * 64);
+        final QueueStore.State state = new QueueStore(mFile, DIRECT).load();
+        assertEquals(count + 100, state.items.size());
+        assertEquals("inserted0", state.items.get(0).mrl);
+    }
+
+    @Test
+    public void testUnchangedShuffleOrderIsNotRewritten() {
+        final int count = 5000;
+        final QueueStore store = new QueueStore(mFile, DIRECT);
+        store.reset(items(count));
+        final ShuffleOrder order = new ShuffleOrder(count, 42, 0);
+        store.setState(0, 0L, order);
+        final long sizeWithOrder = mFile.length();
+        for (int i = 1; i <= 1000; ++i)
+            store.setState(order.getNext(i - 1), i * 1000L, order);
+        // Only position and time are appended
+        assertTrue(mFile.length() < sizeWithOrder + 1000 * 16);
+        final QueueStore.State state = new QueueStore(mFile, DIRECT).load();
+        assertEquals(1000000L, state.time);
+        assertEquals(42, state.shuffleOrder.getSeed());
+        store.setState(0, 0L, null);
+        assertNull(new QueueStore(mFile, DIRECT).load().shuffleOrder);
+    }
+
+    @Test
+    public void testCompactionBySize() {
+        final QueueStore store = new QueueStore(mFile, DIRECT);
+        store.reset(items(2000));
+        final long sizeAfterSnapshot = mFile.length();
+        // Few records, but each of them holds a whole shuffle order
+        for (int i = 0; i < 100; ++i)
+            store.setState(0, 0L, new ShuffleOrder(2000, i, 0));
+        assertTrue(mFile.length() < 3 * sizeAfterSnapshot);
+        assertEquals(99, new QueueStore(mFile, DIRECT).load().shuffleOrder.getSeed());
+    }
+}
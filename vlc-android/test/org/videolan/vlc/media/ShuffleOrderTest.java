@@ -0,0 +1,142 @@
+package org.videolan.vlc.media;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ShuffleOrderTest {
+
+    private static int[] walk(ShuffleOrder order) {
+        final int[] played = new int[order.size()];
+        int index = order.getFirst();
+        for (int i = 0; i < played.length; ++i) {
+            played[i] = index;
+            index = order.getNext(index);
+        }
+        assertEquals(-1, index);
+        return played;
+    }
+
+    private static void assertPermutation(ShuffleOrder order) {
+        final int[] played = walk(order);
+        final int[] sorted = played.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; ++i)
+            assertEquals(i, sorted[i]);
+        for (int i = 1; i < played.length; ++i)
+            assertEquals(played[i - 1], order.getPrevious(played[i]));
+        if (played.length > 0)
+            assertEquals(played[played.length - 1], order.getLast());
+    }
+
+    @Test
+    public void testSameSeedSameOrder() {
+        assertArrayEquals(walk(new ShuffleOrder(100, 42, -1)), walk(new ShuffleOrder(100, 42, -1)));
+        assertPermutation(new ShuffleOrder(100, 42, -1));
+    }
+
+    @Test
+    public void testFirstIndex() {
+        final ShuffleOrder order = new ShuffleOrder(50, 7, 12);
+        assertEquals(12, order.getFirst());
+        assertEquals(-1, order.getPrevious(12));
+        assertPermutation(order);
+    }
+
+    @Test
+    public void testInsertKeepsPreviousOrder() {
+        final ShuffleOrder order = new ShuffleOrder(20, 1, 0);
+        final int[] before = walk(order);
+        order.insert(5, 3, order.getPosition(before[9]) + 1);
+        assertPermutation(order);
+        final int[] after = walk(order);
+        // Items played so far are untouched
+        for (int i = 0; i < 10; ++i)
+            assertEquals(before[i] >= 5 ? before[i] + 3 : before[i], after[i]);
+        // Inserted items are all to come
+        for (int index = 5; index < 8; ++index)
+            assertTrue(order.getPosition(index) >= 10);
+    }
+
+    @Test
+    public void testMirrorsQueueModifications() {
+        final Random random = new Random(3);
+        final List<Integer> queue = new ArrayList<>();
+        for (int i = 0; i < 30; ++i)
+            queue.add(i);
+        final ShuffleOrder order = new ShuffleOrder(queue.size(), 3, -1);
+        // Follow an item through the modifications by its value
+        final List<Integer> playOrder = new ArrayList<>();
+        for (int index : walk(order))
+            playOrder.add(queue.get(index));
+        for (int i = 0; i < 200; ++i) {
+            final int size = queue.size();
+            switch (random.nextInt(3)) {
+                case 0:
+                    final int index = random.nextInt(size + 1);
+                    queue.add(index, 1000 + i);
+                    order.insert(index, 1, 0);
+                    break;
+                case 1:
+                    if (size > 1) {
+                        final int removed = random.nextInt(size);
+                        playOrder.remove(queue.remove(removed));
+                        order.remove(removed);
+                    }
+                    break;
+                default:
+                    final int from = random.nextInt(size), to = random.nextInt(size + 1);
+                    final Integer moved = queue.remove(from);
+                    queue.add(from >= to ? to : to - 1, moved);
+                    order.move(from, to);
+                    break;
+            }
+            assertEquals(queue.size(), order.size());
+            assertPermutation(order);
+        }
+        // Relative order of the original items is kept
+        final List<Integer> remaining = new ArrayList<>();
+        for (int index : walk(order))
+            if (queue.get(index) < 1000)
+                remaining.add(queue.get(index));
+        assertEquals(playOrder, remaining);
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        final ShuffleOrder order = new ShuffleOrder(1000, 99, 500);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        order.writeTo(new DataOutputStream(bytes));
+        final ShuffleOrder restored = ShuffleOrder.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(order.getSeed(), restored.getSeed());
+        assertArrayEquals(walk(order), walk(restored));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidData() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(0);
+        out.writeInt(2);
+        out.writeInt(1);
+        out.writeInt(1);
+        ShuffleOrder.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void testLargeQueue() {
+        final ShuffleOrder order = new ShuffleOrder(100000, 5, -1);
+        order.insert(50000, 10000, 0);
+        assertPermutation(order);
+    }
+}
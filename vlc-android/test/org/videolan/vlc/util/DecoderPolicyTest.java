@@ -0,0 +1,95 @@
+package org.videolan.vlc.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class DecoderPolicyTest {
+
+    private static final String LOCATION = "file:///sdcard/movie.mkv";
+
+    private static void play(DecoderPolicy policy, String location, int mode, boolean error, long displayed, long lost) {
+        final DecoderPolicy.Session session = policy.newSession(location, 1080, mode, 0L);
+        if (!error)
+            session.onVideoStarted("h264", 100, 1080, 300L);
+        assertTrue(policy.record(session, error, displayed, lost));
+    }
+
+    @Test
+    public void testNoDecisionWithoutHistory() {
+        final DecoderPolicy policy = new DecoderPolicy();
+        assertEquals(DecoderPolicy.NO_DECISION, policy.select(LOCATION, 1080));
+        // Nothing is known about a media which failed before its video started
+        assertFalse(policy.record(policy.newSession(LOCATION, 0, DecoderPolicy.FULL, 0L), true, 0, 0));
+    }
+
+    @Test
+    public void testHardwareKeptWhenItWorks() {
+        final DecoderPolicy policy = new DecoderPolicy();
+        for (int i = 0; i < 5; ++i)
+            play(policy, LOCATION, DecoderPolicy.FULL, false, 1000, 2);
+        assertEquals(DecoderPolicy.NO_DECISION, policy.select(LOCATION, 0));
+    }
+
+    @Test
+    public void testDowngrade() {
+        final DecoderPolicy policy = new DecoderPolicy();
+        play(policy, LOCATION, DecoderPolicy.FULL, false, 1000, 0);
+        play(policy, LOCATION, DecoderPolicy.FULL, true, 0, 0);
+        play(policy, LOCATION, DecoderPolicy.FULL, true, 0, 0);
+        assertEquals(DecoderPolicy.DECODING, policy.select(LOCATION, 0));
+        for (int i = 0; i < 3; ++i)
+            play(policy, LOCATION, DecoderPolicy.DECODING, false, 1000, 300);
+        assertEquals(DecoderPolicy.DISABLED, policy.select(LOCATION, 0));
+    }
+
+    @Test
+    public void testResolutionFallback() {
+        final DecoderPolicy policy = new DecoderPolicy();
+        for (int i = 0; i < 3; ++i)
+            play(policy, LOCATION, DecoderPolicy.FULL, false, 1000, 500);
+        // Another media of the same size, never played
+        assertEquals(DecoderPolicy.DECODING, policy.select("file:///sdcard/other.mkv", 1080));
+        assertEquals(DecoderPolicy.NO_DECISION, policy.select("file:///sdcard/other.mkv", 480));
+        assertEquals(DecoderPolicy.NO_DECISION, policy.select("file:///sdcard/other.mkv", 0));
+    }
+
+    @Test
+    public void testProbe() {
+        final DecoderPolicy policy = new DecoderPolicy();
+        for (int i = 0; i < 3; ++i) {
+            play(policy, LOCATION, DecoderPolicy.FULL, true, 0, 0);
+            play(policy, LOCATION, DecoderPolicy.DECODING, true, 0, 0);
+        }
+        int probes = 0;
+        for (int i = 0; i < 16; ++i) {
+            final int mode = policy.select(LOCATION, 0);
+            if (mode == DecoderPolicy.DECODING)
+                ++probes;
+            else
+                assertEquals(DecoderPolicy.DISABLED, mode);
+            play(policy, LOCATION, mode, mode != DecoderPolicy.DISABLED, 1000, 0);
+        }
+        assertEquals(2, probes);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        final DecoderPolicy policy = new DecoderPolicy();
+        for (int i = 0; i < 3; ++i)
+            play(policy, LOCATION, DecoderPolicy.FULL, true, 0, 0);
+        final File file = File.createTempFile("decoders", null);
+        try {
+            policy.save(file);
+            final DecoderPolicy loaded = new DecoderPolicy();
+            loaded.load(file);
+            assertEquals(DecoderPolicy.DECODING, loaded.select(LOCATION, 0));
+            assertEquals(DecoderPolicy.DECODING, loaded.select("file:///sdcard/other.mkv", 1080));
+        } finally {
+            file.delete();
+        }
+    }
+}
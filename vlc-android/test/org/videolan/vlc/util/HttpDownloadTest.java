@@ -0,0 +1,205 @@
+package org.videolan.vlc.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HttpDownloadTest {
+
+    private static final int SIZE = 1024 * 1024 + 123;
+
+    private final byte[] mContent = new byte[SIZE];
+    private HttpServer mServer;
+    private File mDir, mDestination;
+    private String mUrl;
+
+    /* Server behaviour */
+    private volatile String mEtag = "\"v1\"";
+    private volatile int mAbortAfter = -1;
+    private volatile boolean mIgnoreRange;
+    private volatile String mLastRange;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(mContent);
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/file", new FileHandler());
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/file";
+        mDir = new File(System.getProperty("java.io.tmpdir"), "downloads_" + System.nanoTime());
+        mDir.mkdirs();
+        mDestination = new File(mDir, "file.bin");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        final File[] files = mDir.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        mDir.delete();
+    }
+
+    @Test
+    public void testDownload() throws IOException {
+        final HttpDownload download = new HttpDownload(mUrl, mDestination);
+        assertTrue(download.run());
+        assertNull(mLastRange);
+        assertEquals(SIZE, download.getTotal());
+        assertContent();
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        mAbortAfter = 300 * 1024;
+        final HttpDownload download = new HttpDownload(mUrl, mDestination);
+        try {
+            download.run();
+            fail("the connection was closed");
+        } catch (IOException ignored) {}
+        assertFalse(mDestination.exists());
+        final long partial = new File(mDir, "file.bin.part").length();
+        assertTrue(partial > 0);
+
+        mAbortAfter = -1;
+        assertTrue(new HttpDownload(mUrl, mDestination).run());
+        assertEquals("bytes=" + partial + "-", mLastRange);
+        assertContent();
+    }
+
+    @Test
+    public void testResumeAfterCancel() throws IOException {
+        final HttpDownload download = new HttpDownload(mUrl, mDestination);
+        download.setListener(new HttpDownload.Listener() {
+            @Override
+            public void onProgress(HttpDownload d, long downloaded, long total, long bytesPerSecond, long eta) {
+                d.cancel();
+            }
+        });
+        mAbortAfter = 512 * 1024;
+        try {
+            assertFalse(download.run());
+        } catch (IOException ignored) {
+            // The server may close the connection before the first progress report
+        }
+        mAbortAfter = -1;
+        final HttpDownload resumed = new HttpDownload(mUrl, mDestination);
+        assertTrue(resumed.run());
+        assertTrue(resumed.getResumedFrom() > 0);
+        assertContent();
+    }
+
+    @Test
+    public void testModifiedResourceStartsOver() throws IOException {
+        mAbortAfter = 200 * 1024;
+        try {
+            new HttpDownload(mUrl, mDestination).run();
+            fail("the connection was closed");
+        } catch (IOException ignored) {}
+        mAbortAfter = -1;
+        mEtag = "\"v2\"";
+        mContent[0] ^= 0xff;
+        final HttpDownload download = new HttpDownload(mUrl, mDestination);
+        assertTrue(download.run());
+        assertEquals(0, download.getResumedFrom());
+        assertContent();
+    }
+
+    @Test
+    public void testRangeIgnored() throws IOException {
+        mAbortAfter = 200 * 1024;
+        try {
+            new HttpDownload(mUrl, mDestination).run();
+            fail("the connection was closed");
+        } catch (IOException ignored) {}
+        mAbortAfter = -1;
+        mIgnoreRange = true;
+        final HttpDownload download = new HttpDownload(mUrl, mDestination);
+        assertTrue(download.run());
+        assertEquals(0, download.getResumedFrom());
+        assertContent();
+    }
+
+    @Test
+    public void testExistingFileIsKept() throws IOException {
+        assertTrue(mDestination.createNewFile());
+        try {
+            new HttpDownload(mUrl, mDestination).run();
+            fail("the destination exists");
+        } catch (IOException ignored) {}
+        assertEquals(0L, mDestination.length());
+    }
+
+    @Test
+    public void testUniqueDestination() throws IOException {
+        assertEquals(mDestination, HttpDownload.getUniqueDestination(mDir, "file.bin", Collections.<String>emptySet()));
+        assertTrue(mDestination.createNewFile());
+        assertTrue(new File(mDir, "file (1).bin.part").createNewFile());
+        final File reserved = new File(mDir, "file (2).bin");
+        assertEquals(new File(mDir, "file (3).bin"),
+                HttpDownload.getUniqueDestination(mDir, "file.bin", Collections.singleton(reserved.getPath())));
+        assertEquals(new File(mDir, "file"), HttpDownload.getUniqueDestination(mDir, "file", Collections.<String>emptySet()));
+    }
+
+    @Test
+    public void testParseTotal() {
+        assertEquals(1000L, HttpDownload.parseTotal("bytes 0-99/1000"));
+        assertEquals(1000L, HttpDownload.parseTotal("bytes */1000"));
+        assertEquals(-1L, HttpDownload.parseTotal("bytes 0-99/*"));
+        assertEquals(-1L, HttpDownload.parseTotal(null));
+    }
+
+    private void assertContent() throws IOException {
+        assertTrue(mDestination.exists());
+        assertFalse(new File(mDir, "file.bin.part").exists());
+        final RandomAccessFile file = new RandomAccessFile(mDestination, "r");
+        final byte[] data = new byte[(int) file.length()];
+        file.readFully(data);
+        file.close();
+        assertTrue(Arrays.equals(mContent, data));
+    }
+
+    private class FileHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            mLastRange = range;
+            int start = 0;
+            if (range != null && !mIgnoreRange && (ifRange == null || ifRange.equals(mEtag))) {
+                start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (SIZE - 1) + "/" + SIZE);
+            }
+            exchange.getResponseHeaders().set("ETag", mEtag);
+            exchange.sendResponseHeaders(start > 0 ? 206 : 200, SIZE - start);
+            final OutputStream out = exchange.getResponseBody();
+            final int end = mAbortAfter == -1 ? SIZE : Math.min(SIZE, start + mAbortAfter);
+            try {
+                for (int offset = start; offset < end; offset += 8192) {
+                    out.write(mContent, offset, Math.min(8192, end - offset));
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+                // Client went away
+            }
+            // Closing before the announced length was written drops the connection
+            exchange.close();
+        }
+    }
+}
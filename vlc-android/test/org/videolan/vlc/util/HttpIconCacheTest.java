@@ -0,0 +1,147 @@
+package org.videolan.vlc.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HttpIconCacheTest {
+
+    private static final byte[] ICON = "not really a png".getBytes();
+    private static final String ETAG = "\"icon-v1\"";
+
+    private HttpServer mServer;
+    private ExecutorService mServerExecutor;
+    private File mCacheDir;
+    private HttpIconCache mCache;
+    private String mBaseUrl;
+    private final AtomicInteger mFullResponses = new AtomicInteger();
+    private final AtomicInteger mNotModified = new AtomicInteger();
+    private volatile String mCacheControl = null;
+    private volatile CountDownLatch mGate = null;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/icon.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    if (mGate != null)
+                        mGate.await();
+                } catch (InterruptedException ignored) {}
+                if (mCacheControl != null)
+                    exchange.getResponseHeaders().set("Cache-Control", mCacheControl);
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    mNotModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    mFullResponses.incrementAndGet();
+                    exchange.sendResponseHeaders(200, ICON.length);
+                    final OutputStream out = exchange.getResponseBody();
+                    out.write(ICON);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        mServerExecutor = Executors.newFixedThreadPool(4);
+        mServer.setExecutor(mServerExecutor);
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        mCacheDir = new File(System.getProperty("java.io.tmpdir"), "http_icons_" + System.nanoTime());
+        mCache = new HttpIconCache(mCacheDir, 1024 * 1024, 4);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        mServerExecutor.shutdownNow();
+        mCache.clear();
+        mCacheDir.delete();
+    }
+
+    @Test
+    public void testFreshEntryIsServedFromCache() {
+        mCacheControl = "max-age=3600";
+        assertArrayEquals(ICON, mCache.get(mBaseUrl + "/icon.png"));
+        assertArrayEquals(ICON, mCache.get(mBaseUrl + "/icon.png"));
+        assertEquals(1, mFullResponses.get());
+        assertEquals(1, mCache.getFreshHitCount());
+    }
+
+    @Test
+    public void testPersistsAcrossInstances() {
+        mCacheControl = "max-age=3600";
+        mCache.get(mBaseUrl + "/icon.png");
+        final HttpIconCache other = new HttpIconCache(mCacheDir, 1024 * 1024, 4);
+        assertArrayEquals(ICON, other.get(mBaseUrl + "/icon.png"));
+        assertEquals(1, mFullResponses.get());
+    }
+
+    @Test
+    public void testStaleEntryIsRevalidated() {
+        mCacheControl = "no-cache";
+        assertArrayEquals(ICON, mCache.get(mBaseUrl + "/icon.png"));
+        assertArrayEquals(ICON, mCache.get(mBaseUrl + "/icon.png"));
+        assertEquals(1, mFullResponses.get());
+        assertEquals(1, mNotModified.get());
+        assertEquals(1, mCache.getRevalidationCount());
+    }
+
+    @Test
+    public void testNoStoreIsNotCached() {
+        mCacheControl = "no-store";
+        mCache.get(mBaseUrl + "/icon.png");
+        mCache.get(mBaseUrl + "/icon.png");
+        assertEquals(2, mFullResponses.get());
+        assertEquals(0, mNotModified.get());
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws InterruptedException {
+        mCacheControl = "max-age=3600";
+        mGate = new CountDownLatch(1);
+        final Thread[] threads = new Thread[8];
+        final AtomicInteger successes = new AtomicInteger();
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCache.get(mBaseUrl + "/icon.png") != null)
+                        successes.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        Thread.sleep(200);
+        mGate.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(threads.length, successes.get());
+        assertEquals(1, mFullResponses.get());
+    }
+
+    @Test
+    public void testServesStaleContentWhenServerIsDown() {
+        mCacheControl = "no-cache";
+        mCache.get(mBaseUrl + "/icon.png");
+        mServer.stop(0);
+        assertArrayEquals(ICON, mCache.get(mBaseUrl + "/icon.png"));
+    }
+}
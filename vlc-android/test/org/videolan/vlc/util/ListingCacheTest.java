@@ -0,0 +1,114 @@
+package org.videolan.vlc.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ListingCacheTest {
+
+    private static final String DIR = "smb://nas/Movies/";
+
+    private File mCacheDir;
+    private ListingCache mCache;
+
+    @Before
+    public void setUp() {
+        mCacheDir = new File(System.getProperty("java.io.tmpdir"), "listings_" + System.nanoTime());
+        mCache = new ListingCache(mCacheDir, 3);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.clear();
+        mCacheDir.delete();
+    }
+
+    private static List<ListingCache.Entry> entries(int count) {
+        final List<ListingCache.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i)
+            entries.add(new ListingCache.Entry(DIR + "Movie%20" + i + ".mkv", i % 2 == 0 ? "Movie " + i : null,
+                    1, i * 1000L, -1L, -1L));
+        return entries;
+    }
+
+    @Test
+    public void testMiss() {
+        assertNull(mCache.get(DIR));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final List<ListingCache.Entry> entries = entries(10);
+        mCache.put(DIR, entries);
+        final ListingCache.Listing listing = new ListingCache(mCacheDir, 3).get(DIR);
+        assertNotNull(listing);
+        assertEquals(DIR, listing.mrl);
+        assertTrue(listing.time > 0);
+        assertTrue(ListingCache.isSame(entries, listing.entries));
+        assertNull(listing.entries.get(1).title);
+    }
+
+    @Test
+    public void testIsSame() {
+        final List<ListingCache.Entry> entries = entries(3);
+        final List<ListingCache.Entry> renamed = entries(3);
+        renamed.set(2, new ListingCache.Entry(entries.get(2).mrl, "Renamed", 1, 2000L, -1L, -1L));
+        assertTrue(ListingCache.isSame(entries, entries(3)));
+        assertFalse(ListingCache.isSame(entries, renamed));
+        assertFalse(ListingCache.isSame(entries, entries(2)));
+    }
+
+    @Test
+    public void testCorruptedFileIsDropped() throws IOException {
+        mCache.put(DIR, entries(5));
+        final File[] files = mCacheDir.listFiles();
+        assertEquals(1, files.length);
+        final FileOutputStream out = new FileOutputStream(files[0]);
+        out.write(new byte[] { 'V', 'L', 'C', 'L', 0, 0, 0, 1, 0 });
+        out.close();
+        assertNull(mCache.get(DIR));
+        assertEquals(0, mCacheDir.listFiles().length);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsRemoved() {
+        for (int i = 0; i < 3; ++i)
+            mCache.put(DIR + i, entries(1));
+        // Make the dates distinct, file system resolution can be coarse
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; ++i)
+            findFile(DIR + i).setLastModified(now - 100000 + i * 1000);
+        assertNotNull(mCache.get(DIR + 0));
+        mCache.put(DIR + 3, entries(1));
+        assertEquals(3, mCacheDir.listFiles().length);
+        assertNotNull(mCache.get(DIR + 0));
+        assertNull(mCache.get(DIR + 1));
+        assertNotNull(mCache.get(DIR + 3));
+    }
+
+    private File findFile(String mrl) {
+        return new File(mCacheDir, Long.toHexString(MurmurHash.hash64(mrl)) + ".listing");
+    }
+
+    @Test
+    public void testLargeListing() {
+        final List<ListingCache.Entry> entries = entries(20000);
+        long start = System.nanoTime();
+        mCache.put(DIR, entries);
+        final long writeMs = (System.nanoTime() - start) / 1000000;
+        start = System.nanoTime();
+        final ListingCache.Listing listing = mCache.get(DIR);
+        final long readMs = (System.nanoTime() - start) / 1000000;
+        assertEquals(20000, listing.entries.size());
+        assertTrue("write took " + writeMs + "ms", writeMs < 1000);
+        assertTrue("read took " + readMs + "ms", readMs < 1000);
+    }
+}
@@ -0,0 +1,87 @@
+package org.videolan.vlc.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class PlaybackQosTest {
+
+    private static final float DELTA = 0.0001f;
+
+    @Test
+    public void testBitrateAndDropRate() {
+        final PlaybackQos qos = new PlaybackQos("file:///a.mkv", 0L);
+        assertEquals(-1f, qos.getBitrate(), DELTA);
+        assertEquals(-1f, qos.getDropRate(), DELTA);
+        qos.record(1000L, 0, 0, 0, 0, 0, 0, 0, false);
+        assertEquals(-1f, qos.getBitrate(), DELTA);
+        qos.record(2000L, 125000, 24, 1, 40, 0, 0, 0, false);
+        assertEquals(1000000f, qos.getBitrate(), DELTA);
+        assertEquals(1f / 25f, qos.getDropRate(), DELTA);
+        qos.record(2500L, 187500, 36, 1, 60, 0, 0, 0, false);
+        assertEquals(1000000f, qos.getBitrate(), DELTA);
+        assertEquals(0f, qos.getDropRate(), DELTA);
+    }
+
+    @Test
+    public void testBufferingRatio() {
+        final PlaybackQos qos = new PlaybackQos("file:///a.mkv", 0L);
+        qos.record(0L, 0, 0, 0, 0, 0, 0, 0, false);
+        for (int i = 1; i <= 10; ++i)
+            qos.record(i * 1000L, i * 1000, i * 25, 0, i * 40, 0, 0, 0, i == 4 || i == 5 || i == 9);
+        assertEquals(0.3f, qos.getBufferingRatio(10000L), DELTA);
+        assertEquals(0.5f, qos.getBufferingRatio(2000L), DELTA);
+        assertTrue(qos.getReport().contains("30.00% of the time, 2 stalls"));
+    }
+
+    @Test
+    public void testSuspend() {
+        final PlaybackQos qos = new PlaybackQos("file:///a.mkv", 0L);
+        qos.record(0L, 0, 0, 0, 0, 0, 0, 0, false);
+        qos.record(1000L, 1000, 25, 0, 40, 0, 0, 0, false);
+        qos.suspend();
+        // A minute of pause must not lower the bitrate
+        qos.record(61000L, 1000, 25, 0, 40, 0, 0, 0, false);
+        assertEquals(-1f, qos.getBitrate(), DELTA);
+        qos.record(62000L, 2000, 50, 0, 80, 0, 0, 0, false);
+        assertEquals(8000f, qos.getBitrate(), DELTA);
+        assertTrue(qos.getReport().contains("sampled: 2.0s"));
+    }
+
+    @Test
+    public void testCountersReset() {
+        final PlaybackQos qos = new PlaybackQos("file:///a.mkv", 0L);
+        qos.record(0L, 50000, 100, 0, 100, 0, 0, 0, false);
+        qos.record(1000L, 100, 2, 0, 2, 0, 0, 0, false);
+        assertEquals(-1f, qos.getBitrate(), DELTA);
+    }
+
+    @Test
+    public void testRingKeepsTotals() {
+        final PlaybackQos qos = new PlaybackQos("file:///a.mkv", 0L, 4);
+        for (int i = 0; i <= 10; ++i)
+            qos.record(i * 1000L, i * 1000, i * 24, i, i * 40, 0, 0, 0, false);
+        assertEquals(4, qos.getSampleCount());
+        final String report = qos.getReport();
+        assertTrue(report, report.contains("sampled: 10.0s, 4 samples kept"));
+        assertTrue(report, report.contains("240 displayed, 10 lost (4.00%)"));
+        assertTrue(report, report.contains("mean 8 kb/s"));
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        final PlaybackQos qos = new PlaybackQos("file:///a.mkv", 500L, 3);
+        for (int i = 0; i < 5; ++i)
+            qos.record(500L + i * 1000L, i * 1000, i * 24, i, i * 40, 0, 0, 0, i == 4);
+        final StringWriter writer = new StringWriter();
+        qos.writeCsv(writer);
+        final String[] lines = writer.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("time_ms,"));
+        assertEquals("2000,2000,,48,2,,80,0,0,0,0", lines[1]);
+        assertEquals("4000,4000,8000,96,4,0.0400,160,0,0,0,1", lines[3]);
+    }
+}
@@ -0,0 +1,62 @@
+package org.videolan.vlc.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlaybackTracerTest {
+
+    @After
+    public void tearDown() {
+        PlaybackTracer.reset();
+    }
+
+    @Test
+    public void testSpan() {
+        PlaybackTracer.begin(PlaybackTracer.SPAN_PLAYING, PlaybackTracer.SOURCE_FILE, 1000L);
+        assertTrue(PlaybackTracer.isOpen(PlaybackTracer.SPAN_PLAYING));
+        assertEquals(250L, PlaybackTracer.end(PlaybackTracer.SPAN_PLAYING, 1250L));
+        assertFalse(PlaybackTracer.isOpen(PlaybackTracer.SPAN_PLAYING));
+        // Playing again after a pause doesn't close anything
+        assertEquals(-1L, PlaybackTracer.end(PlaybackTracer.SPAN_PLAYING, 5000L));
+        final LatencyHistogram histogram = PlaybackTracer.getHistogram(PlaybackTracer.SPAN_PLAYING, PlaybackTracer.SOURCE_FILE);
+        assertEquals(1L, histogram.getCount());
+        assertEquals(250L, histogram.getMax());
+    }
+
+    @Test
+    public void testCancelAndRestart() {
+        PlaybackTracer.begin(PlaybackTracer.SPAN_SEEK, PlaybackTracer.SOURCE_HTTP, 0L);
+        PlaybackTracer.cancel(PlaybackTracer.SPAN_SEEK);
+        assertEquals(-1L, PlaybackTracer.end(PlaybackTracer.SPAN_SEEK, 100L));
+        PlaybackTracer.begin(PlaybackTracer.SPAN_SEEK, PlaybackTracer.SOURCE_HTTP, 0L);
+        PlaybackTracer.begin(PlaybackTracer.SPAN_SEEK, PlaybackTracer.SOURCE_HTTP, 400L);
+        assertEquals(100L, PlaybackTracer.end(PlaybackTracer.SPAN_SEEK, 500L));
+        assertEquals(1L, PlaybackTracer.getHistogram(PlaybackTracer.SPAN_SEEK, PlaybackTracer.SOURCE_HTTP).getCount());
+    }
+
+    @Test
+    public void testSources() {
+        assertEquals(PlaybackTracer.SOURCE_FILE, PlaybackTracer.getSource("file"));
+        assertEquals(PlaybackTracer.SOURCE_HTTP, PlaybackTracer.getSource("HTTPS"));
+        assertEquals(PlaybackTracer.SOURCE_SMB, PlaybackTracer.getSource("smb"));
+        assertEquals(PlaybackTracer.SOURCE_UPNP, PlaybackTracer.getSource("upnp"));
+        assertEquals(PlaybackTracer.SOURCE_OTHER, PlaybackTracer.getSource("rtsp"));
+        assertEquals(PlaybackTracer.SOURCE_OTHER, PlaybackTracer.getSource(null));
+    }
+
+    @Test
+    public void testJson() {
+        assertEquals("{}", PlaybackTracer.toJson());
+        PlaybackTracer.begin(PlaybackTracer.SPAN_VOUT, PlaybackTracer.SOURCE_SMB, 0L);
+        PlaybackTracer.end(PlaybackTracer.SPAN_VOUT, 300L);
+        PlaybackTracer.begin(PlaybackTracer.SPAN_PLAYING, PlaybackTracer.SOURCE_FILE, 0L);
+        PlaybackTracer.end(PlaybackTracer.SPAN_PLAYING, 0L);
+        assertEquals("{\"playing\":{\"file\":{\"count\":1,\"mean\":0,\"p50\":0,\"p90\":0,\"p99\":0,\"max\":0}},"
+                + "\"vout\":{\"smb\":{\"count\":1,\"mean\":300,\"p50\":300,\"p90\":300,\"p99\":300,\"max\":300}}}",
+                PlaybackTracer.toJson());
+        assertEquals("playing (file): " + PlaybackTracer.getHistogram("playing", "file")
+                + "\nvout (smb): " + PlaybackTracer.getHistogram("vout", "smb"), PlaybackTracer.getReport());
+    }
+}
@@ -0,0 +1,128 @@
+package org.videolan.vlc.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    private static final SearchIndex.TitleProvider<String> TITLES = new SearchIndex.TitleProvider<String>() {
+        @Override
+        public String getTitle(String item) {
+            return item;
+        }
+    };
+
+    private static SearchIndex<String> index(String... titles) {
+        return new SearchIndex<>(Arrays.asList(titles), TITLES);
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("elephant", SearchIndex.normalize("Éléphant"));
+        assertEquals("garcon noel", SearchIndex.normalize("Garçon Noël"));
+        assertEquals("the office", SearchIndex.normalize("The Office"));
+    }
+
+    @Test
+    public void testTokenize() {
+        final List<String> words = new ArrayList<>();
+        SearchIndex.tokenize("my.movie_2016 (hd).mkv", words, true);
+        assertEquals(Arrays.asList("my", "movie", "2016", "hd", "mkv"), words);
+    }
+
+    @Test
+    public void testPrefixQuery() {
+        final SearchIndex<String> index = index("The Office S01E01", "Office Space", "Star Trek", "Startup.mkv", null);
+        assertEquals(Arrays.asList("The Office S01E01", "Office Space"), index.search("off"));
+        assertEquals(Arrays.asList("Star Trek", "Startup.mkv"), index.search("STAR"));
+        assertEquals(Arrays.asList("Startup.mkv"), index.search("startu"));
+        assertTrue(index.search("ffice").isEmpty());
+    }
+
+    @Test
+    public void testAllWordsMustMatch() {
+        final SearchIndex<String> index = index("Star Trek", "Star Wars", "Trekking");
+        assertEquals(Arrays.asList("Star Trek"), index.search("star tre"));
+        assertEquals(Arrays.asList("Star Trek"), index.search("  tre   st "));
+        assertTrue(index.search("star space").isEmpty());
+    }
+
+    @Test
+    public void testShortWordsAreIgnored() {
+        final SearchIndex<String> index = index("A Bug's Life", "Bugsy");
+        assertTrue(index.search("a").isEmpty());
+        assertTrue(index.search("").isEmpty());
+        assertEquals(Arrays.asList("A Bug's Life", "Bugsy"), index.search("a bu"));
+    }
+
+    @Test
+    public void testAccents() {
+        final SearchIndex<String> index = index("Amélie", "Les Misérables", "Ça");
+        assertEquals(Arrays.asList("Amélie"), index.search("ame"));
+        assertEquals(Arrays.asList("Amélie"), index.search("AMÉL"));
+        assertEquals(Arrays.asList("Les Misérables"), index.search("miserab"));
+        assertEquals(Arrays.asList("Ça"), index.search("ca"));
+    }
+
+    @Test
+    public void testIdeographs() {
+        final SearchIndex<String> index = index("千と千尋の神隠し", "となりのトトロ");
+        assertEquals(Arrays.asList("千と千尋の神隠し"), index.search("千尋"));
+        assertEquals(Arrays.asList("千と千尋の神隠し"), index.search("神"));
+        assertEquals(Arrays.asList("となりのトトロ"), index.search("トトロ"));
+    }
+
+    /* Linear scan of the titles, with the matching rules of the index */
+    private static List<String> scan(List<String> titles, String query) {
+        final List<String> queryWords = new ArrayList<>();
+        SearchIndex.tokenize(SearchIndex.normalize(query), queryWords, false);
+        final List<String> results = new ArrayList<>();
+        final List<String> words = new ArrayList<>();
+        boolean searched = false;
+        titles:
+        for (String title : titles) {
+            words.clear();
+            SearchIndex.tokenize(SearchIndex.normalize(title), words, true);
+            for (String queryWord : queryWords) {
+                if (queryWord.length() < 2)
+                    continue;
+                searched = true;
+                boolean found = false;
+                for (String word : words)
+                    if (word.startsWith(queryWord)) {
+                        found = true;
+                        break;
+                    }
+                if (!found)
+                    continue titles;
+            }
+            results.add(title);
+        }
+        return searched ? results : new ArrayList<String>();
+    }
+
+    @Test
+    public void testLargeIndex() {
+        final String[] words = { "star", "trek", "office", "season", "episode", "holiday", "birthday", "paris",
+                "london", "vacation", "concert", "live", "remastered", "édition", "spécial", "movie" };
+        final Random random = new Random(3);
+        final List<String> titles = new ArrayList<>(20000);
+        for (int i = 0; i < 20000; ++i) {
+            final StringBuilder sb = new StringBuilder();
+            for (int w = 0; w < 3; ++w)
+                sb.append(words[random.nextInt(words.length)]).append(' ');
+            titles.add(sb.append(i).append(".mkv").toString());
+        }
+        final SearchIndex<String> index = new SearchIndex<>(titles, TITLES);
+        assertEquals(20000, index.size());
+        final String[] queries = { "st", "sta", "star tr", "holi", "edit", "specia paris", "123", "zz", "live con", "s" };
+        for (String query : queries)
+            assertEquals(query, scan(titles, query), index.search(query));
+    }
+}
@@ -0,0 +1,66 @@
+package org.videolan.vlc.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailCacheTest {
+
+    private File mCacheDir;
+    private ThumbnailCache mCache;
+
+    @Before
+    public void setUp() {
+        mCacheDir = new File(System.getProperty("java.io.tmpdir"), "thumbnails_" + System.nanoTime());
+        mCache = new ThumbnailCache(mCacheDir, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.clear();
+        mCacheDir.delete();
+    }
+
+    @Test
+    public void testKeys() {
+        final String key = ThumbnailCache.getKey("file:///sdcard/Movies/movie.mkv", 1000L, 1500000000000L, 320, 200);
+        assertEquals(key, ThumbnailCache.getKey("file:///sdcard/Movies/movie.mkv", 1000L, 1500000000000L, 320, 200));
+        // The source was modified
+        assertFalse(key.equals(ThumbnailCache.getKey("file:///sdcard/Movies/movie.mkv", 1000L, 1500000000001L, 320, 200)));
+        assertFalse(key.equals(ThumbnailCache.getKey("file:///sdcard/Movies/movie.mkv", 1000L, 1500000000000L, 160, 100)));
+    }
+
+    @Test
+    public void testPutGet() {
+        assertNull(mCache.get("a"));
+        final File file = mCache.put("a", new byte[100]);
+        assertNotNull(file);
+        assertEquals(file, mCache.get("a"));
+        assertEquals(100, file.length());
+        assertEquals(100, mCache.getSize());
+        // Replace
+        mCache.put("a", new byte[50]);
+        assertEquals(50, mCache.getSize());
+        assertEquals(50, new ThumbnailCache(mCacheDir, 1000).getSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAreRemoved() {
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 4; ++i)
+            mCache.put("key" + i, new byte[200]);
+        // Make the dates distinct, file system resolution can be coarse
+        for (int i = 0; i < 4; ++i)
+            new File(mCacheDir, "key" + i + ".thumb").setLastModified(now - 100000 + i * 1000);
+        new File(mCacheDir, "key0.thumb").setLastModified(now);
+        mCache.put("key4", new byte[300]);
+        assertTrue(mCache.getSize() <= 900);
+        assertNotNull(mCache.get("key0"));
+        assertNull(mCache.get("key1"));
+        assertNotNull(mCache.get("key4"));
+    }
+}